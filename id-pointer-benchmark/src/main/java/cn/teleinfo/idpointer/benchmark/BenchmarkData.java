@@ -0,0 +1,23 @@
+package cn.teleinfo.idpointer.benchmark;
+
+import cn.teleinfo.idpointer.sdk.core.HandleValue;
+
+/**
+ * 基准测试使用的标识值
+ */
+final class BenchmarkData {
+
+    private BenchmarkData() {
+    }
+
+    static HandleValue[] newHandleValues(int count) {
+        HandleValue[] values = new HandleValue[count];
+        for (int i = 0; i < count; i++) {
+            // 类型交替，模拟常见的URL与自定义元数据混合的标识
+            String type = i % 2 == 0 ? "URL" : "meta.field" + i;
+            values[i] = new HandleValue(i + 1, type, "https://example.com/benchmark/value/" + i);
+            values[i].setTTL(86400);
+        }
+        return values;
+    }
+}
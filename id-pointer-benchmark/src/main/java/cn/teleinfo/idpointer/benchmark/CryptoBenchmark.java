@@ -0,0 +1,120 @@
+package cn.teleinfo.idpointer.benchmark;
+
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.crypto.SecureUtil;
+import cn.hutool.crypto.SmUtil;
+import cn.hutool.crypto.asymmetric.KeyType;
+import cn.hutool.crypto.asymmetric.SM2;
+import cn.hutool.crypto.symmetric.SM4;
+import cn.teleinfo.idpointer.sdk.core.Encoder;
+import cn.teleinfo.idpointer.sdk.core.Util;
+import cn.teleinfo.idpointer.sdk.security.HdlSecurityProvider;
+import cn.teleinfo.idpointer.sdk.session.SessionDefault;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 国密算法相关操作：
+ * SM3摘要与SM2签名同PublicKeyAuthenticationInfo.authenticate，
+ * SM2解密会话密钥同TransportEncryptHandler，
+ * SM4加解密同会话加密传输（每次新建SM4与复用SessionDefault上缓存的Cipher）
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoBenchmark {
+
+    @Param({"256", "4096"})
+    private int messageSize;
+
+    private KeyPair keyPair;
+    private byte[] challengeData;
+    private String digestHex;
+    private String userIdHex;
+    private byte[] encryptedSessionKey;
+
+    private byte[] sessionKey;
+    private byte[] message;
+    private SessionDefault session;
+    private ByteBuf encryptOut;
+    private ByteBuf encrypted;
+
+    @Setup
+    public void setup() throws Exception {
+        keyPair = SecureUtil.generateKeyPair("SM2");
+        // nonce + requestDigest
+        challengeData = new byte[16 + 32];
+        ThreadLocalRandom.current().nextBytes(challengeData);
+        digestHex = SmUtil.sm3(new ByteArrayInputStream(challengeData));
+        userIdHex = HexUtil.encodeHexStr("88.111/admin".getBytes(StandardCharsets.UTF_8));
+
+        sessionKey = new byte[16];
+        ThreadLocalRandom.current().nextBytes(sessionKey);
+        byte[] sessionKeyBytes = new byte[Encoder.INT_SIZE + sessionKey.length];
+        Encoder.writeInt(sessionKeyBytes, 0, HdlSecurityProvider.ENCRYPT_ALG_SM4);
+        System.arraycopy(sessionKey, 0, sessionKeyBytes, Encoder.INT_SIZE, sessionKey.length);
+        encryptedSessionKey = new SM2(null, keyPair.getPublic()).encrypt(sessionKeyBytes, KeyType.PublicKey);
+
+        message = new byte[messageSize];
+        ThreadLocalRandom.current().nextBytes(message);
+        session = new SessionDefault(1);
+        session.setSessionKey(sessionKey);
+        session.setSessionKeyAlgorithmCode(HdlSecurityProvider.ENCRYPT_ALG_SM4);
+        session.setEncryptMessage(true);
+        encryptOut = PooledByteBufAllocator.DEFAULT.directBuffer(messageSize + 64);
+        encrypted = PooledByteBufAllocator.DEFAULT.directBuffer(messageSize + 64);
+        session.encryptMessage(message, encrypted, 2, 10);
+    }
+
+    @TearDown
+    public void tearDown() {
+        encryptOut.release();
+        encrypted.release();
+    }
+
+    @Benchmark
+    public String sm3Digest() {
+        return SmUtil.sm3(new ByteArrayInputStream(challengeData));
+    }
+
+    @Benchmark
+    public String sm2SignChallenge() {
+        SM2 sm2 = new SM2(keyPair.getPrivate(), null);
+        return sm2.signHex(digestHex, userIdHex);
+    }
+
+    @Benchmark
+    public byte[] sm2DecryptSessionKey() {
+        SM2 sm2 = new SM2(keyPair.getPrivate(), null);
+        return Util.substring(sm2.decrypt(encryptedSessionKey), Encoder.INT_SIZE);
+    }
+
+    @Benchmark
+    public byte[] sm4EncryptNewCipher() {
+        SM4 sm4 = new SM4(cn.hutool.crypto.Mode.CBC, cn.hutool.crypto.Padding.PKCS5Padding, sessionKey, sessionKey);
+        return sm4.encrypt(message);
+    }
+
+    @Benchmark
+    public ByteBuf sm4EncryptSessionCipher() throws Exception {
+        encryptOut.clear();
+        session.encryptMessage(message, encryptOut, 2, 10);
+        return encryptOut;
+    }
+
+    @Benchmark
+    public ByteBuffer sm4DecryptSessionCipher() throws Exception {
+        return session.decryptMessage(encrypted, 2, 10);
+    }
+}
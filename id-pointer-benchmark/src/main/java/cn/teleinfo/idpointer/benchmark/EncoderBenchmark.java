@@ -0,0 +1,74 @@
+package cn.teleinfo.idpointer.benchmark;
+
+import cn.teleinfo.idpointer.sdk.core.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoder消息编解码
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncoderBenchmark {
+
+    @Param({"1", "10", "50"})
+    private int valueCount;
+
+    private ResolutionIdRequest request;
+    private ResolutionIdResponse response;
+    private byte[] encodedResponse;
+    private MessageEnvelope envelope;
+
+    @Setup
+    public void setup() throws HandleException {
+        request = new ResolutionIdRequest(Util.encodeString("88.111/benchmark"), null, null, null);
+        request.requestId = 1;
+        response = new ResolutionIdResponse(request, request.handle, BenchmarkData.newHandleValues(valueCount));
+        response.requestId = 1;
+        encodedResponse = Encoder.encodeMessage(response);
+        envelope = new MessageEnvelope();
+        envelope.messageLength = encodedResponse.length;
+    }
+
+    @Benchmark
+    public byte[] encodeRequest() throws HandleException {
+        return Encoder.encodeMessage(request);
+    }
+
+    @Benchmark
+    public byte[] encodeResponse() throws HandleException {
+        return Encoder.encodeMessage(response);
+    }
+
+    @Benchmark
+    public AbstractMessage decodeResponse() throws HandleException {
+        return Encoder.decodeMessage(encodedResponse, 0, envelope);
+    }
+
+    @Benchmark
+    public AbstractMessage decodeResponseFromByteBuffer() throws HandleException {
+        return Encoder.decodeMessage(ByteBuffer.wrap(encodedResponse), envelope);
+    }
+
+    @Benchmark
+    public HandleValue[] decodeHandleValues() throws HandleException {
+        ResolutionIdResponse decoded = (ResolutionIdResponse) Encoder.decodeMessage(encodedResponse, 0, envelope);
+        return decoded.getHandleValues();
+    }
+
+    @Benchmark
+    public int decodeHandleValueViews() throws HandleException {
+        ResolutionIdResponse decoded = (ResolutionIdResponse) Encoder.decodeMessage(encodedResponse, 0, envelope);
+        int count = 0;
+        for (HandleValueView view : decoded.getHandleValueViews()) {
+            if (view.hasType(Common.STD_TYPE_URL)) count++;
+        }
+        return count;
+    }
+}
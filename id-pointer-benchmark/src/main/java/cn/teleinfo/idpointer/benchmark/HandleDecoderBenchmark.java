@@ -0,0 +1,77 @@
+package cn.teleinfo.idpointer.benchmark;
+
+import cn.teleinfo.idpointer.sdk.core.ResolutionIdRequest;
+import cn.teleinfo.idpointer.sdk.core.ResolutionIdResponse;
+import cn.teleinfo.idpointer.sdk.core.Util;
+import cn.teleinfo.idpointer.sdk.protocol.decoder.HandleDecoder;
+import cn.teleinfo.idpointer.sdk.transport.MessagePacketsManager;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 信封分帧与消息解码，包括一次完整到达和按小块分多次到达两种情况
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HandleDecoderBenchmark {
+
+    @Param({"1", "10", "50"})
+    private int valueCount;
+
+    @Param({"0", "256"})
+    private int chunkSize;
+
+    private ByteBuf frame;
+    private EmbeddedChannel channel;
+    private MessagePacketsManager messagePacketsManager;
+    private ResolutionIdResponse response;
+
+    @Setup
+    public void setup() throws Exception {
+        ResolutionIdRequest request = new ResolutionIdRequest(Util.encodeString("88.111/benchmark"), null, null, null);
+        request.requestId = 1;
+        response = new ResolutionIdResponse(request, request.handle, BenchmarkData.newHandleValues(valueCount));
+        response.requestId = 1;
+
+        messagePacketsManager = new MessagePacketsManager();
+        frame = PooledByteBufAllocator.DEFAULT.directBuffer();
+        // 未加密的消息不会访问channel
+        messagePacketsManager.writeTcpMessageEnvelopeForRequest(response, null, frame);
+        channel = new EmbeddedChannel(new HandleDecoder());
+    }
+
+    @TearDown
+    public void tearDown() {
+        frame.release();
+        channel.finishAndReleaseAll();
+    }
+
+    @Benchmark
+    public Object decode() {
+        if (chunkSize <= 0) {
+            channel.writeInbound(frame.retainedDuplicate());
+        } else {
+            ByteBuf in = frame.duplicate();
+            while (in.isReadable()) {
+                channel.writeInbound(in.readRetainedSlice(Math.min(chunkSize, in.readableBytes())));
+            }
+        }
+        return channel.readInbound();
+    }
+
+    @Benchmark
+    public ByteBuf encode() throws Exception {
+        ByteBuf out = PooledByteBufAllocator.DEFAULT.directBuffer();
+        messagePacketsManager.writeTcpMessageEnvelopeForRequest(response, null, out);
+        out.release();
+        return out;
+    }
+}
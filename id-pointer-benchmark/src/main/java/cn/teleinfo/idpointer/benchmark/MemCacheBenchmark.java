@@ -0,0 +1,82 @@
+package cn.teleinfo.idpointer.benchmark;
+
+import cn.teleinfo.idpointer.sdk.core.HandleValue;
+import cn.teleinfo.idpointer.sdk.core.MemCache;
+import cn.teleinfo.idpointer.sdk.core.Util;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MemCache.getCachedValues命中与未命中，以及读写混合。
+ * 不同线程数下的吞吐可以用 -t 指定，例如 java -jar target/benchmarks.jar MemCacheBenchmark.hit$ -t 8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemCacheBenchmark {
+
+    @Param({"1000", "100000"})
+    private int handleCount;
+
+    private MemCache cache;
+    private byte[][] handles;
+    private byte[][] missingHandles;
+    private HandleValue[] values;
+
+    @Setup
+    public void setup() throws Exception {
+        cache = new MemCache(handleCount + 1, 3600);
+        values = BenchmarkData.newHandleValues(5);
+        handles = new byte[handleCount][];
+        missingHandles = new byte[handleCount][];
+        for (int i = 0; i < handleCount; i++) {
+            handles[i] = Util.encodeString("88.111/benchmark-" + i);
+            missingHandles[i] = Util.encodeString("88.111/missing-" + i);
+            cache.setCachedValues(handles[i], values, null, null);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[][] hit() throws Exception {
+        return cache.getCachedValues(handles[ThreadLocalRandom.current().nextInt(handleCount)], null, null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public byte[][] hitConcurrent() throws Exception {
+        return cache.getCachedValues(handles[ThreadLocalRandom.current().nextInt(handleCount)], null, null);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public byte[][] hitConcurrent8() throws Exception {
+        return cache.getCachedValues(handles[ThreadLocalRandom.current().nextInt(handleCount)], null, null);
+    }
+
+    /**
+     * 每10次访问写入一次
+     */
+    @Benchmark
+    @Threads(4)
+    public byte[][] readWriteConcurrent() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        byte[] handle = handles[random.nextInt(handleCount)];
+        if (random.nextInt(10) == 0) {
+            cache.setCachedValues(handle, values, null, null);
+            return null;
+        }
+        return cache.getCachedValues(handle, null, null);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[][] miss() throws Exception {
+        return cache.getCachedValues(missingHandles[ThreadLocalRandom.current().nextInt(handleCount)], null, null);
+    }
+}
@@ -0,0 +1,64 @@
+package cn.teleinfo.idpointer.benchmark;
+
+import cn.teleinfo.idpointer.sdk.client.SampleIdClient;
+import cn.teleinfo.idpointer.sdk.core.HandleValue;
+import cn.teleinfo.idpointer.sdk.stub.StubIdServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 通过本地StubIdServer端到端解析，覆盖编码、连接池、分帧、解码与promise回调
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResolveBenchmark {
+
+    private static final int HANDLE_COUNT = 1000;
+
+    @Param({"1", "10"})
+    private int valueCount;
+
+    @Param({"0", "1"})
+    private long latencyMillis;
+
+    private StubIdServer server;
+    private SampleIdClient client;
+    private String[] handles;
+
+    @Setup
+    public void setup() throws Exception {
+        server = StubIdServer.builder().latency(latencyMillis, 0).build();
+        InetSocketAddress address = server.start();
+        handles = new String[HANDLE_COUNT];
+        for (int i = 0; i < HANDLE_COUNT; i++) {
+            handles[i] = "88.111/benchmark-" + i;
+            server.getStore().create(handles[i], BenchmarkData.newHandleValues(valueCount), false);
+        }
+        client = new SampleIdClient(address, 10, 8);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public HandleValue[] resolve() throws Exception {
+        return client.resolveHandle(handles[ThreadLocalRandom.current().nextInt(HANDLE_COUNT)]);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public HandleValue[] resolveConcurrent() throws Exception {
+        return client.resolveHandle(handles[ThreadLocalRandom.current().nextInt(HANDLE_COUNT)]);
+    }
+}
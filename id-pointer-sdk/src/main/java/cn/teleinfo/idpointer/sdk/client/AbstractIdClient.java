@@ -3,9 +3,17 @@ package cn.teleinfo.idpointer.sdk.client;
 import cn.teleinfo.idpointer.sdk.core.*;
 import cn.teleinfo.idpointer.sdk.exception.IDException;
 import cn.teleinfo.idpointer.sdk.transport.ResponsePromise;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
 
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public abstract class AbstractIdClient implements IDClient {
 
@@ -35,6 +43,17 @@ public abstract class AbstractIdClient implements IDClient {
 
     protected abstract ResponsePromise doRequestInternal(AbstractIdRequest request) throws IDException;
 
+    /**
+     * 批量发送，返回的promise与请求一一对应；默认逐个发送
+     */
+    protected List<ResponsePromise> doRequestsInternal(List<AbstractIdRequest> requests) throws IDException {
+        List<ResponsePromise> promises = new ArrayList<>(requests.size());
+        for (AbstractIdRequest request : requests) {
+            promises.add(doRequestInternal(request));
+        }
+        return promises;
+    }
+
     @Override
     public void addHandleValues(String handle, HandleValue[] values) throws IDException {
         addHandleValues(handle, values, false);
@@ -118,6 +137,52 @@ public abstract class AbstractIdClient implements IDClient {
         return doResolve(request);
     }
 
+    @Override
+    public Map<String, Future<HandleValue[]>> resolveHandles(Collection<String> handles, String[] types, int[] indexes) throws IDException {
+        byte reqTypes[][] = valueHelper.getTypeStringBytes(types);
+        Map<String, Future<HandleValue[]>> results = new LinkedHashMap<>();
+        List<String> batch = new ArrayList<>();
+        List<AbstractIdRequest> requests = new ArrayList<>();
+        for (String handle : handles) {
+            if (results.containsKey(handle)) {
+                continue;
+            }
+            // 占位，保持结果与输入的顺序一致
+            results.put(handle, null);
+            batch.add(handle);
+            requests.add(new ResolutionIdRequest(handle.getBytes(StandardCharsets.UTF_8), reqTypes, indexes, null));
+        }
+        if (requests.isEmpty()) {
+            return results;
+        }
+        List<ResponsePromise> promises = doRequestsInternal(requests);
+        for (int i = 0; i < batch.size(); i++) {
+            results.put(batch.get(i), toHandleValues(promises.get(i)));
+        }
+        return results;
+    }
+
+    private static Future<HandleValue[]> toHandleValues(ResponsePromise responsePromise) {
+        Promise<HandleValue[]> promise = GlobalEventExecutor.INSTANCE.newPromise();
+        responsePromise.addListener((Future<AbstractIdResponse> future) -> {
+            if (!future.isSuccess()) {
+                promise.tryFailure(future.cause());
+                return;
+            }
+            AbstractIdResponse response = future.getNow();
+            if (!(response instanceof ResolutionIdResponse)) {
+                promise.tryFailure(new IDException(IDException.RC_INVALID_RESPONSE_CODE, "not resolution response", response));
+                return;
+            }
+            try {
+                promise.trySuccess(((ResolutionIdResponse) response).getHandleValues());
+            } catch (HandleException e) {
+                promise.tryFailure(new IDException(IDException.RC_INVALID_RESPONSE_CODE, "Get handle value error ", response, e));
+            }
+        });
+        return promise;
+    }
+
     private HandleValue[] doResolve(ResolutionIdRequest request) throws IDException {
         AbstractIdResponse response = doRequest(request);
 
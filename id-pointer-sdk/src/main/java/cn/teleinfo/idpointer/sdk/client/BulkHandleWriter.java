@@ -0,0 +1,300 @@
+package cn.teleinfo.idpointer.sdk.client;
+
+import cn.teleinfo.idpointer.sdk.core.*;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.transport.ResponsePromise;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 批量注册/更新标识。
+ * <p>
+ * 提交的请求攒够PIPELINE_DEPTH个（或等待lingerMillis）后通过doRequestsInternal在同一个已登录的channel上流水线发送，
+ * 在途请求数超过maxInFlight时提交方阻塞（背压）。每个请求返回各自的结果，
+ * 服务器繁忙、超时、连接失败等暂时性错误按指数退避重试，最多maxRetries次。
+ * <p>
+ * 注意：超时后重试的创建请求可能已被服务器执行，此时返回HANDLE_ALREADY_EXISTS对应的错误。
+ */
+public class BulkHandleWriter implements Closeable {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(BulkHandleWriter.class);
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_RETRY_DELAY_MILLIS = 200;
+    public static final long DEFAULT_LINGER_MILLIS = 5;
+
+    private final AbstractIdClient idClient;
+    private final int maxInFlight;
+    private final int maxRetries;
+    private final long retryDelayMillis;
+    private final long lingerMillis;
+    private final int batchSize;
+    private final Semaphore permits;
+
+    private final Object lock = new Object();
+    private List<Item> pending = new ArrayList<>();
+    private ScheduledFuture<?> lingerFuture;
+    private volatile boolean closed;
+
+    private final AtomicLong succeededCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong retriedCount = new AtomicLong();
+
+    /**
+     * @param idClient         使用的客户端，需已配置登录信息
+     * @param maxInFlight      最大在途请求数（含等待重试的请求）
+     * @param maxRetries       暂时性错误的最大重试次数
+     * @param retryDelayMillis 首次重试的等待时间，之后每次加倍
+     * @param lingerMillis     未攒满一批时等待的最长时间
+     */
+    public BulkHandleWriter(AbstractIdClient idClient, int maxInFlight, int maxRetries, long retryDelayMillis, long lingerMillis) {
+        this.idClient = idClient;
+        this.maxInFlight = maxInFlight;
+        this.maxRetries = maxRetries;
+        this.retryDelayMillis = retryDelayMillis;
+        this.lingerMillis = lingerMillis;
+        this.batchSize = Math.min(SampleIdClient.PIPELINE_DEPTH, maxInFlight);
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    public BulkHandleWriter(AbstractIdClient idClient, int maxInFlight) {
+        this(idClient, maxInFlight, DEFAULT_MAX_RETRIES, DEFAULT_RETRY_DELAY_MILLIS, DEFAULT_LINGER_MILLIS);
+    }
+
+    public BulkHandleWriter(AbstractIdClient idClient) {
+        this(idClient, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public Future<AbstractIdResponse> createHandle(String handle, HandleValue[] values) throws IDException {
+        return createHandle(handle, values, false);
+    }
+
+    public Future<AbstractIdResponse> createHandle(String handle, HandleValue[] values, boolean overwrite) throws IDException {
+        return submit(new Item(AbstractMessage.OC_CREATE_HANDLE, handle, values, overwrite));
+    }
+
+    public Future<AbstractIdResponse> addHandleValues(String handle, HandleValue[] values, boolean overwrite) throws IDException {
+        return submit(new Item(AbstractMessage.OC_ADD_VALUE, handle, values, overwrite));
+    }
+
+    public Future<AbstractIdResponse> updateHandleValues(String handle, HandleValue[] values, boolean overwrite) throws IDException {
+        return submit(new Item(AbstractMessage.OC_MODIFY_VALUE, handle, values, overwrite));
+    }
+
+    private Future<AbstractIdResponse> submit(Item item) throws IDException {
+        if (closed) {
+            throw new IDException(IDException.CLIENT_ERROR, "bulk writer closed");
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IDException(IDException.CLIENT_ERROR, "interrupted", e);
+        }
+        enqueue(item);
+        return item.promise;
+    }
+
+    private void enqueue(Item item) {
+        List<Item> batch = null;
+        synchronized (lock) {
+            pending.add(item);
+            if (pending.size() >= batchSize) {
+                batch = drain();
+            } else if (lingerFuture == null) {
+                lingerFuture = GlobalEventExecutor.INSTANCE.schedule(this::sendPending, lingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (batch != null) {
+            send(batch);
+        }
+    }
+
+    /** Called with the lock held */
+    private List<Item> drain() {
+        List<Item> batch = pending;
+        pending = new ArrayList<>();
+        if (lingerFuture != null) {
+            lingerFuture.cancel(false);
+            lingerFuture = null;
+        }
+        return batch;
+    }
+
+    private void sendPending() {
+        List<Item> batch;
+        synchronized (lock) {
+            batch = drain();
+        }
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    private void send(List<Item> batch) {
+        List<AbstractIdRequest> requests = new ArrayList<>(batch.size());
+        for (Item item : batch) {
+            requests.add(item.newRequest());
+        }
+        List<ResponsePromise> responsePromises;
+        try {
+            responsePromises = idClient.doRequestsInternal(requests);
+        } catch (IDException e) {
+            for (Item item : batch) {
+                onFailure(item, e);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            Item item = batch.get(i);
+            responsePromises.get(i).addListener((Future<AbstractIdResponse> future) -> {
+                if (future.isSuccess()) {
+                    succeededCount.incrementAndGet();
+                    item.promise.trySuccess(future.getNow());
+                    permits.release();
+                } else {
+                    onFailure(item, future.cause());
+                }
+            });
+        }
+    }
+
+    private void onFailure(Item item, Throwable cause) {
+        if (item.attempts < maxRetries && isTransient(cause)) {
+            long delay = retryDelayMillis << item.attempts;
+            item.attempts++;
+            retriedCount.incrementAndGet();
+            log.debug("retry {} after {}ms: {}", item.handle, delay, cause.getMessage());
+            GlobalEventExecutor.INSTANCE.schedule(() -> enqueue(item), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        failedCount.incrementAndGet();
+        item.promise.tryFailure(cause);
+        permits.release();
+    }
+
+    /**
+     * 超时、取连接或发送失败、连接断开（IOException，包括ClosedChannelException，或包装它的IDException）以及服务器繁忙类的响应码可以重试
+     */
+    static boolean isTransient(Throwable cause) {
+        if (cause instanceof IOException) {
+            return true;
+        }
+        if (!(cause instanceof IDException)) {
+            return false;
+        }
+        IDException e = (IDException) cause;
+        if (e.getCause() instanceof IOException) {
+            return true;
+        }
+        // 带响应的IDException，code即为响应码
+        if (e.getResponse() != null) {
+            switch (e.getResponse().getResponseCode()) {
+                case AbstractMessage.RC_SERVER_TOO_BUSY:
+                case AbstractMessage.RC_SERVER_NOT_RESP:
+                case AbstractMessage.RC_SERVER_BACKUP:
+                case AbstractMessage.RC_SESSION_TIMEOUT:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        switch (e.getCode()) {
+            case IDException.RESPONSE_TIMEOUT:
+            case IDException.CHANNEL_GET_ERROR:
+            case IDException.PROMISE_GET_ERROR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 立即发送未攒满的请求并等待所有在途请求（含重试）完成
+     *
+     * @return 超时返回false
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        sendPending();
+        if (!permits.tryAcquire(maxInFlight, timeout, unit)) {
+            return false;
+        }
+        permits.release(maxInFlight);
+        return true;
+    }
+
+    public long getSucceededCount() {
+        return succeededCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getRetriedCount() {
+        return retriedCount.get();
+    }
+
+    public int getInFlightCount() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    /**
+     * 不再接受新的请求，并等待在途请求完成；不关闭idClient
+     */
+    @Override
+    public void close() {
+        closed = true;
+        sendPending();
+        permits.acquireUninterruptibly(maxInFlight);
+        permits.release(maxInFlight);
+    }
+
+    private static final class Item {
+        private final int opCode;
+        private final String handle;
+        private final HandleValue[] values;
+        private final boolean overwrite;
+        private final Promise<AbstractIdResponse> promise = GlobalEventExecutor.INSTANCE.newPromise();
+        private int attempts;
+
+        private Item(int opCode, String handle, HandleValue[] values, boolean overwrite) {
+            this.opCode = opCode;
+            this.handle = handle;
+            this.values = values;
+            this.overwrite = overwrite;
+        }
+
+        /** 请求发送时会写入requestId和sessionId，每次重试重新构造 */
+        private AbstractIdRequest newRequest() {
+            byte[] handleBytes = handle.getBytes(StandardCharsets.UTF_8);
+            switch (opCode) {
+                case AbstractMessage.OC_CREATE_HANDLE:
+                    CreateHandleIdRequest createRequest = new CreateHandleIdRequest(handleBytes, values, null);
+                    createRequest.overwriteWhenExists = overwrite;
+                    return createRequest;
+                case AbstractMessage.OC_ADD_VALUE:
+                    AddValueIdRequest addRequest = new AddValueIdRequest(handleBytes, values, null);
+                    addRequest.overwriteWhenExists = overwrite;
+                    return addRequest;
+                default:
+                    ModifyValueIdRequest modifyRequest = new ModifyValueIdRequest(handleBytes, values, null);
+                    modifyRequest.overwriteWhenExists = overwrite;
+                    return modifyRequest;
+            }
+        }
+    }
+}
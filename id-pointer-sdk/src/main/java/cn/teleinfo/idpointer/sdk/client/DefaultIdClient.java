@@ -14,7 +14,15 @@ public class DefaultIdClient extends SampleIdClient {
         super(serverAddress, promiseTimeout, maxConnections);
     }
 
+    public DefaultIdClient(InetSocketAddress serverAddress, int promiseTimeout, int minConnections, int maxConnections, boolean adaptivePoolSizing) {
+        super(serverAddress, promiseTimeout, minConnections, maxConnections, adaptivePoolSizing);
+    }
+
     public DefaultIdClient(InetSocketAddress serverAddress, int promiseTimeout, int maxConnections, AuthenticationInfo authenticationInfo, boolean encrypt) {
         super(serverAddress, promiseTimeout, maxConnections, authenticationInfo, encrypt);
     }
+
+    public DefaultIdClient(InetSocketAddress serverAddress, int promiseTimeout, int minConnections, int maxConnections, boolean adaptivePoolSizing, AuthenticationInfo authenticationInfo, boolean encrypt) {
+        super(serverAddress, promiseTimeout, minConnections, maxConnections, adaptivePoolSizing, authenticationInfo, encrypt);
+    }
 }
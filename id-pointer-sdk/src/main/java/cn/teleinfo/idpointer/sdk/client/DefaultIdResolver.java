@@ -3,14 +3,52 @@ package cn.teleinfo.idpointer.sdk.client;
 import cn.teleinfo.idpointer.sdk.core.HandleValue;
 import cn.teleinfo.idpointer.sdk.exception.IDException;
 
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class DefaultIdResolver implements IDResolver {
 
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(DefaultIdResolver.class);
+    private static final int DEFAULT_AWAIT_TIMEOUT = 60;
+
     private ValueHelper valueHelper = ValueHelper.getInstance();
 
     private final IDClientFactory idClientFactory;
 
+    private final ConcurrentMap<FlightKey, Promise<HandleValue[]>> inFlightResolutions = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong resolvedCount = new AtomicLong();
+
+    private final int awaitTimeout;
+
     public DefaultIdResolver(IDClientFactory idClientFactory) {
+        this(idClientFactory, idClientFactory == null || idClientFactory.getIdClientConfig() == null
+                ? DEFAULT_AWAIT_TIMEOUT : idClientFactory.getIdClientConfig().getPromiseTimeout());
+    }
+
+    /**
+     * @param awaitTimeout 合并的调用等待共享结果的最长时间，单位秒
+     */
+    public DefaultIdResolver(IDClientFactory idClientFactory, int awaitTimeout) {
         this.idClientFactory = idClientFactory;
+        this.awaitTimeout = awaitTimeout;
     }
 
     @Override
@@ -18,8 +56,82 @@ public class DefaultIdResolver implements IDResolver {
         return resolveHandle(handle, null, null);
     }
 
+    /**
+     * 相同handle与过滤条件的并发解析只发送一次请求（single-flight），其余调用等待并共享结果
+     */
     @Override
     public HandleValue[] resolveHandle(String handle, String[] types, int[] indexes) throws IDException {
+        FlightKey key = new FlightKey(handle, types, indexes);
+        Promise<HandleValue[]> promise = GlobalEventExecutor.INSTANCE.newPromise();
+        Promise<HandleValue[]> inFlight = inFlightResolutions.putIfAbsent(key, promise);
+        if (inFlight != null) {
+            coalescedCount.incrementAndGet();
+            return awaitShared(inFlight);
+        }
+        resolvedCount.incrementAndGet();
+        try {
+            HandleValue[] values = doResolveHandle(handle, types, indexes);
+            // 共享的结果为单独的副本，调用方修改自己的结果不影响正在复制的其他调用
+            promise.trySuccess(duplicate(values));
+            return values;
+        } catch (Throwable e) {
+            // Error也要完成共享的promise，否则合并的调用一直等待
+            promise.tryFailure(e);
+            throw e;
+        } finally {
+            inFlightResolutions.remove(key, promise);
+        }
+    }
+
+    private HandleValue[] awaitShared(Promise<HandleValue[]> inFlight) throws IDException {
+        try {
+            if (!inFlight.await(awaitTimeout, TimeUnit.SECONDS)) {
+                throw new IDException(IDException.RESPONSE_TIMEOUT, "resolve timeout");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IDException(IDException.CLIENT_ERROR, "interrupted", e);
+        }
+        if (!inFlight.isSuccess()) {
+            Throwable cause = inFlight.cause();
+            if (cause instanceof IDException) {
+                IDException e = (IDException) cause;
+                throw e.getResponse() != null
+                        ? new IDException(e.getCode(), e.getMessage(), e.getResponse(), e)
+                        : new IDException(e.getCode(), e.getMessage(), e);
+            }
+            throw new IDException(IDException.CLIENT_ERROR, "resolve error", cause);
+        }
+        // 每个调用方拿到各自的副本，避免互相修改
+        return duplicate(inFlight.getNow());
+    }
+
+    private static HandleValue[] duplicate(HandleValue[] shared) {
+        if (shared == null) {
+            return null;
+        }
+        HandleValue[] values = new HandleValue[shared.length];
+        for (int i = 0; i < shared.length; i++) {
+            values[i] = shared[i].duplicate();
+        }
+        return values;
+    }
+
+    /**
+     * 合并到其他调用的解析次数
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * 实际发出的解析次数
+     */
+    public long getResolvedCount() {
+        return resolvedCount.get();
+    }
+
+    protected HandleValue[] doResolveHandle(String handle, String[] types, int[] indexes) throws IDException {
         //如果是前缀,直接返回结果
         if (handle.indexOf("/") == -1 || handle.startsWith("0.NA/")) {
             HandleValue[] prefixHandleValues = GlobalIdClientFactory.getInstance().getPrefixHandleValues(handle, types, indexes);
@@ -27,7 +139,120 @@ public class DefaultIdResolver implements IDResolver {
         }
         String prefix = valueHelper.getPrefix(handle);
         //连接具体企业节点
-        IDClient idClient = idClientFactory.newInstance(prefix);
-        return idClient.resolveHandle(handle, types, indexes);
+        // 连接池由SharedChannelPoolRegistry共享，关闭客户端只释放引用
+        try (IDClient idClient = idClientFactory.newInstance(prefix)) {
+            return idClient.resolveHandle(handle, types, indexes);
+        } catch (IOException e) {
+            throw new IDException(IDException.CLIENT_ERROR, "close client error", e);
+        }
+    }
+
+    /**
+     * 批量解析：前缀标识直接查询全局节点；其余标识按前缀分组，每个前缀只查询一次站点，
+     * 再按企业节点地址分组，同一节点的请求在共享连接上流水线发送
+     */
+    @Override
+    public Map<String, Future<HandleValue[]>> resolveHandles(Collection<String> handles, String[] types, int[] indexes) throws IDException {
+        Map<String, Future<HandleValue[]>> results = new LinkedHashMap<>();
+        Map<String, List<String>> prefixHandles = new LinkedHashMap<>();
+        for (String handle : handles) {
+            if (results.containsKey(handle)) {
+                continue;
+            }
+            if (handle.indexOf("/") == -1 || handle.startsWith("0.NA/")) {
+                results.put(handle, resolvePrefix(handle, types, indexes));
+                continue;
+            }
+            // 占位，保持结果与输入的顺序一致
+            results.put(handle, null);
+            prefixHandles.computeIfAbsent(valueHelper.getPrefix(handle), k -> new ArrayList<>()).add(handle);
+        }
+
+        Map<InetSocketAddress, List<String>> serverHandles = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : prefixHandles.entrySet()) {
+            InetSocketAddress address;
+            try {
+                address = GlobalIdClientFactory.getPrefixTcpInetSocketAddress(entry.getKey());
+            } catch (IDException e) {
+                for (String handle : entry.getValue()) {
+                    results.put(handle, GlobalEventExecutor.INSTANCE.newFailedFuture(e));
+                }
+                continue;
+            }
+            serverHandles.computeIfAbsent(address, k -> new ArrayList<>()).addAll(entry.getValue());
+        }
+
+        for (Map.Entry<InetSocketAddress, List<String>> entry : serverHandles.entrySet()) {
+            results.putAll(resolveOnServer(entry.getKey(), entry.getValue(), types, indexes));
+        }
+        return results;
+    }
+
+    private Future<HandleValue[]> resolvePrefix(String handle, String[] types, int[] indexes) {
+        try {
+            return GlobalEventExecutor.INSTANCE.newSucceededFuture(GlobalIdClientFactory.getInstance().getPrefixHandleValues(handle, types, indexes));
+        } catch (IDException e) {
+            return GlobalEventExecutor.INSTANCE.newFailedFuture(e);
+        }
+    }
+
+    private Map<String, Future<HandleValue[]>> resolveOnServer(InetSocketAddress address, List<String> handles, String[] types, int[] indexes) {
+        IDClient idClient = idClientFactory.newInstance(address);
+        Map<String, Future<HandleValue[]>> results;
+        try {
+            results = idClient.resolveHandles(handles, types, indexes);
+        } catch (IDException e) {
+            closeClient(idClient);
+            results = new HashMap<>();
+            for (String handle : handles) {
+                results.put(handle, GlobalEventExecutor.INSTANCE.newFailedFuture(e));
+            }
+            return results;
+        }
+        // 全部完成后才关闭客户端，释放连接池引用
+        AtomicInteger remaining = new AtomicInteger(results.size());
+        for (Future<HandleValue[]> future : results.values()) {
+            future.addListener(f -> {
+                if (remaining.decrementAndGet() == 0) {
+                    closeClient(idClient);
+                }
+            });
+        }
+        return results;
+    }
+
+    private static void closeClient(IDClient idClient) {
+        try {
+            idClient.close();
+        } catch (IOException e) {
+            log.warn("close client error", e);
+        }
+    }
+
+    private static final class FlightKey {
+        private final String handle;
+        private final String[] types;
+        private final int[] indexes;
+        private final int hash;
+
+        private FlightKey(String handle, String[] types, int[] indexes) {
+            this.handle = handle;
+            this.types = types;
+            this.indexes = indexes;
+            this.hash = 31 * (31 * handle.hashCode() + Arrays.hashCode(types)) + Arrays.hashCode(indexes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FlightKey)) return false;
+            FlightKey other = (FlightKey) o;
+            return handle.equals(other.handle) && Arrays.equals(types, other.types) && Arrays.equals(indexes, other.indexes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
 }
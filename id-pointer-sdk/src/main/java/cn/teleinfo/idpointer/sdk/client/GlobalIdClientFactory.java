@@ -24,6 +24,7 @@ public class GlobalIdClientFactory {
     private IDClientConfig idClientConfig;
     private ChannelPoolMapManager globalChannelPoolMapManager;
     private IDClientFactory idClientFactory;
+    private final PrefixSiteCache prefixSiteCache;
 
     private GlobalIdClientFactory(IDClientConfig idClientConfig) {
         this.idClientConfig = idClientConfig;
@@ -33,6 +34,8 @@ public class GlobalIdClientFactory {
                 .heatBeatRunning(idClientConfig.isHeatBeatRunning())
                 .minConnectionsPerServer(idClientConfig.getMinConnectionsPerServer())
                 .maxConnectionsPerServer(idClientConfig.getMaxConnectionsPerServer())
+                .evictionIntervalSeconds(idClientConfig.getPoolEvictionIntervalSeconds())
+                .adaptiveSizing(idClientConfig.isAdaptivePoolSizing())
                 .build();
 
         ChannelPoolConfig loginPoolConfig = ChannelPoolConfig.builder()
@@ -40,11 +43,14 @@ public class GlobalIdClientFactory {
                 .heatBeatRunning(idClientConfig.isLoginHeatBeatRunning())
                 .minConnectionsPerServer(idClientConfig.getLoginMinConnectionsPerServer())
                 .maxConnectionsPerServer(idClientConfig.getLoginMaxConnectionsPerServer())
+                .evictionIntervalSeconds(idClientConfig.getPoolEvictionIntervalSeconds())
+                .adaptiveSizing(idClientConfig.isAdaptivePoolSizing())
                 .build();
 
         this.globalChannelPoolMapManager = new ChannelPoolMapManager(idClientConfig.getNioThreads(), idClientConfig.getPromiseTimeout(), poolConfig, loginPoolConfig);
         this.idClientFactory = new IDClientFactory(globalChannelPoolMapManager, idClientConfig);
         this.idResolver = new DefaultIdResolver(this.idClientFactory);
+        this.prefixSiteCache = new PrefixSiteCache(prefix -> getPrefixHandleValues(prefix, new String[]{Common.STR_SITE_INFO_TYPE}, null));
     }
 
     /**
@@ -91,18 +97,28 @@ public class GlobalIdClientFactory {
         }
     }
 
+    /**
+     * 获取前缀的站点信息，结果按HS_SITE的TTL缓存
+     * @param prefix
+     * @return
+     * @throws IDException
+     */
+    public static SiteInfo[] getPrefixSiteInfos(String prefix) throws IDException {
+        return getInstance().prefixSiteCache.getSiteInfos(prefix);
+    }
+
     public static InetSocketAddress getPrefixTcpInetSocketAddress(String prefix) throws IDException {
-        HandleValue[] hvs = getInstance().getPrefixHandleValues(prefix,new String[]{Common.STR_SITE_INFO_TYPE}, null);
-        SiteInfo[] siteInfos = Util.getSitesFromValues(hvs);
-        if (siteInfos.length == 0) {
-            throw new IDException(0, "can not resolve prefix");
-        }
+        SiteInfo[] siteInfos = getPrefixSiteInfos(prefix);
         SiteInfo siteInfo = siteInfos[0];
         InetSocketAddress address = SiteUtils.getFirstInetSocketAddressByProtocol(siteInfo, "TCP");
         return address;
     }
 
 
+    public static PrefixSiteCache getPrefixSiteCache() {
+        return getInstance().prefixSiteCache;
+    }
+
     /**
      * 获取全局的IDClientFactory
      * @return
@@ -72,12 +72,12 @@ public class IDClientFactory {
      * @throws IDException
      */
     public IDClient newInstance(InetSocketAddress serverAddress, AuthenticationInfo authenticationInfo) {
-        DefaultIdClient defaultIdClient = new DefaultIdClient(serverAddress, idClientConfig.getPromiseTimeout(),idClientConfig.getMaxConnectionsPerServer(), authenticationInfo,false);
+        DefaultIdClient defaultIdClient = new DefaultIdClient(serverAddress, idClientConfig.getPromiseTimeout(), idClientConfig.getMinConnectionsPerServer(), idClientConfig.getMaxConnectionsPerServer(), idClientConfig.isAdaptivePoolSizing(), authenticationInfo,false);
         return defaultIdClient;
     }
 
     public IDClient newInstance(InetSocketAddress serverAddress, AuthenticationInfo authenticationInfo, boolean encrypt) {
-        DefaultIdClient defaultIdClient = new DefaultIdClient(serverAddress, idClientConfig.getPromiseTimeout(),idClientConfig.getMaxConnectionsPerServer(), authenticationInfo, encrypt);
+        DefaultIdClient defaultIdClient = new DefaultIdClient(serverAddress, idClientConfig.getPromiseTimeout(), idClientConfig.getMinConnectionsPerServer(), idClientConfig.getMaxConnectionsPerServer(), idClientConfig.isAdaptivePoolSizing(), authenticationInfo, encrypt);
         return defaultIdClient;
     }
 
@@ -86,7 +86,7 @@ public class IDClientFactory {
      * @return
      */
     public IDClient newInstance(InetSocketAddress serverAddress) {
-        return new DefaultIdClient(serverAddress, idClientConfig.getPromiseTimeout(),idClientConfig.getMaxConnectionsPerServer());
+        return new DefaultIdClient(serverAddress, idClientConfig.getPromiseTimeout(), idClientConfig.getMinConnectionsPerServer(), idClientConfig.getMaxConnectionsPerServer(), idClientConfig.isAdaptivePoolSizing());
     }
 
     /**
@@ -96,7 +96,7 @@ public class IDClientFactory {
      */
     public IDClient newInstance(String prefix) throws IDException {
         InetSocketAddress serverAddress = GlobalIdClientFactory.getPrefixTcpInetSocketAddress(prefix);
-        return new DefaultIdClient(serverAddress, idClientConfig.getPromiseTimeout(),idClientConfig.getMaxConnectionsPerServer());
+        return new DefaultIdClient(serverAddress, idClientConfig.getPromiseTimeout(), idClientConfig.getMinConnectionsPerServer(), idClientConfig.getMaxConnectionsPerServer(), idClientConfig.isAdaptivePoolSizing());
     }
 
     /**
@@ -107,7 +107,7 @@ public class IDClientFactory {
      */
     public IDClient newInstance(String prefix, AuthenticationInfo authenticationInfo) throws IDException {
         InetSocketAddress serverAddress = GlobalIdClientFactory.getPrefixTcpInetSocketAddress(prefix);
-        DefaultIdClient idClient = new DefaultIdClient(serverAddress, idClientConfig.getPromiseTimeout(),idClientConfig.getMaxConnectionsPerServer(), authenticationInfo,false);
+        DefaultIdClient idClient = new DefaultIdClient(serverAddress, idClientConfig.getPromiseTimeout(), idClientConfig.getMinConnectionsPerServer(), idClientConfig.getMaxConnectionsPerServer(), idClientConfig.isAdaptivePoolSizing(), authenticationInfo,false);
         return idClient;
     }
 
@@ -124,7 +124,7 @@ public class IDClientFactory {
     public IDClient newInstance(String prefix, String adminUserId, int adminUserIndex, PrivateKey privateKey) throws IDException {
         InetSocketAddress serverAddress = GlobalIdClientFactory.getPrefixTcpInetSocketAddress(prefix);
         AuthenticationInfo authenticationInfo = new PublicKeyAuthenticationInfo(Util.encodeString(adminUserId), adminUserIndex, privateKey);
-        DefaultIdClient idClient = new DefaultIdClient(serverAddress, idClientConfig.getPromiseTimeout(),idClientConfig.getMaxConnectionsPerServer(), authenticationInfo,false);
+        DefaultIdClient idClient = new DefaultIdClient(serverAddress, idClientConfig.getPromiseTimeout(), idClientConfig.getMinConnectionsPerServer(), idClientConfig.getMaxConnectionsPerServer(), idClientConfig.isAdaptivePoolSizing(), authenticationInfo,false);
         return idClient;
     }
 
@@ -2,6 +2,13 @@ package cn.teleinfo.idpointer.sdk.client;
 
 import cn.teleinfo.idpointer.sdk.core.HandleValue;
 import cn.teleinfo.idpointer.sdk.exception.IDException;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public interface IDResolver {
 
@@ -25,4 +32,34 @@ public interface IDResolver {
      */
     public HandleValue[] resolveHandle(String handle, String[] types, int[] indexes) throws IDException;
 
+    /**
+     * Resolves a batch of handles with the same type and index filter. The
+     * resolution requests are pipelined over the shared connections instead
+     * of being sent one blocking call at a time. The default implementation
+     * calls resolveHandle for each handle in turn.
+     *
+     * @param handles
+     *            The handles to resolve, duplicates are resolved once
+     * @return The result of each handle, in the order of the handles. A
+     *         failed resolution fails its future with an IDException
+     * @exception IDException Describes
+     *                an error that prevented the whole batch from being sent
+     */
+    public default Map<String, Future<HandleValue[]>> resolveHandles(Collection<String> handles, String[] types, int[] indexes) throws IDException {
+        Map<String, Future<HandleValue[]>> results = new LinkedHashMap<>();
+        for (String handle : handles) {
+            if (results.containsKey(handle)) {
+                continue;
+            }
+            Promise<HandleValue[]> promise = GlobalEventExecutor.INSTANCE.newPromise();
+            try {
+                promise.setSuccess(resolveHandle(handle, types, indexes));
+            } catch (IDException e) {
+                promise.setFailure(e);
+            }
+            results.put(handle, promise);
+        }
+        return results;
+    }
+
 }
@@ -0,0 +1,180 @@
+package cn.teleinfo.idpointer.sdk.client;
+
+import cn.teleinfo.idpointer.sdk.core.HandleValue;
+import cn.teleinfo.idpointer.sdk.core.SiteInfo;
+import cn.teleinfo.idpointer.sdk.core.Util;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 前缀到站点信息(HS_SITE)的缓存
+ * <p>
+ * 有效期取HS_SITE值中最小的TTL，并限制在[minTtlSeconds, maxTtlSeconds]之间；
+ * 同一前缀的并发查询只发起一次请求；超过有效期的refreshRatio后，访问时在后台刷新，刷新期间继续返回旧值。
+ */
+public class PrefixSiteCache {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(PrefixSiteCache.class);
+
+    public static final int DEFAULT_MIN_TTL_SECONDS = 10;
+    public static final int DEFAULT_MAX_TTL_SECONDS = HandleValue.MAX_RECOGNIZED_TTL;
+    public static final double DEFAULT_REFRESH_RATIO = 0.8;
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final ConcurrentHashMap<String, CacheEntry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<CacheEntry>> loadings = new ConcurrentHashMap<>();
+    private final SiteValuesLoader loader;
+    private final Executor refreshExecutor;
+    private final int minTtlSeconds;
+    private final int maxTtlSeconds;
+    private final double refreshRatio;
+    private final int maxEntries;
+
+    public PrefixSiteCache(SiteValuesLoader loader) {
+        this(loader, DEFAULT_MIN_TTL_SECONDS, DEFAULT_MAX_TTL_SECONDS, DEFAULT_REFRESH_RATIO, DEFAULT_MAX_ENTRIES);
+    }
+
+    public PrefixSiteCache(SiteValuesLoader loader, int minTtlSeconds, int maxTtlSeconds, double refreshRatio, int maxEntries) {
+        this(loader, minTtlSeconds, maxTtlSeconds, refreshRatio, maxEntries,
+                new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new DefaultThreadFactory("prefix-site-refresh", true)));
+    }
+
+    PrefixSiteCache(SiteValuesLoader loader, int minTtlSeconds, int maxTtlSeconds, double refreshRatio, int maxEntries, Executor refreshExecutor) {
+        this.loader = loader;
+        this.minTtlSeconds = minTtlSeconds;
+        this.maxTtlSeconds = maxTtlSeconds;
+        this.refreshRatio = refreshRatio;
+        this.maxEntries = maxEntries;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * @param prefix 前缀
+     * @return 前缀的站点信息，不会为空
+     * @throws IDException 解析失败或前缀没有HS_SITE
+     */
+    public SiteInfo[] getSiteInfos(String prefix) throws IDException {
+        long now = System.currentTimeMillis();
+        CacheEntry entry = entries.get(prefix);
+        if (entry != null && now < entry.expireAt) {
+            if (now >= entry.refreshAt && !loadings.containsKey(prefix)) {
+                refreshExecutor.execute(() -> {
+                    try {
+                        load(prefix);
+                    } catch (Exception e) {
+                        log.warn("refresh site info of prefix {} error", prefix, e);
+                    }
+                });
+            }
+            return entry.siteInfos;
+        }
+        return load(prefix).siteInfos;
+    }
+
+    public void invalidate(String prefix) {
+        entries.remove(prefix);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private CacheEntry load(String prefix) throws IDException {
+        CompletableFuture<CacheEntry> future = new CompletableFuture<>();
+        CompletableFuture<CacheEntry> loading = loadings.putIfAbsent(prefix, future);
+        if (loading != null) {
+            return await(prefix, loading);
+        }
+        try {
+            CacheEntry entry = doLoad(prefix);
+            if (entries.size() >= maxEntries) {
+                removeExpired();
+            }
+            entries.put(prefix, entry);
+            future.complete(entry);
+            return entry;
+        } catch (IDException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadings.remove(prefix, future);
+        }
+    }
+
+    private CacheEntry doLoad(String prefix) throws IDException {
+        HandleValue[] values = loader.load(prefix);
+        SiteInfo[] siteInfos = Util.getSitesFromValues(values);
+        if (siteInfos == null || siteInfos.length == 0) {
+            throw new IDException(0, "can not resolve prefix");
+        }
+
+        long now = System.currentTimeMillis();
+        int ttl = maxTtlSeconds;
+        for (HandleValue value : values) {
+            ttl = Math.min(ttl, getTtlSeconds(value, now));
+        }
+        ttl = Math.max(ttl, minTtlSeconds);
+        return new CacheEntry(siteInfos, now + ttl * 1000L, now + (long) (ttl * 1000L * refreshRatio));
+    }
+
+    private static int getTtlSeconds(HandleValue value, long now) {
+        if (value.getTTLType() == HandleValue.TTL_TYPE_ABSOLUTE) {
+            return (int) Math.max(0, value.getTTL() - now / 1000);
+        }
+        return Math.max(0, value.getTTL());
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expireAt <= now);
+        if (entries.size() >= maxEntries) {
+            entries.clear();
+        }
+    }
+
+    private static CacheEntry await(String prefix, CompletableFuture<CacheEntry> loading) throws IDException {
+        try {
+            return loading.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IDException(IDException.CLIENT_ERROR, "interrupted while resolving prefix " + prefix, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IDException) {
+                throw (IDException) cause;
+            }
+            throw new IDException(IDException.CLIENT_ERROR, "resolve prefix " + prefix + " error", cause);
+        }
+    }
+
+    /**
+     * 加载前缀的HS_SITE值
+     */
+    public interface SiteValuesLoader {
+        HandleValue[] load(String prefix) throws IDException;
+    }
+
+    private static class CacheEntry {
+        private final SiteInfo[] siteInfos;
+        private final long expireAt;
+        private final long refreshAt;
+
+        private CacheEntry(SiteInfo[] siteInfos, long expireAt, long refreshAt) {
+            this.siteInfos = siteInfos;
+            this.expireAt = expireAt;
+            this.refreshAt = refreshAt;
+        }
+    }
+}
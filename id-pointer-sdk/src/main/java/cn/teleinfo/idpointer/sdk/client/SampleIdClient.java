@@ -3,46 +3,66 @@ package cn.teleinfo.idpointer.sdk.client;
 import cn.hutool.crypto.asymmetric.SM2;
 import cn.teleinfo.idpointer.sdk.core.*;
 import cn.teleinfo.idpointer.sdk.exception.IDException;
-import cn.teleinfo.idpointer.sdk.protocol.decoder.HandleDecoder;
-import cn.teleinfo.idpointer.sdk.protocol.encoder.HandleEncoder;
+import cn.teleinfo.idpointer.sdk.metrics.GlobalIdMetrics;
 import cn.teleinfo.idpointer.sdk.session.SessionDefault;
-import cn.teleinfo.idpointer.sdk.session.SessionIdFactory;
 import cn.teleinfo.idpointer.sdk.session.SessionIdFactoryDefault;
 import cn.teleinfo.idpointer.sdk.transport.RequestIdFactoryDefault;
 import cn.teleinfo.idpointer.sdk.transport.ResponsePromise;
 import cn.teleinfo.idpointer.sdk.transport.sample.MessagePromiseManager;
-import cn.teleinfo.idpointer.sdk.transport.sample.SimpleMessageHandler;
+import cn.teleinfo.idpointer.sdk.transport.AbstractFixedChannelPool;
+import cn.teleinfo.idpointer.sdk.transport.sample.SharedChannelPoolRegistry;
 import cn.teleinfo.idpointer.sdk.transport.v3.IdTcpTransport;
 import cn.teleinfo.idpointer.sdk.transport.v3.RequestIdFactory;
 import cn.teleinfo.idpointer.sdk.util.EncryptionUtils;
 import cn.teleinfo.idpointer.sdk.util.ResponseUtils;
-import io.netty.bootstrap.Bootstrap;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.pool.AbstractChannelPoolHandler;
-import io.netty.channel.pool.ChannelPoolHandler;
-import io.netty.channel.pool.FixedChannelPool;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.EventLoopGroup;
 import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import io.netty.util.concurrent.DefaultPromise;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
 import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.InetSocketAddress;
 import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 public class SampleIdClient extends AbstractIdClient {
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(AbstractIdClient.class);
     private final RequestIdFactory requestIdGenerate;
-    private final FixedChannelPool fixedChannelPool;
+    private final Object poolKey;
+    private final AbstractFixedChannelPool fixedChannelPool;
+    private final EventLoopGroup eventLoopGroup;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private static final AttributeKey<Future<Void>> LOGIN_FUTURE_KEY = AttributeKey.valueOf("loginFuture");
+    private static final AttributeKey<Future<Void>> SESSION_SETUP_FUTURE_KEY = AttributeKey.valueOf("sessionSetupFuture");
+    /**
+     * 服务器地址到站点信息，登录时获取；限制条目数并定期过期，之后的登录重新获取
+     */
+    private static final Cache<InetSocketAddress, SiteInfo> SERVER_SITE_INFOS = Caffeine.newBuilder()
+            .maximumSize(1024)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .executor(Runnable::run)
+            .build();
+    /**
+     * 批量请求时每个channel上连续发送的请求数
+     */
+    public static final int PIPELINE_DEPTH = 128;
 
     /**
      * @param serverAddress  服务器地址
@@ -58,60 +78,36 @@ public class SampleIdClient extends AbstractIdClient {
      * @param maxConnections 最大连接数
      */
     public SampleIdClient(InetSocketAddress serverAddress, int promiseTimeout, int maxConnections) {
+        this(serverAddress, promiseTimeout, 1, maxConnections, false);
+    }
+
+    /**
+     * @param serverAddress      服务器地址
+     * @param promiseTimeout     超时时间
+     * @param minConnections     自适应模式下的最小连接数
+     * @param maxConnections     最大连接数
+     * @param adaptivePoolSizing 为true时按使用情况在minConnections与maxConnections之间调整连接池大小
+     */
+    public SampleIdClient(InetSocketAddress serverAddress, int promiseTimeout, int minConnections, int maxConnections, boolean adaptivePoolSizing) {
         super(serverAddress, promiseTimeout, null, null, false);
         this.requestIdGenerate = RequestIdFactoryDefault.getInstance();
 
-        SimpleMessageHandler messageHandler = new SimpleMessageHandler();
-
-        ChannelPoolHandler channelPoolHandler = new AbstractChannelPoolHandler() {
-            @Override
-            public void channelCreated(Channel ch) throws Exception {
-                ch.pipeline().addLast(new HandleEncoder());
-                ch.pipeline().addLast(new HandleDecoder());
-                ch.pipeline().addLast(messageHandler);
-            }
-
-        };
-
-        Bootstrap bootstrap = new Bootstrap();
-        NioEventLoopGroup group = new NioEventLoopGroup();
-        bootstrap.group(group)
-                .channel(NioSocketChannel.class)
-                .option(ChannelOption.SO_KEEPALIVE, true)
-                .option(ChannelOption.SO_REUSEADDR, true)
-                .option(ChannelOption.TCP_NODELAY, true)
-                .remoteAddress(getServerAddress())
-        ;
-
-        this.fixedChannelPool = new FixedChannelPool(bootstrap, channelPoolHandler, maxConnections);
+        this.poolKey = serverAddress;
+        this.fixedChannelPool = SharedChannelPoolRegistry.getInstance().retain(poolKey, serverAddress, minConnections, maxConnections, adaptivePoolSizing);
+        this.eventLoopGroup = SharedChannelPoolRegistry.getInstance().getEventLoopGroup();
     }
 
     public SampleIdClient(InetSocketAddress serverAddress, int promiseTimeout, int maxConnections, AuthenticationInfo authenticationInfo, boolean encrypt) {
+        this(serverAddress, promiseTimeout, 1, maxConnections, false, authenticationInfo, encrypt);
+    }
+
+    public SampleIdClient(InetSocketAddress serverAddress, int promiseTimeout, int minConnections, int maxConnections, boolean adaptivePoolSizing, AuthenticationInfo authenticationInfo, boolean encrypt) {
         super(serverAddress, promiseTimeout, authenticationInfo, new LoginInfoPoolKey(serverAddress, new ValueReference(Util.decodeString(authenticationInfo.getUserIdHandle()), authenticationInfo.getUserIdIndex())), encrypt);
         this.requestIdGenerate = RequestIdFactoryDefault.getInstance();
-        SimpleMessageHandler messageHandler = new SimpleMessageHandler();
-
-        ChannelPoolHandler channelPoolHandler = new AbstractChannelPoolHandler() {
-            @Override
-            public void channelCreated(Channel ch) throws Exception {
-                ch.pipeline().addLast(new HandleEncoder());
-                ch.pipeline().addLast(new HandleDecoder());
-                ch.pipeline().addLast(messageHandler);
-            }
-
-        };
-
-        Bootstrap bootstrap = new Bootstrap();
-        NioEventLoopGroup group = new NioEventLoopGroup();
-        bootstrap.group(group)
-                .channel(NioSocketChannel.class)
-                .option(ChannelOption.SO_KEEPALIVE, true)
-                .option(ChannelOption.SO_REUSEADDR, true)
-                .option(ChannelOption.TCP_NODELAY, true)
-                .remoteAddress(getServerAddress())
-        ;
-
-        this.fixedChannelPool = new FixedChannelPool(bootstrap, channelPoolHandler, maxConnections);
+        // 登录会话保存在channel上，不同用户不能共用连接池
+        this.poolKey = getLoginInfoPoolKey();
+        this.fixedChannelPool = SharedChannelPoolRegistry.getInstance().retain(poolKey, serverAddress, minConnections, maxConnections, adaptivePoolSizing);
+        this.eventLoopGroup = SharedChannelPoolRegistry.getInstance().getEventLoopGroup();
     }
 
     @Override
@@ -119,7 +115,7 @@ public class SampleIdClient extends AbstractIdClient {
         int nextInteger = requestIdGenerate.getNextInteger();
         request.requestId = nextInteger;
 
-        Future<Channel> channelFuture = fixedChannelPool.acquire();
+        Future<Channel> channelFuture = acquireChannel();
 
         Channel channel = null;
         try {
@@ -128,18 +124,14 @@ public class SampleIdClient extends AbstractIdClient {
             throw new IDException(IDException.CHANNEL_GET_ERROR, "Can't get channel from pool", e);
         }
 
-        AuthenticationInfo authenticationInfo = getAuthenticationInfo();
-
-
         try {
-            SessionDefault sessionDefault = handleLogin(channel, authenticationInfo);
+            SessionDefault sessionDefault = awaitSession(channel, prepareSessionAsync(channel, request));
             if (sessionDefault != null) {
                 request.sessionId = sessionDefault.getSessionId();
             }
-            handle(channel, request, authenticationInfo);
 
             Promise<AbstractIdResponse> promise = getResponsePromise(request, channel);
-            AbstractIdResponse response = promise.sync().get(getPromiseTimeout(), TimeUnit.SECONDS);
+            AbstractIdResponse response = promise.get(getPromiseTimeout(), TimeUnit.SECONDS);
 
             if (response.responseCode != AbstractMessage.RC_SUCCESS && response.responseCode != AbstractMessage.RC_AUTHENTICATION_NEEDED) {
                 throw new IDException(IDException.RC_INVALID_RESPONSE_CODE,"response code error", response);
@@ -149,7 +141,12 @@ public class SampleIdClient extends AbstractIdClient {
         } catch (InterruptedException e) {
             log.warn("Interrupted", e);
             throw new RuntimeException(e);
-        } catch (ExecutionException | TimeoutException e) {
+        } catch (TimeoutException e) {
+            GlobalIdMetrics.getInstance().recordTimeout(request.opCode);
+            // 关闭channel，避免迟到的响应留在连接上
+            channel.close();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
             throw new RuntimeException(e);
         } finally {
             if (channel != null) {
@@ -158,200 +155,458 @@ public class SampleIdClient extends AbstractIdClient {
         }
     }
 
-    private SessionDefault handleLogin(Channel channel, AuthenticationInfo authenticationInfo) throws IDException {
-        if (authenticationInfo != null) {
-
-            Attribute<SessionDefault> attr = channel.attr(IdTcpTransport.SESSION_KEY);
-            SessionDefault sessionDefault = attr.get();
-            if (sessionDefault == null) {
-                SessionIdFactory sessionIdFactory = SessionIdFactoryDefault.getInstance();
-                int newSessionId = sessionIdFactory.getNextInteger();
-                sessionDefault = new SessionDefault(newSessionId);
-                attr.set(sessionDefault);
+    /**
+     * 同步请求等待登录/会话密钥协商，最长等待promiseTimeout，超时关闭channel
+     */
+    private SessionDefault awaitSession(Channel channel, Future<SessionDefault> sessionFuture) throws IDException {
+        try {
+            return sessionFuture.get(getPromiseTimeout(), TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IDException(IDException.SERVER_CANNOT_PROCESS_SESSION, "登录失败", e);
+        } catch (TimeoutException e) {
+            channel.close();
+            throw new IDException(IDException.SERVER_CANNOT_PROCESS_SESSION, "登录超时", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IDException) {
+                throw (IDException) e.getCause();
             }
-            if (!sessionDefault.isAuthenticated()) {
-
-                // 没有登录,去登录
-                try {
+            throw new IDException(IDException.SERVER_CANNOT_PROCESS_SESSION, "登录失败", e.getCause());
+        }
+    }
 
-                    String userIdHandle = Util.decodeString(authenticationInfo.getUserIdHandle());
-                    log.info("channel {},user {}:{} ,server {}:{} login begin", channel.localAddress(), authenticationInfo.getUserIdIndex(), userIdHandle,
-                            getServerAddress().getAddress(), getServerAddress().getPort());
+    private GenericIdRequest newGetSiteInfoRequest(SessionDefault sessionDefault) {
+        GenericIdRequest getSiteInfoRequest = new GenericIdRequest(Util.encodeString("/"), AbstractMessage.OC_GET_SITE_INFO, null);
+        getSiteInfoRequest.requestId = requestIdGenerate.getNextInteger();
+        getSiteInfoRequest.sessionId = sessionDefault.getSessionId();
+        getSiteInfoRequest.encrypt = sessionDefault.isEncryptMessage();
+        return getSiteInfoRequest;
+    }
 
-                    login(channel, sessionDefault, authenticationInfo);
+    private LoginIDSystemIdRequest newLoginRequest(SessionDefault sessionDefault, AuthenticationInfo authenticationInfo) {
+        LoginIDSystemIdRequest loginIDSystemRequest = new LoginIDSystemIdRequest(authenticationInfo.getUserIdHandle(), authenticationInfo.getUserIdIndex(), authenticationInfo);
+        loginIDSystemRequest.requestId = requestIdGenerate.getNextInteger();
+        // 该位不能改
+        loginIDSystemRequest.returnRequestDigest = true;
+        loginIDSystemRequest.rdHashType = Common.HASH_CODE_SHA256;
+        loginIDSystemRequest.sessionId = sessionDefault.getSessionId();
+        loginIDSystemRequest.ignoreRestrictedValues = false;
+        loginIDSystemRequest.cacheCertify = false;
+        loginIDSystemRequest.certify = false;
+        loginIDSystemRequest.encrypt = sessionDefault.isEncryptMessage();
+        return loginIDSystemRequest;
+    }
 
-                    sessionDefault.setIdUserId(authenticationInfo.getUserValueReference());
+    private ChallengeAnswerIdRequest newChallengeAnswerRequest(SessionDefault sessionDefault, AuthenticationInfo authenticationInfo, LoginIDSystemIdRequest loginIDSystemRequest, ChallengeIdResponse challengeResponse) throws HandleException {
+        byte[] signature = authenticationInfo.authenticate(challengeResponse, loginIDSystemRequest);
 
-                    log.info("channel {},user {}:{} ,server {}:{} login success", channel.localAddress(), authenticationInfo.getUserIdIndex(), userIdHandle, getServerAddress().getAddress(), getServerAddress().getPort());
+        ChallengeAnswerIdRequest challengeAnswerRequest = new ChallengeAnswerIdRequest(authenticationInfo.getAuthType(), authenticationInfo.getUserIdHandle(), authenticationInfo.getUserIdIndex(), signature, authenticationInfo);
+        challengeAnswerRequest.requestId = requestIdGenerate.getNextInteger();
+        challengeAnswerRequest.sessionId = challengeResponse.sessionId;
+        challengeAnswerRequest.rdHashType = challengeResponse.rdHashType;
+        challengeAnswerRequest.returnRequestDigest = true;
+        challengeAnswerRequest.ignoreRestrictedValues = false;
+        challengeAnswerRequest.cacheCertify = false;
+        challengeAnswerRequest.certify = false;
 
-                    attr.set(sessionDefault);
+        challengeAnswerRequest.encrypt = sessionDefault.isEncryptMessage();
+        return challengeAnswerRequest;
+    }
 
-                } catch (Exception e) {
-                    // 登录失败
-                    throw new IDException(IDException.SERVER_CANNOT_PROCESS_SESSION, "登录失败", e);
-                }
-            }
-            return sessionDefault;
+    private SessionSetupIdRequest newSessionSetupRequest(SessionDefault sessionDefault, AuthenticationInfo authenticationInfo) {
+        SessionSetupIdRequest sessionSetupRequest = new SessionSetupIdRequest(authenticationInfo.getUserIdHandle(), authenticationInfo.getUserIdIndex());
+        sessionSetupRequest.requestId = requestIdGenerate.getNextInteger();
+        sessionSetupRequest.sessionId = sessionDefault.getSessionId();
+        sessionSetupRequest.keyExchangeMode = Common.KEY_EXCHANGE_CIPHER_HDL;
+        return sessionSetupRequest;
+    }
 
-        }
-        return null;
+    /**
+     * 按requestId登记promise后发送，同一channel上可以有多个在途请求（登录时流水线发送）
+     */
+    private Promise<AbstractIdResponse> getResponsePromise(AbstractIdRequest request, Channel channel) {
+        return getResponsePromise(request, channel, true);
     }
 
-    private void login(Channel channel, SessionDefault sessionDefault, AuthenticationInfo authenticationInfo) throws IDException, HandleException, UnsupportedEncodingException {
+    private Future<Channel> acquireChannel() {
+        // 获取等待时间由连接池记录到GlobalIdMetrics
+        return fixedChannelPool.acquire();
+    }
 
-        try {
-            // 获取SITE_INFO
-            GenericIdRequest getSiteInfoRequest = new GenericIdRequest(Util.encodeString("/"), AbstractMessage.OC_GET_SITE_INFO, null);
-            getSiteInfoRequest.requestId = requestIdGenerate.getNextInteger();
-            getSiteInfoRequest.sessionId = sessionDefault.getSessionId();
-            getSiteInfoRequest.encrypt = sessionDefault.isEncryptMessage();
-            Promise<AbstractIdResponse> getSiteInfoResponsePromise = getResponsePromise(getSiteInfoRequest, channel);
-            getSiteInfoResponsePromise.get(10, TimeUnit.SECONDS);
-
-            LoginIDSystemIdRequest loginIDSystemRequest = new LoginIDSystemIdRequest(authenticationInfo.getUserIdHandle(), authenticationInfo.getUserIdIndex(), authenticationInfo);
-            loginIDSystemRequest.requestId = requestIdGenerate.getNextInteger();
-            // 该位不能改
-            loginIDSystemRequest.returnRequestDigest = true;
-            loginIDSystemRequest.rdHashType = Common.HASH_CODE_SHA256;
-            loginIDSystemRequest.sessionId = sessionDefault.getSessionId();
-            loginIDSystemRequest.ignoreRestrictedValues = false;
-            loginIDSystemRequest.cacheCertify = false;
-            loginIDSystemRequest.certify = false;
-            loginIDSystemRequest.encrypt = sessionDefault.isEncryptMessage();
-
-            Promise<AbstractIdResponse> responsePromise = getResponsePromise(loginIDSystemRequest, channel);
-            AbstractIdResponse loginResponse = responsePromise.get(10, TimeUnit.SECONDS);
-            if (loginResponse instanceof LoginIDSystemIdResponse) {
-                throw new IDException(loginResponse.responseCode, "login user id error");
+    /**
+     * flush为false时只写入channel的发送缓冲，由调用方批量flush
+     */
+    private Promise<AbstractIdResponse> getResponsePromise(AbstractIdRequest request, Channel channel, boolean flush) {
+        Promise<AbstractIdResponse> promise = new DefaultPromise<>(channel.eventLoop());
+        long startNanos = System.nanoTime();
+        promise.addListener((Future<AbstractIdResponse> future) -> {
+            if (future.isSuccess()) {
+                GlobalIdMetrics.getInstance().recordResponse(request.opCode, future.getNow().responseCode, System.nanoTime() - startNanos);
             }
+        });
+        ConcurrentMap<Integer, Promise<? super AbstractIdResponse>> inFlightPromises = channel.attr(MessagePromiseManager.IN_FLIGHT_PROMISES_KEY).get();
+        inFlightPromises.put(request.requestId, promise);
+        (flush ? channel.writeAndFlush(request) : channel.write(request)).addListener(future -> {
+            if (!future.isSuccess()) {
+                inFlightPromises.remove(request.requestId, promise);
+                promise.tryFailure(new IDException(IDException.PROMISE_GET_ERROR, "send error", future.cause()));
+            }
+        });
+        return promise;
+    }
 
-            if (loginResponse instanceof ChallengeIdResponse) {
-                ChallengeIdResponse challengeResponse = (ChallengeIdResponse) loginResponse;
-                ResponseUtils.checkResponseCode(challengeResponse);
-
-                byte[] signature = authenticationInfo.authenticate(challengeResponse, loginIDSystemRequest);
+    private void applySessionKey(SessionDefault sessionDefault, SessionSetupIdResponse sessionSetupResponse, AuthenticationInfo authenticationInfo) throws IDException {
+        if (sessionSetupResponse.keyExchangeMode == Common.KEY_EXCHANGE_CIPHER_HDL) {
+            PublicKeyAuthenticationInfo publicKeyAuthenticationInfo = (PublicKeyAuthenticationInfo) authenticationInfo;
+            PrivateKey privateKey = publicKeyAuthenticationInfo.getPrivateKey();
 
-                ChallengeAnswerIdRequest challengeAnswerRequest = new ChallengeAnswerIdRequest(authenticationInfo.getAuthType(), authenticationInfo.getUserIdHandle(), authenticationInfo.getUserIdIndex(), signature, authenticationInfo);
-                challengeAnswerRequest.requestId = requestIdGenerate.getNextInteger();
-                challengeAnswerRequest.sessionId = challengeResponse.sessionId;
-                challengeAnswerRequest.rdHashType = challengeResponse.rdHashType;
-                challengeAnswerRequest.returnRequestDigest = true;
-                challengeAnswerRequest.ignoreRestrictedValues = false;
-                challengeAnswerRequest.cacheCertify = false;
-                challengeAnswerRequest.certify = false;
+            String alg = privateKey.getAlgorithm().trim();
 
-                challengeAnswerRequest.encrypt = sessionDefault.isEncryptMessage();
+            if (alg.equals("SM2")) {
+                byte[] sessionKeyBytes;
+                try {
 
-                Promise<AbstractIdResponse> challengeAnswerResponsePromise = getResponsePromise(challengeAnswerRequest, channel);
-                AbstractIdResponse challengeAnswerResponse = challengeAnswerResponsePromise.get(10000, TimeUnit.SECONDS);
-                ResponseUtils.checkResponseCode(challengeAnswerResponse);
+                    final SM2 sm2 = new SM2(privateKey, null);
+                    sessionKeyBytes = sm2.decrypt(sessionSetupResponse.data);
+                } catch (Exception e) {
+                    throw new IDException(IDException.CLIENT_ERROR, "decrypt sessionKey error", e);
+                }
 
-            } else {
-                throw new IDException(loginResponse.responseCode, loginResponse.toString());
-            }
+                int sessionKeyAlg = Encoder.readInt(sessionKeyBytes, 0);
+                byte[] sessionKey = Util.substring(sessionKeyBytes, Encoder.INT_SIZE);
+                sessionDefault.setSessionKey(sessionKey);
+                sessionDefault.setSessionKeyAlgorithmCode(sessionKeyAlg);
 
-        } catch (ExecutionException | InterruptedException | TimeoutException e) {
-            throw new IDException(IDException.CHANNEL_GET_ERROR, "channel_get_error on login", e);
-        }
+                sessionDefault.setEncryptMessage(true);
+                log.info("sessionKeyAlg:{},session key:{}", sessionKeyAlg, Hex.encodeHexString(sessionKey));
 
-    }
+            } else if (alg.equals("RSA")) {
+                byte[] sessionKeyBytes;
+                try {
+                    sessionKeyBytes = EncryptionUtils.decryptByKey(sessionSetupResponse.data, privateKey);
+                } catch (Exception e) {
+                    throw new IDException(IDException.CLIENT_ERROR, "decrypt sessionKey error", e);
+                }
 
+                int sessionKeyAlg = Encoder.readInt(sessionKeyBytes, 0);
+                byte[] sessionKey = Util.substring(sessionKeyBytes, Encoder.INT_SIZE);
+                sessionDefault.setSessionKey(sessionKey);
+                sessionDefault.setSessionKeyAlgorithmCode(sessionKeyAlg);
 
-    private Promise<AbstractIdResponse> getResponsePromise(AbstractIdRequest request, Channel channel) {
-        Promise<AbstractIdResponse> promise = new DefaultPromise<>(channel.eventLoop());
-        channel.attr(MessagePromiseManager.PROMISE_ATTRIBUTE_KEY).set(promise);
-        channel.writeAndFlush(request);
-        return promise;
-    }
+                sessionDefault.setEncryptMessage(true);
+                log.info("sessionKeyAlg:{},session key:{}", sessionKeyAlg, Hex.encodeHexString(sessionKey));
 
-    public void handle(Channel channel, AbstractIdRequest request, AuthenticationInfo authenticationInfo) throws IDException {
-        if (request.encrypt) {
-            Attribute<SessionDefault> attr = channel.attr(IdTcpTransport.SESSION_KEY);
-            SessionDefault sessionDefault = attr.get();
-            if (sessionDefault == null || !sessionDefault.isEncryptMessage()) {
-                throw new IDException(IDException.ENCRYPTION_ERROR, "session not setup");
             }
-            // 当没有进行加密时
-            if (!sessionDefault.isEncryptMessage()) {
-
-                // 密钥交换
-                SessionSetupIdRequest sessionSetupRequest = new SessionSetupIdRequest(authenticationInfo.getUserIdHandle(), authenticationInfo.getUserIdIndex());
-                sessionSetupRequest.requestId = requestIdGenerate.getNextInteger();
-                sessionSetupRequest.sessionId = sessionDefault.getSessionId();
-                sessionSetupRequest.keyExchangeMode = Common.KEY_EXCHANGE_CIPHER_HDL;
+        } else {
+            throw new IDException(IDException.CLIENT_ERROR, "Un support keyExchangeMode");
+        }
+    }
 
-                Promise<AbstractIdResponse> sessionSetupPromise = getResponsePromise(sessionSetupRequest, channel);
+    /**
+     * 异步请求：获取channel -> 登录/会话密钥协商 -> 发送，全程不阻塞调用线程，
+     * 响应或失败时归还channel；超时后关闭该channel，避免迟到的响应被下一个请求读到
+     */
+    @Override
+    protected ResponsePromise doRequestInternal(AbstractIdRequest request) throws IDException {
+        request.requestId = requestIdGenerate.getNextInteger();
+        ResponsePromise responsePromise = new ResponsePromise(eventLoopGroup.next(), request.requestId);
+        responsePromise.setOpCode(request.opCode);
+        if (request.handle != null) {
+            responsePromise.setHandle(Util.decodeString(request.handle));
+        }
 
-                AbstractIdResponse sessionSetupTempResponse = null;
-                try {
-                    sessionSetupTempResponse = sessionSetupPromise.get(10, TimeUnit.SECONDS);
-                } catch (InterruptedException e) {
-                    throw new IDException(IDException.PROMISE_GET_ERROR, "session setup response error", e);
-                } catch (ExecutionException e) {
-                    throw new IDException(IDException.PROMISE_GET_ERROR, "session setup response error", e);
-                } catch (TimeoutException e) {
-                    throw new IDException(IDException.PROMISE_GET_ERROR, "session setup response error", e);
+        acquireChannel().addListener((Future<Channel> channelFuture) -> {
+            if (!channelFuture.isSuccess()) {
+                responsePromise.tryFailure(new IDException(IDException.CHANNEL_GET_ERROR, "Can't get channel from pool", channelFuture.cause()));
+                return;
+            }
+            Channel channel = channelFuture.getNow();
+            ScheduledFuture<?> timeoutFuture = channel.eventLoop().schedule(() -> {
+                if (responsePromise.tryFailure(new IDException(IDException.RESPONSE_TIMEOUT, "response timeout"))) {
+                    GlobalIdMetrics.getInstance().recordTimeout(request.opCode);
+                    channel.close();
                 }
-                SessionSetupIdResponse sessionSetupResponse = (SessionSetupIdResponse) sessionSetupTempResponse;
-
+            }, getPromiseTimeout(), TimeUnit.SECONDS);
+            responsePromise.addListener(future -> {
+                timeoutFuture.cancel(false);
+                fixedChannelPool.release(channel);
+            });
 
-                if (sessionSetupResponse.keyExchangeMode == Common.KEY_EXCHANGE_CIPHER_HDL) {
-                    PublicKeyAuthenticationInfo publicKeyAuthenticationInfo = (PublicKeyAuthenticationInfo) authenticationInfo;
-                    PrivateKey privateKey = publicKeyAuthenticationInfo.getPrivateKey();
+            prepareSessionAsync(channel, request).addListener((Future<SessionDefault> sessionFuture) -> {
+                if (!sessionFuture.isSuccess()) {
+                    responsePromise.tryFailure(sessionFuture.cause());
+                    return;
+                }
+                if (responsePromise.isDone()) {
+                    return;
+                }
+                SessionDefault sessionDefault = sessionFuture.getNow();
+                if (sessionDefault != null) {
+                    request.sessionId = sessionDefault.getSessionId();
+                }
+                getResponsePromise(request, channel).addListener((Future<AbstractIdResponse> future) -> completeResponse(responsePromise, future));
+            });
+        });
+        return responsePromise;
+    }
 
-                    String alg = privateKey.getAlgorithm().trim();
+    /**
+     * 批量请求：每个channel连续写出最多PIPELINE_DEPTH个请求后flush一次，同一channel只登录一次；
+     * 多批之间由连接池分配到不同channel。该批全部完成后归还channel，超时后关闭channel
+     */
+    @Override
+    protected List<ResponsePromise> doRequestsInternal(List<AbstractIdRequest> requests) throws IDException {
+        List<ResponsePromise> responsePromises = new ArrayList<>(requests.size());
+        for (AbstractIdRequest request : requests) {
+            request.requestId = requestIdGenerate.getNextInteger();
+            ResponsePromise responsePromise = new ResponsePromise(eventLoopGroup.next(), request.requestId);
+            responsePromise.setOpCode(request.opCode);
+            if (request.handle != null) {
+                responsePromise.setHandle(Util.decodeString(request.handle));
+            }
+            responsePromises.add(responsePromise);
+        }
+        for (int from = 0; from < requests.size(); from += PIPELINE_DEPTH) {
+            int to = Math.min(from + PIPELINE_DEPTH, requests.size());
+            sendPipelined(requests.subList(from, to), responsePromises.subList(from, to));
+        }
+        return responsePromises;
+    }
 
-                    if (alg.equals("SM2")) {
-                        byte[] sessionKeyBytes;
-                        try {
+    private void sendPipelined(List<AbstractIdRequest> requests, List<ResponsePromise> responsePromises) {
+        acquireChannel().addListener((Future<Channel> channelFuture) -> {
+            if (!channelFuture.isSuccess()) {
+                failAll(responsePromises, new IDException(IDException.CHANNEL_GET_ERROR, "Can't get channel from pool", channelFuture.cause()));
+                return;
+            }
+            Channel channel = channelFuture.getNow();
+            ScheduledFuture<?> timeoutFuture = channel.eventLoop().schedule(() -> {
+                if (failAll(responsePromises, new IDException(IDException.RESPONSE_TIMEOUT, "response timeout"))) {
+                    channel.close();
+                }
+            }, getPromiseTimeout(), TimeUnit.SECONDS);
+            AtomicInteger remaining = new AtomicInteger(responsePromises.size());
+            for (ResponsePromise responsePromise : responsePromises) {
+                responsePromise.addListener(future -> {
+                    if (remaining.decrementAndGet() == 0) {
+                        timeoutFuture.cancel(false);
+                        fixedChannelPool.release(channel);
+                    }
+                });
+            }
 
-                            final SM2 sm2 = new SM2(privateKey, null);
-                            sessionKeyBytes = sm2.decrypt(sessionSetupResponse.data);
-                        } catch (Exception e) {
-                            throw new IDException(IDException.CLIENT_ERROR, "decrypt sessionKey error", e);
-                        }
+            prepareSessionAsync(channel, requests.get(0)).addListener((Future<SessionDefault> sessionFuture) -> {
+                if (!sessionFuture.isSuccess()) {
+                    failAll(responsePromises, sessionFuture.cause());
+                    return;
+                }
+                SessionDefault sessionDefault = sessionFuture.getNow();
+                for (int i = 0; i < requests.size(); i++) {
+                    AbstractIdRequest request = requests.get(i);
+                    ResponsePromise responsePromise = responsePromises.get(i);
+                    if (responsePromise.isDone()) {
+                        continue;
+                    }
+                    if (sessionDefault != null) {
+                        request.sessionId = sessionDefault.getSessionId();
+                    }
+                    getResponsePromise(request, channel, false).addListener((Future<AbstractIdResponse> future) -> completeResponse(responsePromise, future));
+                }
+                channel.flush();
+            });
+        });
+    }
 
-                        int sessionKeyAlg = Encoder.readInt(sessionKeyBytes, 0);
-                        byte[] sessionKey = Util.substring(sessionKeyBytes, Encoder.INT_SIZE);
-                        sessionDefault.setSessionKey(sessionKey);
-                        sessionDefault.setSessionKeyAlgorithmCode(sessionKeyAlg);
+    private static boolean failAll(List<ResponsePromise> responsePromises, Throwable cause) {
+        boolean failed = false;
+        for (ResponsePromise responsePromise : responsePromises) {
+            if (responsePromise.tryFailure(cause)) {
+                failed = true;
+                if (cause instanceof IDException && ((IDException) cause).getCode() == IDException.RESPONSE_TIMEOUT) {
+                    GlobalIdMetrics.getInstance().recordTimeout(responsePromise.getOpCode());
+                }
+            }
+        }
+        return failed;
+    }
 
-                        sessionDefault.setEncryptMessage(true);
-                        log.info("sessionKeyAlg:{},session key:{}", sessionKeyAlg, Hex.encodeHexString(sessionKey));
+    private static void completeResponse(ResponsePromise responsePromise, Future<AbstractIdResponse> future) {
+        if (!future.isSuccess()) {
+            responsePromise.tryFailure(future.cause());
+            return;
+        }
+        AbstractIdResponse response = future.getNow();
+        if (response.responseCode != AbstractMessage.RC_SUCCESS && response.responseCode != AbstractMessage.RC_AUTHENTICATION_NEEDED) {
+            responsePromise.tryFailure(new IDException(IDException.RC_INVALID_RESPONSE_CODE, "response code error", response));
+        } else {
+            responsePromise.trySuccess(response);
+        }
+    }
 
-                    } else if (alg.equals("RSA")) {
-                        byte[] sessionKeyBytes;
-                        try {
-                            sessionKeyBytes = EncryptionUtils.decryptByKey(sessionSetupResponse.data, privateKey);
-                        } catch (Exception e) {
-                            throw new IDException(IDException.CLIENT_ERROR, "decrypt sessionKey error", e);
-                        }
+    /**
+     * 异步完成登录与会话密钥协商，匿名请求直接返回null
+     * <p>
+     * 同一channel上只进行一次登录和一次密钥协商，其余请求等待同一个future；失败后清除，下一个请求重新发起
+     */
+    private Future<SessionDefault> prepareSessionAsync(Channel channel, AbstractIdRequest request) {
+        AuthenticationInfo authenticationInfo = getAuthenticationInfo();
+        if (authenticationInfo == null) {
+            if (request.encrypt) {
+                return channel.eventLoop().newFailedFuture(new IDException(IDException.ENCRYPTION_ERROR, "session not setup"));
+            }
+            return channel.eventLoop().newSucceededFuture(null);
+        }
 
-                        int sessionKeyAlg = Encoder.readInt(sessionKeyBytes, 0);
-                        byte[] sessionKey = Util.substring(sessionKeyBytes, Encoder.INT_SIZE);
-                        sessionDefault.setSessionKey(sessionKey);
-                        sessionDefault.setSessionKeyAlgorithmCode(sessionKeyAlg);
+        Attribute<SessionDefault> attr = channel.attr(IdTcpTransport.SESSION_KEY);
+        SessionDefault sessionDefault = attr.get();
+        if (sessionDefault == null) {
+            sessionDefault = new SessionDefault(SessionIdFactoryDefault.getInstance().getNextInteger());
+            SessionDefault existing = attr.setIfAbsent(sessionDefault);
+            if (existing != null) {
+                sessionDefault = existing;
+            }
+        }
+        SessionDefault session = sessionDefault;
+
+        Promise<SessionDefault> sessionPromise = channel.eventLoop().newPromise();
+        Future<Void> loginFuture = session.isAuthenticated() ? channel.eventLoop().newSucceededFuture(null)
+                : runOnce(channel, LOGIN_FUTURE_KEY, () -> loginAsync(channel, session, authenticationInfo));
+        loginFuture.addListener(future -> {
+            if (!future.isSuccess()) {
+                sessionPromise.tryFailure(new IDException(IDException.SERVER_CANNOT_PROCESS_SESSION, "登录失败", future.cause()));
+                return;
+            }
+            if (!request.encrypt || session.isEncryptMessage()) {
+                sessionPromise.trySuccess(session);
+                return;
+            }
+            runOnce(channel, SESSION_SETUP_FUTURE_KEY, () -> setupSessionAsync(channel, session, authenticationInfo)).addListener(setupFuture -> {
+                if (setupFuture.isSuccess()) {
+                    sessionPromise.trySuccess(session);
+                } else {
+                    sessionPromise.tryFailure(setupFuture.cause());
+                }
+            });
+        });
+        return sessionPromise;
+    }
 
-                        sessionDefault.setEncryptMessage(true);
-                        log.info("sessionKeyAlg:{},session key:{}", sessionKeyAlg, Hex.encodeHexString(sessionKey));
+    private static Future<Void> runOnce(Channel channel, AttributeKey<Future<Void>> key, Supplier<Future<Void>> action) {
+        Attribute<Future<Void>> attr = channel.attr(key);
+        Future<Void> running = attr.get();
+        if (running != null) {
+            return running;
+        }
+        Promise<Void> promise = channel.eventLoop().newPromise();
+        running = attr.setIfAbsent(promise);
+        if (running != null) {
+            return running;
+        }
+        action.get().addListener(future -> {
+            if (future.isSuccess()) {
+                promise.trySuccess(null);
+            } else {
+                attr.compareAndSet(promise, null);
+                promise.tryFailure(future.cause());
+            }
+        });
+        return promise;
+    }
 
-                    }
+    /**
+     * 登录：GET_SITE_INFO与LOGIN_ID_SYSTEM流水线发送，收到challenge后签名应答。
+     * 站点信息按服务器地址缓存，同一服务器的后续连接只需两次往返
+     */
+    private Future<Void> loginAsync(Channel channel, SessionDefault sessionDefault, AuthenticationInfo authenticationInfo) {
+        Promise<Void> loginPromise = channel.eventLoop().newPromise();
+        long loginStart = System.nanoTime();
+        loginPromise.addListener(future -> GlobalIdMetrics.getInstance().recordLogin(System.nanoTime() - loginStart, future.isSuccess()));
+        String userIdHandle = Util.decodeString(authenticationInfo.getUserIdHandle());
+        InetSocketAddress serverAddress = getServerAddress();
+        log.info("channel {},user {}:{} ,server {}:{} login begin", channel.localAddress(), authenticationInfo.getUserIdIndex(), userIdHandle,
+                serverAddress.getAddress(), serverAddress.getPort());
+
+        if (SERVER_SITE_INFOS.getIfPresent(serverAddress) == null) {
+            getResponsePromise(newGetSiteInfoRequest(sessionDefault), channel).addListener((Future<AbstractIdResponse> siteInfoFuture) -> {
+                if (!siteInfoFuture.isSuccess()) {
+                    // 站点信息只用于缓存，不影响登录，下次登录重新获取
+                    log.debug("get site info from server {}:{} failed", serverAddress.getAddress(), serverAddress.getPort(), siteInfoFuture.cause());
+                    return;
+                }
+                AbstractIdResponse siteInfoResponse = siteInfoFuture.getNow();
+                if (siteInfoResponse instanceof GetSiteInfoIdResponse && ((GetSiteInfoIdResponse) siteInfoResponse).siteInfo != null) {
+                    SERVER_SITE_INFOS.put(serverAddress, ((GetSiteInfoIdResponse) siteInfoResponse).siteInfo);
                 } else {
-                    throw new IDException(IDException.CLIENT_ERROR, "Un support keyExchangeMode");
+                    log.warn("get site info from server {}:{} error: {}", serverAddress.getAddress(), serverAddress.getPort(), siteInfoResponse);
                 }
-            }
+            });
         }
 
+        LoginIDSystemIdRequest loginIDSystemRequest = newLoginRequest(sessionDefault, authenticationInfo);
+        getResponsePromise(loginIDSystemRequest, channel).addListener((Future<AbstractIdResponse> loginFuture) -> {
+            try {
+                if (!loginFuture.isSuccess()) {
+                    throw loginFuture.cause();
+                }
+                AbstractIdResponse loginResponse = loginFuture.getNow();
+                if (!(loginResponse instanceof ChallengeIdResponse)) {
+                    throw new IDException(loginResponse.responseCode, loginResponse instanceof LoginIDSystemIdResponse ? "login user id error" : loginResponse.toString());
+                }
+                ChallengeIdResponse challengeResponse = (ChallengeIdResponse) loginResponse;
+                ResponseUtils.checkResponseCode(challengeResponse);
+
+                ChallengeAnswerIdRequest challengeAnswerRequest = newChallengeAnswerRequest(sessionDefault, authenticationInfo, loginIDSystemRequest, challengeResponse);
+                getResponsePromise(challengeAnswerRequest, channel).addListener((Future<AbstractIdResponse> answerFuture) -> {
+                    try {
+                        if (!answerFuture.isSuccess()) {
+                            throw answerFuture.cause();
+                        }
+                        ResponseUtils.checkResponseCode(answerFuture.getNow());
+                        sessionDefault.setIdUserId(authenticationInfo.getUserValueReference());
+                        log.info("channel {},user {}:{} ,server {}:{} login success", channel.localAddress(), authenticationInfo.getUserIdIndex(), userIdHandle, serverAddress.getAddress(), serverAddress.getPort());
+                        loginPromise.trySuccess(null);
+                    } catch (Throwable e) {
+                        loginPromise.tryFailure(e);
+                    }
+                });
+            } catch (Throwable e) {
+                loginPromise.tryFailure(e);
+            }
+        });
+        return loginPromise;
     }
 
+    private Future<Void> setupSessionAsync(Channel channel, SessionDefault sessionDefault, AuthenticationInfo authenticationInfo) {
+        Promise<Void> setupPromise = channel.eventLoop().newPromise();
+        getResponsePromise(newSessionSetupRequest(sessionDefault, authenticationInfo), channel).addListener((Future<AbstractIdResponse> setupFuture) -> {
+            try {
+                if (!setupFuture.isSuccess()) {
+                    throw new IDException(IDException.PROMISE_GET_ERROR, "session setup response error", setupFuture.cause());
+                }
+                AbstractIdResponse setupResponse = setupFuture.getNow();
+                if (!(setupResponse instanceof SessionSetupIdResponse)) {
+                    throw new IDException(IDException.RC_INVALID_RESPONSE_CODE, "session setup response error", setupResponse);
+                }
+                applySessionKey(sessionDefault, (SessionSetupIdResponse) setupResponse, authenticationInfo);
+                setupPromise.trySuccess(null);
+            } catch (Exception e) {
+                setupPromise.tryFailure(e);
+            }
+        });
+        return setupPromise;
+    }
 
-    @Override
-    protected ResponsePromise doRequestInternal(AbstractIdRequest request) throws IDException {
-        throw new IDException(IDException.CLIENT_ERROR, "Not implemented");
+    /**
+     * 已缓存的服务器站点信息，尚未登录过该服务器时返回null
+     */
+    public static SiteInfo getServerSiteInfo(InetSocketAddress serverAddress) {
+        return SERVER_SITE_INFOS.getIfPresent(serverAddress);
     }
 
     @Override
     public void close() throws IOException {
-        fixedChannelPool.close();
+        if (closed.compareAndSet(false, true)) {
+            SharedChannelPoolRegistry.getInstance().release(poolKey);
+        }
     }
 }
@@ -5,6 +5,10 @@ import cn.teleinfo.idpointer.sdk.exception.IDException;
 import cn.teleinfo.idpointer.sdk.transport.v3.IdPromise;
 import io.netty.util.concurrent.Promise;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 
 public abstract class AbstractIdEngine implements IdEngine{
 
@@ -13,6 +17,17 @@ public abstract class AbstractIdEngine implements IdEngine{
         return resolveHandle(handle, null, null);
     }
 
+    @Override
+    public Map<String, IdPromise<IdResponse>> resolveHandles(Collection<String> handles, String[] types, int[] indexes) throws IDException {
+        Map<String, IdPromise<IdResponse>> promises = new LinkedHashMap<>();
+        for (String handle : handles) {
+            if (!promises.containsKey(handle)) {
+                promises.put(handle, resolveHandle(handle, types, indexes));
+            }
+        }
+        return promises;
+    }
+
     @Override
     public IdPromise<IdResponse> createHandle(String handle, HandleValue[] values) throws IDException {
         return createHandle(handle, values, false);
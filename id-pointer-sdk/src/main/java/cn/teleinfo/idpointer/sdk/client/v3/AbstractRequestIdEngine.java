@@ -10,9 +10,17 @@ import cn.teleinfo.idpointer.sdk.client.ValueHelper;
 import cn.teleinfo.idpointer.sdk.core.*;
 import cn.teleinfo.idpointer.sdk.exception.IDException;
 import cn.teleinfo.idpointer.sdk.transport.v3.IdPromise;
+import cn.teleinfo.idpointer.sdk.transport.v3.IdPromiseDefault;
+import io.netty.util.concurrent.ImmediateEventExecutor;
 import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @Author: abluepoint
@@ -21,20 +29,135 @@ import java.nio.charset.StandardCharsets;
  * @Description: AbstractRequestIdEngine -
  */
 public abstract class AbstractRequestIdEngine extends AbstractIdEngine{
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(AbstractRequestIdEngine.class);
 
     private final ValueHelper valueHelper = ValueHelper.getInstance();
+    private volatile IdCache idCache;
+
+    /**
+     * 设置解析缓存，null表示不缓存
+     */
+    public void setIdCache(IdCache idCache) {
+        this.idCache = idCache;
+    }
+
+    public IdCache getIdCache() {
+        return idCache;
+    }
+
+    /**
+     * 命中缓存时直接返回已完成的promise；缓存过时时返回旧值并在后台刷新
+     */
     @Override
     public IdPromise<IdResponse> resolveHandle(String handle, String[] types, int[] indexes) throws IDException {
+        IdCache cache = this.idCache;
+        if (cache == null) {
+            return doResolveHandle(handle, types, indexes);
+        }
+
+        IdCacheEntry entry = cache.get(handle, types, indexes);
+        if (entry != null) {
+            return fromCache(cache, entry, handle, types, indexes);
+        }
+        return cacheOnSuccess(cache, handle, types, indexes, doResolveHandle(handle, types, indexes));
+    }
+
+    /**
+     * 未命中缓存的handle一起交给doRequestsAsync，由传输层在同一channel上流水线发送
+     */
+    @Override
+    public Map<String, IdPromise<IdResponse>> resolveHandles(Collection<String> handles, String[] types, int[] indexes) throws IDException {
+        IdCache cache = this.idCache;
+        Map<String, IdPromise<IdResponse>> promises = new LinkedHashMap<>();
+        List<String> missed = new ArrayList<>();
+        List<IdRequest> requests = new ArrayList<>();
+        byte[][] reqTypes = valueHelper.getTypeStringBytes(types);
+        for (String handle : handles) {
+            if (promises.containsKey(handle)) {
+                continue;
+            }
+            IdCacheEntry entry = cache == null ? null : cache.get(handle, types, indexes);
+            if (entry != null) {
+                promises.put(handle, fromCache(cache, entry, handle, types, indexes));
+            } else {
+                // 占位，保持结果与输入的顺序一致
+                promises.put(handle, null);
+                missed.add(handle);
+                requests.add(new ResolutionIdRequest(handle.getBytes(StandardCharsets.UTF_8), reqTypes, indexes, null));
+            }
+        }
+        if (requests.isEmpty()) {
+            return promises;
+        }
+
+        List<IdPromise<IdResponse>> responses = doRequestsAsync(requests);
+        for (int i = 0; i < missed.size(); i++) {
+            String handle = missed.get(i);
+            promises.put(handle, cache == null ? responses.get(i) : cacheOnSuccess(cache, handle, types, indexes, responses.get(i)));
+        }
+        return promises;
+    }
+
+    private IdPromise<IdResponse> fromCache(IdCache cache, IdCacheEntry entry, String handle, String[] types, int[] indexes) {
+        if (entry.isStale() && entry.tryRefresh()) {
+            refresh(cache, entry, handle, types, indexes);
+        }
+        IdPromise<IdResponse> promise = new IdPromiseDefault<>(ImmediateEventExecutor.INSTANCE);
+        promise.setSuccess(entry.toResponse());
+        return promise;
+    }
+
+    private IdPromise<IdResponse> cacheOnSuccess(IdCache cache, String handle, String[] types, int[] indexes, IdPromise<IdResponse> promise) {
+        promise.addListener(future -> {
+            if (future.isSuccess()) {
+                cache.put(handle, types, indexes, (AbstractIdResponse) future.getNow());
+            }
+        });
+        return promise;
+    }
+
+    private void refresh(IdCache cache, IdCacheEntry entry, String handle, String[] types, int[] indexes) {
+        IdPromise<IdResponse> promise;
+        try {
+            promise = doResolveHandle(handle, types, indexes);
+        } catch (IDException | RuntimeException e) {
+            entry.refreshFailed();
+            log.warn("refresh cached resolution of {} error", handle, e);
+            return;
+        }
+        promise.addListener(future -> {
+            promise.release();
+            if (future.isSuccess()) {
+                cache.put(handle, types, indexes, (AbstractIdResponse) future.getNow());
+            } else {
+                entry.refreshFailed();
+                log.warn("refresh cached resolution of {} error", handle, future.cause());
+            }
+        });
+    }
+
+    private IdPromise<IdResponse> doResolveHandle(String handle, String[] types, int[] indexes) throws IDException {
         byte[][] reqTypes = valueHelper.getTypeStringBytes(types);
         ResolutionIdRequest request = new ResolutionIdRequest(handle.getBytes(StandardCharsets.UTF_8), reqTypes, indexes, null);
         return doRequestAsync(request);
     }
 
+    /**
+     * 修改类请求完成后让handle的缓存失效
+     */
+    private IdPromise<IdResponse> invalidateOnComplete(String handle, IdPromise<IdResponse> promise) {
+        IdCache cache = this.idCache;
+        if (cache != null && promise != null) {
+            promise.addListener(future -> cache.invalidate(handle));
+        }
+        return promise;
+    }
+
     @Override
     public IdPromise<IdResponse> createHandle(String handle, HandleValue[] values, boolean overwrite) throws IDException {
         CreateHandleIdRequest request = new CreateHandleIdRequest(Util.encodeString(handle), values, null);
         request.overwriteWhenExists = overwrite;
-        return doRequestAsync(request);
+        return invalidateOnComplete(handle, doRequestAsync(request));
     }
 
     @Override
@@ -46,19 +169,19 @@ public abstract class AbstractRequestIdEngine extends AbstractIdEngine{
     public IdPromise<IdResponse> addHandleValues(String handle, HandleValue[] values, boolean overwrite) throws IDException {
         AddValueIdRequest request = new AddValueIdRequest(Util.encodeString(handle), values, null);
         request.overwriteWhenExists = overwrite;
-        return doRequestAsync(request);
+        return invalidateOnComplete(handle, doRequestAsync(request));
     }
 
     @Override
     public IdPromise<IdResponse> updateHandleValues(String handle, HandleValue[] values, boolean overwrite) throws IDException {
         DeleteHandleIdRequest request = new DeleteHandleIdRequest(handle.getBytes(StandardCharsets.UTF_8), null);
-        return doRequestAsync(request);
+        return invalidateOnComplete(handle, doRequestAsync(request));
     }
 
     @Override
     public IdPromise<IdResponse> deleteHandleValues(String handle, int[] indexes) throws IDException {
         RemoveValueIdRequest request = new RemoveValueIdRequest(handle.getBytes(StandardCharsets.UTF_8), indexes, null);
-        return doRequestAsync(request);
+        return invalidateOnComplete(handle, doRequestAsync(request));
     }
 
     @Override
@@ -74,4 +197,15 @@ public abstract class AbstractRequestIdEngine extends AbstractIdEngine{
     }
 
     protected abstract IdPromise<IdResponse> doRequestAsync(IdRequest request) throws IDException;
+
+    /**
+     * 批量发送，返回的promise与请求一一对应；默认逐个发送
+     */
+    protected List<IdPromise<IdResponse>> doRequestsAsync(List<IdRequest> requests) throws IDException {
+        List<IdPromise<IdResponse>> promises = new ArrayList<>(requests.size());
+        for (IdRequest request : requests) {
+            promises.add(doRequestAsync(request));
+        }
+        return promises;
+    }
 }
@@ -21,6 +21,11 @@ public class DefaultIdClientFactory implements IdClientFactory {
         return new IdTcpClient(serverAddress, promiseTimeout, maxConnections);
     }
 
+    @Override
+    public IdClient createTcpClient(InetSocketAddress serverAddress, int promiseTimeout, int maxConnections, boolean multiplexed) {
+        return new IdTcpClient(serverAddress, promiseTimeout, maxConnections, multiplexed);
+    }
+
     @Override
     public IdClient createUdpClient(InetSocketAddress serverAddress, int promiseTimeout) {
         return null;
@@ -1,4 +1,28 @@
 package cn.teleinfo.idpointer.sdk.client.v3;
 
+import cn.teleinfo.idpointer.sdk.core.AbstractIdResponse;
+
+/**
+ * 解析结果缓存，按handle与type/index过滤条件区分
+ * <p>
+ * AbstractRequestIdEngine.resolveHandle先查缓存，未命中时请求服务器并把响应交给put，
+ * 由实现决定是否缓存（成功的解析结果与“标识/值不存在”的错误响应）；标识被修改后调用invalidate。
+ */
 public interface IdCache {
+
+    /**
+     * @return 缓存项，未命中或已过期返回null；返回过时的缓存项时由调用方决定是否后台刷新
+     */
+    IdCacheEntry get(String handle, String[] types, int[] indexes);
+
+    void put(String handle, String[] types, int[] indexes, AbstractIdResponse response);
+
+    /**
+     * 清除handle在所有过滤条件下的缓存
+     */
+    void invalidate(String handle);
+
+    void clear();
+
+    long size();
 }
@@ -0,0 +1,189 @@
+package cn.teleinfo.idpointer.sdk.client.v3;
+
+import cn.teleinfo.idpointer.sdk.core.AbstractIdResponse;
+import cn.teleinfo.idpointer.sdk.core.AbstractMessage;
+import cn.teleinfo.idpointer.sdk.core.HandleException;
+import cn.teleinfo.idpointer.sdk.core.HandleValue;
+import cn.teleinfo.idpointer.sdk.core.HandleValueView;
+import cn.teleinfo.idpointer.sdk.core.ResolutionIdResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.slf4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于Caffeine的IdCache
+ * <p>
+ * 成功结果的有效期取值中最小的TTL（TTL为0的值不缓存），并限制在[minTtlSeconds, maxTtlSeconds]之间；
+ * 标识/值不存在的结果缓存negativeTtlSeconds。成功结果过期后的staleSeconds内仍会返回，同时由引擎在后台刷新。
+ */
+public class IdCacheDefault implements IdCache {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(IdCacheDefault.class);
+
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+    public static final int DEFAULT_MIN_TTL_SECONDS = 0;
+    public static final int DEFAULT_MAX_TTL_SECONDS = HandleValue.MAX_RECOGNIZED_TTL;
+    public static final int DEFAULT_NEGATIVE_TTL_SECONDS = 30;
+    public static final int DEFAULT_STALE_SECONDS = 60;
+
+    private final Cache<CacheKey, IdCacheEntry> cache;
+    private final Ticker ticker;
+    private final int minTtlSeconds;
+    private final int maxTtlSeconds;
+    private final int negativeTtlSeconds;
+    private final int staleSeconds;
+
+    public IdCacheDefault() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MIN_TTL_SECONDS, DEFAULT_MAX_TTL_SECONDS, DEFAULT_NEGATIVE_TTL_SECONDS, DEFAULT_STALE_SECONDS);
+    }
+
+    /**
+     * @param maxEntries         最大缓存项数
+     * @param minTtlSeconds      成功结果的最短有效期
+     * @param maxTtlSeconds      成功结果的最长有效期
+     * @param negativeTtlSeconds 标识/值不存在的缓存时间，0表示不缓存
+     * @param staleSeconds       过期后仍可返回旧值并后台刷新的时间，0表示不返回旧值
+     */
+    public IdCacheDefault(int maxEntries, int minTtlSeconds, int maxTtlSeconds, int negativeTtlSeconds, int staleSeconds) {
+        this(maxEntries, minTtlSeconds, maxTtlSeconds, negativeTtlSeconds, staleSeconds, Ticker.systemTicker());
+    }
+
+    IdCacheDefault(int maxEntries, int minTtlSeconds, int maxTtlSeconds, int negativeTtlSeconds, int staleSeconds, Ticker ticker) {
+        this.ticker = ticker;
+        this.minTtlSeconds = minTtlSeconds;
+        this.maxTtlSeconds = maxTtlSeconds;
+        this.negativeTtlSeconds = negativeTtlSeconds;
+        this.staleSeconds = staleSeconds;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .ticker(ticker)
+                .expireAfter(new EntryExpiry())
+                .build();
+    }
+
+    @Override
+    public IdCacheEntry get(String handle, String[] types, int[] indexes) {
+        return cache.getIfPresent(new CacheKey(handle, types, indexes));
+    }
+
+    @Override
+    public void put(String handle, String[] types, int[] indexes, AbstractIdResponse response) {
+        IdCacheEntry entry;
+        try {
+            entry = newEntry(response);
+        } catch (HandleException e) {
+            log.warn("can not cache resolution of {}", handle, e);
+            return;
+        }
+        CacheKey key = new CacheKey(handle, types, indexes);
+        if (entry == null) {
+            // 不可缓存的结果同时让旧值失效
+            cache.invalidate(key);
+        } else {
+            cache.put(key, entry);
+        }
+    }
+
+    @Override
+    public void invalidate(String handle) {
+        // 需要遍历所有缓存项，标识修改远少于解析
+        cache.asMap().keySet().removeIf(key -> key.handle.equals(handle));
+    }
+
+    @Override
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    private IdCacheEntry newEntry(AbstractIdResponse response) throws HandleException {
+        long now = ticker.read();
+        if (response.responseCode == AbstractMessage.RC_HANDLE_NOT_FOUND || response.responseCode == AbstractMessage.RC_VALUES_NOT_FOUND) {
+            if (negativeTtlSeconds <= 0) {
+                return null;
+            }
+            long expireAt = now + TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+            return new IdCacheEntry(null, null, response.responseCode, expireAt, expireAt, ticker);
+        }
+        if (response.responseCode != AbstractMessage.RC_SUCCESS || !(response instanceof ResolutionIdResponse)) {
+            return null;
+        }
+
+        ResolutionIdResponse resolutionResponse = (ResolutionIdResponse) response;
+        long nowSeconds = System.currentTimeMillis() / 1000;
+        int ttl = maxTtlSeconds;
+        for (byte[] value : resolutionResponse.values) {
+            // 只读取TTL，不解码整个值
+            HandleValueView view = new HandleValueView(ByteBuffer.wrap(value), 0);
+            int valueTtl = view.getTTLType() == HandleValue.TTL_TYPE_ABSOLUTE ? (int) Math.max(0, view.getTTL() - nowSeconds) : Math.max(0, view.getTTL());
+            if (valueTtl == 0) {
+                return null;
+            }
+            ttl = Math.min(ttl, valueTtl);
+        }
+        ttl = Math.max(ttl, minTtlSeconds);
+        long staleAt = now + TimeUnit.SECONDS.toNanos(ttl);
+        return new IdCacheEntry(resolutionResponse.handle, resolutionResponse.values, AbstractMessage.RC_SUCCESS, staleAt, staleAt + TimeUnit.SECONDS.toNanos(staleSeconds), ticker);
+    }
+
+    private static class EntryExpiry implements Expiry<CacheKey, IdCacheEntry> {
+        @Override
+        public long expireAfterCreate(CacheKey key, IdCacheEntry value, long currentTime) {
+            return Math.max(0, value.getExpireAt() - currentTime);
+        }
+
+        @Override
+        public long expireAfterUpdate(CacheKey key, IdCacheEntry value, long currentTime, long currentDuration) {
+            return Math.max(0, value.getExpireAt() - currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(CacheKey key, IdCacheEntry value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    /**
+     * null与空数组都表示不过滤
+     */
+    private static class CacheKey {
+        private final String handle;
+        private final String[] types;
+        private final int[] indexes;
+        private final int hash;
+
+        private CacheKey(String handle, String[] types, int[] indexes) {
+            this.handle = handle;
+            this.types = types == null || types.length == 0 ? null : types.clone();
+            this.indexes = indexes == null || indexes.length == 0 ? null : indexes.clone();
+            this.hash = 31 * (31 * handle.hashCode() + Arrays.hashCode(this.types)) + Arrays.hashCode(this.indexes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey that = (CacheKey) o;
+            return hash == that.hash && handle.equals(that.handle) && Arrays.equals(types, that.types) && Arrays.equals(indexes, that.indexes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return handle + " types=" + Arrays.toString(types) + " indexes=" + Arrays.toString(indexes);
+        }
+    }
+}
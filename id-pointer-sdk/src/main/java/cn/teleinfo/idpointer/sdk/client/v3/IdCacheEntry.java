@@ -0,0 +1,74 @@
+package cn.teleinfo.idpointer.sdk.client.v3;
+
+import cn.teleinfo.idpointer.sdk.core.AbstractIdResponse;
+import cn.teleinfo.idpointer.sdk.core.AbstractMessage;
+import cn.teleinfo.idpointer.sdk.core.ErrorIdResponse;
+import cn.teleinfo.idpointer.sdk.core.ResolutionIdResponse;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 缓存的解析结果。成功结果保存编码后的值，命中时不需要重新编码；否定结果只保存响应码
+ * <p>
+ * 时间取自缓存的ticker（纳秒），staleAt之后仍可返回，但应在后台刷新，expireAt之后不再返回
+ */
+public class IdCacheEntry {
+
+    private final byte[] handle;
+    private final byte[][] values;
+    private final int responseCode;
+    private final long staleAt;
+    private final long expireAt;
+    private final Ticker ticker;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    public IdCacheEntry(byte[] handle, byte[][] values, int responseCode, long staleAt, long expireAt, Ticker ticker) {
+        this.handle = handle;
+        this.values = values;
+        this.responseCode = responseCode;
+        this.staleAt = staleAt;
+        this.expireAt = expireAt;
+        this.ticker = ticker;
+    }
+
+    /**
+     * 标识或值不存在
+     */
+    public boolean isNegative() {
+        return responseCode != AbstractMessage.RC_SUCCESS;
+    }
+
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    public boolean isStale() {
+        return ticker.read() - staleAt >= 0;
+    }
+
+    long getExpireAt() {
+        return expireAt;
+    }
+
+    /**
+     * 同一缓存项只由一个调用方刷新，返回true时调用方负责刷新，失败后调用refreshFailed
+     */
+    public boolean tryRefresh() {
+        return refreshing.compareAndSet(false, true);
+    }
+
+    public void refreshFailed() {
+        refreshing.set(false);
+    }
+
+    /**
+     * 每次返回新的响应对象，编码后的值是共享的，不能修改
+     */
+    public AbstractIdResponse toResponse() {
+        if (isNegative()) {
+            return new ErrorIdResponse(AbstractMessage.OC_RESOLUTION, responseCode, null);
+        }
+        return new ResolutionIdResponse(handle, values);
+    }
+}
@@ -6,6 +6,13 @@ public interface IdClientFactory {
 
     IdClient createTcpClient(InetSocketAddress serverAddress, int promiseTimeout, int maxConnections);
 
+    /**
+     * @param multiplexed 为true时同一连接上可以有多个在途请求；默认实现忽略该参数
+     */
+    default IdClient createTcpClient(InetSocketAddress serverAddress, int promiseTimeout, int maxConnections, boolean multiplexed) {
+        return createTcpClient(serverAddress, promiseTimeout, maxConnections);
+    }
+
     IdClient createUdpClient(InetSocketAddress serverAddress, int promiseTimeout);
 
 }
@@ -5,6 +5,10 @@ import cn.teleinfo.idpointer.sdk.exception.IDException;
 import cn.teleinfo.idpointer.sdk.transport.v3.IdPromise;
 import io.netty.util.concurrent.Promise;
 
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * The interface for the ID Engine. connect to one ID server. operations on handles.
  *
@@ -26,6 +30,25 @@ public interface IdEngine {
      */
     public IdPromise<IdResponse> resolveHandle(String handle, String[] types, int[] indexes) throws IDException;
 
+    /**
+     * Resolve a batch of handles with the same type/index filter, pipelining the requests.
+     * The default implementation sends one resolveHandle request per handle.
+     * @param handles The handles to resolve, duplicates are resolved once.
+     * @param types  The types to resolve.
+     * @param indexes The indexes to resolve.
+     * @return The response of each handle, in the order of the handles.
+     * @throws IDException If an error occurs.
+     */
+    default Map<String, IdPromise<IdResponse>> resolveHandles(Collection<String> handles, String[] types, int[] indexes) throws IDException {
+        Map<String, IdPromise<IdResponse>> promises = new LinkedHashMap<>();
+        for (String handle : handles) {
+            if (!promises.containsKey(handle)) {
+                promises.put(handle, resolveHandle(handle, types, indexes));
+            }
+        }
+        return promises;
+    }
+
     /**
      * Create a handle.
      * @param handle
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2024 teleinfo caict
+ * All rights reserved.
+ * <p>
+ * 版权所有（C）2024 teleinfo caict
+ */
+package cn.teleinfo.idpointer.sdk.client.v3;
+
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.transport.RequestIdFactoryDefault;
+import cn.teleinfo.idpointer.sdk.transport.v3.IdHttpTransport;
+import cn.teleinfo.idpointer.sdk.transport.v3.IdHttpTransportImpl;
+import cn.teleinfo.idpointer.sdk.transport.v3.IdPromise;
+import cn.teleinfo.idpointer.sdk.transport.v3.RequestIdFactory;
+
+import javax.net.ssl.SSLContext;
+import java.net.InetSocketAddress;
+
+/**
+ * @Description: IdHttpEngine - 通过HTTP(S)长连接发送请求，用于只暴露HTTP接口的站点；服务器支持时使用HTTP/2多路复用
+ */
+public class IdHttpEngine extends AbstractRequestIdEngine {
+
+    public final IdHttpTransport transport;
+    private final RequestIdFactory requestIdFactory;
+
+    public IdHttpEngine(InetSocketAddress serverAddress, int maxConnections) {
+        this(serverAddress, maxConnections, null, null, null, null);
+    }
+
+    public IdHttpEngine(InetSocketAddress serverAddress, int maxConnections, SSLContext sslContext, String domain, String path, IdCache idCache) {
+        this(serverAddress, maxConnections, sslContext, domain, path, false, idCache);
+    }
+
+    /**
+     * @param http2PriorKnowledge 为true时HTTP连接直接使用HTTP/2（h2c），HTTPS总是通过ALPN协商
+     */
+    public IdHttpEngine(InetSocketAddress serverAddress, int maxConnections, SSLContext sslContext, String domain, String path, boolean http2PriorKnowledge, IdCache idCache) {
+        this.transport = new IdHttpTransportImpl(serverAddress, maxConnections, sslContext, domain, path, http2PriorKnowledge);
+        this.requestIdFactory = new RequestIdFactoryDefault();
+        setIdCache(idCache);
+    }
+
+    @Override
+    protected IdPromise<IdResponse> doRequestAsync(IdRequest request) throws IDException {
+        request.setRequestId(requestIdFactory.getNextInteger());
+        return transport.send(request);
+    }
+}
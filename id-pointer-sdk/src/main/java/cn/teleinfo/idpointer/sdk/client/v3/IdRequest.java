@@ -2,4 +2,6 @@ package cn.teleinfo.idpointer.sdk.client.v3;
 
 public interface IdRequest {
     void setRequestId(int nextInteger);
+
+    int getRequestId();
 }
@@ -27,19 +27,32 @@ public class IdTcpClient extends AbstractIdClient {
     private final int promiseTimeout;
 
     public IdTcpClient(InetSocketAddress serverAddress, int promiseTimeout, int maxConnections) {
-        super(new IdTcpEngine(serverAddress, maxConnections));
+        this(serverAddress, promiseTimeout, maxConnections, false);
+    }
+
+    public IdTcpClient(InetSocketAddress serverAddress, int promiseTimeout, int maxConnections, boolean multiplexed) {
+        this(serverAddress, promiseTimeout, maxConnections, multiplexed, null);
+    }
+
+    /**
+     * @param idCache 解析缓存，null表示不缓存
+     */
+    public IdTcpClient(InetSocketAddress serverAddress, int promiseTimeout, int maxConnections, boolean multiplexed, IdCache idCache) {
+        super(new IdTcpEngine(serverAddress, maxConnections, multiplexed, idCache, promiseTimeout));
         this.promiseTimeout = promiseTimeout;
     }
 
     @Override
     protected IdResponse doReceiveResponse(IdPromise<IdResponse> promise) throws IDException {
         try {
-            IdResponse response = promise.sync().get(promiseTimeout, TimeUnit.SECONDS);
+            IdResponse response = promise.get(promiseTimeout, TimeUnit.SECONDS);
             ResponseUtils.checkResponseCode(response);
             return response;
         } catch (ExecutionException | InterruptedException e) {
             throw new IDException(IDException.PROMISE_GET_ERROR, "Create handle error", e);
         } catch (TimeoutException e) {
+            // 取消后多路复用的在途promise会被移除
+            promise.cancel(false);
             throw new IDRuntimeException(IDException.RESPONSE_TIMEOUT, "Create handle timeout", e);
         } finally {
             promise.release();
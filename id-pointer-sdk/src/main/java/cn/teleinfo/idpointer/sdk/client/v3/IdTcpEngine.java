@@ -19,6 +19,7 @@ import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.Promise;
 
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -35,8 +36,24 @@ public class IdTcpEngine extends AbstractRequestIdEngine{
     private final RequestIdFactory requestIdFactory;
 
     public IdTcpEngine(InetSocketAddress serverAddress, int maxConnections) {
-        this.transport = new IdTcpTransportImpl(serverAddress, maxConnections);
+        this(serverAddress, maxConnections, false);
+    }
+
+    public IdTcpEngine(InetSocketAddress serverAddress, int maxConnections, boolean multiplexed) {
+        this(serverAddress, maxConnections, multiplexed, null);
+    }
+
+    public IdTcpEngine(InetSocketAddress serverAddress, int maxConnections, boolean multiplexed, IdCache idCache) {
+        this(serverAddress, maxConnections, multiplexed, idCache, IdTcpTransportImpl.DEFAULT_BATCH_TIMEOUT);
+    }
+
+    /**
+     * @param batchTimeout 批量请求等待响应的最长时间，单位秒
+     */
+    public IdTcpEngine(InetSocketAddress serverAddress, int maxConnections, boolean multiplexed, IdCache idCache, int batchTimeout) {
+        this.transport = new IdTcpTransportImpl(serverAddress, maxConnections, multiplexed, batchTimeout);
         this.requestIdFactory = new RequestIdFactoryDefault();
+        setIdCache(idCache);
     }
 
     @Override
@@ -47,4 +64,12 @@ public class IdTcpEngine extends AbstractRequestIdEngine{
 
         return transport.send(request);
     }
+
+    @Override
+    protected List<IdPromise<IdResponse>> doRequestsAsync(List<IdRequest> requests) throws IDException {
+        for (IdRequest request : requests) {
+            request.setRequestId(requestIdFactory.getNextInteger());
+        }
+        return transport.send(requests);
+    }
 }
@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2024 teleinfo caict
+ * All rights reserved.
+ * <p>
+ * 版权所有（C）2024 teleinfo caict
+ */
+package cn.teleinfo.idpointer.sdk.client.v3;
+
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.transport.RequestIdFactoryDefault;
+import cn.teleinfo.idpointer.sdk.transport.v3.IdPromise;
+import cn.teleinfo.idpointer.sdk.transport.v3.IdTcpTransport;
+import cn.teleinfo.idpointer.sdk.transport.v3.IdUdpTransport;
+import cn.teleinfo.idpointer.sdk.transport.v3.IdUdpTransportImpl;
+import cn.teleinfo.idpointer.sdk.transport.v3.RequestIdFactory;
+
+import java.net.InetSocketAddress;
+
+/**
+ * @Description: IdUdpEngine - 通过UDP发送公开解析请求，需要认证的操作须配置tcpFallback
+ */
+public class IdUdpEngine extends AbstractRequestIdEngine {
+
+    public final IdUdpTransport transport;
+    private final RequestIdFactory requestIdFactory;
+
+    public IdUdpEngine(InetSocketAddress serverAddress) {
+        this(serverAddress, IdUdpTransportImpl.DEFAULT_RETRY_SCHEME, null, null);
+    }
+
+    public IdUdpEngine(InetSocketAddress serverAddress, int[] retryScheme, IdTcpTransport tcpFallback, IdCache idCache) {
+        this.transport = new IdUdpTransportImpl(serverAddress, retryScheme, tcpFallback);
+        this.requestIdFactory = new RequestIdFactoryDefault();
+        setIdCache(idCache);
+    }
+
+    @Override
+    protected IdPromise<IdResponse> doRequestAsync(IdRequest request) throws IDException {
+        request.setRequestId(requestIdFactory.getNextInteger());
+        return transport.send(request);
+    }
+}
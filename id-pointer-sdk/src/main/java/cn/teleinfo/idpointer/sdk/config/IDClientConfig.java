@@ -61,13 +61,21 @@ public class IDClientConfig {
      * 登录心跳执行,默认false
      */
     private boolean loginHeatBeatRunning;
+    /**
+     * 空闲连接与连接池的清理周期,默认60s
+     */
+    private int poolEvictionIntervalSeconds;
+    /**
+     * 按使用情况在最小与最大连接数之间自动调整每个连接池的大小,默认false
+     */
+    private boolean adaptivePoolSizing;
 
 
     private String trustRootHandle;
 
     private String trustRootPubKeyPem;
 
-    IDClientConfig(String recursionServerIp, int recursionServerPort, int nioThreads, int promiseTimeout, int minConnectionsPerServer, int maxConnectionsPerServer, int idleTimeSeconds, boolean heatBeatRunning, int loginMinConnectionsPerServer, int loginMaxConnectionsPerServer, int loginIdleTimeSeconds, boolean loginHeatBeatRunning, String trustRootHandle, String trustRootPubKeyPem) {
+    IDClientConfig(String recursionServerIp, int recursionServerPort, int nioThreads, int promiseTimeout, int minConnectionsPerServer, int maxConnectionsPerServer, int idleTimeSeconds, boolean heatBeatRunning, int loginMinConnectionsPerServer, int loginMaxConnectionsPerServer, int loginIdleTimeSeconds, boolean loginHeatBeatRunning, int poolEvictionIntervalSeconds, boolean adaptivePoolSizing, String trustRootHandle, String trustRootPubKeyPem) {
         this.recursionServerIp = recursionServerIp;
         this.recursionServerPort = recursionServerPort;
         this.nioThreads = nioThreads;
@@ -80,6 +88,8 @@ public class IDClientConfig {
         this.loginMaxConnectionsPerServer = loginMaxConnectionsPerServer;
         this.loginIdleTimeSeconds = loginIdleTimeSeconds;
         this.loginHeatBeatRunning = loginHeatBeatRunning;
+        this.poolEvictionIntervalSeconds = poolEvictionIntervalSeconds;
+        this.adaptivePoolSizing = adaptivePoolSizing;
         this.trustRootHandle = trustRootHandle;
         this.trustRootPubKeyPem = trustRootPubKeyPem;
     }
@@ -133,6 +143,14 @@ public class IDClientConfig {
         return this.loginHeatBeatRunning;
     }
 
+    public int getPoolEvictionIntervalSeconds() {
+        return this.poolEvictionIntervalSeconds;
+    }
+
+    public boolean isAdaptivePoolSizing() {
+        return this.adaptivePoolSizing;
+    }
+
     public int getPromiseTimeout() {
         return this.promiseTimeout;
     }
@@ -157,6 +175,8 @@ public class IDClientConfig {
         private int loginMaxConnectionsPerServer;
         private int loginIdleTimeSeconds;
         private boolean loginHeatBeatRunning;
+        private int poolEvictionIntervalSeconds;
+        private boolean adaptivePoolSizing;
         private int promiseTimeout;
         private String trustRootHandle;
         private String trustRootPubKeyPem;
@@ -172,6 +192,8 @@ public class IDClientConfig {
             this.loginMinConnectionsPerServer = 1;
             this.loginMaxConnectionsPerServer = 10;
             this.loginHeatBeatRunning = false;
+            this.poolEvictionIntervalSeconds = 60;
+            this.adaptivePoolSizing = false;
             prdEnv();
         }
 
@@ -262,8 +284,18 @@ public class IDClientConfig {
             return this;
         }
 
+        public IDClientConfigBuilder poolEvictionIntervalSeconds(int poolEvictionIntervalSeconds) {
+            this.poolEvictionIntervalSeconds = poolEvictionIntervalSeconds;
+            return this;
+        }
+
+        public IDClientConfigBuilder adaptivePoolSizing(boolean adaptivePoolSizing) {
+            this.adaptivePoolSizing = adaptivePoolSizing;
+            return this;
+        }
+
         public IDClientConfig build() {
-            return new IDClientConfig(recursionServerIp, recursionServerPort, nioThreads, promiseTimeout, minConnectionsPerServer, maxConnectionsPerServer, idleTimeSeconds, heatBeatRunning, loginMinConnectionsPerServer, loginMaxConnectionsPerServer, loginIdleTimeSeconds, loginHeatBeatRunning, trustRootHandle, trustRootPubKeyPem);
+            return new IDClientConfig(recursionServerIp, recursionServerPort, nioThreads, promiseTimeout, minConnectionsPerServer, maxConnectionsPerServer, idleTimeSeconds, heatBeatRunning, loginMinConnectionsPerServer, loginMaxConnectionsPerServer, loginIdleTimeSeconds, loginHeatBeatRunning, poolEvictionIntervalSeconds, adaptivePoolSizing, trustRootHandle, trustRootPubKeyPem);
         }
 
         @Override
@@ -280,6 +312,8 @@ public class IDClientConfig {
                     ", loginMaxConnectionsPerServer=" + loginMaxConnectionsPerServer +
                     ", loginIdleTimeSeconds=" + loginIdleTimeSeconds +
                     ", loginHeatBeatRunning=" + loginHeatBeatRunning +
+                    ", poolEvictionIntervalSeconds=" + poolEvictionIntervalSeconds +
+                    ", adaptivePoolSizing=" + adaptivePoolSizing +
                     ", promiseTimeout=" + promiseTimeout +
                     ", trustRootHandle='" + trustRootHandle + '\'' +
                     ", trustRootPubKeyPem='" + trustRootPubKeyPem + '\'' +
@@ -151,4 +151,9 @@ public abstract class AbstractIdRequest extends AbstractMessage implements IdReq
     public void setRequestId(int nextInteger) {
         this.requestId = nextInteger;
     }
+
+    @Override
+    public int getRequestId() {
+        return requestId;
+    }
 }
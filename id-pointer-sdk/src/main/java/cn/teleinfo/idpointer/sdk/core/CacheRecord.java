@@ -0,0 +1,389 @@
+/**********************************************************************\
+ © COPYRIGHT 2019 Corporation for National Research Initiatives (CNRI);
+                        All rights reserved.
+
+        The HANDLE.NET software is made available subject to the
+      Handle.Net Public License Agreement, which may be obtained at
+          http://hdl.handle.net/20.1000/112 or hdl:20.1000/112
+\**********************************************************************/
+
+package cn.teleinfo.idpointer.sdk.core;
+
+/**
+ * The values cached for one handle together with the type and index queries
+ * they answer, as merged by Cache.setCachedValues.  Shared by the Cache
+ * implementations so they only differ in how a record is stored.
+ */
+final class CacheRecord {
+    final byte[][] types;
+    final int[] indexes;
+    final HandleValue[] values;
+    final int[] valueDates;
+
+    CacheRecord(byte[][] types, int[] indexes, HandleValue[] values, int[] valueDates) {
+        this.types = types;
+        this.indexes = indexes;
+        this.values = values;
+        this.valueDates = valueDates;
+    }
+
+    /** Merges the result of a query performed with the given type-list and
+     *  index-list into the previously cached record (which may be null).
+     *  Values are stamped with their retrieval time.
+     */
+    static CacheRecord merge(CacheRecord old, HandleValue newValues[], byte newTypeList[][], int newIndexList[], int now) {
+        if (newValues != null && (newTypeList != null && newTypeList.length > 0)) {
+            // Caching a restricted query where there are types.
+            // Make sure that all the indices we actually got are in the index list.
+            // That way we can find them later by index.
+            if (newIndexList == null) newIndexList = new int[0];
+            int[] expIndexList = new int[newIndexList.length + newValues.length];
+            System.arraycopy(newIndexList, 0, expIndexList, 0, newIndexList.length);
+            for (int i = 0; i < newValues.length; i++) {
+                expIndexList[newIndexList.length + i] = newValues[i].index;
+            }
+            java.util.Arrays.sort(expIndexList);
+            int uniq = 0;
+            for (int i = 0; i < expIndexList.length; i++) {
+                if (i == 0 || expIndexList[i] != expIndexList[i - 1]) {
+                    uniq++;
+                }
+            }
+            newIndexList = new int[uniq];
+            int count = 0;
+            for (int i = 0; count < uniq; i++) {
+                if (i == 0 || expIndexList[i] != expIndexList[i - 1]) {
+                    newIndexList[count++] = expIndexList[i];
+                }
+            }
+        }
+
+        byte types[][] = null;
+        int indexes[] = null;
+        int valueDates[] = null;
+        HandleValue values[] = null;
+
+        if (old != null) {
+            types = old.types;
+            indexes = old.indexes;
+            valueDates = old.valueDates;
+            // replaced values are set to null below
+            values = old.values.clone();
+        }
+
+        // at this point the values that will go into the cache are the union of the
+        // values in 'values' and 'newValues'
+
+        if ((newTypeList == null || newTypeList.length <= 0) && (newIndexList == null || newIndexList.length <= 0)) {
+            // replace all old values with new values...
+            types = null;
+            indexes = null;
+            values = null;
+        } else if ((types != null && types.length <= 0) && (indexes != null && indexes.length <= 0)) {
+            // there was already a query for all values, we'll only update the new
+            // values that were just retrieved
+            for (int i = 0; values != null && newValues != null && i < newValues.length; i++) {
+                int thisIndex = newValues[i].index;
+                for (int j = 0; j < values.length; j++) {
+                    if (values[j] != null && values[j].index == thisIndex) {
+                        values[j] = null;
+                    }
+                }
+            }
+            // remove currently cached value for which the new resolution requested its type
+            if (values != null && newTypeList != null && newTypeList.length > 0) {
+                for (int j = 0; j < values.length; j++) {
+                    if (values[j] != null && Util.isParentTypeInArray(newTypeList, values[j].type)) {
+                        values[j] = null;
+                    }
+                }
+            }
+            newTypeList = null;
+            newIndexList = null;
+
+        } else {
+            // There were already some values in the cache, and we got some more.
+            // merge the new fresh values with the old ones.
+
+            // remove currently cached value for which the new resolution requested its type
+            if (values != null && newTypeList != null && newTypeList.length > 0) {
+                for (int j = 0; j < values.length; j++) {
+                    if (values[j] != null && Util.isParentTypeInArray(newTypeList, values[j].type)) {
+                        values[j] = null;
+                    }
+                }
+            }
+
+            if (newTypeList != null && newTypeList.length > 0) {
+                byte typeListCopy[][] = new byte[newTypeList.length][];
+                System.arraycopy(newTypeList, 0, typeListCopy, 0, newTypeList.length);
+                newTypeList = typeListCopy;
+
+                // remove duplicates in intersections of the old type query list and the new one
+                for (int i = 0; types != null && i < types.length; i++) {
+                    if (types[i] == null) continue;
+                    for (int j = 0; newTypeList != null && j < newTypeList.length; j++) {
+                        if (newTypeList[j] != null && Util.equalsCI(types[i], newTypeList[j])) {
+                            newTypeList[j] = null;
+                        }
+                    }
+                }
+            }
+
+            if (newIndexList != null && newIndexList.length > 0) {
+                int indexListCopy[] = new int[newIndexList.length];
+                System.arraycopy(newIndexList, 0, indexListCopy, 0, newIndexList.length);
+                newIndexList = indexListCopy;
+
+                // remove duplicates in intersections of the old index query list and the new one
+                for (int i = 0; indexes != null && i < indexes.length; i++) {
+                    if (indexes[i] < 0) continue;
+                    for (int j = 0; newIndexList != null && j < newIndexList.length; j++) {
+                        if (newIndexList[j] >= 0 && indexes[i] == newIndexList[j]) {
+                            newIndexList[j] = -1;
+                        }
+                    }
+                }
+            }
+
+            // remove values for which we have newer values from the old list of values
+            for (int i = 0; values != null && newValues != null && i < newValues.length; i++) {
+                int thisIndex = newValues[i].index;
+                for (int j = 0; j < values.length; j++) {
+                    if (values[j] != null && values[j].index == thisIndex) {
+                        // get rid of old values
+                        values[j] = null;
+                    }
+                }
+            }
+        }
+
+        // copy the new values, index-queries, and type-queries into a new record
+        int typeCount = 0;
+        int indexCount = 0;
+        int valueCount = 0;
+        for (int i = 0; types != null && i < types.length; i++) {
+            if (types[i] != null) typeCount++;
+        }
+        for (int i = 0; newTypeList != null && i < newTypeList.length; i++) {
+            if (newTypeList[i] != null) typeCount++;
+        }
+        for (int i = 0; indexes != null && i < indexes.length; i++) {
+            if (indexes[i] >= 0) indexCount++;
+        }
+        for (int i = 0; newIndexList != null && i < newIndexList.length; i++) {
+            if (newIndexList[i] >= 0) indexCount++;
+        }
+        for (int i = 0; values != null && i < values.length; i++) {
+            if (values[i] != null) valueCount++;
+        }
+        for (int i = 0; newValues != null && i < newValues.length; i++) {
+            if (newValues[i] != null) valueCount++;
+        }
+
+        byte entryTypes[][] = new byte[typeCount][];
+        typeCount = 0;
+        for (int i = 0; types != null && i < types.length; i++) {
+            if (types[i] != null) entryTypes[typeCount++] = types[i];
+        }
+        for (int i = 0; newTypeList != null && i < newTypeList.length; i++) {
+            if (newTypeList[i] != null) entryTypes[typeCount++] = newTypeList[i];
+        }
+
+        int entryIndexes[] = new int[indexCount];
+        indexCount = 0;
+        for (int i = 0; indexes != null && i < indexes.length; i++) {
+            if (indexes[i] >= 0) entryIndexes[indexCount++] = indexes[i];
+        }
+        for (int i = 0; newIndexList != null && i < newIndexList.length; i++) {
+            if (newIndexList[i] >= 0) entryIndexes[indexCount++] = newIndexList[i];
+        }
+
+        HandleValue entryValues[] = new HandleValue[valueCount];
+        int entryDates[] = new int[valueCount];
+        valueCount = 0;
+        for (int i = 0; values != null && valueDates != null && i < values.length; i++) {
+            if (values[i] != null) {
+                entryValues[valueCount] = values[i];
+                entryDates[valueCount++] = valueDates[i];
+            }
+        }
+        for (int i = 0; newValues != null && i < newValues.length; i++) {
+            if (newValues[i] != null) {
+                entryValues[valueCount] = newValues[i];
+                entryDates[valueCount++] = now;
+            }
+        }
+
+        return new CacheRecord(entryTypes, entryIndexes, entryValues, entryDates);
+    }
+
+    /** The time after which one of the values has expired (see HandleValue.isExpired)
+     *  or exceeds our max TTL.
+     */
+    int expiresAt(int now, long maxTTL) {
+        long expiresAt = (long) now + maxTTL;
+        for (int i = 0; i < values.length; i++) {
+            HandleValue value = values[i];
+            int date = valueDates[i];
+            long valueExpiresAt;
+            if (value.getTTLType() == HandleValue.TTL_TYPE_RELATIVE && value.getTTL() != 0) {
+                valueExpiresAt = (long) date + Math.min(Math.min(value.getTTL(), HandleValue.MAX_RECOGNIZED_TTL), maxTTL);
+            } else {
+                // zero, absolute and unknown TTLs are treated as expired by HandleValue
+                valueExpiresAt = date - 1L;
+            }
+            expiresAt = Math.min(expiresAt, valueExpiresAt);
+        }
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, expiresAt));
+    }
+
+    /** Serializes the record in the layout read by decode and filterValues */
+    byte[] encode() {
+        // typeArrayLen typeArray indexArrayLen indexArray numClumps ( length time_retrieved clump )+
+        int dataLen = 3 * Encoder.INT_SIZE;
+        for (byte[] type : types) {
+            dataLen += Encoder.INT_SIZE + type.length;
+        }
+        dataLen += Encoder.INT_SIZE * indexes.length;
+        for (HandleValue value : values) {
+            dataLen += 2 * Encoder.INT_SIZE + Encoder.calcStorageSize(value);
+        }
+
+        byte dataBuf[] = new byte[dataLen];
+        int loc = 0;
+        loc += Encoder.writeInt(dataBuf, loc, types.length);
+        for (byte[] type : types) {
+            loc += Encoder.writeByteArray(dataBuf, loc, type);
+        }
+        loc += Encoder.writeInt(dataBuf, loc, indexes.length);
+        for (int index : indexes) {
+            loc += Encoder.writeInt(dataBuf, loc, index);
+        }
+        loc += Encoder.writeInt(dataBuf, loc, values.length);
+        for (int i = 0; i < values.length; i++) {
+            int lenLoc = loc;
+            loc += Encoder.INT_SIZE; // placeholder for the value-length field
+            loc += Encoder.writeInt(dataBuf, loc, valueDates[i]);
+            loc += Encoder.encodeHandleValue(dataBuf, loc, values[i]);
+            Encoder.writeInt(dataBuf, lenLoc, loc - lenLoc - 2 * Encoder.INT_SIZE); // the value-length field
+        }
+        return dataBuf;
+    }
+
+    static CacheRecord decode(byte data[]) throws HandleException {
+        int idx = 0;
+        byte types[][] = new byte[Encoder.readInt(data, idx)][];
+        idx += Encoder.INT_SIZE;
+        idx += Encoder.readByteArrayArray(types, data, idx);
+
+        int indexes[] = Encoder.readIntArray(data, idx);
+        idx += Encoder.INT_SIZE + Encoder.INT_SIZE * indexes.length;
+
+        HandleValue values[] = new HandleValue[Encoder.readInt(data, idx)];
+        idx += Encoder.INT_SIZE;
+        int valueDates[] = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            int clumpLen = Encoder.readInt(data, idx);
+            idx += Encoder.INT_SIZE;
+            valueDates[i] = Encoder.readInt(data, idx);
+            idx += Encoder.INT_SIZE;
+            values[i] = new HandleValue();
+            Encoder.decodeHandleValue(data, idx, values[i]);
+            idx += clumpLen;
+        }
+        return new CacheRecord(types, indexes, values, valueDates);
+    }
+
+    /** Returns the encoded values from the record that answer the query,
+     *  or null if the record doesn't cover it.
+     */
+    static byte[][] filterValues(byte record[], int length, byte reqTypes[][], int reqIndexes[]) throws HandleException {
+        int idx = 0;
+
+        boolean allValues = (reqIndexes == null || reqIndexes.length <= 0) && (reqTypes == null || reqTypes.length <= 0);
+
+        // records have this layout:
+        //  typeArrayLen typeArray indexArrayLen indexArray numClumps ( length time_retrieved clump )+
+        int typeCount = Encoder.readInt(record, idx);
+        idx += Encoder.INT_SIZE;
+        byte types[][] = null;
+        if (typeCount > 0) {
+            types = new byte[typeCount][];
+            idx += Encoder.readByteArrayArray(types, record, idx);
+        }
+
+        int indexCount = Encoder.readInt(record, idx);
+        int indexes[] = null;
+        if (indexCount > 0) {
+            indexes = Encoder.readIntArray(record, idx);
+        }
+        idx += Encoder.INT_SIZE + Encoder.INT_SIZE * indexCount;
+
+        idx += Encoder.INT_SIZE; // numClumps
+
+        // if we don't have the requested types, return null
+        if (!(typeCount == 0 && indexCount == 0)) {
+            // the record only has specific values (not necessarily all values) for the handle
+
+            if (allValues) {
+                return null; // they were asking for all values, which we don't have
+            }
+
+            if (reqIndexes != null && reqIndexes.length > 0) {
+                // the user is requesting specific indexes, see if we have them...
+                for (int i = 0; i < reqIndexes.length; i++) {
+                    if (!Util.isInArray(indexes, reqIndexes[i])) {
+                        return null; // one of the requested indexes wasn't cached
+                    }
+                }
+            }
+            if (reqTypes != null && reqTypes.length > 0) {
+                // the user is requesting specific types, see if we have them...
+                for (int i = 0; i < reqTypes.length; i++) {
+                    if (!Util.isParentTypeInArray(types, reqTypes[i]) && !Util.isInArray(types, reqTypes[i])) {
+                        return null; // one of the requested types wasn't cached
+                    }
+                }
+            }
+        }
+
+        // count the number of matching values
+        int startIdx = idx;
+        int numMatches = 0;
+        while (idx < length) {
+            int clumpLen = Encoder.readInt(record, idx);
+            idx += 2 * Encoder.INT_SIZE; // skip the time-retrieved field
+            if (matches(record, idx, allValues, reqTypes, reqIndexes)) numMatches++;
+            idx += clumpLen;
+        }
+
+        // if we didn't find any of the requested records, return null
+        // not empty set - because the empty set would never time-out
+        if (numMatches == 0) {
+            return null;
+        }
+
+        byte retValues[][] = new byte[numMatches][];
+        int clumpNum = 0;
+        idx = startIdx;
+        while (idx < length) {
+            int clumpLen = Encoder.readInt(record, idx);
+            idx += 2 * Encoder.INT_SIZE;
+            if (matches(record, idx, allValues, reqTypes, reqIndexes)) {
+                retValues[clumpNum] = new byte[clumpLen];
+                System.arraycopy(record, idx, retValues[clumpNum], 0, clumpLen);
+                clumpNum++;
+            }
+            idx += clumpLen;
+        }
+        return retValues;
+    }
+
+    private static boolean matches(byte record[], int offset, boolean allValues, byte reqTypes[][], int reqIndexes[]) throws HandleException {
+        if (allValues || Util.isInArray(reqIndexes, Encoder.getHandleValueIndex(record, offset))) {
+            return true;
+        }
+        return reqTypes != null && reqTypes.length > 0 && Util.isParentTypeInArray(reqTypes, Encoder.getHandleValueType(record, offset));
+    }
+}
@@ -13,6 +13,7 @@ import com.google.gson.Gson;
 import org.slf4j.Logger;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -588,6 +589,21 @@ public abstract class Encoder {
         return message;
     }
 
+    /*************************************************************************
+     * decode a message from the remaining bytes of the given buffer.  Heap
+     * buffers are decoded in place on their backing array.  Direct buffers
+     * have no backing array, so their remaining bytes are copied into a new
+     * byte[] before decoding.  The position of the buffer is not changed.
+     *************************************************************************/
+    public static final AbstractMessage decodeMessage(ByteBuffer msg, MessageEnvelope envelope) throws HandleException {
+        if (msg.hasArray()) {
+            return decodeMessage(msg.array(), msg.arrayOffset() + msg.position(), envelope);
+        }
+        byte buf[] = new byte[msg.remaining()];
+        msg.duplicate().get(buf);
+        return decodeMessage(buf, 0, envelope);
+    }
+
     public static void decodeOpFlagsInToMessage(AbstractMessage message, int opFlags) {
         message.authoritative = (MSG_FLAG_AUTH & opFlags) != 0;
         message.certify = (MSG_FLAG_CERT & opFlags) != 0;
@@ -1225,6 +1241,8 @@ public abstract class Encoder {
                     case AbstractMessage.OC_BACKUP_SERVER:
                     case AbstractMessage.OC_SESSION_TERMINATE:
                     case AbstractMessage.OC_SESSION_EXCHANGEKEY:
+                    //兼容idis2001，登录成功的响应没有消息体
+                    case AbstractMessage.OC_LOGIN_ID_SYSTEM:
                         buf = encodeGenericResponse(msg);
                         break;
                     case AbstractMessage.OC_RESPONSE_TO_CHALLENGE:
@@ -0,0 +1,42 @@
+package cn.teleinfo.idpointer.sdk.core;
+
+import java.util.Arrays;
+
+/**
+ * Cache key over the raw handle bytes with a precomputed hash.  Stored keys own
+ * a copy of the handle; lookups reuse a per-thread instance via set/clear.
+ */
+final class HandleKey {
+    private byte[] handle;
+    private int hash;
+
+    HandleKey() {
+    }
+
+    HandleKey(byte[] handle) {
+        set(handle.clone());
+    }
+
+    HandleKey set(byte[] handle) {
+        this.handle = handle;
+        this.hash = Arrays.hashCode(handle);
+        return this;
+    }
+
+    void clear() {
+        this.handle = null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HandleKey)) return false;
+        HandleKey that = (HandleKey) o;
+        return hash == that.hash && Arrays.equals(handle, that.handle);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
@@ -0,0 +1,227 @@
+package cn.teleinfo.idpointer.sdk.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 编码后handle value的只读视图，布局与Encoder.encodeHandleValue一致。
+ * <p>
+ * 构造时只记录各字段的位置，index/ttl/权限等定长字段直接从缓冲读取，
+ * type/data/references在访问时才切片或复制。视图引用原始缓冲，缓冲内容不能在视图使用期间被修改或回收。
+ */
+public class HandleValueView {
+
+    private static final int TYPE_LENGTH_OFFSET = 14;
+
+    private final ByteBuffer buf;
+    private final int offset;
+    private final int typeOffset;
+    private final int typeLength;
+    private final int dataOffset;
+    private final int dataLength;
+    private final int referencesOffset;
+    private final int referenceCount;
+    private final int encodedLength;
+
+    /**
+     * @param buf    大端序缓冲，只做绝对位置读取，不修改其position/limit
+     * @param offset 编码值的起始位置
+     */
+    public HandleValueView(ByteBuffer buf, int offset) throws HandleException {
+        if (buf.order() != ByteOrder.BIG_ENDIAN) {
+            throw new HandleException(HandleException.INTERNAL_ERROR, "HandleValueView requires a big-endian buffer");
+        }
+        this.buf = buf;
+        this.offset = offset;
+
+        int loc = offset + TYPE_LENGTH_OFFSET;
+        this.typeLength = readLength(buf, loc);
+        this.typeOffset = loc + Encoder.INT_SIZE;
+        loc = typeOffset + typeLength;
+
+        this.dataLength = readLength(buf, loc);
+        this.dataOffset = loc + Encoder.INT_SIZE;
+        loc = dataOffset + dataLength;
+
+        this.referenceCount = readLength(buf, loc);
+        loc += Encoder.INT_SIZE;
+        this.referencesOffset = loc;
+        for (int i = 0; i < referenceCount; i++) {
+            loc += Encoder.INT_SIZE + readLength(buf, loc) + Encoder.INT_SIZE;
+        }
+        if (loc > buf.limit()) {
+            throw new HandleException(HandleException.MESSAGE_FORMAT_ERROR, Encoder.MSG_INVALID_ARRAY_SIZE);
+        }
+        this.encodedLength = loc - offset;
+    }
+
+    /**
+     * 解析buf中从offset开始连续编码的count个值
+     */
+    public static HandleValueView[] decodeViews(ByteBuffer buf, int offset, int count) throws HandleException {
+        HandleValueView[] views = new HandleValueView[count];
+        for (int i = 0; i < count; i++) {
+            views[i] = new HandleValueView(buf, offset);
+            offset += views[i].encodedLength;
+        }
+        return views;
+    }
+
+    private static int readLength(ByteBuffer buf, int index) throws HandleException {
+        if (index + Encoder.INT_SIZE > buf.limit()) {
+            throw new HandleException(HandleException.MESSAGE_FORMAT_ERROR, Encoder.MSG_INVALID_ARRAY_SIZE);
+        }
+        int len = buf.getInt(index);
+        if (len < 0 || len > Common.MAX_ARRAY_SIZE || index + Encoder.INT_SIZE + len > buf.limit()) {
+            throw new HandleException(HandleException.MESSAGE_FORMAT_ERROR, Encoder.MSG_INVALID_ARRAY_SIZE);
+        }
+        return len;
+    }
+
+    public int getIndex() {
+        return buf.getInt(offset);
+    }
+
+    public int getTimestamp() {
+        return buf.getInt(offset + 4);
+    }
+
+    public byte getTTLType() {
+        return buf.get(offset + 8);
+    }
+
+    public int getTTL() {
+        return buf.getInt(offset + 9);
+    }
+
+    private byte getPermissions() {
+        return buf.get(offset + 13);
+    }
+
+    public boolean getAdminCanRead() {
+        return (getPermissions() & Encoder.PERM_ADMIN_READ) != 0;
+    }
+
+    public boolean getAdminCanWrite() {
+        return (getPermissions() & Encoder.PERM_ADMIN_WRITE) != 0;
+    }
+
+    public boolean getAnyoneCanRead() {
+        return (getPermissions() & Encoder.PERM_PUBLIC_READ) != 0;
+    }
+
+    public boolean getAnyoneCanWrite() {
+        return (getPermissions() & Encoder.PERM_PUBLIC_WRITE) != 0;
+    }
+
+    /**
+     * 与HandleValue.hasType语义一致（忽略大小写，支持子类型），不复制type
+     */
+    public boolean hasType(byte[] someType) {
+        if (someType.length == typeLength) {
+            return typeStartsWithCI(someType);
+        }
+        return someType.length < typeLength && buf.get(typeOffset + someType.length) == HandleValue.SUBTYPE_SEPARATOR && typeStartsWithCI(someType);
+    }
+
+    private boolean typeStartsWithCI(byte[] someType) {
+        for (int i = 0; i < someType.length; i++) {
+            byte byte1 = buf.get(typeOffset + i);
+            byte byte2 = someType[i];
+            if (byte1 == byte2) continue;
+            if (byte1 >= 'a' && byte1 <= 'z') byte1 += Util.CASE_DIFF;
+            if (byte2 >= 'a' && byte2 <= 'z') byte2 += Util.CASE_DIFF;
+            if (byte1 != byte2) return false;
+        }
+        return true;
+    }
+
+    public int getTypeLength() {
+        return typeLength;
+    }
+
+    public byte[] getType() {
+        return copy(typeOffset, typeLength);
+    }
+
+    public String getTypeAsString() {
+        return Util.decodeString(getType());
+    }
+
+    public int getDataLength() {
+        return dataLength;
+    }
+
+    /**
+     * data的只读切片，不复制
+     */
+    public ByteBuffer getDataBuffer() {
+        return slice(dataOffset, dataLength);
+    }
+
+    public byte[] getData() {
+        return copy(dataOffset, dataLength);
+    }
+
+    public String getDataAsString() {
+        byte[] data = getData();
+        if (Util.looksLikeBinary(data)) return Util.decodeHexString(data, false);
+        return Util.decodeString(data);
+    }
+
+    public int getReferenceCount() {
+        return referenceCount;
+    }
+
+    public ValueReference[] getReferences() {
+        ValueReference[] references = new ValueReference[referenceCount];
+        int loc = referencesOffset;
+        for (int i = 0; i < referenceCount; i++) {
+            int len = buf.getInt(loc);
+            loc += Encoder.INT_SIZE;
+            references[i] = new ValueReference(copy(loc, len), buf.getInt(loc + len));
+            loc += len + Encoder.INT_SIZE;
+        }
+        return references;
+    }
+
+    /**
+     * 编码后的总长度
+     */
+    public int getEncodedLength() {
+        return encodedLength;
+    }
+
+    /**
+     * 物化为HandleValue
+     */
+    public HandleValue toHandleValue() throws HandleException {
+        HandleValue value = new HandleValue();
+        if (buf.hasArray()) {
+            Encoder.decodeHandleValue(buf.array(), buf.arrayOffset() + offset, value);
+        } else {
+            Encoder.decodeHandleValue(copy(offset, encodedLength), 0, value);
+        }
+        return value;
+    }
+
+    private byte[] copy(int index, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer src = buf.duplicate();
+        src.position(index);
+        src.get(bytes);
+        return bytes;
+    }
+
+    private ByteBuffer slice(int index, int length) {
+        ByteBuffer dup = buf.asReadOnlyBuffer();
+        dup.limit(index + length);
+        dup.position(index);
+        return dup.slice();
+    }
+
+    @Override
+    public String toString() {
+        return " index=" + getIndex() + " type=" + getTypeAsString() + " ttl=" + getTTLType() + "/" + getTTL() + " timestamp=" + getTimestamp() + " data=" + getDataAsString();
+    }
+}
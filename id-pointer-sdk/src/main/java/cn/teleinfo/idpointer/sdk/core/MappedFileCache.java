@@ -0,0 +1,501 @@
+package cn.teleinfo.idpointer.sdk.core;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.PlatformDependent;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 持久化到内存映射文件的Cache，进程重启后可以继续使用之前缓存的解析结果，避免重启后集中向服务器解析。
+ * <p>
+ * 文件是追加写入的日志：文件头之后依次是每次写入的记录（handle、过期时间与CacheRecord编码的值，值保留原始的获取时间），
+ * 同一handle以最后一条记录为准，删除时写入墓碑记录。打开文件时只做映射，索引由后台线程扫描建立，
+ * 扫描完成前尚未读到的标识按未命中处理。过期时间按原始的获取时间与TTL计算，重启不会延长缓存时间。
+ * <p>
+ * 文件写满或超过最大标识数时压缩：丢弃过期、被覆盖的记录，必要时按写入顺序丢弃最早的记录，其余记录前移。
+ * 压缩过程中进程退出只会丢失缓存内容。数据由操作系统写回文件，close时强制写回。
+ */
+public class MappedFileCache implements Cache {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MappedFileCache.class);
+
+    public static final int DEFAULT_MAX_SIZE = 64 << 20;
+    public static final long DEFAULT_MAX_TTL = 60 * 60;
+
+    private static final int MAGIC = 0x49444d43; // "IDMC"
+    private static final int VERSION = 1;
+    private static final int WRITE_END_OFFSET = 8;
+    private static final int HEADER_SIZE = 16;
+
+    // recordLength kind expiresAt handleLength handle data
+    private static final int RECORD_HEADER_SIZE = 3 * Encoder.INT_SIZE + 1;
+    private static final byte KIND_VALUES = 0;
+    private static final byte KIND_NOT_FOUND = 1;
+    private static final byte KIND_REMOVED = 2;
+
+    private static final int LOAD_BATCH = 1024;
+
+    private static final byte[][] cachedNotFoundResult = new byte[1][Encoder.INT_SIZE];
+    static {
+        Encoder.writeInt(cachedNotFoundResult[0], 0, -1);
+    }
+
+    private static final ThreadLocal<HandleKey> lookupKey = ThreadLocal.withInitial(HandleKey::new);
+    private static final ThreadLocal<byte[]> readBuffer = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    private final File file;
+    private final MappedByteBuffer mapped;
+    private final ByteBuf buf;
+    private final int mapSize;
+    private final ConcurrentHashMap<HandleKey, Entry> index = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final long maxTTL;
+    private volatile int maxHandles;
+    // guarded by the lock
+    private int capacity;
+    private int writeEnd;
+    private int loadEnd;
+    private boolean closed;
+
+    /**
+     * @param file       缓存文件，不存在时创建
+     * @param maxSize    文件大小；已有文件更大时使用已有文件的大小
+     * @param maxHandles 最大标识数
+     * @param maxTTL     值的最长缓存时间（秒），不论其TTL
+     */
+    public MappedFileCache(File file, int maxSize, int maxHandles, long maxTTL) throws IOException {
+        this.file = file;
+        this.maxHandles = maxHandles;
+        this.maxTTL = maxTTL;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("can not create directory " + parent);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            this.mapSize = (int) Math.max(maxSize, Math.min(length, Integer.MAX_VALUE));
+            if (length < mapSize) {
+                raf.setLength(mapSize);
+            }
+            this.mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, mapSize);
+        }
+        this.buf = Unpooled.wrappedBuffer(mapped);
+        this.capacity = mapSize;
+
+        int end = buf.getInt(WRITE_END_OFFSET);
+        if (buf.getInt(0) == MAGIC && buf.getInt(4) == VERSION && end >= HEADER_SIZE && end <= mapSize) {
+            this.writeEnd = end;
+        } else {
+            buf.setInt(0, MAGIC);
+            buf.setInt(4, VERSION);
+            this.writeEnd = HEADER_SIZE;
+            buf.setInt(WRITE_END_OFFSET, writeEnd);
+        }
+        this.loadEnd = writeEnd;
+
+        if (loadEnd == HEADER_SIZE) {
+            loaded.countDown();
+        } else {
+            Thread thread = new Thread(this::load, "MappedFileCache-loader");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public MappedFileCache(File file, int maxSize) throws IOException {
+        this(file, maxSize, Integer.MAX_VALUE, DEFAULT_MAX_TTL);
+    }
+
+    public MappedFileCache(File file) throws IOException {
+        this(file, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * 扫描文件建立索引，每批记录持有读锁，期间可以正常读写
+     */
+    private void load() {
+        int loadedCount = 0;
+        try {
+            int pos = HEADER_SIZE;
+            boolean done = false;
+            while (!done) {
+                lock.readLock().lock();
+                try {
+                    for (int n = 0; n < LOAD_BATCH; n++) {
+                        if (closed || pos >= loadEnd) {
+                            done = true;
+                            break;
+                        }
+                        Entry entry = readEntry(pos, loadEnd);
+                        if (entry == null) {
+                            log.warn("invalid record at {} in {}, ignoring the rest of the file", pos, file);
+                            done = true;
+                            break;
+                        }
+                        index.merge(entry.key, entry, MappedFileCache::newer);
+                        loadedCount++;
+                        pos += entry.recordSize;
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+            lock.writeLock().lock();
+            try {
+                if (!closed) {
+                    int now = (int) (System.currentTimeMillis() / 1000);
+                    index.values().removeIf(entry -> entry.kind == KIND_REMOVED || now > entry.expiresAt);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.debug("loaded {} records from {}, {} handles cached", loadedCount, file, index.size());
+        } catch (RuntimeException e) {
+            log.warn("failed to load {}", file, e);
+        } finally {
+            loaded.countDown();
+        }
+    }
+
+    private Entry readEntry(int pos, int end) {
+        if (pos + RECORD_HEADER_SIZE > end) {
+            return null;
+        }
+        int recordSize = Encoder.INT_SIZE + buf.getInt(pos);
+        byte kind = buf.getByte(pos + Encoder.INT_SIZE);
+        int expiresAt = buf.getInt(pos + Encoder.INT_SIZE + 1);
+        int handleLength = buf.getInt(pos + 2 * Encoder.INT_SIZE + 1);
+        if (recordSize < RECORD_HEADER_SIZE || recordSize > end - pos || handleLength < 0 || handleLength > recordSize - RECORD_HEADER_SIZE || kind < KIND_VALUES || kind > KIND_REMOVED) {
+            return null;
+        }
+        byte handle[] = new byte[handleLength];
+        buf.getBytes(pos + RECORD_HEADER_SIZE, handle);
+        return new Entry(new HandleKey().set(handle), kind, expiresAt, pos, recordSize, RECORD_HEADER_SIZE + handleLength);
+    }
+
+    private static Entry newer(Entry a, Entry b) {
+        return b.offset > a.offset ? b : a;
+    }
+
+    public boolean isLoaded() {
+        return loaded.getCount() == 0;
+    }
+
+    /**
+     * 等待启动时的索引扫描完成
+     */
+    public boolean awaitLoaded(long timeout, TimeUnit unit) throws InterruptedException {
+        return loaded.await(timeout, unit);
+    }
+
+    @Override
+    public boolean isCachedNotFound(byte[][] values) {
+        return values == cachedNotFoundResult; //physical equality
+    }
+
+    @Override
+    public byte[][] getCachedValues(byte handle[], byte reqTypes[][], int reqIndexes[]) throws Exception {
+        Entry entry;
+        HandleKey key = lookupKey.get().set(handle);
+        try {
+            entry = index.get(key);
+        } finally {
+            key.clear();
+        }
+        if (entry == null || entry.kind == KIND_REMOVED) {
+            return null;
+        }
+        int now = (int) (System.currentTimeMillis() / 1000);
+        if (now > entry.expiresAt) {
+            // value is stale
+            return null;
+        }
+        if (entry.kind == KIND_NOT_FOUND) {
+            return cachedNotFoundResult;
+        }
+
+        int length = entry.dataLength();
+        byte record[] = readBuffer.get();
+        if (record.length < length) {
+            record = new byte[Math.max(length, record.length * 2)];
+            readBuffer.set(record);
+        }
+        lock.readLock().lock();
+        try {
+            if (entry.moved || closed) {
+                return null;
+            }
+            buf.getBytes(entry.dataOffset(), record, 0, length);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return CacheRecord.filterValues(record, length, reqTypes, reqIndexes);
+    }
+
+    @Override
+    public void setCachedValues(byte handle[], HandleValue newValues[], byte newTypeList[][], int newIndexList[]) throws Exception {
+        HandleKey key = new HandleKey(handle);
+        int now = (int) (System.currentTimeMillis() / 1000);
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            Entry old = index.get(key);
+            CacheRecord oldRecord = null;
+            if (old != null && old.kind == KIND_VALUES && now <= old.expiresAt) {
+                byte oldData[] = new byte[old.dataLength()];
+                buf.getBytes(old.dataOffset(), oldData);
+                oldRecord = CacheRecord.decode(oldData);
+            }
+            CacheRecord record = CacheRecord.merge(oldRecord, newValues, newTypeList, newIndexList, now);
+            int expiresAt = record.expiresAt(now, maxTTL);
+            if (now > expiresAt) {
+                // nothing worth keeping
+                if (old != null) append(key, handle, KIND_REMOVED, Integer.MAX_VALUE, null);
+                return;
+            }
+            append(key, handle, KIND_VALUES, expiresAt, record.encode());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void setCachedNotFound(byte handle[], int ttl) throws Exception {
+        HandleKey key = new HandleKey(handle);
+        int now = (int) (System.currentTimeMillis() / 1000);
+        int expiresAt = (int) Math.min(Integer.MAX_VALUE, now + Math.max(0, Math.min(maxTTL, ttl)));
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            append(key, handle, KIND_NOT_FOUND, expiresAt, null);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeHandle(byte[] handle) throws Exception {
+        HandleKey key = new HandleKey(handle);
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            // 扫描完成前文件中可能还有这个标识的记录
+            if (index.containsKey(key) || !isLoaded()) {
+                append(key, handle, KIND_REMOVED, Integer.MAX_VALUE, null);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Appends a record and points the index at it.  Called with the write lock held. */
+    private void append(HandleKey key, byte handle[], byte kind, int expiresAt, byte data[]) {
+        int dataLength = data == null ? 0 : data.length;
+        int recordSize = RECORD_HEADER_SIZE + handle.length + dataLength;
+        if (HEADER_SIZE + recordSize > capacity) {
+            // larger than the whole cache
+            shadow(key);
+            return;
+        }
+        if (writeEnd + recordSize > capacity || (kind != KIND_REMOVED && index.size() >= maxHandles)) {
+            if (!isLoaded()) {
+                // records can't be moved while the file is being loaded
+                shadow(key);
+                return;
+            }
+            compact(recordSize);
+        }
+
+        int pos = writeEnd;
+        buf.setInt(pos, recordSize - Encoder.INT_SIZE);
+        buf.setByte(pos + Encoder.INT_SIZE, kind);
+        buf.setInt(pos + Encoder.INT_SIZE + 1, expiresAt);
+        buf.setInt(pos + 2 * Encoder.INT_SIZE + 1, handle.length);
+        buf.setBytes(pos + RECORD_HEADER_SIZE, handle);
+        if (data != null) {
+            buf.setBytes(pos + RECORD_HEADER_SIZE + handle.length, data);
+        }
+        writeEnd += recordSize;
+        buf.setInt(WRITE_END_OFFSET, writeEnd);
+
+        if (kind == KIND_REMOVED && isLoaded()) {
+            // the record only needs to shadow older ones when the file is loaded again
+            index.remove(key);
+        } else {
+            // newer than anything the loader can still find
+            index.put(key, new Entry(key, kind, expiresAt, pos, recordSize, RECORD_HEADER_SIZE + handle.length));
+        }
+    }
+
+    /** Hides the cached records of a handle that could not be written.  Called with the write lock held. */
+    private void shadow(HandleKey key) {
+        if (isLoaded()) {
+            index.remove(key);
+        } else {
+            // keeps the loader from restoring an older record; dropped once the file is loaded
+            index.put(key, new Entry(key, KIND_REMOVED, Integer.MAX_VALUE, Integer.MAX_VALUE, 0, 0));
+        }
+    }
+
+    /** Moves the live records to the start of the file, dropping the oldest ones
+     *  until there is room for needed bytes and a new handle.  Called with the
+     *  write lock held after the file was loaded.
+     */
+    private void compact(int needed) {
+        int now = (int) (System.currentTimeMillis() / 1000);
+        List<Entry> live = new ArrayList<>(index.size());
+        long liveBytes = 0;
+        for (Entry entry : index.values()) {
+            if (entry.kind != KIND_REMOVED && now <= entry.expiresAt) {
+                live.add(entry);
+                liveBytes += entry.recordSize;
+            }
+        }
+        live.sort((a, b) -> Integer.compare(a.offset, b.offset));
+
+        // leave some free space so that the next writes don't compact again
+        long targetBytes = Math.max((long) capacity * 3 / 4, HEADER_SIZE + needed);
+        int targetHandles = maxHandles == Integer.MAX_VALUE ? Integer.MAX_VALUE : maxHandles * 3 / 4;
+        int first = 0;
+        while (first < live.size() && (HEADER_SIZE + liveBytes + needed > targetBytes || live.size() - first > targetHandles)) {
+            liveBytes -= live.get(first).recordSize;
+            first++;
+        }
+
+        // an interrupted compaction leaves an empty cache rather than a corrupt one
+        buf.setInt(WRITE_END_OFFSET, HEADER_SIZE);
+        for (Entry entry : index.values()) {
+            entry.moved = true;
+        }
+        index.clear();
+
+        int pos = HEADER_SIZE;
+        byte record[] = new byte[1024];
+        for (int i = first; i < live.size(); i++) {
+            Entry entry = live.get(i);
+            if (entry.offset != pos) {
+                if (record.length < entry.recordSize) {
+                    record = new byte[Math.max(entry.recordSize, record.length * 2)];
+                }
+                buf.getBytes(entry.offset, record, 0, entry.recordSize);
+                buf.setBytes(pos, record, 0, entry.recordSize);
+            }
+            index.put(entry.key, new Entry(entry.key, entry.kind, entry.expiresAt, pos, entry.recordSize, entry.dataStart));
+            pos += entry.recordSize;
+        }
+        log.debug("compacted {}: kept {} of {} live records, {} bytes", file, live.size() - first, live.size(), pos);
+        writeEnd = pos;
+        buf.setInt(WRITE_END_OFFSET, writeEnd);
+    }
+
+    @Override
+    public void clear() throws Exception {
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            for (Entry entry : index.values()) {
+                entry.moved = true;
+            }
+            index.clear();
+            // stops the loader
+            loadEnd = HEADER_SIZE;
+            writeEnd = HEADER_SIZE;
+            buf.setInt(WRITE_END_OFFSET, writeEnd);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Returns the number of cached handles */
+    public int size() {
+        return index.size();
+    }
+
+    @Override
+    public void setMaximumHandles(int maxHandles) {
+        this.maxHandles = maxHandles;
+        lock.writeLock().lock();
+        try {
+            if (!closed && isLoaded() && index.size() > maxHandles) {
+                compact(0);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Set the maximum number of bytes used in the file.  The file is not
+     *  resized, so sizes above the current file size have no effect.
+     */
+    @Override
+    public void setMaximumSize(int maxSize) {
+        lock.writeLock().lock();
+        try {
+            capacity = Math.max(HEADER_SIZE, Math.min(maxSize, mapSize));
+            if (!closed && isLoaded() && writeEnd > capacity) {
+                compact(0);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            closed = true;
+            for (Entry entry : index.values()) {
+                entry.moved = true;
+            }
+            index.clear();
+            mapped.force();
+            PlatformDependent.freeDirectBuffer(mapped);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Index entry pointing at the latest record of a handle */
+    private static final class Entry {
+        private final HandleKey key;
+        private final byte kind;
+        private final int expiresAt;
+        private final int offset;
+        private final int recordSize;
+        // offset of the data from the start of the record
+        private final int dataStart;
+        // guarded by the lock; set when the record is moved or dropped
+        private boolean moved;
+
+        private Entry(HandleKey key, byte kind, int expiresAt, int offset, int recordSize, int dataStart) {
+            this.key = key;
+            this.kind = kind;
+            this.expiresAt = expiresAt;
+            this.offset = offset;
+            this.recordSize = recordSize;
+            this.dataStart = dataStart;
+        }
+
+        private int dataOffset() {
+            return offset + dataStart;
+        }
+
+        private int dataLength() {
+            return recordSize - dataStart;
+        }
+    }
+}
@@ -13,11 +13,18 @@ package cn.teleinfo.idpointer.sdk.core;
 import cn.teleinfo.idpointer.sdk.core.util.LRUCacheTable;
 
 /*************************************************************
- * Class used to cache values in a local database file.
+ * Class used to cache values in memory.
+ *
+ * Entries are keyed by the raw handle bytes with a precomputed hash and
+ * keep the type, index and TTL of every value next to its encoded form,
+ * so a cache hit neither decodes the handle nor re-parses the stored
+ * values; the only allocations are the returned copies.
  *************************************************************/
 
 public class MemCache implements Cache {
-    private final LRUCacheTable<String, byte[]> db;
+    private final LRUCacheTable<HandleKey, CacheEntry> db;
+    // lookups reuse a per-thread key instead of allocating one
+    private static final ThreadLocal<HandleKey> lookupKey = ThreadLocal.withInitial(HandleKey::new);
     // by default don't let TTLs last longer than 60 minutes.  should provide
     // decent performance, while still detecting updates in things like
     // site_infos.
@@ -53,19 +60,6 @@ public class MemCache implements Cache {
         Encoder.writeInt(cachedNotFoundResult[0], 0, -1);
     }
 
-    // a NOT_FOUND is cached as -1 timeRetrieved ttl
-    private boolean isCachedNotFoundClumps(byte[] clumps) {
-        return Encoder.readInt(clumps, 0) < 0;
-    }
-
-    private int notFoundTimeRetrieved(byte[] notfound) {
-        return Encoder.readInt(notfound, Encoder.INT_SIZE);
-    }
-
-    private int notFoundTTL(byte[] notfound) {
-        return Encoder.readInt(notfound, 2 * Encoder.INT_SIZE);
-    }
-
     /** Returns any non-expired handle values that are in the caches
      *  storage.  A null return value indicates that the requested values
      *  aren't in the cache.  Returning the an array of values (including
@@ -77,48 +71,32 @@ public class MemCache implements Cache {
      */
     @Override
     public byte[][] getCachedValues(byte handle[], byte reqTypes[][], int reqIndexes[]) throws Exception {
-        byte clumps[];
+        CacheEntry entry;
+        HandleKey key = lookupKey.get().set(handle);
         try {
-            String key = Util.decodeString(handle);
-            clumps = db.get(key);
-        } catch (Exception e) {
-            System.err.println("cache error: " + e);
-            e.printStackTrace(System.err);
-            return null;
+            entry = db.get(key);
+        } finally {
+            key.clear();
         }
-        if (clumps == null) {
+        if (entry == null) {
             return null;
         }
 
         int now = (int) (System.currentTimeMillis() / 1000);
 
-        if (isCachedNotFoundClumps(clumps)) {
-            if (now - notFoundTimeRetrieved(clumps) > Math.min(maxTTL, notFoundTTL(clumps))) {
+        if (entry.notFound) {
+            if (now - entry.notFoundTimeRetrieved > Math.min(maxTTL, entry.notFoundTTL)) {
                 // value is stale
                 return null;
             }
             return cachedNotFoundResult;
         }
 
-        int idx = 0;
-
         boolean allValues = (reqIndexes == null || reqIndexes.length <= 0) && (reqTypes == null || reqTypes.length <= 0);
 
-        // records should have this layout:
-        //  typeArrayLen typeArray indexArrayLen indexArray numClumps ( length time_retrieved clump )+
-        byte types[][] = new byte[Encoder.readInt(clumps, idx)][];
-        idx += Encoder.INT_SIZE;
-        idx += Encoder.readByteArrayArray(types, clumps, idx);
-
-        int indexes[] = Encoder.readIntArray(clumps, idx);
-        idx += Encoder.INT_SIZE + Encoder.INT_SIZE * indexes.length;
-
-        // int numClumps = Encoder.readInt(clumps, idx);
-        idx += Encoder.INT_SIZE;
-
         // if we don't have the requested types, return null
-        if (!(types.length == 0 && indexes.length == 0)) {
-            // the cache DB only has specific values (not necessarily all values) for the handle
+        if (!(entry.types.length == 0 && entry.indexes.length == 0)) {
+            // the cache only has specific values (not necessarily all values) for the handle
 
             if (allValues) {
                 return null; // they were asking for all values, which we don't have
@@ -127,7 +105,7 @@ public class MemCache implements Cache {
             if (reqIndexes != null && reqIndexes.length > 0) {
                 // the user is requesting specific indexes, see if we have them...
                 for (int i = 0; i < reqIndexes.length; i++) {
-                    if (!Util.isInArray(indexes, reqIndexes[i])) {
+                    if (!Util.isInArray(entry.indexes, reqIndexes[i])) {
                         return null; // one of the requested indexes wasn't cached
                     }
                 }
@@ -135,7 +113,7 @@ public class MemCache implements Cache {
             if (reqTypes != null && reqTypes.length > 0) {
                 // the user is requesting specific types, see if we have them...
                 for (int i = 0; i < reqTypes.length; i++) {
-                    if (!Util.isParentTypeInArray(types, reqTypes[i]) && !Util.isInArray(types, reqTypes[i])) {
+                    if (!Util.isParentTypeInArray(entry.types, reqTypes[i]) && !Util.isInArray(entry.types, reqTypes[i])) {
                         return null; // one of the requested types wasn't cached
                     }
                 }
@@ -144,93 +122,63 @@ public class MemCache implements Cache {
 
         // at this point, we know that we have the requested values cached so
         // we just need to filter them out, check for timeouts and return them
-
-        int clumpLen;
-        byte clumpType[];
-        int clumpIndex;
-        int startIdx = idx;
         int numMatches = 0;
-        boolean gotClumps = false;
-
-        // count the number of matching records
-        while (idx < clumps.length) {
-            clumpLen = Encoder.readInt(clumps, idx);
-            idx += Encoder.INT_SIZE;
-            idx += Encoder.INT_SIZE; // skip the time-retrieved field
-
-            clumpType = Encoder.getHandleValueType(clumps, idx);
-            clumpIndex = Encoder.getHandleValueIndex(clumps, idx);
-
-            if (allValues || Util.isParentTypeInArray(reqTypes, clumpType) || Util.isInArray(reqIndexes, clumpIndex)) numMatches++;
-            gotClumps = true;
-            idx += clumpLen;
+        for (int i = 0; i < entry.values.length; i++) {
+            if (allValues || Util.isParentTypeInArray(reqTypes, entry.valueTypes[i]) || Util.isInArray(reqIndexes, entry.valueIndexes[i])) {
+                if (isExpired(entry.valueTTLTypes[i], entry.valueTTLs[i], now, entry.valueDates[i])) {
+                    // value is stale, need to re-retrieve all values for this query
+                    return null;
+                } else if ((now - entry.valueDates[i]) > maxTTL) {
+                    // not explicitly expired, but exceeds our max TTL
+                    return null;
+                }
+                numMatches++;
+            }
         }
 
         // if we didn't find any of the requested records, return null
         // not empty set - because the empty set would never time-out
-        if (!gotClumps || numMatches == 0) {
+        if (numMatches == 0) {
             return null;
         }
 
         // put the matching records into an array
         byte retValues[][] = new byte[numMatches][];
         int clumpNum = 0;
-        idx = startIdx;
-        int valueDate;
-        HandleValue testValue = null;
-        while (idx < clumps.length) {
-            clumpLen = Encoder.readInt(clumps, idx);
-            idx += Encoder.INT_SIZE;
-            valueDate = Encoder.readInt(clumps, idx);
-            idx += Encoder.INT_SIZE;
-
-            clumpType = Encoder.getHandleValueType(clumps, idx);
-            clumpIndex = Encoder.getHandleValueIndex(clumps, idx);
-
-            if (allValues || Util.isParentTypeInArray(reqTypes, clumpType) || Util.isInArray(reqIndexes, clumpIndex)) {
-                // check to see if the value is timed out... if so, return nothing.
-
-                retValues[clumpNum] = new byte[clumpLen];
-                if (testValue == null) testValue = new HandleValue();
-                Encoder.decodeHandleValue(clumps, idx, testValue);
-
-                if (testValue.isExpired(now, valueDate)) {
-                    // value is stale, need to re-retrieve all values for this query
-                    return null;
-                } else if ((now - valueDate) > maxTTL) {
-                    // not explicitly expired, but exceeds our max TTL
-                    return null;
-                }
-                System.arraycopy(clumps, idx, retValues[clumpNum], 0, retValues[clumpNum].length);
-                clumpNum++;
+        for (int i = 0; i < entry.values.length; i++) {
+            if (allValues || Util.isParentTypeInArray(reqTypes, entry.valueTypes[i]) || Util.isInArray(reqIndexes, entry.valueIndexes[i])) {
+                retValues[clumpNum++] = entry.values[i].clone();
             }
-
-            idx += clumpLen;
         }
+        return retValues;
+    }
 
-        if (clumpNum != retValues.length) {
-            // we missed something along the way - failsafe!!
-            System.err.println("Unknown cache error!!!");
-            Thread.dumpStack();
-            return null;
+    /** Same rules as HandleValue.isExpired, without decoding the value */
+    private static boolean isExpired(byte ttlType, int ttl, int now, int timeRetrieved) {
+        switch (ttlType) {
+        case HandleValue.TTL_TYPE_RELATIVE:
+            return ttl == 0 || Math.min(ttl, HandleValue.MAX_RECOGNIZED_TTL) < (now - timeRetrieved);
+        case HandleValue.TTL_TYPE_ABSOLUTE:
+            return HandleValue.MAX_RECOGNIZED_TTL > (now - timeRetrieved) || ttl < now;
+        default:
+            return true;
         }
-        return retValues;
     }
 
     @Override
     public void setCachedNotFound(byte handle[], int ttl) throws Exception {
-        String key = Util.decodeString(handle);
         int now = (int) (System.currentTimeMillis() / 1000);
-        byte dataBuf[] = new byte[3 * Encoder.INT_SIZE];
-        Encoder.writeInt(dataBuf, 0, -1);
-        Encoder.writeInt(dataBuf, Encoder.INT_SIZE, now);
-        Encoder.writeInt(dataBuf, 2 * Encoder.INT_SIZE, ttl);
-        db.put(key, dataBuf);
+        db.put(new HandleKey(handle), new CacheEntry(now, ttl));
     }
 
     @Override
     public void removeHandle(byte[] handle) throws Exception {
-        db.remove(Util.decodeString(handle));
+        HandleKey key = lookupKey.get().set(handle);
+        try {
+            db.remove(key);
+        } finally {
+            key.clear();
+        }
     }
 
     /** Store the given handle values after a query for the handle.  The
@@ -240,268 +188,11 @@ public class MemCache implements Cache {
      */
     @Override
     public void setCachedValues(byte handle[], HandleValue newValues[], byte newTypeList[][], int newIndexList[]) throws Exception {
-        if (newValues != null && (newTypeList != null && newTypeList.length > 0)) {
-            // Caching a restricted query where there are types.
-            // Make sure that all the indices we actually got are in the index list.
-            // That way we can find them later by index.
-            if (newIndexList == null) newIndexList = new int[0];
-            int[] expIndexList = new int[newIndexList.length + newValues.length];
-            System.arraycopy(newIndexList, 0, expIndexList, 0, newIndexList.length);
-            for (int i = 0; i < newValues.length; i++) {
-                expIndexList[newIndexList.length + i] = newValues[i].index;
-            }
-            java.util.Arrays.sort(expIndexList);
-            int uniq = 0;
-            for (int i = 0; i < expIndexList.length; i++) {
-                if (i == 0 || expIndexList[i] != expIndexList[i - 1]) {
-                    uniq++;
-                }
-            }
-            newIndexList = new int[uniq];
-            int count = 0;
-            for (int i = 0; count < uniq; i++) {
-                if (i == 0 || expIndexList[i] != expIndexList[i - 1]) {
-                    newIndexList[count++] = expIndexList[i];
-                }
-            }
-        }
-
-        byte types[][] = null;
-        int indexes[] = null;
-        int valueDates[] = null;
-        HandleValue values[] = null;
-
-        byte clumps[] = null;
-
-        String key = Util.decodeString(handle);
-
-        try {
-            clumps = db.get(key);
-        } catch (Exception e) {
-            System.err.println("MemCache error: " + e);
-            e.printStackTrace(System.err);
-            return;
-        }
-
-        int idx = 0;
-
-        if (clumps != null && !isCachedNotFoundClumps(clumps)) {
-            types = new byte[Encoder.readInt(clumps, idx)][];
-            idx += Encoder.INT_SIZE;
-            idx += Encoder.readByteArrayArray(types, clumps, idx);
-
-            indexes = Encoder.readIntArray(clumps, idx);
-            idx += Encoder.INT_SIZE + Encoder.INT_SIZE * indexes.length;
-
-            values = new HandleValue[Encoder.readInt(clumps, idx)];
-            idx += Encoder.INT_SIZE;
-
-            valueDates = new int[values.length];
-
-            int i = 0;
-            while (idx < clumps.length) {
-                int clumpLen = Encoder.readInt(clumps, idx);
-                idx += Encoder.INT_SIZE;
-                valueDates[i] = Encoder.readInt(clumps, idx);
-                idx += Encoder.INT_SIZE;
-
-                values[i] = new HandleValue();
-                Encoder.decodeHandleValue(clumps, idx, values[i]);
-                i++;
-                idx += clumpLen;
-            }
-        }
-
+        HandleKey key = new HandleKey(handle);
+        CacheEntry entry = db.get(key);
+        CacheRecord old = entry == null || entry.notFound ? null : entry.toRecord();
         int now = (int) (System.currentTimeMillis() / 1000);
-
-        // at this point the values that will go into the cache are the union of the
-        // values in 'values' and 'newValues'
-
-        if ((newTypeList == null || newTypeList.length <= 0) && (newIndexList == null || newIndexList.length <= 0)) {
-            // replace all old values with new values...
-            types = null;
-            indexes = null;
-            values = null;
-        } else if ((types != null && types.length <= 0) && (indexes != null && indexes.length <= 0)) {
-            // there was already a query for all values, we'll only update the new
-            // values that were just retrieved
-            for (int i = 0; values != null && newValues != null && i < newValues.length; i++) {
-                int thisIndex = newValues[i].index;
-                for (int j = 0; j < values.length; j++) {
-                    if (values[j] != null && values[j].index == thisIndex) {
-                        values[j] = null;
-                    }
-                }
-            }
-            // remove currently cached value for which the new resolution requested its type
-            if (values != null && newTypeList != null && newTypeList.length > 0) {
-                for (int j = 0; j < values.length; j++) {
-                    if (values[j] != null && Util.isParentTypeInArray(newTypeList, values[j].type)) {
-                        values[j] = null;
-                    }
-                }
-            }
-            newTypeList = null;
-            newIndexList = null;
-
-        } else {
-            // There were already some values in the cache, and we got some more.
-            // merge the new fresh values with the old ones.
-
-            // remove currently cached value for which the new resolution requested its type
-            if (values != null && newTypeList != null && newTypeList.length > 0) {
-                for (int j = 0; j < values.length; j++) {
-                    if (values[j] != null && Util.isParentTypeInArray(newTypeList, values[j].type)) {
-                        values[j] = null;
-                    }
-                }
-            }
-
-            if (newTypeList != null && newTypeList.length > 0) {
-                byte typeListCopy[][] = new byte[newTypeList.length][];
-                System.arraycopy(newTypeList, 0, typeListCopy, 0, newTypeList.length);
-                newTypeList = typeListCopy;
-
-                // remove duplicates in intersections of the old type query list and the new one
-                for (int i = 0; types != null && i < types.length; i++) {
-                    if (types[i] == null) continue;
-                    for (int j = 0; newTypeList != null && j < newTypeList.length; j++) {
-                        if (newTypeList[j] != null && Util.equalsCI(types[i], newTypeList[j])) {
-                            newTypeList[j] = null;
-                        }
-                    }
-                }
-            }
-
-            if (newIndexList != null && newIndexList.length > 0) {
-                int indexListCopy[] = new int[newIndexList.length];
-                System.arraycopy(newIndexList, 0, indexListCopy, 0, newIndexList.length);
-                newIndexList = indexListCopy;
-
-                // remove duplicates in intersections of the old index query list and the new one
-                for (int i = 0; indexes != null && i < indexes.length; i++) {
-                    if (indexes[i] < 0) continue;
-                    for (int j = 0; newIndexList != null && j < newIndexList.length; j++) {
-                        if (newIndexList[j] >= 0 && indexes[i] == newIndexList[j]) {
-                            newIndexList[j] = -1;
-                        }
-                    }
-                }
-            }
-
-            // remove values for which we have newer values from the old list of values
-            for (int i = 0; values != null && newValues != null && i < newValues.length; i++) {
-                int thisIndex = newValues[i].index;
-                for (int j = 0; j < values.length; j++) {
-                    if (values[j] != null && values[j].index == thisIndex) {
-                        // get rid of old values
-                        values[j] = null;
-                    }
-                }
-            }
-        }
-
-        // copy the new values, index-queries, and type-queries into a new clump to
-        // put back in the database.
-        int dataLen = 0;
-        int typeCount = 0;
-        int indexCount = 0;
-        int valueCount = 0;
-        dataLen += Encoder.INT_SIZE; // type-list length
-        dataLen += Encoder.INT_SIZE; // index-list length
-        dataLen += Encoder.INT_SIZE; // value-list length
-
-        // typeArrayLen typeArray indexArrayLen indexArray numClumps ( length time_retrieved clump )+
-        for (int i = 0; types != null && i < types.length; i++) {
-            if (types[i] != null) {
-                dataLen += Encoder.INT_SIZE + types[i].length;
-                typeCount++;
-            }
-        }
-        for (int i = 0; newTypeList != null && i < newTypeList.length; i++) {
-            if (newTypeList[i] != null) {
-                dataLen += Encoder.INT_SIZE + newTypeList[i].length;
-                typeCount++;
-            }
-        }
-
-        for (int i = 0; indexes != null && i < indexes.length; i++) {
-            if (indexes[i] >= 0) {
-                dataLen += Encoder.INT_SIZE;
-                indexCount++;
-            }
-        }
-        for (int i = 0; newIndexList != null && i < newIndexList.length; i++) {
-            if (newIndexList[i] >= 0) {
-                dataLen += Encoder.INT_SIZE;
-                indexCount++;
-            }
-        }
-        for (int i = 0; values != null && i < values.length; i++) {
-            if (values[i] != null) {
-                dataLen += Encoder.INT_SIZE; // the time-retrieved field
-                dataLen += Encoder.INT_SIZE; // the value-length field
-                dataLen += Encoder.calcStorageSize(values[i]);
-                valueCount++;
-            }
-        }
-        for (int i = 0; newValues != null && i < newValues.length; i++) {
-            if (newValues[i] != null) {
-                dataLen += Encoder.INT_SIZE; // the time-retrieved field
-                dataLen += Encoder.INT_SIZE; // the value-length field
-                dataLen += Encoder.calcStorageSize(newValues[i]);
-                valueCount++;
-            }
-        }
-
-        byte dataBuf[] = new byte[dataLen];
-        int loc = 0;
-        loc += Encoder.writeInt(dataBuf, loc, typeCount);
-        for (int i = 0; types != null && i < types.length; i++) {
-            if (types[i] != null) {
-                loc += Encoder.writeByteArray(dataBuf, loc, types[i]);
-            }
-        }
-        for (int i = 0; newTypeList != null && i < newTypeList.length; i++) {
-            if (newTypeList[i] != null) {
-                loc += Encoder.writeByteArray(dataBuf, loc, newTypeList[i]);
-            }
-        }
-
-        loc += Encoder.writeInt(dataBuf, loc, indexCount);
-        for (int i = 0; indexes != null && i < indexes.length; i++) {
-            if (indexes[i] >= 0) {
-                loc += Encoder.writeInt(dataBuf, loc, indexes[i]);
-            }
-        }
-        for (int i = 0; newIndexList != null && i < newIndexList.length; i++) {
-            if (newIndexList[i] >= 0) {
-                loc += Encoder.writeInt(dataBuf, loc, newIndexList[i]);
-            }
-        }
-
-        loc += Encoder.writeInt(dataBuf, loc, valueCount);
-        for (int i = 0; values != null && valueDates != null && i < values.length; i++) {
-            if (values[i] != null) {
-                int lenLoc = loc;
-                loc += Encoder.INT_SIZE; // placeholder for the value-length field
-                loc += Encoder.writeInt(dataBuf, loc, valueDates[i]);
-                loc += Encoder.encodeHandleValue(dataBuf, loc, values[i]);
-                Encoder.writeInt(dataBuf, lenLoc, loc - lenLoc - 2 * Encoder.INT_SIZE); // the value-length field
-            }
-        }
-
-        for (int i = 0; newValues != null && i < newValues.length; i++) {
-            if (newValues[i] != null) {
-                int lenLoc = loc;
-                loc += Encoder.INT_SIZE; // placeholder for the value-length field
-                loc += Encoder.writeInt(dataBuf, loc, now);
-                loc += Encoder.encodeHandleValue(dataBuf, loc, newValues[i]);
-                Encoder.writeInt(dataBuf, lenLoc, loc - lenLoc - 2 * Encoder.INT_SIZE); // the value-length field
-            }
-        }
-
-        db.put(key, dataBuf);
+        db.put(key, new CacheEntry(CacheRecord.merge(old, newValues, newTypeList, newIndexList, now)));
     }
 
     /** Remove all values from the cache */
@@ -510,6 +201,12 @@ public class MemCache implements Cache {
         db.clear();
     }
 
+    /** Returns the number of cached handles */
+    public int size() {
+        db.cleanUp();
+        return db.size();
+    }
+
     /** Set the maximum size for the cache by the number of handles. */
     @Override
     public void setMaximumHandles(int maxHandles) {
@@ -529,4 +226,66 @@ public class MemCache implements Cache {
     public void close() {
     }
 
+    /** The query types/indexes covered by this entry and its values, with the fields needed for filtering */
+    private static final class CacheEntry {
+        // a NOT_FOUND is cached with its time retrieved and ttl
+        private final boolean notFound;
+        private final int notFoundTimeRetrieved;
+        private final int notFoundTTL;
+
+        private final byte[][] types;
+        private final int[] indexes;
+        private final byte[][] values;
+        private final byte[][] valueTypes;
+        private final int[] valueIndexes;
+        private final byte[] valueTTLTypes;
+        private final int[] valueTTLs;
+        private final int[] valueDates;
+
+        private CacheEntry(int timeRetrieved, int ttl) {
+            this.notFound = true;
+            this.notFoundTimeRetrieved = timeRetrieved;
+            this.notFoundTTL = ttl;
+            this.types = null;
+            this.indexes = null;
+            this.values = null;
+            this.valueTypes = null;
+            this.valueIndexes = null;
+            this.valueTTLTypes = null;
+            this.valueTTLs = null;
+            this.valueDates = null;
+        }
+
+        private CacheEntry(CacheRecord record) {
+            int valueCount = record.values.length;
+            this.notFound = false;
+            this.notFoundTimeRetrieved = 0;
+            this.notFoundTTL = 0;
+            this.types = record.types;
+            this.indexes = record.indexes;
+            this.values = new byte[valueCount][];
+            this.valueTypes = new byte[valueCount][];
+            this.valueIndexes = new int[valueCount];
+            this.valueTTLTypes = new byte[valueCount];
+            this.valueTTLs = new int[valueCount];
+            this.valueDates = record.valueDates;
+            for (int i = 0; i < valueCount; i++) {
+                HandleValue value = record.values[i];
+                values[i] = Encoder.encodeHandleValue(value);
+                valueTypes[i] = value.getType();
+                valueIndexes[i] = value.getIndex();
+                valueTTLTypes[i] = value.getTTLType();
+                valueTTLs[i] = value.getTTL();
+            }
+        }
+
+        private CacheRecord toRecord() throws HandleException {
+            HandleValue[] decoded = new HandleValue[values.length];
+            for (int i = 0; i < values.length; i++) {
+                decoded[i] = new HandleValue();
+                Encoder.decodeHandleValue(values[i], 0, decoded[i]);
+            }
+            return new CacheRecord(types, indexes, decoded, valueDates);
+        }
+    }
 }
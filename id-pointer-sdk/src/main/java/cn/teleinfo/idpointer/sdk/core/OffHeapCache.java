@@ -0,0 +1,314 @@
+package cn.teleinfo.idpointer.sdk.core;
+
+import cn.teleinfo.idpointer.sdk.core.util.SlabAllocator;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 把缓存的handle value保存在堆外内存中的Cache，适合缓存数百万个标识的解析器，
+ * 可以通过HandleResolver.setCache/setCertifiedCache替换默认的MemCache。
+ * <p>
+ * 每个标识的记录（查询过的type/index与Encoder.encodeHandleValue编码后的值）保存在SlabAllocator分配的堆外块中，
+ * 堆上只保留handle到记录位置的索引，GC需要扫描的对象与值的数量和大小无关。
+ * <p>
+ * 记录在其中最早过期的值过期后整体失效（同时受maxTTL限制）。
+ * 超过最大字节数或最大标识数时按CLOCK（近似LRU）淘汰。
+ * 读取在读锁下从堆外复制记录，写入与淘汰持有写锁。
+ */
+public class OffHeapCache implements Cache {
+
+    public static final long DEFAULT_MAX_SIZE = 64L << 20;
+    public static final long DEFAULT_MAX_TTL = 60 * 60;
+
+    private static final byte[][] cachedNotFoundResult = new byte[1][Encoder.INT_SIZE];
+    static {
+        Encoder.writeInt(cachedNotFoundResult[0], 0, -1);
+    }
+
+    // lookups reuse a per-thread key and copy buffer instead of allocating them
+    private static final ThreadLocal<HandleKey> lookupKey = ThreadLocal.withInitial(HandleKey::new);
+    private static final ThreadLocal<byte[]> readBuffer = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    private final SlabAllocator slabs;
+    private final ConcurrentHashMap<HandleKey, Entry> index = new ConcurrentHashMap<>();
+    // 按写入顺序排列，淘汰时跳过最近被访问过的记录；被替换或删除的记录留到淘汰或压缩时移除
+    private final ArrayDeque<Entry> clock = new ArrayDeque<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final long maxTTL;
+    private volatile int maxHandles;
+
+    /**
+     * @param maxSize    堆外内存的最大字节数
+     * @param maxHandles 最大标识数
+     * @param maxTTL     值的最长缓存时间（秒），不论其TTL
+     */
+    public OffHeapCache(long maxSize, int maxHandles, long maxTTL) {
+        this(maxSize, maxHandles, maxTTL, SlabAllocator.DEFAULT_SLAB_SIZE, SlabAllocator.DEFAULT_BLOCK_SIZE);
+    }
+
+    public OffHeapCache(long maxSize, int maxHandles, long maxTTL, int slabSize, int blockSize) {
+        this.slabs = new SlabAllocator(maxSize, slabSize, blockSize);
+        this.maxHandles = maxHandles;
+        this.maxTTL = maxTTL;
+    }
+
+    public OffHeapCache(long maxSize) {
+        this(maxSize, Integer.MAX_VALUE, DEFAULT_MAX_TTL);
+    }
+
+    public OffHeapCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    @Override
+    public boolean isCachedNotFound(byte[][] values) {
+        return values == cachedNotFoundResult; //physical equality
+    }
+
+    @Override
+    public byte[][] getCachedValues(byte handle[], byte reqTypes[][], int reqIndexes[]) throws Exception {
+        Entry entry;
+        HandleKey key = lookupKey.get().set(handle);
+        try {
+            entry = index.get(key);
+        } finally {
+            key.clear();
+        }
+        if (entry == null) {
+            return null;
+        }
+
+        int now = (int) (System.currentTimeMillis() / 1000);
+        if (now > entry.expiresAt) {
+            // value is stale
+            lock.writeLock().lock();
+            try {
+                remove(entry);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return null;
+        }
+        entry.accessed = true;
+        if (entry.notFound()) {
+            return cachedNotFoundResult;
+        }
+
+        byte record[] = readBuffer.get();
+        if (record.length < entry.length) {
+            record = new byte[Math.max(entry.length, record.length * 2)];
+            readBuffer.set(record);
+        }
+        lock.readLock().lock();
+        try {
+            if (entry.removed) {
+                return null;
+            }
+            slabs.read(entry.firstBlock, record, entry.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+        return CacheRecord.filterValues(record, entry.length, reqTypes, reqIndexes);
+    }
+
+    @Override
+    public void setCachedValues(byte handle[], HandleValue newValues[], byte newTypeList[][], int newIndexList[]) throws Exception {
+        HandleKey key = new HandleKey(handle);
+        int now = (int) (System.currentTimeMillis() / 1000);
+        lock.writeLock().lock();
+        try {
+            Entry old = index.get(key);
+            CacheRecord oldRecord = null;
+            if (old != null && !old.notFound() && now <= old.expiresAt) {
+                byte oldData[] = new byte[old.length];
+                slabs.read(old.firstBlock, oldData, old.length);
+                oldRecord = CacheRecord.decode(oldData);
+            }
+            CacheRecord record = CacheRecord.merge(oldRecord, newValues, newTypeList, newIndexList, now);
+            int expiresAt = record.expiresAt(now, maxTTL);
+            if (now > expiresAt) {
+                // nothing worth keeping
+                if (old != null) remove(old);
+                return;
+            }
+            byte data[] = record.encode();
+            put(key, data, expiresAt, old);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void setCachedNotFound(byte handle[], int ttl) throws Exception {
+        HandleKey key = new HandleKey(handle);
+        int now = (int) (System.currentTimeMillis() / 1000);
+        int expiresAt = (int) Math.min(Integer.MAX_VALUE, now + Math.max(0, Math.min(maxTTL, ttl)));
+        lock.writeLock().lock();
+        try {
+            put(key, null, expiresAt, index.get(key));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Called with the write lock held; data is null for a cached NOT_FOUND */
+    private void put(HandleKey key, byte data[], int expiresAt, Entry old) {
+        if (old != null) {
+            remove(old);
+        }
+        int length = data == null ? 0 : data.length;
+        int firstBlock = -1;
+        if (data != null) {
+            while ((firstBlock = slabs.store(data, length)) < 0) {
+                if (!evictOne()) {
+                    // larger than the whole cache
+                    return;
+                }
+            }
+        }
+        while (index.size() >= maxHandles && evictOne()) {
+            // make room for the new handle
+        }
+        Entry entry = new Entry(key, firstBlock, length, expiresAt);
+        index.put(key, entry);
+        clock.addLast(entry);
+    }
+
+    /** Evicts the least recently used entry, giving accessed entries a second chance.
+     *  Called with the write lock held.
+     */
+    private boolean evictOne() {
+        Entry entry;
+        while ((entry = clock.pollFirst()) != null) {
+            if (entry.removed) {
+                continue;
+            }
+            if (entry.accessed) {
+                entry.accessed = false;
+                clock.addLast(entry);
+                continue;
+            }
+            remove(entry);
+            return true;
+        }
+        return false;
+    }
+
+    /** Called with the write lock held */
+    private void remove(Entry entry) {
+        if (entry.removed) {
+            return;
+        }
+        entry.removed = true;
+        index.remove(entry.key, entry);
+        if (!entry.notFound()) {
+            slabs.free(entry.firstBlock);
+        }
+        // drop removed entries from the clock when they outnumber the live ones
+        if (clock.size() > 2 * index.size() + 16) {
+            clock.removeIf(e -> e.removed);
+        }
+    }
+
+    @Override
+    public void removeHandle(byte[] handle) throws Exception {
+        HandleKey key = new HandleKey(handle);
+        lock.writeLock().lock();
+        try {
+            Entry entry = index.get(key);
+            if (entry != null) {
+                remove(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() throws Exception {
+        lock.writeLock().lock();
+        try {
+            for (Entry entry : clock) {
+                entry.removed = true;
+            }
+            index.clear();
+            clock.clear();
+            slabs.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Returns the number of cached handles */
+    public int size() {
+        return index.size();
+    }
+
+    /** Returns the number of off-heap bytes used by cached records */
+    public long getUsedBytes() {
+        lock.readLock().lock();
+        try {
+            return slabs.getUsedBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setMaximumHandles(int maxHandles) {
+        this.maxHandles = maxHandles;
+        lock.writeLock().lock();
+        try {
+            while (index.size() > maxHandles && evictOne()) {
+                // shrink to the new limit
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Set the maximum number of off-heap bytes used for storage.  Memory that
+     *  has already been allocated is only released by clear or close.
+     */
+    @Override
+    public void setMaximumSize(int maxSize) {
+        lock.writeLock().lock();
+        try {
+            slabs.setCapacity(maxSize);
+            while (slabs.getUsedBytes() > slabs.getCapacity() && evictOne()) {
+                // shrink to the new limit
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws Exception {
+        clear();
+    }
+
+    /** Index entry for one handle; firstBlock is -1 for a cached NOT_FOUND */
+    private static final class Entry {
+        private final HandleKey key;
+        private final int firstBlock;
+        private final int length;
+        private final int expiresAt;
+        private volatile boolean accessed;
+        // guarded by the lock
+        private boolean removed;
+
+        private Entry(HandleKey key, int firstBlock, int length, int expiresAt) {
+            this.key = key;
+            this.firstBlock = firstBlock;
+            this.length = length;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean notFound() {
+            return firstBlock < 0;
+        }
+    }
+}
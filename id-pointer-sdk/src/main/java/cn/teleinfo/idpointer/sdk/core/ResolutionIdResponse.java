@@ -9,6 +9,8 @@
 
 package cn.teleinfo.idpointer.sdk.core;
 
+import java.nio.ByteBuffer;
+
 public class ResolutionIdResponse extends AbstractIdResponse {
 
     public byte handle[];
@@ -44,6 +46,17 @@ public class ResolutionIdResponse extends AbstractIdResponse {
         return retValues;
     }
 
+    /**
+     * 返回值的只读视图，type/data在访问时才复制，只检查部分值时比getHandleValues开销小
+     */
+    public HandleValueView[] getHandleValueViews() throws HandleException {
+        HandleValueView retValues[] = new HandleValueView[values.length];
+        for (int i = 0; i < retValues.length; i++) {
+            retValues[i] = new HandleValueView(ByteBuffer.wrap(values[i]), 0);
+        }
+        return retValues;
+    }
+
     @Override
     public String toString() {
         StringBuffer sb = new StringBuffer(super.toString());
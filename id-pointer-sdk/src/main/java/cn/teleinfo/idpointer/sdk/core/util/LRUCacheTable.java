@@ -9,27 +9,33 @@
 
 package cn.teleinfo.idpointer.sdk.core.util;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 import java.util.*;
+import java.util.concurrent.ConcurrentMap;
 
 /*
- * Table that never exceeds a maximum number of elements.  Uses a Least
- * Recently Used(LRU) replacement strategy.
+ * Table that never exceeds a maximum number of elements.
  *
- * Adding, removing, getting, and contains key all have an additional
- * overhead of O(lg(n))
+ * Backed by a Caffeine bounded cache: reads are lock-free and only record
+ * the access in a striped buffer, so concurrent resolver threads no longer
+ * serialise on a global lock the way an access-ordered LinkedHashMap did.
+ * Eviction uses W-TinyLFU (frequency based admission with an LRU window)
+ * rather than strict LRU, and is performed on the calling thread.
  */
 public class LRUCacheTable<K, V> extends AbstractMap<K, V> {
-    private int maxsize;
-    private Map<K, V> map;
+    private volatile int maxsize;
+    private final Cache<K, V> cache;
+    private final ConcurrentMap<K, V> map;
 
     public LRUCacheTable(int maxsize) {
         this.maxsize = maxsize;
-        map = Collections.synchronizedMap(new LinkedHashMap<K, V>(maxsize, 1.0F, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-                return super.size() >= LRUCacheTable.this.maxsize;
-            }
-        });
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxsize)
+                .executor(Runnable::run)
+                .build();
+        this.map = cache.asMap();
     }
 
     @Override
@@ -43,6 +49,7 @@ public class LRUCacheTable<K, V> extends AbstractMap<K, V> {
 
     public void setMaxSize(int newsize) {
         maxsize = newsize;
+        cache.policy().eviction().ifPresent(eviction -> eviction.setMaximum(newsize));
     }
 
     @Override
@@ -99,4 +106,9 @@ public class LRUCacheTable<K, V> extends AbstractMap<K, V> {
     public Collection<V> values() {
         return map.values();
     }
+
+    /** Performs any pending eviction, so that size() reflects the bound */
+    public void cleanUp() {
+        cache.cleanUp();
+    }
 }
@@ -0,0 +1,217 @@
+package cn.teleinfo.idpointer.sdk.core.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.Closeable;
+import java.util.Arrays;
+
+/**
+ * 堆外内存分配器。内存按slab（默认1MB）向系统申请，每个slab切成定长的块，
+ * 一条记录占用一串块，块的前4个字节保存下一块的编号（-1表示结束），空闲块也按同样方式串成链表。
+ * <p>
+ * 块可以被任意长度的记录复用，释放的内存不会按长度被分隔（没有slab class钙化问题），代价是每条记录最多浪费一个块。
+ * slab按需申请，直到达到容量；缩小容量不会归还已申请的slab，只限制之后的使用量。
+ * <p>
+ * store/free/clear不是线程安全的；read只做绝对位置的读取，可以与其他read并发，但不能与修改并发。
+ */
+public class SlabAllocator implements Closeable {
+
+    public static final int DEFAULT_SLAB_SIZE = 1 << 20;
+    public static final int DEFAULT_BLOCK_SIZE = 128;
+
+    private static final int NEXT_SIZE = 4;
+    private static final int END = -1;
+
+    private final int slabSize;
+    private final int blockSize;
+    private final int payloadSize;
+    private final int blocksPerSlab;
+
+    private ByteBuf[] slabs = new ByteBuf[0];
+    private int maxBlocks;
+    // 已经从slab中切出的块数，编号小于它的块不是在用就是在空闲链表中
+    private int allocatedBlocks;
+    private int freeHead = END;
+    private int freeBlocks;
+    private int usedBlocks;
+
+    public SlabAllocator(long capacity) {
+        this(capacity, DEFAULT_SLAB_SIZE, DEFAULT_BLOCK_SIZE);
+    }
+
+    public SlabAllocator(long capacity, int slabSize, int blockSize) {
+        if (blockSize <= NEXT_SIZE || slabSize < blockSize) {
+            throw new IllegalArgumentException("invalid slab size " + slabSize + " or block size " + blockSize);
+        }
+        this.slabSize = slabSize;
+        this.blockSize = blockSize;
+        this.payloadSize = blockSize - NEXT_SIZE;
+        this.blocksPerSlab = slabSize / blockSize;
+        setCapacity(capacity);
+    }
+
+    /**
+     * @return 保存length字节需要的块数
+     */
+    public int blocksFor(int length) {
+        return Math.max(1, (length + payloadSize - 1) / payloadSize);
+    }
+
+    /**
+     * @return 在不超过容量的前提下是否还能保存length字节
+     */
+    public boolean canStore(int length) {
+        int needed = blocksFor(length);
+        if (usedBlocks + needed > maxBlocks) {
+            return false;
+        }
+        return freeBlocks + Math.max(0, maxBlocks - allocatedBlocks) >= needed;
+    }
+
+    /**
+     * @return 记录第一块的编号，空间不足时返回-1
+     */
+    public int store(byte[] src, int length) {
+        if (!canStore(length)) {
+            return END;
+        }
+        int needed = blocksFor(length);
+        int first = END;
+        int prev = END;
+        int offset = 0;
+        for (int i = 0; i < needed; i++) {
+            int block = takeBlock();
+            if (prev == END) {
+                first = block;
+            } else {
+                setNext(prev, block);
+            }
+            int chunk = Math.min(payloadSize, length - offset);
+            if (chunk > 0) {
+                slab(block).setBytes(position(block) + NEXT_SIZE, src, offset, chunk);
+                offset += chunk;
+            }
+            prev = block;
+        }
+        setNext(prev, END);
+        usedBlocks += needed;
+        return first;
+    }
+
+    /**
+     * 把从first开始保存的length字节读到dst
+     */
+    public void read(int first, byte[] dst, int length) {
+        int block = first;
+        int offset = 0;
+        while (offset < length) {
+            int chunk = Math.min(payloadSize, length - offset);
+            slab(block).getBytes(position(block) + NEXT_SIZE, dst, offset, chunk);
+            offset += chunk;
+            block = next(block);
+        }
+    }
+
+    /**
+     * 释放从first开始的整条记录
+     */
+    public void free(int first) {
+        int last = first;
+        int count = 1;
+        for (int block = next(first); block != END; block = next(block)) {
+            last = block;
+            count++;
+        }
+        setNext(last, freeHead);
+        freeHead = first;
+        freeBlocks += count;
+        usedBlocks -= count;
+    }
+
+    /**
+     * 释放所有slab
+     */
+    public void clear() {
+        for (ByteBuf slab : slabs) {
+            if (slab != null) {
+                slab.release();
+            }
+        }
+        Arrays.fill(slabs, null);
+        allocatedBlocks = 0;
+        freeHead = END;
+        freeBlocks = 0;
+        usedBlocks = 0;
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+
+    public void setCapacity(long capacity) {
+        long blocks = capacity / blockSize;
+        this.maxBlocks = (int) Math.min(blocks, Integer.MAX_VALUE - blocksPerSlab);
+        int slabCount = (maxBlocks + blocksPerSlab - 1) / blocksPerSlab;
+        if (slabCount > slabs.length) {
+            slabs = Arrays.copyOf(slabs, slabCount);
+        }
+    }
+
+    public long getCapacity() {
+        return (long) maxBlocks * blockSize;
+    }
+
+    public long getUsedBytes() {
+        return (long) usedBlocks * blockSize;
+    }
+
+    /**
+     * @return 已经向系统申请的堆外内存
+     */
+    public long getAllocatedBytes() {
+        long count = 0;
+        for (ByteBuf slab : slabs) {
+            if (slab != null) {
+                count++;
+            }
+        }
+        return count * slabSize;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    private int takeBlock() {
+        if (freeHead != END) {
+            int block = freeHead;
+            freeHead = next(block);
+            freeBlocks--;
+            return block;
+        }
+        int block = allocatedBlocks++;
+        int slabIndex = block / blocksPerSlab;
+        if (slabs[slabIndex] == null) {
+            slabs[slabIndex] = Unpooled.directBuffer(slabSize, slabSize);
+        }
+        return block;
+    }
+
+    private ByteBuf slab(int block) {
+        return slabs[block / blocksPerSlab];
+    }
+
+    private int position(int block) {
+        return (block % blocksPerSlab) * blockSize;
+    }
+
+    private int next(int block) {
+        return slab(block).getInt(position(block));
+    }
+
+    private void setNext(int block, int next) {
+        slab(block).setInt(position(block), next);
+    }
+}
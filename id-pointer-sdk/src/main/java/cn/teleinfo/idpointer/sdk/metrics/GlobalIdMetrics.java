@@ -0,0 +1,53 @@
+package cn.teleinfo.idpointer.sdk.metrics;
+
+import org.slf4j.Logger;
+
+import java.util.Iterator;
+import java.util.ServiceLoader;
+
+/**
+ * 全局的IdMetrics，未设置时使用ServiceLoader找到的第一个实现，没有则为IdMetrics.NOOP
+ */
+public final class GlobalIdMetrics {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(GlobalIdMetrics.class);
+
+    private static volatile IdMetrics instance;
+
+    private GlobalIdMetrics() {
+    }
+
+    public static IdMetrics getInstance() {
+        IdMetrics metrics = instance;
+        if (metrics == null) {
+            synchronized (GlobalIdMetrics.class) {
+                metrics = instance;
+                if (metrics == null) {
+                    metrics = load();
+                    instance = metrics;
+                }
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * 应在创建客户端之前设置，已创建的连接池不会重新登记
+     */
+    public static void setInstance(IdMetrics metrics) {
+        instance = metrics == null ? IdMetrics.NOOP : metrics;
+    }
+
+    private static IdMetrics load() {
+        try {
+            Iterator<IdMetrics> iterator = ServiceLoader.load(IdMetrics.class).iterator();
+            if (iterator.hasNext()) {
+                IdMetrics metrics = iterator.next();
+                log.info("using metrics {}", metrics.getClass().getName());
+                return metrics;
+            }
+        } catch (Throwable e) {
+            log.warn("load metrics error", e);
+        }
+        return IdMetrics.NOOP;
+    }
+}
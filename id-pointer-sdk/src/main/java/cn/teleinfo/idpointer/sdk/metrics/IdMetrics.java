@@ -0,0 +1,79 @@
+package cn.teleinfo.idpointer.sdk.metrics;
+
+import cn.teleinfo.idpointer.sdk.transport.TimedChannelPool;
+
+/**
+ * 客户端与传输层的指标接口，默认实现为空操作。
+ * <p>
+ * 通过GlobalIdMetrics.setInstance设置，或以ServiceLoader（META-INF/services/cn.teleinfo.idpointer.sdk.metrics.IdMetrics）提供实现，
+ * 可适配Micrometer、Prometheus等监控系统。方法在IO线程中调用，实现不能阻塞。
+ */
+public interface IdMetrics {
+
+    IdMetrics NOOP = new IdMetrics() {
+    };
+
+    /**
+     * 收到响应
+     *
+     * @param opCode       请求的操作码
+     * @param responseCode 响应码
+     * @param latencyNanos 从创建请求到收到响应的时间
+     */
+    default void recordResponse(int opCode, int responseCode, long latencyNanos) {
+    }
+
+    /**
+     * 请求超时未收到响应
+     */
+    default void recordTimeout(int opCode) {
+    }
+
+    /**
+     * 从连接池获取channel
+     *
+     * @param waitNanos 等待时间
+     * @param success   是否获取成功
+     */
+    default void recordPoolAcquire(long waitNanos, boolean success) {
+    }
+
+    /**
+     * 一次登录（含站点信息、challenge应答）
+     */
+    default void recordLogin(long durationNanos, boolean success) {
+    }
+
+    /**
+     * 加密发送的字节数（密文，含IV）
+     */
+    default void recordEncryptedBytes(int bytes) {
+    }
+
+    /**
+     * 连接池创建后登记，可通过acquiredChannelCount/idleChannelCount读取活跃与空闲连接数
+     */
+    default void registerChannelPool(String name, TimedChannelPool channelPool) {
+    }
+
+    /**
+     * 连接池关闭后注销
+     */
+    default void unregisterChannelPool(TimedChannelPool channelPool) {
+    }
+
+    /**
+     * 定期清理关闭的空闲或已断开的channel
+     *
+     * @param name    连接池名称，同registerChannelPool
+     * @param evicted 关闭的channel数
+     */
+    default void recordIdleChannelsEvicted(String name, int evicted) {
+    }
+
+    /**
+     * 长时间未使用的连接池被移除
+     */
+    default void recordChannelPoolEvicted(String name) {
+    }
+}
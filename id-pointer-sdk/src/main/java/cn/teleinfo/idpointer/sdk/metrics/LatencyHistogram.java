@@ -0,0 +1,73 @@
+package cn.teleinfo.idpointer.sdk.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按2的幂划分桶的耗时直方图，第i个桶记录[2^(i-1), 2^i)微秒，记录时无锁
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKET_COUNT = 40;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        long micros = nanos / 1000;
+        int bucket = Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets[bucket].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getMeanNanos() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getTotalNanos() / n;
+    }
+
+    /**
+     * 分位数所在桶的上界，最大不超过记录到的最大值
+     *
+     * @param percentile 0到1之间
+     */
+    public long getPercentileNanos(double percentile) {
+        long n = getCount();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+                return Math.min(getMaxNanos(), (1L << i) * 1000);
+            }
+        }
+        return getMaxNanos();
+    }
+}
@@ -0,0 +1,134 @@
+package cn.teleinfo.idpointer.sdk.metrics;
+
+import cn.teleinfo.idpointer.sdk.transport.TimedChannelPool;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存中的IdMetrics实现，不依赖外部监控系统，可用于压测或定期打印
+ */
+public class SimpleIdMetrics implements IdMetrics {
+
+    private final ConcurrentHashMap<Integer, LatencyHistogram> responseLatencies = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, LongAdder> responseCodes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, LongAdder> timeouts = new ConcurrentHashMap<>();
+    private final LatencyHistogram poolAcquireWait = new LatencyHistogram();
+    private final LongAdder poolAcquireFailures = new LongAdder();
+    private final LatencyHistogram loginDuration = new LatencyHistogram();
+    private final LongAdder loginFailures = new LongAdder();
+    private final LongAdder encryptedBytes = new LongAdder();
+    private final ConcurrentHashMap<TimedChannelPool, String> channelPools = new ConcurrentHashMap<>();
+    private final LongAdder evictedChannels = new LongAdder();
+    private final LongAdder evictedChannelPools = new LongAdder();
+
+    @Override
+    public void recordResponse(int opCode, int responseCode, long latencyNanos) {
+        responseLatencies.computeIfAbsent(opCode, k -> new LatencyHistogram()).record(latencyNanos);
+        responseCodes.computeIfAbsent(responseCode, k -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void recordTimeout(int opCode) {
+        timeouts.computeIfAbsent(opCode, k -> new LongAdder()).increment();
+    }
+
+    @Override
+    public void recordPoolAcquire(long waitNanos, boolean success) {
+        poolAcquireWait.record(waitNanos);
+        if (!success) {
+            poolAcquireFailures.increment();
+        }
+    }
+
+    @Override
+    public void recordLogin(long durationNanos, boolean success) {
+        loginDuration.record(durationNanos);
+        if (!success) {
+            loginFailures.increment();
+        }
+    }
+
+    @Override
+    public void recordEncryptedBytes(int bytes) {
+        encryptedBytes.add(bytes);
+    }
+
+    @Override
+    public void registerChannelPool(String name, TimedChannelPool channelPool) {
+        channelPools.put(channelPool, name);
+    }
+
+    @Override
+    public void unregisterChannelPool(TimedChannelPool channelPool) {
+        channelPools.remove(channelPool);
+    }
+
+    @Override
+    public void recordIdleChannelsEvicted(String name, int evicted) {
+        evictedChannels.add(evicted);
+    }
+
+    @Override
+    public void recordChannelPoolEvicted(String name) {
+        evictedChannelPools.increment();
+    }
+
+    /**
+     * 某个操作码的响应耗时，没有记录时返回null
+     */
+    public LatencyHistogram getResponseLatency(int opCode) {
+        return responseLatencies.get(opCode);
+    }
+
+    public long getResponseCount(int responseCode) {
+        LongAdder adder = responseCodes.get(responseCode);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public long getTimeoutCount(int opCode) {
+        LongAdder adder = timeouts.get(opCode);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public LatencyHistogram getPoolAcquireWait() {
+        return poolAcquireWait;
+    }
+
+    public long getPoolAcquireFailures() {
+        return poolAcquireFailures.sum();
+    }
+
+    public LatencyHistogram getLoginDuration() {
+        return loginDuration;
+    }
+
+    public long getLoginFailures() {
+        return loginFailures.sum();
+    }
+
+    public long getEncryptedBytes() {
+        return encryptedBytes.sum();
+    }
+
+    public long getEvictedChannels() {
+        return evictedChannels.sum();
+    }
+
+    public long getEvictedChannelPools() {
+        return evictedChannelPools.sum();
+    }
+
+    /**
+     * 已登记连接池的当前活跃与空闲连接数，值为{active, idle}，同名连接池合并计数
+     */
+    public Map<String, int[]> getChannelPoolUsage() {
+        Map<String, int[]> usage = new HashMap<>();
+        channelPools.forEach((channelPool, name) -> usage.merge(name, new int[]{channelPool.acquiredChannelCount(), channelPool.idleChannelCount()},
+                (a, b) -> new int[]{a[0] + b[0], a[1] + b[1]}));
+        return Collections.unmodifiableMap(usage);
+    }
+}
@@ -1,26 +1,23 @@
 package cn.teleinfo.idpointer.sdk.protocol.decoder;
 
-import cn.hutool.crypto.Mode;
-import cn.hutool.crypto.Padding;
-import cn.hutool.crypto.symmetric.SM4;
 import cn.teleinfo.idpointer.sdk.core.*;
 import cn.teleinfo.idpointer.sdk.exception.IDException;
-import cn.teleinfo.idpointer.sdk.security.HdlSecurityProvider;
 import cn.teleinfo.idpointer.sdk.session.SessionDefault;
 import cn.teleinfo.idpointer.sdk.session.v3.Session;
 import cn.teleinfo.idpointer.sdk.transport.MessagePackets;
 import cn.teleinfo.idpointer.sdk.transport.MessagePacketsManager;
 import cn.teleinfo.idpointer.sdk.transport.Transport;
 import cn.teleinfo.idpointer.sdk.transport.v3.IdTcpTransport;
+import cn.teleinfo.idpointer.sdk.util.EnvelopeUtils;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
 import io.netty.util.Attribute;
-import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 
-import javax.crypto.Cipher;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
@@ -28,10 +25,10 @@ public class HandleDecoder extends ByteToMessageDecoder {
 
 
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(HandleDecoder.class);
-    private MessagePacketsManager messagePacketsManager;
+    private final MessagePacketsManager messagePacketsManager;
 
     public HandleDecoder() {
-
+        this.messagePacketsManager = new MessagePacketsManager();
     }
 
     @Override
@@ -45,62 +42,59 @@ public class HandleDecoder extends ByteToMessageDecoder {
     protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
         if (in.readableBytes() < Common.MESSAGE_ENVELOPE_SIZE) {
             return null;
-        } else {
-            in.markReaderIndex();
-
-            // 当前只检查了长度
-            MessageEnvelope rcvEnvelope = new MessageEnvelope();
-            byte[] envBuf = new byte[Common.MESSAGE_ENVELOPE_SIZE];
-            in.readBytes(envBuf);
-
-            Encoder.decodeEnvelope(envBuf, rcvEnvelope);
-
-            if (in.readableBytes() < rcvEnvelope.messageLength) {
-                in.resetReaderIndex();
-                return null;
-            }
+        }
 
-            byte[] messageBuf = new byte[rcvEnvelope.messageLength];
-            in.readBytes(messageBuf);
+        // 信封原地解析，消息不完整时不移动readerIndex
+        MessageEnvelope rcvEnvelope = new MessageEnvelope();
+        EnvelopeUtils.decodeEnvelope(in, in.readerIndex(), rcvEnvelope);
+        if (in.readableBytes() < Common.MESSAGE_ENVELOPE_SIZE + rcvEnvelope.messageLength) {
+            return null;
+        }
 
+        if (log.isTraceEnabled()) {
+            log.trace("response data <==: {}", ByteBufUtil.hexDump(in, in.readerIndex(), Common.MESSAGE_ENVELOPE_SIZE + rcvEnvelope.messageLength));
+        }
+        in.skipBytes(Common.MESSAGE_ENVELOPE_SIZE);
+        ByteBuf body = in.readRetainedSlice(rcvEnvelope.messageLength);
+        try {
             if (rcvEnvelope.encrypted) {
-                log.debug("encrypted: {}",rcvEnvelope.encrypted);
-                // todo:响应解密
-                messageBuf = decryptMessage(ctx, rcvEnvelope, messageBuf);
+                log.debug("encrypted: {}", rcvEnvelope.encrypted);
+                ByteBuffer messageBuf = decryptMessage(ctx, rcvEnvelope, body);
+                return decodeMessage(rcvEnvelope, messageBuf.array(), messageBuf.arrayOffset() + messageBuf.position());
             }
+            if (!rcvEnvelope.truncated) {
+                // 堆内存在底层数组上解码；直接内存（池化分配器的默认情况）会先完整复制一次，
+                // 解码出的消息在body释放后仍要使用，不能引用池化的直接内存
+                AbstractMessage message = Encoder.decodeMessage(body.nioBuffer(), rcvEnvelope);
+                log.debug("<== receive response, requestId {},detail {}", message.requestId, message);
+                return message;
+            }
+            return decodeMessage(rcvEnvelope, ByteBufUtil.getBytes(body), 0);
+        } finally {
+            body.release();
+        }
+    }
 
-            if (rcvEnvelope.truncated) {
-                //消息分消息信封传传递
-                MessagePackets messagePackets = messagePacketsManager.getMessagePackets(rcvEnvelope);
-
-                if (messagePackets == null) {
-                    messagePackets = new MessagePackets(rcvEnvelope.messageLength);
-                }
-
-                messagePackets.receivePacket(rcvEnvelope, messageBuf);
+    private Object decodeMessage(MessageEnvelope rcvEnvelope, byte[] messageBuf, int offset) throws HandleException {
+        if (rcvEnvelope.truncated) {
+            //消息分消息信封传传递
+            MessagePackets messagePackets = messagePacketsManager.getMessagePackets(rcvEnvelope);
+            messagePackets.receivePacket(rcvEnvelope, Arrays.copyOfRange(messageBuf, offset, offset + rcvEnvelope.messageLength));
 
-                if (messagePackets.isReceiveCompleted()) {
-                    if(log.isTraceEnabled()){
-                        log.trace("response data <==: {}", Hex.encodeHexString(messagePackets.getMessageBytes()));
-                    }
-                    AbstractMessage message = Encoder.decodeMessage(messagePackets.getMessageBytes(), 0, rcvEnvelope);
-                    log.debug("<== receive response, requestId {},detail {}", message.requestId, message);
-                    return message;
-                }
+            if (!messagePackets.isReceiveCompleted()) {
                 return null;
-
-            } else {
-                if(log.isTraceEnabled()) {
-                    log.trace("response data <==: {}{}", Hex.encodeHexString(envBuf), Hex.encodeHexString(messageBuf));
-                }
-                AbstractMessage message = Encoder.decodeMessage(messageBuf, 0, rcvEnvelope);
-                log.debug("<== receive response, requestId {},detail {}", message.requestId, message);
-                return message;
             }
+            messagePacketsManager.removeMessagePackets(rcvEnvelope.requestId);
+            messageBuf = messagePackets.getMessageBytes();
+            offset = 0;
         }
+
+        AbstractMessage message = Encoder.decodeMessage(messageBuf, offset, rcvEnvelope);
+        log.debug("<== receive response, requestId {},detail {}", message.requestId, message);
+        return message;
     }
 
-    private byte[] decryptMessage(ChannelHandlerContext ctx, MessageEnvelope rcvEnvelope, byte[] messageBuf) throws IDException, HandleException {
+    private ByteBuffer decryptMessage(ChannelHandlerContext ctx, MessageEnvelope rcvEnvelope, ByteBuf messageBuf) throws IDException, HandleException {
         Channel channel = ctx.channel();
         Attribute<SessionDefault> attr = channel.attr(IdTcpTransport.SESSION_KEY);
 
@@ -109,43 +103,18 @@ public class HandleDecoder extends ByteToMessageDecoder {
             throw new IDException(IDException.ENCRYPTION_ERROR, "session not setup while decrypt");
         }
 
-        int offset = 0;
-        int len = messageBuf.length;
+        ByteBuffer plain;
         try {
-            if (sessionDefault.getSessionKeyAlgorithmCode() == HdlSecurityProvider.ENCRYPT_ALG_SM4) {
-                // todo: key初始化
-                SM4 sm4 = new SM4(Mode.CBC, Padding.PKCS5Padding, sessionDefault.getSessionKey(),  sessionDefault.getSessionKey());
-
-                byte[] bytes = Arrays.copyOfRange(messageBuf, offset, len);
-                messageBuf = sm4.decrypt(bytes);
-            }else{
-                // create, initialize and cache a new decryption cipher
-                HdlSecurityProvider provider = HdlSecurityProvider.getInstance();
-                if (provider == null) {
-                    throw new HandleException(HandleException.MISSING_CRYPTO_PROVIDER, "Encryption/Key generation engine missing");
-                }
-
-                boolean legacy = !AbstractMessage.hasEqualOrGreaterVersion(rcvEnvelope.protocolMajorVersion, rcvEnvelope.protocolMinorVersion, 2, 4);
-                byte[] iv = null;
-                if (!legacy) {
-                    int ivSize = provider.getIvSize(sessionDefault.getSessionKeyAlgorithmCode(), rcvEnvelope.protocolMajorVersion, rcvEnvelope.protocolMinorVersion);
-                    if (ivSize > 0) iv = Util.substring(messageBuf, offset, offset + ivSize);
-                    offset += ivSize;
-                    len -= ivSize;
-                }
-                Cipher decryptCipher = provider.getCipher(sessionDefault.getSessionKeyAlgorithmCode(), sessionDefault.getSessionKey(), Cipher.DECRYPT_MODE, iv, rcvEnvelope.protocolMajorVersion, rcvEnvelope.protocolMinorVersion);
-                messageBuf = decryptCipher.doFinal(messageBuf, offset, len);
-            }
-
-
+            // decoder在channel的EventLoop线程中执行，可以复用会话上缓存的Cipher
+            plain = sessionDefault.decryptMessage(messageBuf, rcvEnvelope.protocolMajorVersion, rcvEnvelope.protocolMinorVersion);
         } catch (Exception e) {
             if (e instanceof HandleException) throw (HandleException) e;
             throw new HandleException(HandleException.ENCRYPTION_ERROR, "Error decrypting buffer", e);
         }
 
         rcvEnvelope.encrypted = false;
-        rcvEnvelope.messageLength = messageBuf.length;
-        return messageBuf;
+        rcvEnvelope.messageLength = plain.remaining();
+        return plain;
     }
 
 
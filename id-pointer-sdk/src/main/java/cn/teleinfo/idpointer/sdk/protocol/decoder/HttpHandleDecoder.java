@@ -0,0 +1,53 @@
+package cn.teleinfo.idpointer.sdk.protocol.decoder;
+
+import cn.teleinfo.idpointer.sdk.core.*;
+import cn.teleinfo.idpointer.sdk.util.EnvelopeUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.handler.codec.http.HttpUtil;
+import org.slf4j.Logger;
+
+import java.util.List;
+
+/**
+ * 将HttpObjectAggregator聚合后的响应解码为消息，消息体为信封+消息。HTTP/1.1与HTTP/2流共用。
+ * 服务器不保持连接（Connection: close、HTTP/1.0）时解码后关闭channel，由连接池丢弃。
+ * 非2xx状态码抛出HandleException，加密响应不支持（HTTP传输不建立会话）。
+ */
+public class HttpHandleDecoder extends MessageToMessageDecoder<FullHttpResponse> {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(HttpHandleDecoder.class);
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, FullHttpResponse response, List<Object> out) throws Exception {
+        HttpStatusClass statusClass = response.status().codeClass();
+        if (statusClass == HttpStatusClass.INFORMATIONAL) {
+            // 100 Continue等临时响应，继续等待后面的响应
+            return;
+        }
+        if (statusClass != HttpStatusClass.SUCCESS) {
+            throw new HandleException(HandleException.SERVER_ERROR, "HTTP error: " + response.status());
+        }
+
+        ByteBuf body = response.content();
+        MessageEnvelope rcvEnvelope = new MessageEnvelope();
+        EnvelopeUtils.decodeEnvelope(body, body.readerIndex(), rcvEnvelope);
+        if (body.readableBytes() < Common.MESSAGE_ENVELOPE_SIZE + rcvEnvelope.messageLength) {
+            throw new HandleException(HandleException.MESSAGE_FORMAT_ERROR, "HTTP body shorter than message");
+        }
+        if (rcvEnvelope.encrypted) {
+            throw new HandleException(HandleException.ENCRYPTION_ERROR, "Cannot decrypt http response without session");
+        }
+        AbstractMessage message = Encoder.decodeMessage(body.nioBuffer(body.readerIndex() + Common.MESSAGE_ENVELOPE_SIZE, rcvEnvelope.messageLength), rcvEnvelope);
+        log.debug("<== receive http response, requestId {},detail {}", message.requestId, message);
+
+        if (!HttpUtil.isKeepAlive(response)) {
+            // channelInactive在之后才触发，响应先交给后面的handler；完成promise时channel已关闭，不会被连接池复用
+            ctx.close();
+        }
+        out.add(message);
+    }
+}
@@ -3,11 +3,10 @@ package cn.teleinfo.idpointer.sdk.protocol.encoder;
 import cn.teleinfo.idpointer.sdk.core.AbstractMessage;
 import cn.teleinfo.idpointer.sdk.transport.MessagePacketsManager;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
-import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 
 public class HandleEncoder extends MessageToByteEncoder<AbstractMessage> {
@@ -19,19 +18,14 @@ public class HandleEncoder extends MessageToByteEncoder<AbstractMessage> {
     protected void encode(ChannelHandlerContext ctx, AbstractMessage req, ByteBuf out) throws Exception {
 
         Channel channel = ctx.channel();
-        log.info("==> {} send requestId {},detail {}", channel.localAddress(), req.requestId, req);
-        ByteBuf byteBuf = messagePacketsManager.getTcpMessageEnvelopeForRequest(req, channel);
+        log.debug("==> {} send requestId {},detail {}", channel.localAddress(), req.requestId, req);
+        int start = out.writerIndex();
+        // 直接编码进MessageToByteEncoder分配的池化缓冲
+        messagePacketsManager.writeTcpMessageEnvelopeForRequest(req, channel, out);
 
-        if(log.isDebugEnabled()){
-            byteBuf.markReaderIndex();
-            byte[] dataArray = new byte[byteBuf.readableBytes()];
-            byteBuf.readBytes(dataArray);
-            log.debug("req data ==> : {}", Hex.encodeHexString(dataArray));
-            byteBuf.resetReaderIndex();
+        if (log.isDebugEnabled()) {
+            log.debug("req data ==> : {}", ByteBufUtil.hexDump(out, start, out.writerIndex() - start));
         }
 
-
-        out.writeBytes(Unpooled.wrappedBuffer(byteBuf));
-
     }
 }
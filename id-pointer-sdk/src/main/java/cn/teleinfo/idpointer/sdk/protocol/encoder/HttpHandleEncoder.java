@@ -0,0 +1,78 @@
+package cn.teleinfo.idpointer.sdk.protocol.encoder;
+
+import cn.teleinfo.idpointer.sdk.core.AbstractIdRequest;
+import cn.teleinfo.idpointer.sdk.core.Common;
+import cn.teleinfo.idpointer.sdk.core.Util;
+import cn.teleinfo.idpointer.sdk.core.stream.util.StringUtils;
+import cn.teleinfo.idpointer.sdk.transport.MessagePacketsManager;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
+import org.slf4j.Logger;
+
+import java.util.List;
+
+/**
+ * 将请求转换为POST的FullHttpRequest，消息体与TCP相同（信封+消息），格式同HandleResolver.sendHttpOrHttpsRequest。
+ * HTTP/1.1连接上由HttpClientCodec编码，HTTP/2流上由Http2StreamFrameToHttpObjectCodec转换为HEADERS/DATA帧
+ */
+public class HttpHandleEncoder extends MessageToMessageEncoder<AbstractIdRequest> {
+
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(HttpHandleEncoder.class);
+    private static final String USER_AGENT = "CNRI-HCL 2.0";
+
+    private final MessagePacketsManager messagePacketsManager = new MessagePacketsManager();
+    private final String host;
+    private final String path;
+
+    /**
+     * @param host Host头的值，HTTP/2中转换为:authority
+     * @param path 请求路径前缀，可以为null
+     */
+    public HttpHandleEncoder(String host, String path) {
+        this.host = host;
+        if (path != null) {
+            if (!path.startsWith("/")) path = "/" + path;
+            if (path.endsWith("/")) path = path.substring(0, path.length() - 1);
+        }
+        this.path = path;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, AbstractIdRequest req, List<Object> out) throws Exception {
+        Channel channel = ctx.channel();
+        log.debug("==> {} send http requestId {},detail {}", channel, req.requestId, req);
+
+        ByteBuf body = ctx.alloc().buffer();
+        try {
+            messagePacketsManager.writeTcpMessageEnvelopeForRequest(req, channel, body);
+        } catch (Exception e) {
+            body.release();
+            throw e;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("req data ==> : {}", ByteBufUtil.hexDump(body));
+        }
+
+        // ParameterParser使用!作为分隔符，不能用encodeURLPath
+        String uri = "/" + StringUtils.encodeURLComponent(req.handle == null ? "" : Util.decodeString(req.handle));
+        if (path != null) {
+            uri = path + uri;
+        }
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, uri, body);
+        request.headers()
+                .set(HttpHeaderNames.HOST, host)
+                .set(HttpHeaderNames.ACCEPT, Common.HDL_MIME_TYPE)
+                .set(HttpHeaderNames.USER_AGENT, USER_AGENT)
+                .set(HttpHeaderNames.CONTENT_TYPE, Common.HDL_MIME_TYPE)
+                .setInt(HttpHeaderNames.CONTENT_LENGTH, body.readableBytes());
+        out.add(request);
+    }
+}
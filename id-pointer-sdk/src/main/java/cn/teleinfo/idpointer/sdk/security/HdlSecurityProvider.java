@@ -12,6 +12,7 @@ package cn.teleinfo.idpointer.sdk.security;
 import cn.teleinfo.idpointer.sdk.security.provider.GenericProvider;
 
 import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
 import javax.crypto.interfaces.DHPrivateKey;
 import javax.crypto.interfaces.DHPublicKey;
 import java.math.BigInteger;
@@ -67,6 +68,17 @@ public abstract class HdlSecurityProvider {
      */
     public abstract Cipher getCipher(int algorithm, byte secretKey[], int direction, byte[] iv, int majorProtocolVersion, int minorProtocolVersion) throws Exception;
 
+    /** Construct the secret key that getCipher() would use for the given algorithm and key bytes.
+     * Callers that keep a Cipher around can re-initialize it with this key instead of calling getCipher() again. */
+    public SecretKey getSecretKey(int algorithm, byte secretKey[]) throws Exception {
+        throw new NoSuchAlgorithmException("Secret key construction not supported");
+    }
+
+    /** Returns the transformation name of the cipher generated by getCipher(), suitable for Cipher.getInstance(). */
+    public String getCipherTransformation(int algorithm, int majorProtocolVersion, int minorProtocolVersion) throws Exception {
+        throw new NoSuchAlgorithmException("Cipher transformation not supported");
+    }
+
     /** Returns the length in bytes of the initialization vector used by the cipher generated by getCipher().  Returns 0 if no initialization vector. */
     public abstract int getIvSize(int algorithm, int majorProtocolVersion, int minorProtocolVersion);
 
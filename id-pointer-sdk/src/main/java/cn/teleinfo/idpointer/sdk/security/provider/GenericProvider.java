@@ -37,53 +37,61 @@ public final class GenericProvider extends HdlSecurityProvider {
      */
     @Override
     public Cipher getCipher(int algorithm, byte secretKey[], int direction, byte[] iv, int majorProtocolVersion, int minorProtocolVersion) throws Exception {
-        Cipher cipher;
-        SecretKey key;
+        SecretKey key = getSecretKey(algorithm, secretKey);
+        Cipher cipher = Cipher.getInstance(getCipherTransformation(algorithm, majorProtocolVersion, minorProtocolVersion));
+        if (iv != null) {
+            cipher.init(direction, key, new IvParameterSpec(iv));
+        } else {
+            cipher.init(direction, key);
+        }
+        return cipher;
+    }
 
+    @Override
+    public SecretKey getSecretKey(int algorithm, byte secretKey[]) throws Exception {
         String keyAlg;
-        String cipherAlg;
-
         KeySpec spec;
-        boolean legacy = !AbstractMessage.hasEqualOrGreaterVersion(majorProtocolVersion, minorProtocolVersion, 2, 4);
         switch (algorithm) {
         case HdlSecurityProvider.ENCRYPT_ALG_DES:
             keyAlg = "DES";
-            cipherAlg = legacy ? "DES/ECB/PKCS5Padding" : "DES/CBC/PKCS5Padding";
             spec = new DESKeySpec(secretKey);
             break;
         case HdlSecurityProvider.ENCRYPT_ALG_AES:
             keyAlg = "AES";
-            cipherAlg = legacy ? "AES" : "AES/CBC/PKCS5Padding";
             if (secretKey.length > 16) secretKey = Util.substring(secretKey, 0, 16);
             spec = new SecretKeySpec(secretKey, "AES");
             break;
         case HdlSecurityProvider.ENCRYPT_ALG_DESEDE:
             keyAlg = "DESede";
-            cipherAlg = legacy ? "DESede/ECB/PKCS5Padding" : "DESede/CBC/PKCS5Padding";
             spec = new DESedeKeySpec(secretKey);
             break;
         //case HdlSecurityProvider.ENCRYPT_ALG_SM4:
         //    //  sm4 通过外部判断支持
         //    keyAlg = "sm4";
-        //    cipherAlg = "sm4";
         //    spec = new SM4KeySpec(secretKey);
         //    break;
         default:
             throw new Exception("Invalid encryption algorithm code: " + algorithm);
         }
 
-        if (spec instanceof SecretKeySpec) key = (SecretKeySpec) spec;
-        else {
-            SecretKeyFactory factory = SecretKeyFactory.getInstance(keyAlg);
-            key = factory.generateSecret(spec);
-        }
-        cipher = Cipher.getInstance(cipherAlg);
-        if (iv != null) {
-            cipher.init(direction, key, new IvParameterSpec(iv));
-        } else {
-            cipher.init(direction, key);
+        if (spec instanceof SecretKeySpec) return (SecretKeySpec) spec;
+        SecretKeyFactory factory = SecretKeyFactory.getInstance(keyAlg);
+        return factory.generateSecret(spec);
+    }
+
+    @Override
+    public String getCipherTransformation(int algorithm, int majorProtocolVersion, int minorProtocolVersion) throws Exception {
+        boolean legacy = !AbstractMessage.hasEqualOrGreaterVersion(majorProtocolVersion, minorProtocolVersion, 2, 4);
+        switch (algorithm) {
+        case HdlSecurityProvider.ENCRYPT_ALG_DES:
+            return legacy ? "DES/ECB/PKCS5Padding" : "DES/CBC/PKCS5Padding";
+        case HdlSecurityProvider.ENCRYPT_ALG_AES:
+            return legacy ? "AES" : "AES/CBC/PKCS5Padding";
+        case HdlSecurityProvider.ENCRYPT_ALG_DESEDE:
+            return legacy ? "DESede/ECB/PKCS5Padding" : "DESede/CBC/PKCS5Padding";
+        default:
+            throw new Exception("Invalid encryption algorithm code: " + algorithm);
         }
-        return cipher;
     }
 
     @Override
@@ -1,8 +1,18 @@
 package cn.teleinfo.idpointer.sdk.session;
 
+import cn.hutool.crypto.SecureUtil;
+import cn.teleinfo.idpointer.sdk.core.AbstractMessage;
+import cn.teleinfo.idpointer.sdk.core.HandleException;
 import cn.teleinfo.idpointer.sdk.core.ValueReference;
 import cn.teleinfo.idpointer.sdk.security.HdlSecurityProvider;
 import cn.teleinfo.idpointer.sdk.session.v3.Session;
+import io.netty.buffer.ByteBuf;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
 
 public class SessionDefault implements Session {
     private int sessionId = -1;
@@ -12,6 +22,13 @@ public class SessionDefault implements Session {
     private byte sessionKey[];
     private int sessionKeyAlgorithmCode;
 
+    // 会话密钥初始化后的加解密上下文，按需创建并复用；Cipher非线程安全，只在channel的EventLoop线程中使用
+    private SecretKey secretKey;
+    private Cipher encryptCipher;
+    private Cipher decryptCipher;
+    private String encryptTransformation;
+    private String decryptTransformation;
+
     public SessionDefault(int sessionId) {
         this.sessionId = sessionId;
     }
@@ -30,6 +47,7 @@ public class SessionDefault implements Session {
 
     public void setSessionKey(byte[] sessionKey) {
         this.sessionKey = sessionKey;
+        resetCiphers();
     }
 
     public void setSessionKeyAlgorithmCode(int sessionKeyAlgorithmCode) {
@@ -38,14 +56,12 @@ public class SessionDefault implements Session {
             case HdlSecurityProvider.ENCRYPT_ALG_DES:
             case HdlSecurityProvider.ENCRYPT_ALG_DESEDE:
             case HdlSecurityProvider.ENCRYPT_ALG_SM4:
-                //        encryptCipher = null;
-                //        decryptCipher = null;
-                //this.sessionKeyAlgorithmCode = sessionKeyAlgorithmCode;
                 break;
             default:
                 throw new IllegalArgumentException("Invalid algorithm ID: " + sessionKeyAlgorithmCode);
         }
         this.sessionKeyAlgorithmCode = sessionKeyAlgorithmCode;
+        resetCiphers();
     }
 
     public int getSessionId() {
@@ -69,5 +85,125 @@ public class SessionDefault implements Session {
         return sessionKeyAlgorithmCode;
     }
 
+    /**
+     * 加密message，密文直接写入out
+     * <p>
+     * SM4使用CBC模式，密钥同时作为IV，只输出密文；其他算法每条消息重新生成IV，输出IV+密文
+     */
+    public void encryptMessage(byte[] message, ByteBuf out, int majorProtocolVersion, int minorProtocolVersion) throws Exception {
+        Cipher cipher;
+        if (sessionKeyAlgorithmCode == HdlSecurityProvider.ENCRYPT_ALG_SM4) {
+            if (encryptCipher == null) {
+                encryptCipher = newSm4Cipher(Cipher.ENCRYPT_MODE);
+            }
+            cipher = encryptCipher;
+        } else {
+            HdlSecurityProvider provider = getProvider();
+            String transformation = provider.getCipherTransformation(sessionKeyAlgorithmCode, majorProtocolVersion, minorProtocolVersion);
+            if (encryptCipher == null || !transformation.equals(encryptTransformation)) {
+                encryptCipher = Cipher.getInstance(transformation);
+                encryptTransformation = transformation;
+            }
+            cipher = encryptCipher;
+            // 重新初始化以生成新的IV
+            cipher.init(Cipher.ENCRYPT_MODE, getSecretKey(provider));
+            byte[] iv = cipher.getIV();
+            if (iv != null) {
+                out.writeBytes(iv);
+            }
+        }
+        try {
+            doFinal(cipher, ByteBuffer.wrap(message), out);
+        } catch (Exception e) {
+            // 出错后Cipher状态不确定，下次重新创建
+            encryptCipher = null;
+            throw e;
+        }
+    }
 
+    /**
+     * 解密message的可读部分，不移动readerIndex
+     *
+     * @return 明文，位于返回缓冲的position到limit之间
+     */
+    public ByteBuffer decryptMessage(ByteBuf message, int majorProtocolVersion, int minorProtocolVersion) throws Exception {
+        ByteBuffer in = message.nioBuffer();
+        Cipher cipher;
+        if (sessionKeyAlgorithmCode == HdlSecurityProvider.ENCRYPT_ALG_SM4) {
+            if (decryptCipher == null) {
+                decryptCipher = newSm4Cipher(Cipher.DECRYPT_MODE);
+            }
+            cipher = decryptCipher;
+        } else {
+            HdlSecurityProvider provider = getProvider();
+            String transformation = provider.getCipherTransformation(sessionKeyAlgorithmCode, majorProtocolVersion, minorProtocolVersion);
+            if (decryptCipher == null || !transformation.equals(decryptTransformation)) {
+                decryptCipher = Cipher.getInstance(transformation);
+                decryptTransformation = transformation;
+            }
+            cipher = decryptCipher;
+            boolean legacy = !AbstractMessage.hasEqualOrGreaterVersion(majorProtocolVersion, minorProtocolVersion, 2, 4);
+            int ivSize = legacy ? 0 : provider.getIvSize(sessionKeyAlgorithmCode, majorProtocolVersion, minorProtocolVersion);
+            if (ivSize > 0) {
+                if (in.remaining() < ivSize) {
+                    throw new HandleException(HandleException.ENCRYPTION_ERROR, "Encrypted message too short");
+                }
+                byte[] iv = new byte[ivSize];
+                in.get(iv);
+                cipher.init(Cipher.DECRYPT_MODE, getSecretKey(provider), new IvParameterSpec(iv));
+            } else {
+                cipher.init(Cipher.DECRYPT_MODE, getSecretKey(provider));
+            }
+        }
+        ByteBuffer plain = ByteBuffer.allocate(cipher.getOutputSize(in.remaining()));
+        try {
+            cipher.doFinal(in, plain);
+        } catch (Exception e) {
+            decryptCipher = null;
+            throw e;
+        }
+        plain.flip();
+        return plain;
+    }
+
+    private static void doFinal(Cipher cipher, ByteBuffer in, ByteBuf out) throws Exception {
+        int maxLength = cipher.getOutputSize(in.remaining());
+        out.ensureWritable(maxLength);
+        if (out.nioBufferCount() == 1) {
+            ByteBuffer dst = out.nioBuffer(out.writerIndex(), maxLength);
+            int written = cipher.doFinal(in, dst);
+            out.writerIndex(out.writerIndex() + written);
+        } else {
+            out.writeBytes(cipher.doFinal(in.array(), in.arrayOffset() + in.position(), in.remaining()));
+        }
+    }
+
+    private Cipher newSm4Cipher(int direction) throws Exception {
+        Cipher cipher = SecureUtil.createCipher("SM4/CBC/PKCS5Padding");
+        cipher.init(direction, new SecretKeySpec(sessionKey, "SM4"), new IvParameterSpec(sessionKey));
+        return cipher;
+    }
+
+    private SecretKey getSecretKey(HdlSecurityProvider provider) throws Exception {
+        if (secretKey == null) {
+            secretKey = provider.getSecretKey(sessionKeyAlgorithmCode, sessionKey);
+        }
+        return secretKey;
+    }
+
+    private static HdlSecurityProvider getProvider() throws HandleException {
+        HdlSecurityProvider provider = HdlSecurityProvider.getInstance();
+        if (provider == null) {
+            throw new HandleException(HandleException.MISSING_CRYPTO_PROVIDER, "Encryption/Key generation engine missing");
+        }
+        return provider;
+    }
+
+    private void resetCiphers() {
+        secretKey = null;
+        encryptCipher = null;
+        decryptCipher = null;
+        encryptTransformation = null;
+        decryptTransformation = null;
+    }
 }
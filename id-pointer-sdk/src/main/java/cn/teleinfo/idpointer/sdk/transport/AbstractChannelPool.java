@@ -13,6 +13,7 @@ import io.netty.util.concurrent.Promise;
 import io.netty.util.internal.PlatformDependent;
 
 import java.util.Deque;
+import java.util.Iterator;
 import java.util.concurrent.Callable;
 
 import static io.netty.util.internal.ObjectUtil.checkNotNull;
@@ -20,6 +21,9 @@ import static io.netty.util.internal.ObjectUtil.checkNotNull;
 public abstract class AbstractChannelPool implements TimedChannelPool {
     public static final AttributeKey<AbstractChannelPool> POOL_KEY =
             AttributeKey.newInstance("cn.teleinfo.idpointer.sdk.transport.AbstractChannelPool");
+    // channel放回池中的时间，用于清理空闲channel
+    private static final AttributeKey<Long> RELEASE_TIME_KEY =
+            AttributeKey.newInstance("cn.teleinfo.idpointer.sdk.transport.AbstractChannelPool.releaseTime");
     private final Deque<Channel> deque = PlatformDependent.newConcurrentDeque();
     private final ChannelPoolHandler handler;
     private final ChannelHealthChecker healthCheck;
@@ -355,6 +359,11 @@ public abstract class AbstractChannelPool implements TimedChannelPool {
      * Sub-classes may override {@link #pollChannel()} and {@link #offerChannel(Channel)}. Be aware that
      * implementations of these methods needs to be thread-safe!
      */
+    @Override
+    public int idleChannelCount() {
+        return deque.size();
+    }
+
     protected Channel pollChannel() {
         return lastRecentUsed ? deque.pollLast() : deque.pollFirst();
     }
@@ -367,9 +376,34 @@ public abstract class AbstractChannelPool implements TimedChannelPool {
      * implementations of these methods needs to be thread-safe!
      */
     protected boolean offerChannel(Channel channel) {
+        channel.attr(RELEASE_TIME_KEY).set(System.currentTimeMillis());
         return deque.offer(channel);
     }
 
+    @Override
+    public int evictIdleChannels(long idleTimeMillis, int minIdleChannels) {
+        long currentTimeMillis = System.currentTimeMillis();
+        int evicted = 0;
+        // 从最早放回的channel开始检查
+        Iterator<Channel> iterator = deque.iterator();
+        while (iterator.hasNext()) {
+            Channel channel = iterator.next();
+            boolean evict;
+            if (!channel.isActive()) {
+                evict = true;
+            } else {
+                Long releaseTime = channel.attr(RELEASE_TIME_KEY).get();
+                evict = deque.size() > minIdleChannels && releaseTime != null && currentTimeMillis - releaseTime >= idleTimeMillis;
+            }
+            // remove失败说明channel已被取走
+            if (evict && deque.remove(channel)) {
+                closeChannel(channel);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
     @Override
     public void close() {
         for (; ; ) {
@@ -1,11 +1,13 @@
 package cn.teleinfo.idpointer.sdk.transport;
 
+import cn.teleinfo.idpointer.sdk.metrics.GlobalIdMetrics;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.pool.ChannelHealthChecker;
 import io.netty.channel.pool.ChannelPool;
 import io.netty.channel.pool.ChannelPoolHandler;
 import io.netty.channel.pool.FixedChannelPool;
+import io.netty.util.AttributeKey;
 import io.netty.util.concurrent.*;
 import io.netty.util.internal.ObjectUtil;
 
@@ -17,6 +19,7 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import static io.netty.util.internal.ObjectUtil.checkPositive;
 
@@ -41,13 +44,26 @@ public abstract class AbstractFixedChannelPool extends AbstractChannelPool {
     // There is no need to worry about synchronization as everything that modified the queue or counts is done
     // by the above EventExecutor.
     private final Queue<AbstractFixedChannelPool.AcquireTask> pendingAcquireQueue = new ArrayDeque<AbstractFixedChannelPool.AcquireTask>();
-    private final int maxConnections;
+    // channel被借出的时间，用于统计响应时间
+    private static final AttributeKey<Long> ACQUIRE_TIME_KEY =
+            AttributeKey.newInstance("cn.teleinfo.idpointer.sdk.transport.AbstractFixedChannelPool.acquireTime");
+
+    // 自适应模式下由poolSizer调整
+    private volatile int maxConnections;
     private final int maxPendingAcquires;
     private final AtomicInteger acquiredChannelCount = new AtomicInteger();
-    private int pendingAcquireCount;
+    private volatile int pendingAcquireCount;
     private boolean closed;
 
-    private long lastActiveTime;
+    // 采样周期内的使用情况
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireWaitNanos = new LongAdder();
+    private final LongAdder releaseCount = new LongAdder();
+    private final LongAdder holdNanos = new LongAdder();
+    private final AtomicInteger peakAcquiredCount = new AtomicInteger();
+    private AdaptivePoolSizer poolSizer;
+
+    private volatile long lastActiveTime = System.currentTimeMillis();
 
     @Override
     public long getLastActiveTime() {
@@ -221,9 +237,83 @@ public abstract class AbstractFixedChannelPool extends AbstractChannelPool {
         return acquiredChannelCount.get();
     }
 
+    public int pendingAcquireCount() {
+        return pendingAcquireCount;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * 修改最大连接数，增加时立即处理排队的获取请求；减少时已借出的channel归还后生效
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = checkPositive(maxConnections, "maxConnections");
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!closed) {
+                    runTaskQueue();
+                }
+            }
+        });
+    }
+
+    public AdaptivePoolSizer getPoolSizer() {
+        return poolSizer;
+    }
+
+    /**
+     * 设置后由adjustPoolSize按使用情况调整最大连接数
+     */
+    public void setPoolSizer(AdaptivePoolSizer poolSizer) {
+        this.poolSizer = poolSizer;
+    }
+
+    /**
+     * 返回上次采样以来的使用情况并重新开始统计
+     */
+    public ChannelPoolUsage sampleUsage() {
+        return new ChannelPoolUsage(acquireCount.sumThenReset(), acquireWaitNanos.sumThenReset(),
+                releaseCount.sumThenReset(), holdNanos.sumThenReset(),
+                peakAcquiredCount.getAndSet(acquiredChannelCount.get()), pendingAcquireCount);
+    }
+
+    /**
+     * 自适应模式下按上一周期的使用情况调整最大连接数，减少时关闭超出的空闲channel
+     *
+     * @return 调整后的最大连接数
+     */
+    public int adjustPoolSize() {
+        int current = maxConnections;
+        if (poolSizer == null) {
+            return current;
+        }
+        int next = poolSizer.nextMaxConnections(current, sampleUsage());
+        if (next != current) {
+            setMaxConnections(next);
+            if (next < current) {
+                evictIdleChannels(0, Math.max(0, next - acquiredChannelCount()));
+            }
+        }
+        return next;
+    }
+
 
     @Override
     public Future<Channel> acquire(final Promise<Channel> promise) {
+        final long acquireStart = System.nanoTime();
+        lastActiveTime = System.currentTimeMillis();
+        promise.addListener(future -> {
+            long waitNanos = System.nanoTime() - acquireStart;
+            GlobalIdMetrics.getInstance().recordPoolAcquire(waitNanos, future.isSuccess());
+            if (future.isSuccess()) {
+                acquireCount.increment();
+                acquireWaitNanos.add(waitNanos);
+                ((Channel) future.getNow()).attr(ACQUIRE_TIME_KEY).set(System.nanoTime());
+            }
+        });
         try {
             if (executor.inEventLoop()) {
                 acquire0(promise);
@@ -285,6 +375,11 @@ public abstract class AbstractFixedChannelPool extends AbstractChannelPool {
     @Override
     public Future<Void> release(final Channel channel, final Promise<Void> promise) {
         ObjectUtil.checkNotNull(promise, "promise");
+        Long acquireTime = channel.attr(ACQUIRE_TIME_KEY).getAndSet(null);
+        if (acquireTime != null) {
+            releaseCount.increment();
+            holdNanos.add(System.nanoTime() - acquireTime);
+        }
         final Promise<Void> p = executor.newPromise();
         super.release(channel, p.addListener(new FutureListener<Void>() {
 
@@ -429,7 +524,8 @@ public abstract class AbstractFixedChannelPool extends AbstractChannelPool {
             if (acquired) {
                 return;
             }
-            acquiredChannelCount.incrementAndGet();
+            int count = acquiredChannelCount.incrementAndGet();
+            peakAcquiredCount.accumulateAndGet(count, Math::max);
             acquired = true;
         }
     }
@@ -479,6 +575,7 @@ public abstract class AbstractFixedChannelPool extends AbstractChannelPool {
 
         if (!closed) {
             closed = true;
+            GlobalIdMetrics.getInstance().unregisterChannelPool(this);
             for (; ; ) {
                 AbstractFixedChannelPool.AcquireTask task = pendingAcquireQueue.poll();
                 if (task == null) {
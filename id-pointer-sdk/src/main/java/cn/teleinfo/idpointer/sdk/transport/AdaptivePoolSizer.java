@@ -0,0 +1,77 @@
+package cn.teleinfo.idpointer.sdk.transport;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自适应连接池大小，按上一周期的ChannelPoolUsage在[minConnections, maxConnections]之间调整连接池的最大连接数：
+ * <ul>
+ * <li>平均响应时间超过基线的latencyTolerance倍时认为服务器过载，减少1/4，不再向其增加请求</li>
+ * <li>有获取请求排队或平均等待超过waitThreshold时增加到在途与排队请求数之和，至少增加1/2</li>
+ * <li>在途请求峰值不到一半时每周期减少1个</li>
+ * </ul>
+ * 基线为观察到的最小响应时间，随较慢的响应缓慢上调。每个连接池使用单独的实例，只在一个线程中调用。
+ */
+public class AdaptivePoolSizer {
+
+    /**
+     * 调整周期
+     */
+    public static final long DEFAULT_INTERVAL_MILLIS = 1000;
+    public static final long DEFAULT_WAIT_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    public static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+    private final int minConnections;
+    private final int maxConnections;
+    private final long waitThresholdNanos;
+    private final double latencyTolerance;
+    private long baselineLatencyNanos;
+
+    public AdaptivePoolSizer(int minConnections, int maxConnections) {
+        this(minConnections, maxConnections, DEFAULT_WAIT_THRESHOLD_NANOS, DEFAULT_LATENCY_TOLERANCE);
+    }
+
+    public AdaptivePoolSizer(int minConnections, int maxConnections, long waitThresholdNanos, double latencyTolerance) {
+        this.minConnections = Math.max(1, minConnections);
+        this.maxConnections = Math.max(this.minConnections, maxConnections);
+        this.waitThresholdNanos = waitThresholdNanos;
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    public int getMinConnections() {
+        return minConnections;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @param current 当前的最大连接数
+     * @param usage   上一周期的使用情况
+     * @return 下一周期的最大连接数
+     */
+    public int nextMaxConnections(int current, ChannelPoolUsage usage) {
+        long latency = usage.getAverageLatencyNanos();
+        boolean overloaded = false;
+        if (latency > 0) {
+            overloaded = baselineLatencyNanos > 0 && latency > baselineLatencyNanos * latencyTolerance;
+            if (baselineLatencyNanos == 0 || latency < baselineLatencyNanos) {
+                baselineLatencyNanos = latency;
+            } else {
+                baselineLatencyNanos += (latency - baselineLatencyNanos) / 16;
+            }
+        }
+
+        int next;
+        if (overloaded) {
+            next = current - Math.max(1, current / 4);
+        } else if (usage.getPendingAcquireCount() > 0 || usage.getAverageAcquireWaitNanos() > waitThresholdNanos) {
+            next = Math.max(current + Math.max(1, current / 2), usage.getPeakAcquiredCount() + usage.getPendingAcquireCount());
+        } else if (usage.getPeakAcquiredCount() * 2 <= current) {
+            next = current - 1;
+        } else {
+            next = current;
+        }
+        return Math.min(maxConnections, Math.max(minConnections, next));
+    }
+}
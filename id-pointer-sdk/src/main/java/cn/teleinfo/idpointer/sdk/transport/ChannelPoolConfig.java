@@ -1,16 +1,37 @@
 package cn.teleinfo.idpointer.sdk.transport;
 
 public class ChannelPoolConfig {
+    /**
+     * 空闲连接与连接池的清理周期
+     */
+    public static final int DEFAULT_EVICTION_INTERVAL_SECONDS = 60;
+
     private int minConnectionsPerServer;
     private int maxConnectionsPerServer;
     private int idleTimeSeconds;
     private boolean heatBeatRunning;
+    private int evictionIntervalSeconds;
+    private boolean adaptiveSizing;
 
     public ChannelPoolConfig(int minConnectionsPerServer, int maxConnectionsPerServer, int idleTimeSeconds, boolean heatBeatRunning) {
+        this(minConnectionsPerServer, maxConnectionsPerServer, idleTimeSeconds, heatBeatRunning, DEFAULT_EVICTION_INTERVAL_SECONDS);
+    }
+
+    public ChannelPoolConfig(int minConnectionsPerServer, int maxConnectionsPerServer, int idleTimeSeconds, boolean heatBeatRunning, int evictionIntervalSeconds) {
+        this(minConnectionsPerServer, maxConnectionsPerServer, idleTimeSeconds, heatBeatRunning, evictionIntervalSeconds, false);
+    }
+
+    /**
+     * @param adaptiveSizing 为true时每个连接池的最大连接数从minConnectionsPerServer开始，按获取等待、在途请求数和响应时间
+     *                       在minConnectionsPerServer与maxConnectionsPerServer之间自动调整，见AdaptivePoolSizer
+     */
+    public ChannelPoolConfig(int minConnectionsPerServer, int maxConnectionsPerServer, int idleTimeSeconds, boolean heatBeatRunning, int evictionIntervalSeconds, boolean adaptiveSizing) {
         this.minConnectionsPerServer = minConnectionsPerServer;
         this.maxConnectionsPerServer = maxConnectionsPerServer;
         this.idleTimeSeconds = idleTimeSeconds;
         this.heatBeatRunning = heatBeatRunning;
+        this.evictionIntervalSeconds = evictionIntervalSeconds;
+        this.adaptiveSizing = adaptiveSizing;
     }
 
     public static ChannelPoolConfigBuilder builder() {
@@ -33,11 +54,21 @@ public class ChannelPoolConfig {
         return this.heatBeatRunning;
     }
 
+    public int getEvictionIntervalSeconds() {
+        return this.evictionIntervalSeconds;
+    }
+
+    public boolean isAdaptiveSizing() {
+        return this.adaptiveSizing;
+    }
+
     public static class ChannelPoolConfigBuilder {
         private int minConnectionsPerServer;
         private int maxConnectionsPerServer;
         private int idleTimeSeconds;
         private boolean heatBeatRunning;
+        private int evictionIntervalSeconds = DEFAULT_EVICTION_INTERVAL_SECONDS;
+        private boolean adaptiveSizing;
 
         ChannelPoolConfigBuilder() {
         }
@@ -62,12 +93,22 @@ public class ChannelPoolConfig {
             return this;
         }
 
+        public ChannelPoolConfigBuilder evictionIntervalSeconds(int evictionIntervalSeconds) {
+            this.evictionIntervalSeconds = evictionIntervalSeconds;
+            return this;
+        }
+
+        public ChannelPoolConfigBuilder adaptiveSizing(boolean adaptiveSizing) {
+            this.adaptiveSizing = adaptiveSizing;
+            return this;
+        }
+
         public ChannelPoolConfig build() {
-            return new ChannelPoolConfig(minConnectionsPerServer, maxConnectionsPerServer, idleTimeSeconds, heatBeatRunning);
+            return new ChannelPoolConfig(minConnectionsPerServer, maxConnectionsPerServer, idleTimeSeconds, heatBeatRunning, evictionIntervalSeconds, adaptiveSizing);
         }
 
         public String toString() {
-            return "ChannelPoolConfig.ChannelPoolConfigBuilder(minConnectionsPerServer=" + this.minConnectionsPerServer + ", maxConnectionsPerServer=" + this.maxConnectionsPerServer + ", idleTimeSeconds=" + this.idleTimeSeconds + ", heatBeatRunning=" + this.heatBeatRunning + ")";
+            return "ChannelPoolConfig.ChannelPoolConfigBuilder(minConnectionsPerServer=" + this.minConnectionsPerServer + ", maxConnectionsPerServer=" + this.maxConnectionsPerServer + ", idleTimeSeconds=" + this.idleTimeSeconds + ", heatBeatRunning=" + this.heatBeatRunning + ", evictionIntervalSeconds=" + this.evictionIntervalSeconds + ", adaptiveSizing=" + this.adaptiveSizing + ")";
         }
     }
 }
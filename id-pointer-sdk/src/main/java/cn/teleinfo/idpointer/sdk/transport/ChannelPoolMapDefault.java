@@ -1,5 +1,6 @@
 package cn.teleinfo.idpointer.sdk.transport;
 
+import cn.teleinfo.idpointer.sdk.metrics.GlobalIdMetrics;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.pool.*;
 
@@ -11,12 +12,21 @@ public class ChannelPoolMapDefault extends AbstractChannelPoolMap<InetSocketAddr
     private final ChannelPoolHandler channelPoolHandler;
     private final int minConnectionsPerServer;
     private final int maxConnectionsPerServer;
+    private final boolean adaptiveSizing;
 
     public ChannelPoolMapDefault(Bootstrap bootstrap, ChannelPoolHandler channelPoolHandler, int minConnectionsPerServer, int maxConnectionsPerServer) {
+        this(bootstrap, channelPoolHandler, minConnectionsPerServer, maxConnectionsPerServer, false);
+    }
+
+    /**
+     * @param adaptiveSizing 为true时每个连接池按使用情况在min与max之间调整最大连接数
+     */
+    public ChannelPoolMapDefault(Bootstrap bootstrap, ChannelPoolHandler channelPoolHandler, int minConnectionsPerServer, int maxConnectionsPerServer, boolean adaptiveSizing) {
         this.bootstrap = bootstrap;
         this.channelPoolHandler = channelPoolHandler;
         this.minConnectionsPerServer = minConnectionsPerServer;
         this.maxConnectionsPerServer = maxConnectionsPerServer;
+        this.adaptiveSizing = adaptiveSizing;
     }
 
     @Override
@@ -24,7 +34,13 @@ public class ChannelPoolMapDefault extends AbstractChannelPoolMap<InetSocketAddr
         Bootstrap bootstrapPooled = bootstrap.clone();
         bootstrapPooled.remoteAddress(key);
         //return new FixedChannelPool(bootstrapPooled, channelPoolHandler, ChannelHealthChecker.ACTIVE, FixedChannelPool.AcquireTimeoutAction.FAIL, 5000L, maxConnectionsPerServer, 10000, true, false);
-        return new DefaultChannelPool(bootstrapPooled, channelPoolHandler, ChannelHealthChecker.ACTIVE, AbstractFixedChannelPool.AcquireTimeoutAction.FAIL, 5000L, minConnectionsPerServer, maxConnectionsPerServer, 10000, true, false);
+        AdaptivePoolSizer poolSizer = adaptiveSizing ? new AdaptivePoolSizer(minConnectionsPerServer, maxConnectionsPerServer) : null;
+        // 自适应模式从最小连接数开始
+        int maxConnections = poolSizer != null ? poolSizer.getMinConnections() : maxConnectionsPerServer;
+        DefaultChannelPool channelPool = new DefaultChannelPool(bootstrapPooled, channelPoolHandler, ChannelHealthChecker.ACTIVE, AbstractFixedChannelPool.AcquireTimeoutAction.FAIL, 5000L, minConnectionsPerServer, maxConnections, 10000, true, false);
+        channelPool.setPoolSizer(poolSizer);
+        GlobalIdMetrics.getInstance().registerChannelPool(String.valueOf(key), channelPool);
+        return channelPool;
     }
 
 }
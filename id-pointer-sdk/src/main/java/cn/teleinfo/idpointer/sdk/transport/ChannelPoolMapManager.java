@@ -2,24 +2,28 @@ package cn.teleinfo.idpointer.sdk.transport;
 
 
 import cn.teleinfo.idpointer.sdk.client.LoginInfoPoolKey;
+import cn.teleinfo.idpointer.sdk.metrics.GlobalIdMetrics;
+import cn.teleinfo.idpointer.sdk.metrics.IdMetrics;
 import cn.teleinfo.idpointer.sdk.protocol.decoder.HandleDecoder;
 import cn.teleinfo.idpointer.sdk.protocol.encoder.HandleEncoder;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.pool.AbstractChannelPoolHandler;
 import io.netty.channel.pool.AbstractChannelPoolMap;
 import io.netty.channel.pool.ChannelPoolHandler;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.ScheduledFuture;
 import org.slf4j.Logger;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ChannelPoolMapManager
@@ -32,8 +36,12 @@ public class ChannelPoolMapManager {
     private final AbstractChannelPoolMap<InetSocketAddress, TimedChannelPool> channelPoolMap;
     private final AbstractChannelPoolMap<LoginInfoPoolKey, TimedChannelPool> loginChannelPoolMap;
     private final EventLoopGroup eventLoopGroup;
-    private final int noLoginIdleTimeSeconds;
-    private final int loginIdleTimeSeconds;
+    private final ScheduledFuture<?> evictionFuture;
+    private final ScheduledFuture<?> loginEvictionFuture;
+    private final ScheduledFuture<?> sizingFuture;
+    private final ScheduledFuture<?> loginSizingFuture;
+    // 关闭连接池会等待channel关闭，不能在IO线程或GlobalEventExecutor中执行
+    private final ExecutorService poolCloseExecutor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("ChannelPoolClean", true));
 
     public ChannelPoolMapManager(int nThreads, int minConnectionsPerServer, int maxConnectionsPerServer) {
         // @format off
@@ -55,12 +63,11 @@ public class ChannelPoolMapManager {
 
     public ChannelPoolMapManager(int nioThreads, int promiseTimeout, ChannelPoolConfig defaultPoolConfig, ChannelPoolConfig loginPoolConfig) {
         this.messageManager = new MessageManagerImpl(promiseTimeout);
-        this.eventLoopGroup = new NioEventLoopGroup(nioThreads);
-        this.noLoginIdleTimeSeconds = defaultPoolConfig.getIdleTimeSeconds();
-        this.loginIdleTimeSeconds = loginPoolConfig.getIdleTimeSeconds();
+        NettyTransport transport = NettyTransport.getInstance();
+        this.eventLoopGroup = transport.newEventLoopGroup(nioThreads);
         Bootstrap bootstrap = new Bootstrap();
         bootstrap.group(eventLoopGroup);
-        bootstrap.channel(NioSocketChannel.class);
+        bootstrap.channel(transport.socketChannelClass());
         bootstrap.option(ChannelOption.TCP_NODELAY, true);
         bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 10000);
         bootstrap.option(ChannelOption.SO_KEEPALIVE, true);
@@ -88,7 +95,7 @@ public class ChannelPoolMapManager {
             }
         };
 
-        channelPoolMap = new ChannelPoolMapDefault(bootstrap, channelPoolHandler, defaultPoolConfig.getMinConnectionsPerServer(), defaultPoolConfig.getMaxConnectionsPerServer());
+        channelPoolMap = new ChannelPoolMapDefault(bootstrap, channelPoolHandler, defaultPoolConfig.getMinConnectionsPerServer(), defaultPoolConfig.getMaxConnectionsPerServer(), defaultPoolConfig.isAdaptiveSizing());
 
         // 登录ChannelPoolHandler
         ChannelPoolHandler loginChannelPoolHandler = new AbstractChannelPoolHandler() {
@@ -106,19 +113,14 @@ public class ChannelPoolMapManager {
             }
         };
 
-        loginChannelPoolMap = new ChannelPoolMapLogin(bootstrap, loginChannelPoolHandler, loginPoolConfig.getMinConnectionsPerServer(), loginPoolConfig.getMaxConnectionsPerServer());
-
-        // 断开长时间不用的连接池
-        Thread thread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                clearChannelPool();
-                clearLoginChannelPool();
-            }
-        }, "ChannelPoolClean");
-        thread.setDaemon(true);
-        thread.start();
+        loginChannelPoolMap = new ChannelPoolMapLogin(bootstrap, loginChannelPoolHandler, loginPoolConfig.getMinConnectionsPerServer(), loginPoolConfig.getMaxConnectionsPerServer(), loginPoolConfig.isAdaptiveSizing());
 
+        // 定期关闭空闲channel（保留minConnectionsPerServer个），移除长时间不用的连接池
+        this.evictionFuture = scheduleEviction(channelPoolMap, defaultPoolConfig);
+        this.loginEvictionFuture = scheduleEviction(loginChannelPoolMap, loginPoolConfig);
+        // 自适应模式定期调整每个连接池的最大连接数
+        this.sizingFuture = defaultPoolConfig.isAdaptiveSizing() ? scheduleSizing(channelPoolMap) : null;
+        this.loginSizingFuture = loginPoolConfig.isAdaptiveSizing() ? scheduleSizing(loginChannelPoolMap) : null;
     }
 
     public AbstractChannelPoolMap<InetSocketAddress, TimedChannelPool> getChannelPoolMap() {
@@ -138,43 +140,77 @@ public class ChannelPoolMapManager {
     }
 
     public void close() throws IOException {
+        evictionFuture.cancel(false);
+        loginEvictionFuture.cancel(false);
+        if (sizingFuture != null) {
+            sizingFuture.cancel(false);
+        }
+        if (loginSizingFuture != null) {
+            loginSizingFuture.cancel(false);
+        }
+        poolCloseExecutor.shutdown();
         channelPoolMap.close();
         loginChannelPoolMap.close();
         getMessageManager().close();
         eventLoopGroup.shutdownGracefully();
     }
 
-    private void clearChannelPool() {
-        Iterator<Map.Entry<InetSocketAddress, TimedChannelPool>> iterator = channelPoolMap.iterator();
-        long currentTimeMillis = System.currentTimeMillis();
-        long noLoginIdleTime = (noLoginIdleTimeSeconds + 10) * 1000;
-        Map.Entry<InetSocketAddress, TimedChannelPool> next = null;
-        TimedChannelPool timedChannelPool = null;
-        while (iterator.hasNext()) {
-            next = iterator.next();
-            timedChannelPool = next.getValue();
-            if (currentTimeMillis - timedChannelPool.getLastActiveTime() > noLoginIdleTime) {
-                if (timedChannelPool.acquiredChannelCount() <= 0) {
-                    channelPoolMap.remove(next.getKey());
-                }
+    private <K> ScheduledFuture<?> scheduleEviction(AbstractChannelPoolMap<K, TimedChannelPool> poolMap, ChannelPoolConfig poolConfig) {
+        int interval = poolConfig.getEvictionIntervalSeconds() > 0 ? poolConfig.getEvictionIntervalSeconds() : ChannelPoolConfig.DEFAULT_EVICTION_INTERVAL_SECONDS;
+        return eventLoopGroup.scheduleWithFixedDelay(() -> {
+            try {
+                evictIdle(poolMap, poolConfig);
+            } catch (Exception e) {
+                log.warn("evict idle channel pool error", e);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    private <K> void evictIdle(AbstractChannelPoolMap<K, TimedChannelPool> poolMap, ChannelPoolConfig poolConfig) {
+        long idleTimeMillis = poolConfig.getIdleTimeSeconds() * 1000L;
+        long poolIdleTimeMillis = (poolConfig.getIdleTimeSeconds() + 10) * 1000L;
+        IdMetrics metrics = GlobalIdMetrics.getInstance();
+        for (Map.Entry<K, TimedChannelPool> entry : poolMap) {
+            K key = entry.getKey();
+            TimedChannelPool timedChannelPool = entry.getValue();
+            if (isPoolIdle(timedChannelPool, poolIdleTimeMillis)) {
+                poolCloseExecutor.execute(() -> {
+                    if (isPoolIdle(timedChannelPool, poolIdleTimeMillis) && poolMap.remove(key)) {
+                        log.info("{} idle channel pool removed", key);
+                        metrics.recordChannelPoolEvicted(String.valueOf(key));
+                    }
+                });
+                continue;
+            }
+            int minIdleChannels = Math.max(0, poolConfig.getMinConnectionsPerServer() - timedChannelPool.acquiredChannelCount());
+            int evicted = timedChannelPool.evictIdleChannels(idleTimeMillis, minIdleChannels);
+            if (evicted > 0) {
+                log.info("{} evict {} idle channels, idle count is:{}", key, evicted, timedChannelPool.idleChannelCount());
+                metrics.recordIdleChannelsEvicted(String.valueOf(key), evicted);
             }
         }
     }
 
-    private void clearLoginChannelPool() {
-        Iterator<Map.Entry<LoginInfoPoolKey, TimedChannelPool>> iterator = loginChannelPoolMap.iterator();
-        long currentTimeMillis = System.currentTimeMillis();
-        long noLoginIdleTime = (loginIdleTimeSeconds + 10) * 1000;
-        Map.Entry<LoginInfoPoolKey, TimedChannelPool> next = null;
-        TimedChannelPool timedChannelPool = null;
-        while (iterator.hasNext()) {
-            next = iterator.next();
-            timedChannelPool = next.getValue();
-            if (currentTimeMillis - timedChannelPool.getLastActiveTime() > noLoginIdleTime) {
-                if (timedChannelPool.acquiredChannelCount() <= 0) {
-                    loginChannelPoolMap.remove(next.getKey());
+    private <K> ScheduledFuture<?> scheduleSizing(AbstractChannelPoolMap<K, TimedChannelPool> poolMap) {
+        return eventLoopGroup.scheduleWithFixedDelay(() -> {
+            for (Map.Entry<K, TimedChannelPool> entry : poolMap) {
+                if (entry.getValue() instanceof AbstractFixedChannelPool) {
+                    AbstractFixedChannelPool channelPool = (AbstractFixedChannelPool) entry.getValue();
+                    int before = channelPool.getMaxConnections();
+                    try {
+                        int after = channelPool.adjustPoolSize();
+                        if (after != before) {
+                            log.debug("{} pool max connections {} -> {}", entry.getKey(), before, after);
+                        }
+                    } catch (Exception e) {
+                        log.warn("{} adjust pool size error", entry.getKey(), e);
+                    }
                 }
             }
-        }
+        }, AdaptivePoolSizer.DEFAULT_INTERVAL_MILLIS, AdaptivePoolSizer.DEFAULT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private static boolean isPoolIdle(TimedChannelPool timedChannelPool, long poolIdleTimeMillis) {
+        return System.currentTimeMillis() - timedChannelPool.getLastActiveTime() > poolIdleTimeMillis && timedChannelPool.acquiredChannelCount() <= 0;
     }
 }
@@ -0,0 +1,72 @@
+package cn.teleinfo.idpointer.sdk.transport;
+
+/**
+ * 连接池在一个采样周期内的使用情况，由AbstractFixedChannelPool.sampleUsage生成
+ */
+public class ChannelPoolUsage {
+    private final long acquireCount;
+    private final long acquireWaitNanos;
+    private final long releaseCount;
+    private final long holdNanos;
+    private final int peakAcquiredCount;
+    private final int pendingAcquireCount;
+
+    /**
+     * @param acquireCount        成功获取channel的次数
+     * @param acquireWaitNanos    获取channel的总等待时间
+     * @param releaseCount        归还channel的次数
+     * @param holdNanos           channel从获取到归还的总时间，即请求等待服务器响应的时间
+     * @param peakAcquiredCount   同时借出（在途请求）的channel数峰值
+     * @param pendingAcquireCount 采样时排队等待的获取请求数
+     */
+    public ChannelPoolUsage(long acquireCount, long acquireWaitNanos, long releaseCount, long holdNanos, int peakAcquiredCount, int pendingAcquireCount) {
+        this.acquireCount = acquireCount;
+        this.acquireWaitNanos = acquireWaitNanos;
+        this.releaseCount = releaseCount;
+        this.holdNanos = holdNanos;
+        this.peakAcquiredCount = peakAcquiredCount;
+        this.pendingAcquireCount = pendingAcquireCount;
+    }
+
+    public long getAcquireCount() {
+        return acquireCount;
+    }
+
+    public long getReleaseCount() {
+        return releaseCount;
+    }
+
+    public int getPeakAcquiredCount() {
+        return peakAcquiredCount;
+    }
+
+    public int getPendingAcquireCount() {
+        return pendingAcquireCount;
+    }
+
+    /**
+     * 平均获取等待时间，周期内没有获取时为0
+     */
+    public long getAverageAcquireWaitNanos() {
+        return acquireCount == 0 ? 0 : acquireWaitNanos / acquireCount;
+    }
+
+    /**
+     * 平均响应时间，周期内没有归还时为0
+     */
+    public long getAverageLatencyNanos() {
+        return releaseCount == 0 ? 0 : holdNanos / releaseCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ChannelPoolUsage{" +
+                "acquireCount=" + acquireCount +
+                ", averageAcquireWaitNanos=" + getAverageAcquireWaitNanos() +
+                ", releaseCount=" + releaseCount +
+                ", averageLatencyNanos=" + getAverageLatencyNanos() +
+                ", peakAcquiredCount=" + peakAcquiredCount +
+                ", pendingAcquireCount=" + pendingAcquireCount +
+                '}';
+    }
+}
@@ -31,7 +31,7 @@ public class MessageHandler extends SimpleChannelInboundHandler<AbstractIdRespon
         ResponsePromise responsePromise = messageManager.getResponsePromise(msg.requestId);
 
         if (responsePromise != null) {
-            responsePromise.setSuccess(msg);
+            responsePromise.trySuccess(msg);
         } else {
             log.warn("{} promise not found by requestId: {},msg is {}",channel.remoteAddress(), msg.requestId, msg);
         }
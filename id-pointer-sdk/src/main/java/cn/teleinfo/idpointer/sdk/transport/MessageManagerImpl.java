@@ -2,15 +2,20 @@ package cn.teleinfo.idpointer.sdk.transport;
 
 import cn.teleinfo.idpointer.sdk.core.AbstractIdRequest;
 import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.metrics.GlobalIdMetrics;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 
 import java.io.IOException;
-import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -19,6 +24,7 @@ import java.util.concurrent.TimeoutException;
  * 提高清理promiseMap的可靠性
  * 1. 当前是通过promise监听器清理promiseMap
  * 2. 连接断开后,绑定到连接的promise失败
+ * 3. 超时由HashedWheelTimer按promise调度,完成后取消
  */
 public class MessageManagerImpl implements MessageManager {
 
@@ -29,6 +35,8 @@ public class MessageManagerImpl implements MessageManager {
 
     private final long promiseTimeoutMs;
 
+    private final Timer timeoutTimer;
+
     /**
      * 秒
      *
@@ -42,58 +50,42 @@ public class MessageManagerImpl implements MessageManager {
         this.promiseMap = new ConcurrentHashMap<>(5000);
         this.eventLoopGroup = eventLoopGroup;
         this.promiseTimeoutMs = (promiseTimeout + 1) * 1000;
-        Thread cleanThread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                while (true) {
-                    long current = System.currentTimeMillis();
-                    Iterator<ResponsePromise> iterator = promiseMap.values().iterator();
-                    ResponsePromise promise = null;
-
-                    while (iterator.hasNext()) {
-                        promise = iterator.next();
-                        if (promise.getSendTimestamp() != 0 && current - promise.getSendTimestamp() > promiseTimeoutMs) {
-                            log.debug("promiseTimeoutMs {},getSendTimestamp {},current {}", promiseTimeoutMs, promise.getSendTimestamp(), current);
-                            log.info("promise timeout {} by daemon,requestId {},sendTimestamp: {}",promiseTimeoutMs ,promise.getRequestId(),promise.getSendTimestamp());
-                            promise.setFailure(new TimeoutException("promise timeout by daemon"));
-                        }
-                    }
-
-                    // 如果打断不再执行
-                    try {
-                        Thread.sleep(1000l);
-                    } catch (InterruptedException e) {
-                        Thread.interrupted();
-                    }
-
-                }
-            }
-        }, "promise-clean-1");
-        cleanThread.setDaemon(true);
-        cleanThread.start();
+        this.timeoutTimer = new HashedWheelTimer(new DefaultThreadFactory("promise-timeout", true), 100, TimeUnit.MILLISECONDS);
     }
 
 
     @Override
     public ResponsePromise createResponsePromise(Integer requestId) {
         ResponsePromise responsePromise = new ResponsePromise(eventLoopGroup.next(), requestId);
+        long startNanos = System.nanoTime();
+
+        // 每个promise独立超时，完成后取消
+        Timeout timeout = timeoutTimer.newTimeout(t -> {
+            if (responsePromise.tryFailure(new TimeoutException("promise timeout"))) {
+                GlobalIdMetrics.getInstance().recordTimeout(responsePromise.getOpCode());
+                log.info("promise timeout {},requestId {},sendTimestamp: {}", promiseTimeoutMs, requestId, responsePromise.getSendTimestamp());
+            }
+        }, promiseTimeoutMs, TimeUnit.MILLISECONDS);
+
         // 添监听器
         responsePromise.addListener(future -> {
             if (future.isDone()) {
                 log.debug("clean request id: {}", requestId);
-                promiseMap.remove(requestId);
+                if (future.isSuccess()) {
+                    GlobalIdMetrics.getInstance().recordResponse(responsePromise.getOpCode(), responsePromise.getNow().responseCode, System.nanoTime() - startNanos);
+                }
+                timeout.cancel();
+                promiseMap.remove(requestId, responsePromise);
                 responsePromise.clear();
             }
         });
 
-        ResponsePromise preValue = null;
-        do {
-            preValue = promiseMap.putIfAbsent(requestId, responsePromise);
-            try {
-                Thread.sleep(1L);
-            } catch (InterruptedException e) {
-            }
-        } while (preValue != null);
+        // requestId回绕后仍在map中的promise早已超过超时时间，直接替换
+        ResponsePromise preValue = promiseMap.put(requestId, responsePromise);
+        if (preValue != null) {
+            log.warn("requestId {} collision, fail the previous promise", requestId);
+            preValue.tryFailure(new TimeoutException("promise replaced by requestId collision"));
+        }
 
         return responsePromise;
     }
@@ -130,6 +122,7 @@ public class MessageManagerImpl implements MessageManager {
 
     @Override
     public void close() throws IOException {
+        timeoutTimer.stop();
         eventLoopGroup.shutdownGracefully();
     }
 }
@@ -1,14 +1,12 @@
 package cn.teleinfo.idpointer.sdk.transport;
 
-import cn.hutool.crypto.Mode;
-import cn.hutool.crypto.Padding;
-import cn.hutool.crypto.symmetric.SM4;
 import cn.teleinfo.idpointer.sdk.core.*;
 import cn.teleinfo.idpointer.sdk.exception.IDException;
-import cn.teleinfo.idpointer.sdk.security.HdlSecurityProvider;
+import cn.teleinfo.idpointer.sdk.metrics.GlobalIdMetrics;
 import cn.teleinfo.idpointer.sdk.session.SessionDefault;
 import cn.teleinfo.idpointer.sdk.session.v3.Session;
 import cn.teleinfo.idpointer.sdk.transport.v3.IdTcpTransport;
+import cn.teleinfo.idpointer.sdk.util.EnvelopeUtils;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
@@ -18,7 +16,6 @@ import io.netty.util.Attribute;
 import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 
-import javax.crypto.Cipher;
 import java.net.InetSocketAddress;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -89,6 +86,7 @@ public class MessagePacketsManager {
             if (req.sessionInfo == null)
                 throw new HandleException(HandleException.INCOMPLETE_SESSIONSETUP, "Cannot encrypt messages without a session");
             requestBuf = req.sessionInfo.encryptBuffer(requestBuf, 0, requestBuf.length);
+            GlobalIdMetrics.getInstance().recordEncryptedBytes(requestBuf.length);
             // req.encrypt could be just a request that the server encrypt the response;
             // whether to encrypt the request could be separate
             sndEnvelope.encrypted = true;
@@ -126,6 +124,15 @@ public class MessagePacketsManager {
 
 
     public ByteBuf getTcpMessageEnvelopeForRequest(AbstractMessage req, Channel channel) throws HandleException, IDException {
+        ByteBuf toWriteBuf = Unpooled.buffer();
+        writeTcpMessageEnvelopeForRequest(req, channel, toWriteBuf);
+        return toWriteBuf;
+    }
+
+    /**
+     * 将信封与消息直接写入out，不经过中间缓冲
+     */
+    public void writeTcpMessageEnvelopeForRequest(AbstractMessage req, Channel channel, ByteBuf out) throws HandleException, IDException {
         MessageEnvelope sndEnvelope = new MessageEnvelope();
         if (req.majorProtocolVersion > 0 && req.minorProtocolVersion >= 0) {
             sndEnvelope.protocolMajorVersion = req.majorProtocolVersion;
@@ -155,7 +162,9 @@ public class MessagePacketsManager {
             requestBuf = req.getEncodedMessage();
         }
 
-        log.debug("requestBuf:{}",Hex.encodeHexString(requestBuf));
+        if (log.isDebugEnabled()) {
+            log.debug("requestBuf:{}", Hex.encodeHexString(requestBuf));
+        }
 
         if (req instanceof AbstractIdRequest) {
             AbstractIdRequest request = (AbstractIdRequest) req;
@@ -169,54 +178,44 @@ public class MessagePacketsManager {
             //    sndEnvelope.encrypted = true;
             //}
             if (req.encrypt) {
-                // todo:请求加密
                 Attribute<SessionDefault> attr = channel.attr(IdTcpTransport.SESSION_KEY);
                 SessionDefault sessionDefault = attr.get();
                 if (sessionDefault == null || !sessionDefault.isEncryptMessage()) {
                     throw new IDException(IDException.ENCRYPTION_ERROR, "session not setup");
                 }
-                try {
-                    // create, initialize and cache a new encryption cipher
-                    HdlSecurityProvider provider = HdlSecurityProvider.getInstance();
-                    if (provider == null) {
-                        throw new IDException(IDException.MISSING_CRYPTO_PROVIDER, "Encryption/Key generation engine missing");
-                    }
-
-                    if (sessionDefault.getSessionKeyAlgorithmCode() == HdlSecurityProvider.ENCRYPT_ALG_SM4) {
-                        // todo: key初始化
-                        log.debug("session key:{}", Hex.encodeHexString(sessionDefault.getSessionKey()));
-
-                        SM4 sm4 = new SM4(Mode.CBC, Padding.PKCS5Padding, sessionDefault.getSessionKey(),  sessionDefault.getSessionKey());
-
-                        requestBuf = sm4.encrypt(requestBuf);
-                        log.debug("requestBuf encrypt:{}",Hex.encodeHexString(requestBuf));
-                    } else {
-                        Cipher encryptCipher = provider.getCipher(sessionDefault.getSessionKeyAlgorithmCode(), sessionDefault.getSessionKey(), javax.crypto.Cipher.ENCRYPT_MODE, null, req.majorProtocolVersion, req.minorProtocolVersion);
-
-                        byte[] ciphertext = encryptCipher.doFinal(requestBuf, 0, requestBuf.length);
-
-                        boolean legacy = !AbstractMessage.hasEqualOrGreaterVersion(2, 10, 2, 4);
-                        if (!legacy) {
-                            byte[] iv = encryptCipher.getIV();
-                            if (iv == null) {
-                                iv = new byte[0];
-                            }
-                            ByteBuf toWriteBuf = Unpooled.buffer();
-                            toWriteBuf.writeBytes(iv);
-                            toWriteBuf.writeBytes(ciphertext);
-                            requestBuf = Util.concat(iv, ciphertext);
-                        } else {
-                            requestBuf = ciphertext;
-                        }
-                    }
+                sndEnvelope.encrypted = true;
 
+                // 预留信封位置，密文直接写入out
+                int packetStart = out.writerIndex();
+                out.ensureWritable(Common.MESSAGE_ENVELOPE_SIZE);
+                out.writerIndex(packetStart + Common.MESSAGE_ENVELOPE_SIZE);
+                try {
+                    // encoder在channel的EventLoop线程中执行，可以复用会话上缓存的Cipher
+                    sessionDefault.encryptMessage(requestBuf, out, req.majorProtocolVersion, req.minorProtocolVersion);
                 } catch (Exception e) {
+                    out.writerIndex(packetStart);
                     log.error("===", e);
                     if (e instanceof IDException) throw (IDException) e;
                     throw new IDException(IDException.ENCRYPTION_ERROR, "Error encrypting buffer", e);
                 }
 
-                sndEnvelope.encrypted = true;
+                int messageLength = out.writerIndex() - packetStart - Common.MESSAGE_ENVELOPE_SIZE;
+                GlobalIdMetrics.getInstance().recordEncryptedBytes(messageLength);
+                if (messageLength <= Common.MAX_MESSAGE_DATA_SIZE) {
+                    sndEnvelope.messageLength = messageLength;
+                    sndEnvelope.messageId = 0;
+                    int end = out.writerIndex();
+                    out.writerIndex(packetStart);
+                    EnvelopeUtils.encodeEnvelope(sndEnvelope, out);
+                    out.writerIndex(end);
+                    if (log.isTraceEnabled()) {
+                        log.trace("send envelope: {}", ByteBufUtil.hexDump(out, packetStart, end - packetStart));
+                    }
+                    return;
+                }
+                // 超过单包长度时按未加密消息的流程分包
+                requestBuf = ByteBufUtil.getBytes(out, packetStart + Common.MESSAGE_ENVELOPE_SIZE, messageLength);
+                out.writerIndex(packetStart);
             }
         }
 
@@ -232,23 +231,18 @@ public class MessagePacketsManager {
         int bytesRemaining = sndEnvelope.messageLength;
 
         sndEnvelope.truncated = numPackets > 1;
-        ByteBuf toWriteBuf = Unpooled.buffer();
+        out.ensureWritable(sndEnvelope.messageLength + numPackets * Common.MESSAGE_ENVELOPE_SIZE);
 
-        int thisPacketSize = 0;
-        byte[] buf = null;
         for (int packetNum = 0; packetNum < numPackets; packetNum++) {
-            thisPacketSize = Math.min(Common.MAX_MESSAGE_DATA_SIZE, bytesRemaining);
-            buf = new byte[thisPacketSize + Common.MESSAGE_ENVELOPE_SIZE];
+            int thisPacketSize = Math.min(Common.MAX_MESSAGE_DATA_SIZE, bytesRemaining);
+            int packetStart = out.writerIndex();
             sndEnvelope.messageId = packetNum;
-            Encoder.encodeEnvelope(sndEnvelope, buf);
-            System.arraycopy(requestBuf, requestBuf.length - bytesRemaining, buf, Common.MESSAGE_ENVELOPE_SIZE, buf.length - Common.MESSAGE_ENVELOPE_SIZE);
+            EnvelopeUtils.encodeEnvelope(sndEnvelope, out);
+            out.writeBytes(requestBuf, requestBuf.length - bytesRemaining, thisPacketSize);
             if (log.isTraceEnabled()) {
-                log.trace("send envelope: {}", ByteBufUtil.hexDump(buf));
+                log.trace("send envelope: {}", ByteBufUtil.hexDump(out, packetStart, out.writerIndex() - packetStart));
             }
-            toWriteBuf.writeBytes(buf);
             bytesRemaining -= thisPacketSize;
         }
-
-        return toWriteBuf;
     }
 }
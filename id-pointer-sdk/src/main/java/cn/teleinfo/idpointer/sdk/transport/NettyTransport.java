@@ -0,0 +1,157 @@
+package cn.teleinfo.idpointer.sdk.transport;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+
+import java.lang.reflect.Constructor;
+import java.util.Locale;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * SDK中所有Bootstrap共用的Netty传输选择。
+ * <p>
+ * classpath中有netty-transport-native-epoll且本机可用时使用epoll，否则使用NIO；
+ * io_uring（netty-incubator-transport-native-io_uring）只在系统属性idpointer.transport=io_uring时启用。
+ * 也可以通过idpointer.transport=nio/epoll指定，指定的传输不可用时回退到NIO。
+ * native传输按类名反射加载，SDK本身不依赖这些模块。
+ */
+public final class NettyTransport {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(NettyTransport.class);
+
+    public static final String TRANSPORT_PROPERTY = "idpointer.transport";
+
+    public enum Type {
+        NIO, EPOLL, IO_URING
+    }
+
+    private static volatile NettyTransport instance;
+
+    private final Type type;
+    private final Constructor<? extends EventLoopGroup> eventLoopGroupConstructor;
+    private final Class<? extends SocketChannel> socketChannelClass;
+    private final Class<? extends DatagramChannel> datagramChannelClass;
+
+    private NettyTransport(Type type, Constructor<? extends EventLoopGroup> eventLoopGroupConstructor,
+                           Class<? extends SocketChannel> socketChannelClass, Class<? extends DatagramChannel> datagramChannelClass) {
+        this.type = type;
+        this.eventLoopGroupConstructor = eventLoopGroupConstructor;
+        this.socketChannelClass = socketChannelClass;
+        this.datagramChannelClass = datagramChannelClass;
+    }
+
+    public static NettyTransport getInstance() {
+        if (instance == null) {
+            synchronized (NettyTransport.class) {
+                if (instance == null) {
+                    instance = detect(System.getProperty(TRANSPORT_PROPERTY));
+                }
+            }
+        }
+        return instance;
+    }
+
+    public static NettyTransport nio() {
+        return new NettyTransport(Type.NIO, null, NioSocketChannel.class, NioDatagramChannel.class);
+    }
+
+    static NettyTransport detect(String preferred) {
+        String name = preferred == null ? "" : preferred.trim().toLowerCase(Locale.ROOT);
+        NettyTransport transport = null;
+        switch (name) {
+            case "nio":
+                transport = nio();
+                break;
+            case "io_uring":
+            case "iouring":
+                transport = load(Type.IO_URING, "io.netty.incubator.channel.uring.IOUring",
+                        "io.netty.incubator.channel.uring.IOUringEventLoopGroup",
+                        "io.netty.incubator.channel.uring.IOUringSocketChannel",
+                        "io.netty.incubator.channel.uring.IOUringDatagramChannel");
+                if (transport == null) {
+                    transport = loadEpoll();
+                }
+                break;
+            default:
+                transport = loadEpoll();
+                break;
+        }
+        if (transport == null) {
+            transport = nio();
+        }
+        log.info("using {} transport", transport.type);
+        return transport;
+    }
+
+    private static NettyTransport loadEpoll() {
+        return load(Type.EPOLL, "io.netty.channel.epoll.Epoll",
+                "io.netty.channel.epoll.EpollEventLoopGroup",
+                "io.netty.channel.epoll.EpollSocketChannel",
+                "io.netty.channel.epoll.EpollDatagramChannel");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static NettyTransport load(Type type, String availability, String eventLoopGroup, String socketChannel, String datagramChannel) {
+        try {
+            ClassLoader classLoader = NettyTransport.class.getClassLoader();
+            Class<?> availabilityClass = Class.forName(availability, true, classLoader);
+            if (!(Boolean) availabilityClass.getMethod("isAvailable").invoke(null)) {
+                Throwable cause = (Throwable) availabilityClass.getMethod("unavailabilityCause").invoke(null);
+                log.debug("{} transport unavailable: {}", type, String.valueOf(cause));
+                return null;
+            }
+            Class<? extends EventLoopGroup> groupClass = (Class<? extends EventLoopGroup>) Class.forName(eventLoopGroup, true, classLoader);
+            return new NettyTransport(type, groupClass.getConstructor(int.class, ThreadFactory.class),
+                    (Class<? extends SocketChannel>) Class.forName(socketChannel, true, classLoader),
+                    (Class<? extends DatagramChannel>) Class.forName(datagramChannel, true, classLoader));
+        } catch (ClassNotFoundException | LinkageError e) {
+            log.debug("{} transport not on classpath", type);
+            return null;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("{} transport load error", type, e);
+            return null;
+        }
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @param nThreads 0表示使用Netty的默认线程数
+     */
+    public EventLoopGroup newEventLoopGroup(int nThreads, ThreadFactory threadFactory) {
+        if (eventLoopGroupConstructor == null) {
+            return new NioEventLoopGroup(nThreads, threadFactory);
+        }
+        try {
+            return eventLoopGroupConstructor.newInstance(nThreads, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("create " + type + " event loop group error", e);
+        }
+    }
+
+    /**
+     * 使用Netty默认的线程工厂
+     */
+    public EventLoopGroup newEventLoopGroup(int nThreads) {
+        return newEventLoopGroup(nThreads, (ThreadFactory) null);
+    }
+
+    public EventLoopGroup newEventLoopGroup(int nThreads, String poolName) {
+        return newEventLoopGroup(nThreads, new DefaultThreadFactory(poolName, true));
+    }
+
+    public Class<? extends SocketChannel> socketChannelClass() {
+        return socketChannelClass;
+    }
+
+    public Class<? extends DatagramChannel> datagramChannelClass() {
+        return datagramChannelClass;
+    }
+}
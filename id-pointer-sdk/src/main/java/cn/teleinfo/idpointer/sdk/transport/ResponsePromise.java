@@ -38,15 +38,13 @@ public class ResponsePromise extends DefaultPromise<AbstractIdResponse> {
                     //log.info("{} send handle {}, requestId {}", channel.localAddress(), handle, requestId);
                 } else {
                     //log.info("{} send fail handle {}, requestId {}", channel.localAddress(), handle, requestId);
-                    this.setFailure(new IDException(IDException.PROMISE_GET_ERROR, "send error",future.cause()));
+                    this.tryFailure(new IDException(IDException.PROMISE_GET_ERROR, "send error",future.cause()));
                 }
             }
         };
         this.closeListener = future -> {
             if (future.isDone()) {
-                if (!this.isDone()) {
-                    this.setFailure(new TimeoutException("promise channel reset by daemon,"));
-                }
+                this.tryFailure(new TimeoutException("promise channel reset by daemon,"));
             }
         };
     }
@@ -9,4 +9,21 @@ public interface TimedChannelPool extends ChannelPool {
     void setLastActiveTime(long lastActiveTime);
 
     int acquiredChannelCount();
+
+    /**
+     * 池中空闲的channel数，默认返回0
+     */
+    default int idleChannelCount() {
+        return 0;
+    }
+
+    /**
+     * 关闭空闲不少于idleTimeMillis的channel，至少保留minIdleChannels个空闲channel，已断开的channel直接移除；
+     * idleTimeMillis为0时不检查空闲时间；默认不回收
+     *
+     * @return 移除的channel数
+     */
+    default int evictIdleChannels(long idleTimeMillis, int minIdleChannels) {
+        return 0;
+    }
 }
@@ -3,6 +3,7 @@ package cn.teleinfo.idpointer.sdk.transport;
 import cn.teleinfo.idpointer.sdk.client.LoginInfoPoolKey;
 import cn.teleinfo.idpointer.sdk.core.*;
 import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.metrics.GlobalIdMetrics;
 import cn.teleinfo.idpointer.sdk.session.SessionDefault;
 import cn.teleinfo.idpointer.sdk.session.SessionIdFactory;
 import cn.teleinfo.idpointer.sdk.session.SessionIdFactoryDefault;
@@ -61,6 +62,7 @@ public class TransportOnTcpLogin {
             if (!sessionDefault.isAuthenticated()) {
 
                 // 没有登录,去登录
+                long loginStart = System.nanoTime();
                 try {
 
                     InetSocketAddress serverAddress = loginInfoPoolKey.getAddress();
@@ -72,11 +74,13 @@ public class TransportOnTcpLogin {
 
                     sessionDefault.setIdUserId(loginInfoPoolKey.getUserId());
 
+                    GlobalIdMetrics.getInstance().recordLogin(System.nanoTime() - loginStart, true);
                     log.info("channel {},user {}:{} ,server {}:{} login success", channel.localAddress(), authenticationInfo.getUserIdIndex(), userIdHandle, serverAddress.getAddress(), serverAddress.getPort());
 
                     attr.set(sessionDefault);
 
                 } catch (Exception e) {
+                    GlobalIdMetrics.getInstance().recordLogin(System.nanoTime() - loginStart, false);
                     if (channel != null) {
                         fixedChannelPool.release(channel);
                     }
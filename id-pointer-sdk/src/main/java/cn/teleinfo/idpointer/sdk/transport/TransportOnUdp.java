@@ -2,6 +2,8 @@ package cn.teleinfo.idpointer.sdk.transport;
 
 /**
  * todo: impl udp
+ * <p>
+ * v3中已有基于UDP的传输，见{@link cn.teleinfo.idpointer.sdk.transport.v3.IdUdpTransportImpl}
  */
 public class TransportOnUdp {
 }
@@ -4,10 +4,17 @@ import cn.teleinfo.idpointer.sdk.core.AbstractIdResponse;
 import io.netty.util.AttributeKey;
 import io.netty.util.concurrent.Promise;
 
+import java.util.concurrent.ConcurrentMap;
+
 public interface MessagePromiseManager {
 
     public static AttributeKey<Promise<AbstractIdResponse>> PROMISE_ATTRIBUTE_KEY = AttributeKey.valueOf("promise");
 
+    /**
+     * 多路复用模式下，同一个channel上所有在途请求的promise，按requestId索引
+     */
+    public static AttributeKey<ConcurrentMap<Integer, Promise<? super AbstractIdResponse>>> IN_FLIGHT_PROMISES_KEY = AttributeKey.valueOf("inFlightPromises");
+
     //Promise<AbstractResponse> createPromise(int requestId, EventLoop eventLoop);
     //Promise<AbstractResponse> getPromiseAndRemove(int requestId);
 
@@ -0,0 +1,199 @@
+package cn.teleinfo.idpointer.sdk.transport.sample;
+
+import cn.teleinfo.idpointer.sdk.protocol.decoder.HandleDecoder;
+import cn.teleinfo.idpointer.sdk.protocol.encoder.HandleEncoder;
+import cn.teleinfo.idpointer.sdk.transport.AbstractFixedChannelPool;
+import cn.teleinfo.idpointer.sdk.transport.AdaptivePoolSizer;
+import cn.teleinfo.idpointer.sdk.transport.DefaultChannelPool;
+import cn.teleinfo.idpointer.sdk.transport.NettyTransport;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.ChannelHealthChecker;
+import io.netty.channel.pool.ChannelPoolHandler;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SampleIdClient共享的EventLoopGroup与连接池，按key引用计数
+ * <p>
+ * 匿名客户端以服务器地址为key，登录客户端以LoginInfoPoolKey为key（channel上保存了登录会话）。
+ * 引用计数归零后连接池保留lingerMillis再关闭，期间新建的客户端可直接复用已建立的连接；
+ * 所有连接池关闭后EventLoopGroup随之关闭。
+ * 开启自适应大小的连接池每AdaptivePoolSizer.DEFAULT_INTERVAL_MILLIS调整一次最大连接数。
+ */
+public class SharedChannelPoolRegistry {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(SharedChannelPoolRegistry.class);
+
+    public static final long DEFAULT_LINGER_MILLIS = 30000L;
+
+    private final Map<Object, PoolEntry> entries = new HashMap<>();
+    private final SimpleMessageHandler messageHandler = new SimpleMessageHandler();
+    private final long lingerMillis;
+    private EventLoopGroup group;
+
+    public SharedChannelPoolRegistry(long lingerMillis) {
+        this.lingerMillis = lingerMillis;
+    }
+
+    private static SharedChannelPoolRegistry registry;
+
+    public static SharedChannelPoolRegistry getInstance() {
+        if (registry == null) {
+            synchronized (SharedChannelPoolRegistry.class) {
+                if (registry == null) {
+                    registry = new SharedChannelPoolRegistry(DEFAULT_LINGER_MILLIS);
+                }
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * 获取key对应的连接池并增加引用，不存在时创建；maxConnections以首次创建时为准
+     */
+    public AbstractFixedChannelPool retain(Object key, InetSocketAddress serverAddress, int maxConnections) {
+        return retain(key, serverAddress, 1, maxConnections, false);
+    }
+
+    /**
+     * 获取key对应的连接池并增加引用，不存在时创建；连接数与adaptiveSizing以首次创建时为准
+     *
+     * @param adaptiveSizing 为true时最大连接数从minConnections开始，由AdaptivePoolSizer在minConnections与maxConnections之间调整
+     */
+    public synchronized AbstractFixedChannelPool retain(Object key, InetSocketAddress serverAddress, int minConnections, int maxConnections, boolean adaptiveSizing) {
+        PoolEntry entry = entries.get(key);
+        if (entry == null) {
+            if (group == null) {
+                group = NettyTransport.getInstance().newEventLoopGroup(0, "id-client");
+            }
+            AdaptivePoolSizer poolSizer = adaptiveSizing ? new AdaptivePoolSizer(minConnections, maxConnections) : null;
+            entry = new PoolEntry(newChannelPool(serverAddress, poolSizer != null ? poolSizer.getMinConnections() : maxConnections));
+            if (poolSizer != null) {
+                entry.channelPool.setPoolSizer(poolSizer);
+                entry.sizingFuture = scheduleSizing(key, entry.channelPool);
+            }
+            entries.put(key, entry);
+            log.debug("channel pool created for {}", key);
+        }
+        if (entry.evictFuture != null) {
+            entry.evictFuture.cancel(false);
+            entry.evictFuture = null;
+        }
+        entry.refCnt++;
+        return entry.channelPool;
+    }
+
+    /**
+     * 释放一次引用，每次retain对应一次release
+     */
+    public synchronized void release(Object key) {
+        PoolEntry entry = entries.get(key);
+        if (entry == null || entry.refCnt <= 0) {
+            return;
+        }
+        entry.refCnt--;
+        if (entry.refCnt == 0) {
+            if (lingerMillis <= 0) {
+                evict(key, entry);
+            } else {
+                entry.evictFuture = group.schedule(() -> evictIfUnused(key, entry), lingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * 持有引用期间EventLoopGroup不会被关闭
+     */
+    public synchronized EventLoopGroup getEventLoopGroup() {
+        return group;
+    }
+
+    synchronized int referenceCount(Object key) {
+        PoolEntry entry = entries.get(key);
+        return entry == null ? 0 : entry.refCnt;
+    }
+
+    synchronized boolean isRunning() {
+        return group != null;
+    }
+
+    private synchronized void evictIfUnused(Object key, PoolEntry entry) {
+        if (entry.refCnt == 0 && entries.get(key) == entry) {
+            evict(key, entry);
+        }
+    }
+
+    private void evict(Object key, PoolEntry entry) {
+        entries.remove(key);
+        if (entry.sizingFuture != null) {
+            entry.sizingFuture.cancel(false);
+        }
+        // close()在EventLoop线程中会阻塞，这里只能异步关闭
+        entry.channelPool.closeAsync();
+        log.debug("channel pool closed for {}", key);
+        if (entries.isEmpty()) {
+            group.shutdownGracefully();
+            group = null;
+        }
+    }
+
+    private ScheduledFuture<?> scheduleSizing(Object key, AbstractFixedChannelPool channelPool) {
+        return group.scheduleWithFixedDelay(() -> {
+            int before = channelPool.getMaxConnections();
+            try {
+                int after = channelPool.adjustPoolSize();
+                if (after != before) {
+                    log.debug("{} pool max connections {} -> {}", key, before, after);
+                }
+            } catch (Exception e) {
+                log.warn("{} adjust pool size error", key, e);
+            }
+        }, AdaptivePoolSizer.DEFAULT_INTERVAL_MILLIS, AdaptivePoolSizer.DEFAULT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private AbstractFixedChannelPool newChannelPool(InetSocketAddress serverAddress, int maxConnections) {
+        ChannelPoolHandler channelPoolHandler = new AbstractChannelPoolHandler() {
+            @Override
+            public void channelCreated(Channel ch) throws Exception {
+                ch.attr(MessagePromiseManager.IN_FLIGHT_PROMISES_KEY).set(new ConcurrentHashMap<>());
+                ch.pipeline().addLast(new HandleEncoder());
+                ch.pipeline().addLast(new HandleDecoder());
+                ch.pipeline().addLast(messageHandler);
+            }
+
+        };
+
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.group(group)
+                .channel(NettyTransport.getInstance().socketChannelClass())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.SO_REUSEADDR, true)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .remoteAddress(serverAddress)
+        ;
+
+        // 与FixedChannelPool的默认行为一致：不限制排队数，归还时检查健康状态，后进先出
+        return new DefaultChannelPool(bootstrap, channelPoolHandler, ChannelHealthChecker.ACTIVE, null, -1,
+                0, maxConnections, Integer.MAX_VALUE, true, true);
+    }
+
+    private static class PoolEntry {
+        private final AbstractFixedChannelPool channelPool;
+        private int refCnt;
+        private ScheduledFuture<?> evictFuture;
+        private ScheduledFuture<?> sizingFuture;
+
+        private PoolEntry(AbstractFixedChannelPool channelPool) {
+            this.channelPool = channelPool;
+        }
+    }
+}
@@ -9,6 +9,10 @@ import io.netty.util.Attribute;
 import io.netty.util.concurrent.Promise;
 import org.slf4j.Logger;
 
+import java.nio.channels.ClosedChannelException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentMap;
+
 @ChannelHandler.Sharable
 public class SimpleMessageHandler extends SimpleChannelInboundHandler<AbstractIdResponse> {
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(SimpleMessageHandler.class);
@@ -16,15 +20,47 @@ public class SimpleMessageHandler extends SimpleChannelInboundHandler<AbstractId
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, AbstractIdResponse response) throws Exception {
         Channel channel = ctx.channel();
-        log.info("{} received for requestId: {}",channel.remoteAddress(), response.requestId);
+        log.debug("{} received for requestId: {}", channel.remoteAddress(), response.requestId);
+
+        // 多路复用的channel按requestId匹配
+        ConcurrentMap<Integer, Promise<? super AbstractIdResponse>> inFlightPromises = channel.attr(MessagePromiseManager.IN_FLIGHT_PROMISES_KEY).get();
+        if (inFlightPromises != null) {
+            Promise<? super AbstractIdResponse> promise = inFlightPromises.remove(response.requestId);
+            if (promise != null) {
+                promise.trySuccess(response);
+            } else {
+                log.warn("promise not found for requestId: {}, maybe timeout", response.requestId);
+            }
+            return;
+        }
 
         Attribute<Promise<AbstractIdResponse>> attr = channel.attr(MessagePromiseManager.PROMISE_ATTRIBUTE_KEY);
-        Promise<AbstractIdResponse> promise = attr.getAndSet(null);;
-        if(promise != null) {
+        Promise<AbstractIdResponse> promise = attr.getAndSet(null);
+        if (promise != null) {
             promise.setSuccess(response);
         } else {
             log.error("promise is null for requestId: {}", response.requestId);
         }
     }
 
-}
\ No newline at end of file
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        ClosedChannelException cause = new ClosedChannelException();
+        Promise<AbstractIdResponse> pending = ctx.channel().attr(MessagePromiseManager.PROMISE_ATTRIBUTE_KEY).getAndSet(null);
+        if (pending != null) {
+            pending.tryFailure(cause);
+        }
+
+        ConcurrentMap<Integer, Promise<? super AbstractIdResponse>> inFlightPromises = ctx.channel().attr(MessagePromiseManager.IN_FLIGHT_PROMISES_KEY).get();
+        if (inFlightPromises != null && !inFlightPromises.isEmpty()) {
+            Iterator<Promise<? super AbstractIdResponse>> iterator = inFlightPromises.values().iterator();
+            while (iterator.hasNext()) {
+                Promise<? super AbstractIdResponse> promise = iterator.next();
+                iterator.remove();
+                promise.tryFailure(cause);
+            }
+        }
+        super.channelInactive(ctx);
+    }
+
+}
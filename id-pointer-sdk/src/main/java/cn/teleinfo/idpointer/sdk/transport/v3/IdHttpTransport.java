@@ -1,4 +1,18 @@
 package cn.teleinfo.idpointer.sdk.transport.v3;
 
+import cn.teleinfo.idpointer.sdk.client.v3.IdRequest;
+import cn.teleinfo.idpointer.sdk.client.v3.IdResponse;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import io.netty.channel.pool.ChannelPool;
+
+/**
+ * 基于HTTP(S)的传输，用于只通过代理暴露HTTP接口的站点，支持HTTP/1.1长连接与HTTP/2多路复用
+ */
 public interface IdHttpTransport {
+
+    public ChannelPool getChannelPool();
+
+    public IdPromise<IdResponse> send(IdRequest request) throws IDException;
+
+    public void close();
 }
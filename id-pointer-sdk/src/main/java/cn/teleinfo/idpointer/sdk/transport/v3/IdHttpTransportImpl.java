@@ -0,0 +1,294 @@
+/**
+ * Copyright (C) 2024 teleinfo caict
+ * All rights reserved.
+ * <p>
+ * 版权所有（C）2024 teleinfo caict
+ */
+package cn.teleinfo.idpointer.sdk.transport.v3;
+
+import cn.teleinfo.idpointer.sdk.client.v3.IdRequest;
+import cn.teleinfo.idpointer.sdk.client.v3.IdResponse;
+import cn.teleinfo.idpointer.sdk.core.AbstractIdRequest;
+import cn.teleinfo.idpointer.sdk.core.AbstractIdResponse;
+import cn.teleinfo.idpointer.sdk.core.Common;
+import cn.teleinfo.idpointer.sdk.core.SSLEngineHelper;
+import cn.teleinfo.idpointer.sdk.core.Util;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.metrics.GlobalIdMetrics;
+import cn.teleinfo.idpointer.sdk.protocol.decoder.HttpHandleDecoder;
+import cn.teleinfo.idpointer.sdk.protocol.encoder.HttpHandleEncoder;
+import cn.teleinfo.idpointer.sdk.transport.NettyTransport;
+import cn.teleinfo.idpointer.sdk.transport.sample.SimpleMessageHandler;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.*;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.ChannelPoolHandler;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.*;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import org.slf4j.Logger;
+
+import javax.net.ssl.SSLContext;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @Description: IdHttpTransportImpl -
+ * <p>
+ * 连接池中的连接在建立时确定协议：HTTPS通过ALPN协商，服务器支持时使用HTTP/2，否则使用HTTP/1.1；
+ * HTTP默认使用HTTP/1.1，http2PriorKnowledge为true时直接使用HTTP/2（h2c）。
+ * <ul>
+ * <li>HTTP/2：每个请求在连接上打开一个流，流打开后连接立即归还连接池，多个请求在同一连接上并发</li>
+ * <li>HTTP/1.1：连接在响应后保持打开供后续请求复用，每个连接同时只有一个在途请求，服务器关闭连接时由连接池丢弃</li>
+ * </ul>
+ * HTTPS的所有连接共用一个SSLContext，按服务器地址复用TLS会话，新连接不需要完整握手。
+ * 请求失败或取消时关闭HTTP/1.1连接或HTTP/2流，避免迟到的响应被下一个请求读到。
+ */
+public class IdHttpTransportImpl implements IdHttpTransport {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(IdHttpTransportImpl.class);
+
+    /**
+     * 连接使用的协议，TLS握手及ALPN协商完成前未完成
+     */
+    private static final AttributeKey<Promise<String>> PROTOCOL_KEY =
+            AttributeKey.newInstance("cn.teleinfo.idpointer.sdk.transport.v3.IdHttpTransportImpl.protocol");
+    private static final int MAX_CONTENT_LENGTH = Common.MESSAGE_ENVELOPE_SIZE + Common.MAX_MESSAGE_LENGTH;
+
+    private final EventLoopGroup eventLoopGroup;
+    private final ChannelPool channelPool;
+    private final String hostHeader;
+    private final String path;
+    private final SimpleMessageHandler messageHandler = new SimpleMessageHandler();
+    private final ChannelHandler exceptionHandler = new HttpExceptionHandler();
+    private final ChannelHandler streamInitializer = new ChannelInitializer<Http2StreamChannel>() {
+        @Override
+        protected void initChannel(Http2StreamChannel ch) {
+            ch.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(false));
+            addHttpHandlers(ch.pipeline());
+        }
+    };
+
+    public IdHttpTransportImpl(InetSocketAddress serverAddress, int maxConnections) {
+        this(serverAddress, maxConnections, null, null, null);
+    }
+
+    /**
+     * @param sslContext 为null时使用HTTP，否则使用HTTPS，例如SSLEngineHelper.getClientSSLContext(serverPubKeyBytes)
+     * @param domain     Host头及TLS的服务器名，为null时使用IP
+     * @param path       代理上的路径前缀，可以为null
+     */
+    public IdHttpTransportImpl(InetSocketAddress serverAddress, int maxConnections, SSLContext sslContext, String domain, String path) {
+        this(serverAddress, maxConnections, sslContext, domain, path, false);
+    }
+
+    /**
+     * @param http2PriorKnowledge 为true时HTTP连接直接使用HTTP/2（h2c），服务器必须支持；HTTPS总是通过ALPN协商
+     */
+    public IdHttpTransportImpl(InetSocketAddress serverAddress, int maxConnections, SSLContext sslContext, String domain, String path, boolean http2PriorKnowledge) {
+        String host = domain != null ? domain : serverAddress.getAddress() instanceof Inet6Address
+                ? "[" + Util.rfcIpRepr(serverAddress.getAddress()) + "]" : serverAddress.getAddress().getHostAddress();
+        int defaultPort = sslContext == null ? 80 : 443;
+        this.hostHeader = serverAddress.getPort() == defaultPort ? host : host + ":" + serverAddress.getPort();
+        this.path = path;
+        String peerHost = domain != null ? domain : serverAddress.getHostString();
+        SslContext clientSslContext = sslContext == null ? null : newClientSslContext(sslContext);
+
+        ChannelPoolHandler channelPoolHandler = new AbstractChannelPoolHandler() {
+            @Override
+            public void channelCreated(Channel ch) throws Exception {
+                Promise<String> protocol = ch.eventLoop().newPromise();
+                ch.attr(PROTOCOL_KEY).set(protocol);
+                ch.closeFuture().addListener(future -> protocol.tryFailure(new ClosedChannelException()));
+                if (clientSslContext == null) {
+                    String selected = http2PriorKnowledge ? ApplicationProtocolNames.HTTP_2 : ApplicationProtocolNames.HTTP_1_1;
+                    configurePipeline(ch.pipeline(), selected);
+                    protocol.setSuccess(selected);
+                    return;
+                }
+                // 相同的peerHost/port才能复用会话缓存中的TLS会话
+                ch.pipeline().addLast(clientSslContext.newHandler(ch.alloc(), peerHost, serverAddress.getPort()));
+                ch.pipeline().addLast(new ApplicationProtocolNegotiationHandler(ApplicationProtocolNames.HTTP_1_1) {
+                    @Override
+                    protected void configurePipeline(ChannelHandlerContext ctx, String selected) {
+                        IdHttpTransportImpl.this.configurePipeline(ctx.pipeline(), selected);
+                        protocol.trySuccess(selected);
+                    }
+
+                    @Override
+                    protected void handshakeFailure(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+                        protocol.tryFailure(cause);
+                        super.handshakeFailure(ctx, cause);
+                    }
+                });
+            }
+        };
+
+        Bootstrap bootstrap = new Bootstrap();
+        NettyTransport transport = NettyTransport.getInstance();
+        this.eventLoopGroup = transport.newEventLoopGroup(0, "id-http-transport");
+        bootstrap.group(eventLoopGroup)
+                .channel(transport.socketChannelClass())
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .remoteAddress(serverAddress)
+        ;
+
+        this.channelPool = new FixedChannelPool(bootstrap, channelPoolHandler, maxConnections);
+    }
+
+    /**
+     * 使用SSLContext的会话缓存，ALPN可用时（JDK 8u252及以上）优先协商HTTP/2
+     */
+    private static SslContext newClientSslContext(SSLContext sslContext) {
+        ApplicationProtocolConfig apn = SslProvider.isAlpnSupported(SslProvider.JDK)
+                ? new ApplicationProtocolConfig(ApplicationProtocolConfig.Protocol.ALPN,
+                ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                ApplicationProtocolNames.HTTP_2, ApplicationProtocolNames.HTTP_1_1)
+                : ApplicationProtocolConfig.DISABLED;
+        return new JdkSslContext(sslContext, true, Arrays.asList(SSLEngineHelper.ENABLED_CIPHER_SUITES),
+                IdentityCipherSuiteFilter.INSTANCE, apn, ClientAuth.NONE, SSLEngineHelper.ENABLED_CLIENT_PROTOCOLS, false);
+    }
+
+    private void configurePipeline(ChannelPipeline pipeline, String protocol) {
+        if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+            pipeline.addLast(Http2FrameCodecBuilder.forClient()
+                    .initialSettings(Http2Settings.defaultSettings().pushEnabled(false))
+                    .build());
+            pipeline.addLast(new Http2MultiplexHandler(new ChannelInitializer<Channel>() {
+                @Override
+                protected void initChannel(Channel ch) {
+                    // 不接受服务器推送的流
+                    ch.close();
+                }
+            }));
+            pipeline.addLast(exceptionHandler);
+        } else if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
+            pipeline.addLast(new HttpClientCodec());
+            addHttpHandlers(pipeline);
+        } else {
+            throw new IllegalStateException("Unsupported protocol: " + protocol);
+        }
+    }
+
+    private void addHttpHandlers(ChannelPipeline pipeline) {
+        pipeline.addLast(new HttpObjectAggregator(MAX_CONTENT_LENGTH));
+        pipeline.addLast(new HttpHandleEncoder(hostHeader, path));
+        pipeline.addLast(new HttpHandleDecoder());
+        pipeline.addLast(messageHandler);
+        pipeline.addLast(exceptionHandler);
+    }
+
+    @Override
+    public ChannelPool getChannelPool() {
+        return channelPool;
+    }
+
+    @Override
+    public IdPromise<IdResponse> send(IdRequest request) throws IDException {
+        if (!(request instanceof AbstractIdRequest)) {
+            throw new IDException(IDException.CLIENT_ERROR, "Unsupported request: " + request);
+        }
+        int opCode = ((AbstractIdRequest) request).opCode;
+        Channel channel = acquire();
+        Promise<String> protocol = channel.attr(PROTOCOL_KEY).get();
+        IdPromise<IdResponse> promise = new IdPromiseDefault<>(channel.eventLoop(), channelPool, channel);
+        long startNanos = System.nanoTime();
+        promise.addListener(future -> {
+            if (future.isSuccess()) {
+                GlobalIdMetrics.getInstance().recordResponse(opCode, ((AbstractIdResponse) future.getNow()).responseCode, System.nanoTime() - startNanos);
+            } else if (!ApplicationProtocolNames.HTTP_2.equals(protocol.getNow())) {
+                channel.attr(IdTcpTransport.PROMISE_ATTRIBUTE_KEY).set(null);
+                channel.close();
+            }
+            promise.release();
+        });
+
+        protocol.addListener(future -> {
+            if (!future.isSuccess()) {
+                promise.tryFailure(new IDException(IDException.CLIENT_ERROR, "Http transport error", future.cause()));
+            } else if (ApplicationProtocolNames.HTTP_2.equals(future.getNow())) {
+                // 连接立即归还，其他请求可以同时在连接上打开流
+                promise.release();
+                new Http2StreamChannelBootstrap(channel).handler(streamInitializer).open().addListener((Future<Http2StreamChannel> streamFuture) -> {
+                    if (streamFuture.isSuccess()) {
+                        Http2StreamChannel stream = streamFuture.getNow();
+                        promise.addListener(f -> {
+                            if (!f.isSuccess()) {
+                                stream.close();
+                            }
+                        });
+                        write(stream, request, promise);
+                    } else {
+                        promise.tryFailure(new IDException(IDException.CHANNEL_GET_ERROR, "Can't open http2 stream", streamFuture.cause()));
+                    }
+                });
+            } else {
+                write(channel, request, promise);
+            }
+        });
+        return promise;
+    }
+
+    private static void write(Channel channel, IdRequest request, Promise<IdResponse> promise) {
+        if (promise.isDone()) {
+            return;
+        }
+        channel.attr(IdTcpTransport.PROMISE_ATTRIBUTE_KEY).set(promise);
+        channel.writeAndFlush(request).addListener(future -> {
+            if (!future.isSuccess()) {
+                promise.tryFailure(future.cause());
+            }
+        });
+    }
+
+    private Channel acquire() throws IDException {
+        Future<Channel> channelFuture = channelPool.acquire();
+        try {
+            return channelFuture.get(20, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            throw new IDException(IDException.CHANNEL_GET_ERROR, "Can't get channel from pool", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        channelPool.close();
+        eventLoopGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * HTTP状态码错误、解码失败等异常使在途请求失败并关闭连接（HTTP/2只关闭流）
+     */
+    @ChannelHandler.Sharable
+    private static class HttpExceptionHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            Promise<IdResponse> promise = ctx.channel().attr(IdTcpTransport.PROMISE_ATTRIBUTE_KEY).getAndSet(null);
+            if (promise != null) {
+                Throwable error = cause instanceof DecoderException && cause.getCause() != null ? cause.getCause() : cause;
+                promise.tryFailure(new IDException(IDException.CLIENT_ERROR, "Http transport error", error));
+            } else {
+                log.warn("{} http transport error", ctx.channel(), cause);
+            }
+            ctx.close();
+        }
+    }
+}
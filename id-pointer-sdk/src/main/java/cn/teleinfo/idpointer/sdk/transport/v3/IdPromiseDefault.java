@@ -11,6 +11,8 @@ import io.netty.channel.pool.ChannelPool;
 import io.netty.util.concurrent.DefaultPromise;
 import io.netty.util.concurrent.EventExecutor;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * @Author: abluepoint
  * @Email: lilong@teleinfo.cn
@@ -21,6 +23,14 @@ public class IdPromiseDefault<V> extends DefaultPromise<V> implements IdPromise<
 
     private final ChannelPool channelPool;
     private final Channel channel;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    /**
+     * 不占用channel的promise，例如命中缓存的响应
+     */
+    public IdPromiseDefault(EventExecutor executor) {
+        this(executor, null, null);
+    }
 
     public IdPromiseDefault(EventExecutor executor, ChannelPool channelPool, Channel channel) {
         super(executor);
@@ -35,6 +45,9 @@ public class IdPromiseDefault<V> extends DefaultPromise<V> implements IdPromise<
 
     @Override
     public void release() {
-        channelPool.release(channel);
+        // 多路复用模式下channel在写出后即归还，这里保证只归还一次
+        if (channelPool != null && released.compareAndSet(false, true)) {
+            channelPool.release(channel);
+        }
     }
 }
@@ -10,6 +10,8 @@ import io.netty.util.AttributeKey;
 import io.netty.util.concurrent.Promise;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
 
 public interface IdTcpTransport {
 
@@ -23,5 +25,16 @@ public interface IdTcpTransport {
 
     public IdPromise<IdResponse> send(IdRequest request, ChannelPool channelPoolUsed, Channel channel) throws IDException;
 
+    /**
+     * 批量发送，返回的promise与请求一一对应；默认逐个调用send(IdRequest)
+     */
+    public default List<IdPromise<IdResponse>> send(List<IdRequest> requests) throws IDException {
+        List<IdPromise<IdResponse>> promises = new ArrayList<>(requests.size());
+        for (IdRequest request : requests) {
+            promises.add(send(request));
+        }
+        return promises;
+    }
+
     public void close();
 }
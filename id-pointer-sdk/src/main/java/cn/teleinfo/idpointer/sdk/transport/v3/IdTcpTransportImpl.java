@@ -8,41 +8,73 @@ package cn.teleinfo.idpointer.sdk.transport.v3;
 
 import cn.teleinfo.idpointer.sdk.client.v3.IdRequest;
 import cn.teleinfo.idpointer.sdk.client.v3.IdResponse;
+import cn.teleinfo.idpointer.sdk.core.AbstractIdResponse;
 import cn.teleinfo.idpointer.sdk.exception.IDException;
 import cn.teleinfo.idpointer.sdk.protocol.decoder.HandleDecoder;
 import cn.teleinfo.idpointer.sdk.protocol.encoder.HandleEncoder;
+import cn.teleinfo.idpointer.sdk.transport.NettyTransport;
+import cn.teleinfo.idpointer.sdk.transport.sample.MessagePromiseManager;
 import cn.teleinfo.idpointer.sdk.transport.sample.SimpleMessageHandler;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.pool.AbstractChannelPoolHandler;
 import io.netty.channel.pool.ChannelPool;
 import io.netty.channel.pool.ChannelPoolHandler;
 import io.netty.channel.pool.FixedChannelPool;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @Author: abluepoint
  * @Email: lilong@teleinfo.cn
  * @Create: 2024/12/11
  * @Description: IdTcpTransportImpl -
+ * <p>
+ * multiplexed为true时，请求写出后channel立即归还连接池，同一channel上可同时存在多个在途请求，响应按requestId匹配；
+ * 批量发送时每次取出一个channel，连续写出最多PIPELINE_DEPTH个请求后再flush；batchTimeout秒后仍未响应的请求以超时失败并移出在途表
  */
 public class IdTcpTransportImpl implements IdTcpTransport {
+    public static final int PIPELINE_DEPTH = 128;
+    public static final int DEFAULT_BATCH_TIMEOUT = 60;
+
     private final ChannelPool channelPool;
+    private final boolean multiplexed;
+    private final int batchTimeout;
 
     public IdTcpTransportImpl(InetSocketAddress serverAddress, int maxConnections) {
+        this(serverAddress, maxConnections, false);
+    }
+
+    public IdTcpTransportImpl(InetSocketAddress serverAddress, int maxConnections, boolean multiplexed) {
+        this(serverAddress, maxConnections, multiplexed, DEFAULT_BATCH_TIMEOUT);
+    }
+
+    /**
+     * @param batchTimeout 多路复用模式下批量请求等待响应的最长时间，单位秒
+     */
+    public IdTcpTransportImpl(InetSocketAddress serverAddress, int maxConnections, boolean multiplexed, int batchTimeout) {
+        this.multiplexed = multiplexed;
+        this.batchTimeout = batchTimeout;
         SimpleMessageHandler messageHandler = new SimpleMessageHandler();
 
         ChannelPoolHandler channelPoolHandler = new AbstractChannelPoolHandler() {
             @Override
             public void channelCreated(Channel ch) throws Exception {
+                if (multiplexed) {
+                    ch.attr(MessagePromiseManager.IN_FLIGHT_PROMISES_KEY).set(new ConcurrentHashMap<>());
+                }
                 ch.pipeline().addLast(new HandleEncoder());
                 ch.pipeline().addLast(new HandleDecoder());
                 ch.pipeline().addLast(messageHandler);
@@ -51,9 +83,9 @@ public class IdTcpTransportImpl implements IdTcpTransport {
         };
 
         Bootstrap bootstrap = new Bootstrap();
-        NioEventLoopGroup group = new NioEventLoopGroup();
-        bootstrap.group(group)
-                .channel(NioSocketChannel.class)
+        NettyTransport transport = NettyTransport.getInstance();
+        bootstrap.group(transport.newEventLoopGroup(0))
+                .channel(transport.socketChannelClass())
                 .option(ChannelOption.SO_KEEPALIVE, true)
                 .option(ChannelOption.SO_REUSEADDR, true)
                 .option(ChannelOption.TCP_NODELAY, true)
@@ -71,23 +103,121 @@ public class IdTcpTransportImpl implements IdTcpTransport {
 
     @Override
     public IdPromise<IdResponse> send(IdRequest request) throws IDException {
+        return send(request, channelPool, acquire());
+    }
+
+    private Channel acquire() throws IDException {
         Future<Channel> channelFuture = channelPool.acquire();
-        Channel channel = null;
         try {
-            channel = channelFuture.get(20, TimeUnit.SECONDS);
+            return channelFuture.get(20, TimeUnit.SECONDS);
         } catch (InterruptedException | ExecutionException | TimeoutException e) {
             throw new IDException(IDException.CHANNEL_GET_ERROR, "Can't get channel from pool", e);
         }
+    }
+
+    /**
+     * 非多路复用模式下channel要等响应后才归还，只能逐个发送
+     */
+    @Override
+    public List<IdPromise<IdResponse>> send(List<IdRequest> requests) throws IDException {
+        List<IdPromise<IdResponse>> promises = new ArrayList<>(requests.size());
+        if (!multiplexed) {
+            for (IdRequest request : requests) {
+                promises.add(send(request));
+            }
+            return promises;
+        }
+
+        for (int from = 0; from < requests.size(); from += PIPELINE_DEPTH) {
+            Channel channel = acquire();
+            try {
+                ConcurrentMap<Integer, Promise<? super AbstractIdResponse>> inFlightPromises = channel.attr(MessagePromiseManager.IN_FLIGHT_PROMISES_KEY).get();
+                List<IdPromise<IdResponse>> batch = new ArrayList<>();
+                for (IdRequest request : requests.subList(from, Math.min(from + PIPELINE_DEPTH, requests.size()))) {
+                    batch.add(write(request, channel, inFlightPromises));
+                }
+                channel.flush();
+                scheduleTimeout(channel, batch);
+                promises.addAll(batch);
+            } finally {
+                channelPool.release(channel);
+            }
+        }
+        return promises;
+    }
+
+    /**
+     * 超时后未完成的promise以RESPONSE_TIMEOUT失败，失败的promise由listener移出在途表；channel上还有其他请求，不关闭
+     */
+    private void scheduleTimeout(Channel channel, List<IdPromise<IdResponse>> batch) {
+        ScheduledFuture<?> timeoutFuture = channel.eventLoop().schedule(() -> {
+            for (IdPromise<IdResponse> promise : batch) {
+                promise.tryFailure(new IDException(IDException.RESPONSE_TIMEOUT, "response timeout"));
+            }
+        }, batchTimeout, TimeUnit.SECONDS);
+        AtomicInteger remaining = new AtomicInteger(batch.size());
+        for (IdPromise<IdResponse> promise : batch) {
+            promise.addListener(future -> {
+                if (remaining.decrementAndGet() == 0) {
+                    timeoutFuture.cancel(false);
+                }
+            });
+        }
+    }
+
+    private IdPromise<IdResponse> write(IdRequest request, Channel channel, ConcurrentMap<Integer, Promise<? super AbstractIdResponse>> inFlightPromises) {
+        IdPromise<IdResponse> promise = new IdPromiseDefault<>(channel.eventLoop());
+        int requestId = request.getRequestId();
+        if (inFlightPromises.putIfAbsent(requestId, promise) != null) {
+            promise.setFailure(new IDException(IDException.CLIENT_ERROR, "Duplicate requestId in flight: " + requestId));
+            return promise;
+        }
+        promise.addListener(future -> inFlightPromises.remove(requestId, promise));
+        if (!channel.isActive()) {
+            promise.setFailure(new IDException(IDException.CHANNEL_GET_ERROR, "Channel is inactive"));
+            return promise;
+        }
+        channel.write(request).addListener(future -> {
+            if (!future.isSuccess()) {
+                promise.tryFailure(future.cause());
+            }
+        });
+        return promise;
+    }
 
-        return send(request, channelPool, channel);
+    public boolean isMultiplexed() {
+        return multiplexed;
     }
 
     @Override
     public IdPromise<IdResponse> send(IdRequest request, ChannelPool channelPoolUsed, Channel channel) throws IDException {
 
         IdPromise<IdResponse> promise = new IdPromiseDefault<>(channel.eventLoop(), channelPoolUsed, channel);
-        channel.attr(IdTcpTransport.PROMISE_ATTRIBUTE_KEY).set(promise);
-        channel.writeAndFlush(request);
+        ConcurrentMap<Integer, Promise<? super AbstractIdResponse>> inFlightPromises = channel.attr(MessagePromiseManager.IN_FLIGHT_PROMISES_KEY).get();
+        if (inFlightPromises == null) {
+            channel.attr(IdTcpTransport.PROMISE_ATTRIBUTE_KEY).set(promise);
+            channel.writeAndFlush(request);
+            return promise;
+        }
+
+        int requestId = request.getRequestId();
+        if (inFlightPromises.putIfAbsent(requestId, promise) != null) {
+            promise.release();
+            throw new IDException(IDException.CLIENT_ERROR, "Duplicate requestId in flight: " + requestId);
+        }
+        promise.addListener(future -> inFlightPromises.remove(requestId, promise));
+        if (!channel.isActive()) {
+            inFlightPromises.remove(requestId, promise);
+            promise.release();
+            throw new IDException(IDException.CHANNEL_GET_ERROR, "Channel is inactive");
+        }
+        channel.writeAndFlush(request).addListener(future -> {
+            if (!future.isSuccess()) {
+                promise.tryFailure(future.cause());
+            }
+        });
+        // 写出后即归还，其他请求可以复用该channel
+        promise.release();
         return promise;
     }
 
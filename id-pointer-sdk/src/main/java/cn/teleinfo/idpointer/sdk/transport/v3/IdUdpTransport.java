@@ -1,4 +1,15 @@
 package cn.teleinfo.idpointer.sdk.transport.v3;
 
+import cn.teleinfo.idpointer.sdk.client.v3.IdRequest;
+import cn.teleinfo.idpointer.sdk.client.v3.IdResponse;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+
+/**
+ * 基于UDP的传输，只用于公开的、不需要认证和加密的请求（如解析）
+ */
 public interface IdUdpTransport {
+
+    public IdPromise<IdResponse> send(IdRequest request) throws IDException;
+
+    public void close();
 }
@@ -0,0 +1,334 @@
+/**
+ * Copyright (C) 2024 teleinfo caict
+ * All rights reserved.
+ * <p>
+ * 版权所有（C）2024 teleinfo caict
+ */
+package cn.teleinfo.idpointer.sdk.transport.v3;
+
+import cn.teleinfo.idpointer.sdk.client.v3.IdRequest;
+import cn.teleinfo.idpointer.sdk.client.v3.IdResponse;
+import cn.teleinfo.idpointer.sdk.core.*;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.metrics.GlobalIdMetrics;
+import cn.teleinfo.idpointer.sdk.transport.MessagePackets;
+import cn.teleinfo.idpointer.sdk.transport.MessagePacketsManager;
+import cn.teleinfo.idpointer.sdk.transport.NettyTransport;
+import cn.teleinfo.idpointer.sdk.util.EnvelopeUtils;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description: IdUdpTransportImpl -
+ * <p>
+ * 所有请求共用一个绑定在随机端口上的datagram channel，响应按requestId匹配，省去TCP握手。
+ * 每次发送后按retryScheme中的等待时间（与HandleResolver的udpRetryScheme一致）等待响应，超时重发，全部超时后失败。
+ * 分包（truncated）的响应通过MessagePackets重组；配置了tcpFallback时，分包响应在一次等待时间内未收齐、
+ * 请求本身需要分包或需要认证/加密的请求改走TCP。
+ */
+public class IdUdpTransportImpl implements IdUdpTransport {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(IdUdpTransportImpl.class);
+
+    public static final int[] DEFAULT_RETRY_SCHEME = {500, 1000, 1500};
+
+    private final InetSocketAddress serverAddress;
+    private final int[] retryScheme;
+    private final IdTcpTransport tcpFallback;
+    private final EventLoopGroup eventLoopGroup;
+    private final Channel channel;
+    private final MessagePacketsManager messagePacketsManager = new MessagePacketsManager();
+    private final ConcurrentMap<Integer, UdpExchange> inFlightExchanges = new ConcurrentHashMap<>();
+
+    private final AtomicLong retransmittedCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+
+    public IdUdpTransportImpl(InetSocketAddress serverAddress) {
+        this(serverAddress, DEFAULT_RETRY_SCHEME, null);
+    }
+
+    /**
+     * @param retryScheme 每次发送后等待响应的毫秒数，长度即发送次数，例如HandleResolver.getUdpRetryScheme()
+     * @param tcpFallback 分包响应不完整时使用的TCP传输，可以为null；关闭本传输时不会关闭它
+     */
+    public IdUdpTransportImpl(InetSocketAddress serverAddress, int[] retryScheme, IdTcpTransport tcpFallback) {
+        if (retryScheme == null || retryScheme.length == 0) {
+            throw new IllegalArgumentException("retryScheme is empty");
+        }
+        this.serverAddress = serverAddress;
+        this.retryScheme = retryScheme.clone();
+        this.tcpFallback = tcpFallback;
+
+        NettyTransport transport = NettyTransport.getInstance();
+        this.eventLoopGroup = transport.newEventLoopGroup(1, "id-udp-transport");
+        Bootstrap bootstrap = new Bootstrap();
+        bootstrap.group(eventLoopGroup)
+                .channel(transport.datagramChannelClass())
+                .handler(new UdpResponseHandler());
+        try {
+            this.channel = bootstrap.bind(0).syncUninterruptibly().channel();
+        } catch (RuntimeException e) {
+            eventLoopGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+            throw e;
+        }
+    }
+
+    @Override
+    public IdPromise<IdResponse> send(IdRequest request) throws IDException {
+        if (!(request instanceof AbstractIdRequest)) {
+            throw new IDException(IDException.CLIENT_ERROR, "Unsupported request: " + request);
+        }
+        AbstractIdRequest idRequest = (AbstractIdRequest) request;
+        if (idRequest.encrypt || idRequest.authInfo != null || idRequest.sessionId > 0) {
+            if (tcpFallback == null) {
+                throw new IDException(IDException.CLIENT_ERROR, "Authenticated or encrypted request can't be sent over udp");
+            }
+            return sendOverTcp(idRequest);
+        }
+
+        DatagramPacket[] packets;
+        try {
+            packets = messagePacketsManager.getUdpPacketsForRequest(idRequest, serverAddress);
+        } catch (HandleException e) {
+            throw new IDException(IDException.CLIENT_ERROR, "Encode udp request error", e);
+        }
+        if (packets.length > 1 && tcpFallback != null) {
+            release(packets);
+            return sendOverTcp(idRequest);
+        }
+
+        IdPromise<IdResponse> promise = new IdPromiseDefault<>(channel.eventLoop());
+        UdpExchange exchange = new UdpExchange(idRequest, packets, promise);
+        int requestId = idRequest.requestId;
+        if (inFlightExchanges.putIfAbsent(requestId, exchange) != null) {
+            release(packets);
+            throw new IDException(IDException.CLIENT_ERROR, "Duplicate requestId in flight: " + requestId);
+        }
+        promise.addListener(future -> {
+            inFlightExchanges.remove(requestId, exchange);
+            exchange.finish();
+            if (future.isSuccess()) {
+                GlobalIdMetrics.getInstance().recordResponse(idRequest.opCode, ((AbstractIdResponse) future.getNow()).responseCode, System.nanoTime() - exchange.startNanos);
+            }
+        });
+        if (!channel.isActive()) {
+            promise.tryFailure(new IDException(IDException.CHANNEL_GET_ERROR, "Udp transport is closed"));
+            return promise;
+        }
+        channel.eventLoop().execute(() -> transmit(exchange));
+        return promise;
+    }
+
+    /**
+     * 在channel的EventLoop中执行
+     */
+    private void transmit(UdpExchange exchange) {
+        if (exchange.promise.isDone() || exchange.fallback) {
+            return;
+        }
+        int attempt = exchange.attempts++;
+        if (attempt > 0) {
+            retransmittedCount.incrementAndGet();
+            log.debug("retransmit udp request {}, attempt {}", exchange.request.requestId, attempt + 1);
+        }
+        for (DatagramPacket packet : exchange.packets) {
+            channel.write(packet.retainedDuplicate()).addListener(future -> {
+                if (!future.isSuccess()) {
+                    log.debug("send udp request {} error", exchange.request.requestId, future.cause());
+                }
+            });
+        }
+        channel.flush();
+        exchange.timer = channel.eventLoop().schedule(() -> onTimeout(exchange), retryScheme[attempt], TimeUnit.MILLISECONDS);
+    }
+
+    private void onTimeout(UdpExchange exchange) {
+        if (exchange.promise.isDone() || exchange.fallback) {
+            return;
+        }
+        if (exchange.messagePackets != null && tcpFallback != null) {
+            // 收到了部分分包，重发会再次收到整个响应，改走TCP
+            log.debug("truncated udp response {} incomplete, fallback to tcp", exchange.request.requestId);
+            exchange.fallback = true;
+            GlobalEventExecutor.INSTANCE.execute(() -> fallback(exchange));
+            return;
+        }
+        if (exchange.attempts < retryScheme.length) {
+            transmit(exchange);
+            return;
+        }
+        if (exchange.promise.tryFailure(new IDException(IDException.RESPONSE_TIMEOUT, "Udp response timeout, requestId " + exchange.request.requestId))) {
+            GlobalIdMetrics.getInstance().recordTimeout(exchange.request.opCode);
+        }
+    }
+
+    private void fallback(UdpExchange exchange) {
+        IdPromise<IdResponse> tcpPromise;
+        try {
+            tcpPromise = sendOverTcp(exchange.request);
+        } catch (IDException | RuntimeException e) {
+            exchange.promise.tryFailure(e);
+            return;
+        }
+        tcpPromise.addListener(future -> {
+            if (future.isSuccess()) {
+                exchange.promise.trySuccess(tcpPromise.getNow());
+            } else {
+                exchange.promise.tryFailure(future.cause());
+            }
+        });
+    }
+
+    /**
+     * TCP的promise完成后即归还channel
+     */
+    private IdPromise<IdResponse> sendOverTcp(AbstractIdRequest request) throws IDException {
+        fallbackCount.incrementAndGet();
+        IdPromise<IdResponse> tcpPromise = tcpFallback.send(request);
+        tcpPromise.addListener(future -> tcpPromise.release());
+        return tcpPromise;
+    }
+
+    private void onPacket(DatagramPacket packet) {
+        if (!serverAddress.equals(packet.sender())) {
+            log.debug("ignore udp packet from {}", packet.sender());
+            return;
+        }
+        ByteBuf content = packet.content();
+        MessageEnvelope envelope = new MessageEnvelope();
+        try {
+            EnvelopeUtils.decodeEnvelope(content, content.readerIndex(), envelope);
+        } catch (HandleException e) {
+            log.warn("invalid udp packet from {}", packet.sender(), e);
+            return;
+        }
+        UdpExchange exchange = inFlightExchanges.get(envelope.requestId);
+        if (exchange == null) {
+            log.debug("request not found for requestId: {}, maybe timeout", envelope.requestId);
+            return;
+        }
+        if (envelope.encrypted) {
+            exchange.promise.tryFailure(new IDException(IDException.ENCRYPTION_ERROR, "Can't decrypt udp response without session"));
+            return;
+        }
+
+        byte[] messageBytes = ByteBufUtil.getBytes(content, content.readerIndex() + Common.MESSAGE_ENVELOPE_SIZE, content.readableBytes() - Common.MESSAGE_ENVELOPE_SIZE);
+        if (envelope.truncated) {
+            if (exchange.messagePackets == null) {
+                exchange.messagePackets = new MessagePackets(envelope.messageLength);
+            }
+            try {
+                exchange.messagePackets.receivePacket(envelope, messageBytes);
+            } catch (IndexOutOfBoundsException e) {
+                log.warn("invalid udp packet {} for requestId: {}", envelope.messageId, envelope.requestId);
+                return;
+            }
+            if (!exchange.messagePackets.isReceiveCompleted()) {
+                return;
+            }
+            messageBytes = exchange.messagePackets.getMessageBytes();
+        }
+
+        try {
+            AbstractMessage message = Encoder.decodeMessage(messageBytes, 0, envelope);
+            log.debug("<== receive udp response, requestId {},detail {}", message.requestId, message);
+            if (!(message instanceof AbstractIdResponse)) {
+                exchange.promise.tryFailure(new IDException(IDException.RC_INVALID_RESPONSE_CODE, "Unexpected udp message: " + message));
+                return;
+            }
+            exchange.promise.trySuccess((AbstractIdResponse) message);
+        } catch (HandleException | RuntimeException e) {
+            exchange.promise.tryFailure(new IDException(IDException.CLIENT_ERROR, "Decode udp response error", e));
+        }
+    }
+
+    private static void release(DatagramPacket[] packets) {
+        for (DatagramPacket packet : packets) {
+            ReferenceCountUtil.safeRelease(packet);
+        }
+    }
+
+    public InetSocketAddress getServerAddress() {
+        return serverAddress;
+    }
+
+    public InetSocketAddress getLocalAddress() {
+        return (InetSocketAddress) channel.localAddress();
+    }
+
+    public long getRetransmittedCount() {
+        return retransmittedCount.get();
+    }
+
+    /**
+     * 改走TCP的请求数
+     */
+    public long getFallbackCount() {
+        return fallbackCount.get();
+    }
+
+    @Override
+    public void close() {
+        IDException cause = new IDException(IDException.CHANNEL_GET_ERROR, "Udp transport is closed");
+        for (UdpExchange exchange : inFlightExchanges.values()) {
+            exchange.promise.tryFailure(cause);
+        }
+        channel.close().syncUninterruptibly();
+        eventLoopGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS);
+    }
+
+    private class UdpResponseHandler extends SimpleChannelInboundHandler<DatagramPacket> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) throws Exception {
+            onPacket(packet);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            // udp的错误（如ICMP不可达）不影响其他请求，由重发处理
+            log.debug("udp transport error", cause);
+        }
+    }
+
+    /**
+     * 除send外只在channel的EventLoop中访问
+     */
+    private static final class UdpExchange {
+        private final AbstractIdRequest request;
+        private final DatagramPacket[] packets;
+        private final IdPromise<IdResponse> promise;
+        private final long startNanos = System.nanoTime();
+        private int attempts;
+        private MessagePackets messagePackets;
+        private ScheduledFuture<?> timer;
+        private boolean fallback;
+
+        private UdpExchange(AbstractIdRequest request, DatagramPacket[] packets, IdPromise<IdResponse> promise) {
+            this.request = request;
+            this.packets = packets;
+            this.promise = promise;
+        }
+
+        private void finish() {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            release(packets);
+        }
+    }
+}
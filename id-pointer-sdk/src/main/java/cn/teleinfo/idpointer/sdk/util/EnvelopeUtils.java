@@ -0,0 +1,54 @@
+package cn.teleinfo.idpointer.sdk.util;
+
+import cn.teleinfo.idpointer.sdk.core.Common;
+import cn.teleinfo.idpointer.sdk.core.Encoder;
+import cn.teleinfo.idpointer.sdk.core.HandleException;
+import cn.teleinfo.idpointer.sdk.core.MessageEnvelope;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 直接在ByteBuf上读写消息信封，格式与Encoder.encodeEnvelope/decodeEnvelope一致
+ */
+public abstract class EnvelopeUtils {
+
+    /**
+     * 将信封写入out的writerIndex处
+     */
+    public static void encodeEnvelope(MessageEnvelope msgEnv, ByteBuf out) {
+        out.writeByte(msgEnv.protocolMajorVersion);
+        out.writeByte(msgEnv.protocolMinorVersion);
+        out.writeByte((msgEnv.compressed ? Encoder.ENV_FLAG_COMPRESSED : 0) | (msgEnv.encrypted ? Encoder.ENV_FLAG_ENCRYPTED : 0) | (msgEnv.truncated ? Encoder.ENV_FLAG_TRUNCATED : 0) | msgEnv.suggestMajorProtocolVersion);
+        out.writeByte(msgEnv.suggestMinorProtocolVersion);
+        out.writeInt(msgEnv.sessionId);
+        out.writeInt(msgEnv.requestId);
+        out.writeInt(msgEnv.messageId);
+        out.writeInt(msgEnv.messageLength);
+    }
+
+    /**
+     * 从index处读取信封，不移动readerIndex
+     */
+    public static void decodeEnvelope(ByteBuf in, int index, MessageEnvelope msgEnv) throws HandleException {
+        if (in.writerIndex() - index < Common.MESSAGE_ENVELOPE_SIZE) {
+            throw new HandleException(HandleException.MESSAGE_FORMAT_ERROR, "Invalid message envelope");
+        }
+        byte flags = in.getByte(index + 2);
+        msgEnv.protocolMajorVersion = in.getByte(index);
+        msgEnv.protocolMinorVersion = in.getByte(index + 1);
+        msgEnv.compressed = (flags & Encoder.ENV_FLAG_COMPRESSED) != 0;
+        msgEnv.encrypted = (flags & Encoder.ENV_FLAG_ENCRYPTED) != 0;
+        msgEnv.truncated = (flags & Encoder.ENV_FLAG_TRUNCATED) != 0;
+        msgEnv.suggestMajorProtocolVersion = (byte) (flags & 0x03);
+        msgEnv.suggestMinorProtocolVersion = in.getByte(index + 3);
+        if (msgEnv.suggestMajorProtocolVersion == 0) {
+            msgEnv.suggestMajorProtocolVersion = msgEnv.protocolMajorVersion;
+            msgEnv.suggestMinorProtocolVersion = msgEnv.protocolMinorVersion;
+        }
+        msgEnv.sessionId = in.getInt(index + 4);
+        msgEnv.requestId = in.getInt(index + 8);
+        msgEnv.messageId = in.getInt(index + 12);
+        msgEnv.messageLength = in.getInt(index + 16);
+        if (msgEnv.messageLength > Common.MAX_MESSAGE_LENGTH || msgEnv.messageLength < 0)
+            throw new HandleException(HandleException.MESSAGE_FORMAT_ERROR, "Invalid message length: " + msgEnv.messageLength);
+    }
+}
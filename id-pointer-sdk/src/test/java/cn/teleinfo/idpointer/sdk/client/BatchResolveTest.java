@@ -0,0 +1,92 @@
+package cn.teleinfo.idpointer.sdk.client;
+
+import cn.teleinfo.idpointer.sdk.client.v3.IdResponse;
+import cn.teleinfo.idpointer.sdk.client.v3.IdTcpClient;
+import cn.teleinfo.idpointer.sdk.core.*;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.stub.StubIdServer;
+import cn.teleinfo.idpointer.sdk.transport.v3.IdPromise;
+import io.netty.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 基于StubIdServer的批量解析测试
+ */
+class BatchResolveTest {
+
+    private static final int HANDLE_COUNT = 300;
+
+    private StubIdServer server;
+    private InetSocketAddress address;
+    private List<String> handles;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = StubIdServer.builder().build();
+        address = server.start();
+        handles = new ArrayList<>();
+        for (int i = 0; i < HANDLE_COUNT; i++) {
+            String handle = "88.111/" + i;
+            server.getStore().create(handle, new HandleValue[]{new HandleValue(1, "URL", "http://example.com/" + i)}, false);
+            handles.add(handle);
+        }
+        handles.add("88.111/missing");
+        // 重复的标识只解析一次
+        handles.add("88.111/0");
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void pipelinedOverSharedChannels() throws Exception {
+        try (SampleIdClient client = new SampleIdClient(address, 5, 2)) {
+            Map<String, Future<HandleValue[]>> results = client.resolveHandles(handles, null, null);
+            assertEquals(HANDLE_COUNT + 1, results.size());
+            assertEquals(handles.subList(0, HANDLE_COUNT + 1), new ArrayList<>(results.keySet()));
+            for (int i = 0; i < HANDLE_COUNT; i++) {
+                Future<HandleValue[]> future = results.get("88.111/" + i);
+                assertTrue(future.await(5, TimeUnit.SECONDS));
+                assertTrue(future.isSuccess(), String.valueOf(future.cause()));
+                assertEquals("http://example.com/" + i, future.getNow()[0].getDataAsString());
+            }
+            Future<HandleValue[]> missing = results.get("88.111/missing");
+            assertTrue(missing.await(5, TimeUnit.SECONDS));
+            assertEquals(AbstractMessage.RC_HANDLE_NOT_FOUND, ((IDException) missing.cause()).getResponse().getResponseCode());
+
+            // 连接归还后可继续使用
+            assertEquals(1, client.resolveHandle("88.111/1").length);
+        }
+        assertEquals(HANDLE_COUNT + 2, server.getRequestCount(AbstractMessage.OC_RESOLUTION));
+    }
+
+    @Test
+    void pipelinedV3Engine() throws Exception {
+        IdTcpClient client = new IdTcpClient(address, 5, 2, true);
+        Map<String, IdPromise<IdResponse>> results = client.getIdEngine().resolveHandles(handles, null, null);
+        assertEquals(HANDLE_COUNT + 1, results.size());
+        for (int i = 0; i < HANDLE_COUNT; i++) {
+            IdPromise<IdResponse> promise = results.get("88.111/" + i);
+            assertTrue(promise.await(5, TimeUnit.SECONDS));
+            assertTrue(promise.isSuccess(), String.valueOf(promise.cause()));
+            HandleValue[] values = ((ResolutionIdResponse) promise.getNow()).getHandleValues();
+            assertEquals("http://example.com/" + i, values[0].getDataAsString());
+        }
+        IdPromise<IdResponse> missing = results.get("88.111/missing");
+        assertTrue(missing.await(5, TimeUnit.SECONDS));
+        assertEquals(AbstractMessage.RC_HANDLE_NOT_FOUND, missing.getNow().getResponseCode());
+        assertEquals(HANDLE_COUNT + 1, server.getRequestCount(AbstractMessage.OC_RESOLUTION));
+    }
+}
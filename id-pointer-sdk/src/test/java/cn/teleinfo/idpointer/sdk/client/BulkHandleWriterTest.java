@@ -0,0 +1,129 @@
+package cn.teleinfo.idpointer.sdk.client;
+
+import cn.teleinfo.idpointer.sdk.core.*;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.stub.StubIdServer;
+import cn.teleinfo.idpointer.sdk.util.EncryptionUtils;
+import io.netty.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 基于StubIdServer的批量注册测试
+ */
+class BulkHandleWriterTest {
+
+    private static HandleValue[] values(int i) {
+        return new HandleValue[]{new HandleValue(1, "URL", "http://example.com/" + i)};
+    }
+
+    @Test
+    void pipelinedWithLoginPerChannel() throws Exception {
+        KeyPair keyPair = EncryptionUtils.generateKeyPair();
+        try (StubIdServer server = StubIdServer.builder()
+                .latency(2, 2)
+                .userPublicKey("88.111/admin", 300, keyPair.getPublic())
+                .build()) {
+            InetSocketAddress address = server.start();
+            server.getStore().create("88.111/exists", values(0), false);
+            AuthenticationInfo authenticationInfo = new PublicKeyAuthenticationInfo(Util.encodeString("88.111/admin"), 300, keyPair.getPrivate());
+            int maxConnections = 2;
+            int maxInFlight = 64;
+            try (SampleIdClient client = new SampleIdClient(address, 5, maxConnections, authenticationInfo, false);
+                 BulkHandleWriter writer = new BulkHandleWriter(client, maxInFlight)) {
+                List<Future<AbstractIdResponse>> futures = new ArrayList<>();
+                for (int i = 0; i < 500; i++) {
+                    futures.add(writer.createHandle("88.111/bulk" + i, values(i)));
+                    assertTrue(writer.getInFlightCount() <= maxInFlight);
+                }
+                Future<AbstractIdResponse> exists = writer.createHandle("88.111/exists", values(1));
+                assertTrue(writer.flush(10, TimeUnit.SECONDS));
+
+                for (Future<AbstractIdResponse> future : futures) {
+                    assertTrue(future.isSuccess(), String.valueOf(future.cause()));
+                }
+                // 非暂时性错误不重试
+                IDException e = (IDException) exists.cause();
+                assertEquals(AbstractMessage.RC_HANDLE_ALREADY_EXISTS, e.getResponse().getResponseCode());
+                assertEquals(500, writer.getSucceededCount());
+                assertEquals(0, writer.getRetriedCount());
+                assertEquals(0, writer.getInFlightCount());
+            }
+            assertEquals(501, server.getStore().size());
+            assertTrue(server.getRequestCount(AbstractMessage.OC_LOGIN_ID_SYSTEM) <= maxConnections);
+            assertEquals(501, server.getRequestCount(AbstractMessage.OC_CREATE_HANDLE));
+        }
+    }
+
+    @Test
+    void retriesTransientErrors() throws Exception {
+        try (StubIdServer server = StubIdServer.builder()
+                .requireAuthentication(false)
+                .errorRate(0.3, AbstractMessage.RC_SERVER_TOO_BUSY)
+                .build()) {
+            InetSocketAddress address = server.start();
+            try (SampleIdClient client = new SampleIdClient(address, 5, 2);
+                 BulkHandleWriter writer = new BulkHandleWriter(client, 32, 20, 1, 1)) {
+                List<Future<AbstractIdResponse>> futures = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    futures.add(writer.createHandle("88.111/bulk" + i, values(i)));
+                }
+                assertTrue(writer.flush(10, TimeUnit.SECONDS));
+                for (Future<AbstractIdResponse> future : futures) {
+                    assertTrue(future.isSuccess(), String.valueOf(future.cause()));
+                }
+                assertTrue(writer.getRetriedCount() > 0);
+                assertEquals(0, writer.getFailedCount());
+            }
+            assertEquals(200, server.getStore().size());
+        }
+    }
+
+    @Test
+    void retriesAfterConnectionClosed() throws Exception {
+        try (StubIdServer server = StubIdServer.builder()
+                .requireAuthentication(false)
+                .closeConnectionAt(100)
+                .build()) {
+            InetSocketAddress address = server.start();
+            try (SampleIdClient client = new SampleIdClient(address, 5, 2);
+                 BulkHandleWriter writer = new BulkHandleWriter(client, 32, 20, 1, 1)) {
+                List<Future<AbstractIdResponse>> futures = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    futures.add(writer.createHandle("88.111/bulk" + i, values(i)));
+                }
+                assertTrue(writer.flush(10, TimeUnit.SECONDS));
+                for (Future<AbstractIdResponse> future : futures) {
+                    assertTrue(future.isSuccess(), String.valueOf(future.cause()));
+                }
+                // 断开时在途的请求失败后重试
+                assertTrue(writer.getRetriedCount() > 0);
+                assertEquals(0, writer.getFailedCount());
+            }
+            assertEquals(200, server.getStore().size());
+        }
+    }
+
+    @Test
+    void transientErrors() {
+        assertTrue(BulkHandleWriter.isTransient(new IDException(IDException.RESPONSE_TIMEOUT, "response timeout")));
+        assertTrue(BulkHandleWriter.isTransient(new IDException(IDException.RC_INVALID_RESPONSE_CODE, "response code error",
+                new ErrorIdResponse(AbstractMessage.OC_CREATE_HANDLE, AbstractMessage.RC_SERVER_TOO_BUSY, null))));
+        assertFalse(BulkHandleWriter.isTransient(new IDException(IDException.RC_INVALID_RESPONSE_CODE, "response code error",
+                new ErrorIdResponse(AbstractMessage.OC_CREATE_HANDLE, AbstractMessage.RC_HANDLE_ALREADY_EXISTS, null))));
+        assertTrue(BulkHandleWriter.isTransient(new ClosedChannelException()));
+        assertTrue(BulkHandleWriter.isTransient(new IOException("Connection reset by peer")));
+        assertTrue(BulkHandleWriter.isTransient(new IDException(IDException.CLIENT_ERROR, "send error", new ClosedChannelException())));
+        assertFalse(BulkHandleWriter.isTransient(new IDException(IDException.CLIENT_ERROR, "client error")));
+        assertFalse(BulkHandleWriter.isTransient(new IllegalStateException()));
+    }
+}
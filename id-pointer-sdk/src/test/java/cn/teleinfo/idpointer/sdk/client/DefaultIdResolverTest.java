@@ -0,0 +1,174 @@
+package cn.teleinfo.idpointer.sdk.client;
+
+import cn.teleinfo.idpointer.sdk.core.HandleValue;
+import cn.teleinfo.idpointer.sdk.core.Util;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DefaultIdResolverTest {
+
+    /**
+     * 第一次解析阻塞到release，用于制造并发的相同请求
+     */
+    private static class BlockingResolver extends DefaultIdResolver {
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile IDException failure;
+        private volatile Error error;
+
+        BlockingResolver() {
+            super(null);
+        }
+
+        BlockingResolver(int awaitTimeout) {
+            super(null, awaitTimeout);
+        }
+
+        @Override
+        protected HandleValue[] doResolveHandle(String handle, String[] types, int[] indexes) throws IDException {
+            calls.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IDException(IDException.CLIENT_ERROR, "interrupted", e);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (error != null) {
+                throw error;
+            }
+            return new HandleValue[]{new HandleValue(1, "URL", handle)};
+        }
+    }
+
+    private static List<Future<HandleValue[]>> resolveConcurrently(ExecutorService executor, DefaultIdResolver resolver, int threads, String[] types) {
+        List<Future<HandleValue[]>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> resolver.resolveHandle("88.111/hot", types, null)));
+        }
+        return futures;
+    }
+
+    private static void awaitCount(AtomicInteger count, long expected) throws InterruptedException {
+        for (int i = 0; i < 500 && count.get() < expected; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void coalescesIdenticalResolutions() throws Exception {
+        BlockingResolver resolver = new BlockingResolver();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<HandleValue[]>> futures = resolveConcurrently(executor, resolver, 15, null);
+            // 不同的过滤条件不合并
+            Future<HandleValue[]> filtered = executor.submit(() -> resolver.resolveHandle("88.111/hot", new String[]{"URL"}, null));
+            awaitCount(resolver.calls, 2);
+            for (int i = 0; i < 500 && resolver.getCoalescedCount() < 14; i++) {
+                Thread.sleep(10);
+            }
+            resolver.release.countDown();
+
+            List<HandleValue> seen = new ArrayList<>();
+            for (Future<HandleValue[]> future : futures) {
+                HandleValue[] values = future.get(5, TimeUnit.SECONDS);
+                assertEquals("88.111/hot", values[0].getDataAsString());
+                for (HandleValue value : seen) {
+                    assertNotSame(value, values[0]);
+                }
+                seen.add(values[0]);
+                // 修改自己的结果不影响其他调用方
+                values[0].setData(Util.encodeString("modified"));
+            }
+            assertEquals(1, filtered.get(5, TimeUnit.SECONDS).length);
+            assertEquals(2, resolver.calls.get());
+            assertEquals(2, resolver.getResolvedCount());
+            assertEquals(14, resolver.getCoalescedCount());
+
+            // 完成后不再合并
+            resolver.resolveHandle("88.111/hot", null, null);
+            assertEquals(3, resolver.calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void sharesFailure() throws Exception {
+        BlockingResolver resolver = new BlockingResolver();
+        resolver.failure = new IDException(IDException.HANDLE_DOES_NOT_EXIST, "not found");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<HandleValue[]>> futures = resolveConcurrently(executor, resolver, 4, null);
+            for (int i = 0; i < 500 && resolver.getCoalescedCount() < 3; i++) {
+                Thread.sleep(10);
+            }
+            resolver.release.countDown();
+            for (Future<HandleValue[]> future : futures) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+                assertEquals(IDException.HANDLE_DOES_NOT_EXIST, ((IDException) e.getCause()).getCode());
+            }
+            assertEquals(1, resolver.calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void sharesError() throws Exception {
+        BlockingResolver resolver = new BlockingResolver();
+        resolver.error = new NoClassDefFoundError("missing");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<HandleValue[]>> futures = resolveConcurrently(executor, resolver, 4, null);
+            for (int i = 0; i < 500 && resolver.getCoalescedCount() < 3; i++) {
+                Thread.sleep(10);
+            }
+            resolver.release.countDown();
+            int errors = 0;
+            for (Future<HandleValue[]> future : futures) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+                if (e.getCause() instanceof NoClassDefFoundError) {
+                    errors++;
+                } else {
+                    assertSame(resolver.error, e.getCause().getCause());
+                }
+            }
+            assertEquals(1, errors);
+            assertEquals(1, resolver.calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void followersTimeOut() throws Exception {
+        BlockingResolver resolver = new BlockingResolver(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<HandleValue[]> leader = executor.submit(() -> resolver.resolveHandle("88.111/hot", null, null));
+            awaitCount(resolver.calls, 1);
+            // 合并的调用最多等待awaitTimeout，不随首个调用一直阻塞
+            IDException e = assertThrows(IDException.class, () -> resolver.resolveHandle("88.111/hot", null, null));
+            assertEquals(IDException.RESPONSE_TIMEOUT, e.getCode());
+            resolver.release.countDown();
+            assertEquals(1, leader.get(5, TimeUnit.SECONDS).length);
+            assertEquals(1, resolver.calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
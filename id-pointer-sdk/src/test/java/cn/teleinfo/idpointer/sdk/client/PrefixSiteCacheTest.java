@@ -0,0 +1,97 @@
+package cn.teleinfo.idpointer.sdk.client;
+
+import cn.teleinfo.idpointer.sdk.core.Common;
+import cn.teleinfo.idpointer.sdk.core.Encoder;
+import cn.teleinfo.idpointer.sdk.core.HandleValue;
+import cn.teleinfo.idpointer.sdk.core.SiteInfo;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrefixSiteCacheTest {
+
+    private static HandleValue[] siteValues(int ttl) {
+        SiteInfo siteInfo = new SiteInfo(1, true, false, SiteInfo.HASH_TYPE_BY_ALL, "test", InetAddress.getLoopbackAddress(), 2641, 8000, new byte[0], false);
+        HandleValue value = new HandleValue(1, Common.STR_SITE_INFO_TYPE, Encoder.encodeSiteInfoRecord(siteInfo));
+        value.setTTL(ttl);
+        return new HandleValue[]{value};
+    }
+
+    @Test
+    void cacheWithinTtl() throws IDException {
+        AtomicInteger loads = new AtomicInteger();
+        PrefixSiteCache cache = new PrefixSiteCache(prefix -> {
+            loads.incrementAndGet();
+            return siteValues(3600);
+        }, 10, 86400, 0.8, 100, Runnable::run);
+
+        SiteInfo[] first = cache.getSiteInfos("88.111");
+        SiteInfo[] second = cache.getSiteInfos("88.111");
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(2641, first[0].servers[0].interfaces[0].port);
+    }
+
+    @Test
+    void refreshAhead() throws IDException {
+        AtomicInteger loads = new AtomicInteger();
+        // refreshRatio为0，每次访问都在后台刷新
+        PrefixSiteCache cache = new PrefixSiteCache(prefix -> {
+            loads.incrementAndGet();
+            return siteValues(3600);
+        }, 10, 86400, 0, 100, Runnable::run);
+
+        SiteInfo[] first = cache.getSiteInfos("88.111");
+        SiteInfo[] second = cache.getSiteInfos("88.111");
+        assertSame(first, second);
+        assertEquals(2, loads.get());
+        assertNotSame(first, cache.getSiteInfos("88.111"));
+    }
+
+    @Test
+    void notFound() {
+        PrefixSiteCache cache = new PrefixSiteCache(prefix -> new HandleValue[0]);
+        assertThrows(IDException.class, () -> cache.getSiteInfos("88.111"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void singleFlight() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        PrefixSiteCache cache = new PrefixSiteCache(prefix -> {
+            loads.incrementAndGet();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IDException(IDException.CLIENT_ERROR, "interrupted");
+            }
+            return siteValues(3600);
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future[4];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(() -> cache.getSiteInfos("88.111"));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<?> future : futures) {
+                assertNotNull(future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+    }
+}
@@ -0,0 +1,99 @@
+package cn.teleinfo.idpointer.sdk.client;
+
+import cn.teleinfo.idpointer.sdk.core.*;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.stub.StubIdServer;
+import cn.teleinfo.idpointer.sdk.transport.ResponsePromise;
+import cn.teleinfo.idpointer.sdk.util.EncryptionUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 基于StubIdServer的登录流程测试
+ */
+class SampleIdClientSessionTest {
+
+    private KeyPair keyPair;
+    private StubIdServer server;
+    private InetSocketAddress address;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        keyPair = EncryptionUtils.generateKeyPair();
+        server = StubIdServer.builder()
+                .latency(5, 5)
+                .userPublicKey("88.111/admin", 300, keyPair.getPublic())
+                .userPublicKey("88.111/other", 300, keyPair.getPublic())
+                .build();
+        address = server.start();
+        server.getStore().create("88.111/test", new HandleValue[]{new HandleValue(1, "URL", "http://example.com")}, false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private AuthenticationInfo authenticationInfo(String userIdHandle) {
+        return new PublicKeyAuthenticationInfo(Util.encodeString(userIdHandle), 300, keyPair.getPrivate());
+    }
+
+    @Test
+    void loginOncePerChannel() throws Exception {
+        int maxConnections = 4;
+        try (SampleIdClient client = new SampleIdClient(address, 5, maxConnections, authenticationInfo("88.111/admin"), false)) {
+            List<ResponsePromise> promises = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                promises.add(client.resolveHandleAsync("88.111/test", null, null));
+            }
+            for (ResponsePromise promise : promises) {
+                assertTrue(promise.await(5, TimeUnit.SECONDS));
+                assertTrue(promise.isSuccess(), String.valueOf(promise.cause()));
+            }
+            // 同步接口复用已登录的channel
+            assertEquals(1, client.resolveHandle("88.111/test").length);
+        }
+        assertTrue(server.getRequestCount(AbstractMessage.OC_LOGIN_ID_SYSTEM) <= maxConnections);
+        assertEquals(server.getRequestCount(AbstractMessage.OC_LOGIN_ID_SYSTEM), server.getRequestCount(AbstractMessage.OC_RESPONSE_TO_CHALLENGE));
+        assertEquals(33, server.getRequestCount(AbstractMessage.OC_RESOLUTION));
+    }
+
+    @Test
+    void siteInfoCachedPerServer() throws Exception {
+        try (SampleIdClient client = new SampleIdClient(address, 5, 2, authenticationInfo("88.111/admin"), false)) {
+            client.createHandle("88.111/created", new HandleValue[]{new HandleValue(1, "URL", "http://example.com")});
+        }
+        assertEquals(1, server.getRequestCount(AbstractMessage.OC_GET_SITE_INFO));
+        SiteInfo siteInfo = SampleIdClient.getServerSiteInfo(address);
+        assertNotNull(siteInfo);
+
+        // 同一服务器的新连接不再获取站点信息
+        try (SampleIdClient client = new SampleIdClient(address, 5, 2, authenticationInfo("88.111/other"), false)) {
+            client.deleteHandle("88.111/created");
+        }
+        assertEquals(1, server.getRequestCount(AbstractMessage.OC_GET_SITE_INFO));
+        assertEquals(2, server.getRequestCount(AbstractMessage.OC_LOGIN_ID_SYSTEM));
+        assertSame(siteInfo, SampleIdClient.getServerSiteInfo(address));
+    }
+
+    @Test
+    void loginFailure() throws Exception {
+        try (SampleIdClient client = new SampleIdClient(address, 5, 1, authenticationInfo("88.111/unknown"), false)) {
+            IDException e = assertThrows(IDException.class, () -> client.deleteHandle("88.111/test"));
+            assertEquals(IDException.SERVER_CANNOT_PROCESS_SESSION, e.getCode());
+            // 登录失败后下一个请求重新登录
+            assertThrows(IDException.class, () -> client.deleteHandle("88.111/test"));
+        }
+        assertEquals(2, server.getRequestCount(AbstractMessage.OC_LOGIN_ID_SYSTEM));
+        assertTrue(server.getStore().contains("88.111/test"));
+    }
+}
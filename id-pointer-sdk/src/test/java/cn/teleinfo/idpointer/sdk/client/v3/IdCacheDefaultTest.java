@@ -0,0 +1,132 @@
+package cn.teleinfo.idpointer.sdk.client.v3;
+
+import cn.teleinfo.idpointer.sdk.core.*;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.stub.StubIdServer;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdCacheDefaultTest {
+
+    private final AtomicLong time = new AtomicLong();
+    private final IdCacheDefault cache = new IdCacheDefault(100, 0, 3600, 10, 20, time::get);
+
+    private static ResolutionIdResponse resolution(String handle, int... ttls) throws HandleException {
+        byte[][] values = new byte[ttls.length][];
+        for (int i = 0; i < ttls.length; i++) {
+            HandleValue value = new HandleValue(i + 1, "URL", "http://example.com/" + i);
+            value.setTTL(ttls[i]);
+            values[i] = Encoder.encodeHandleValue(value);
+        }
+        return new ResolutionIdResponse(Util.encodeString(handle), values);
+    }
+
+    /**
+     * 响应在promise完成的回调中写入缓存，可能晚于调用方拿到结果
+     */
+    private static void awaitCached(IdCache idCache, String handle) throws InterruptedException {
+        for (int i = 0; i < 100 && idCache.get(handle, null, null) == null; i++) {
+            Thread.sleep(10);
+        }
+        assertNotNull(idCache.get(handle, null, null));
+    }
+
+    private void advanceSeconds(long seconds) {
+        time.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    @Test
+    void ttlFromValues() throws Exception {
+        cache.put("88.111/a", null, null, resolution("88.111/a", 100, 50));
+        IdCacheEntry entry = cache.get("88.111/a", new String[0], null);
+        assertNotNull(entry);
+        assertFalse(entry.isNegative());
+        assertEquals(2, ((ResolutionIdResponse) entry.toResponse()).getHandleValues().length);
+
+        advanceSeconds(49);
+        assertFalse(cache.get("88.111/a", null, null).isStale());
+        advanceSeconds(1);
+        assertTrue(cache.get("88.111/a", null, null).isStale());
+        advanceSeconds(20);
+        assertNull(cache.get("88.111/a", null, null));
+
+        // TTL为0的值不缓存
+        cache.put("88.111/b", null, null, resolution("88.111/b", 100, 0));
+        assertNull(cache.get("88.111/b", null, null));
+    }
+
+    @Test
+    void negativeCaching() throws Exception {
+        cache.put("88.111/missing", null, null, new ErrorIdResponse(AbstractMessage.OC_RESOLUTION, AbstractMessage.RC_HANDLE_NOT_FOUND, null));
+        IdCacheEntry entry = cache.get("88.111/missing", null, null);
+        assertTrue(entry.isNegative());
+        assertEquals(AbstractMessage.RC_HANDLE_NOT_FOUND, entry.toResponse().responseCode);
+
+        advanceSeconds(10);
+        assertNull(cache.get("88.111/missing", null, null));
+
+        cache.put("88.111/busy", null, null, new ErrorIdResponse(AbstractMessage.OC_RESOLUTION, AbstractMessage.RC_SERVER_TOO_BUSY, null));
+        assertNull(cache.get("88.111/busy", null, null));
+    }
+
+    @Test
+    void filtersAndInvalidate() throws Exception {
+        cache.put("88.111/a", null, null, resolution("88.111/a", 100, 100));
+        cache.put("88.111/a", new String[]{"URL"}, null, resolution("88.111/a", 100));
+        cache.put("88.111/a", null, new int[]{1}, resolution("88.111/a", 100));
+        cache.put("88.111/b", null, null, resolution("88.111/b", 100));
+        assertEquals(1, ((ResolutionIdResponse) cache.get("88.111/a", new String[]{"URL"}, null).toResponse()).values.length);
+        assertNull(cache.get("88.111/a", new String[]{"EMAIL"}, null));
+
+        cache.invalidate("88.111/a");
+        assertNull(cache.get("88.111/a", null, null));
+        assertNull(cache.get("88.111/a", new String[]{"URL"}, null));
+        assertNull(cache.get("88.111/a", null, new int[]{1}));
+        assertNotNull(cache.get("88.111/b", null, null));
+    }
+
+    @Test
+    void refreshClaimedOnce() throws Exception {
+        cache.put("88.111/a", null, null, resolution("88.111/a", 10));
+        advanceSeconds(15);
+        IdCacheEntry entry = cache.get("88.111/a", null, null);
+        assertTrue(entry.isStale());
+        assertTrue(entry.tryRefresh());
+        assertFalse(cache.get("88.111/a", null, null).tryRefresh());
+        entry.refreshFailed();
+        assertTrue(cache.get("88.111/a", null, null).tryRefresh());
+    }
+
+    @Test
+    void cacheAsideResolve() throws Exception {
+        try (StubIdServer server = StubIdServer.builder().build()) {
+            InetSocketAddress address = server.start();
+            server.getStore().create("88.111/test", new HandleValue[]{new HandleValue(1, "URL", "http://example.com")}, false);
+
+            IdCache idCache = new IdCacheDefault();
+            IdTcpClient client = new IdTcpClient(address, 5, 2, true, idCache);
+            assertEquals(1, client.resolveHandle("88.111/test").length);
+            awaitCached(idCache, "88.111/test");
+            assertEquals(1, client.resolveHandle("88.111/test").length);
+            assertEquals(1, server.getRequestCount(AbstractMessage.OC_RESOLUTION));
+
+            // 否定结果同样命中缓存
+            assertThrows(IDException.class, () -> client.resolveHandle("88.111/missing"));
+            awaitCached(idCache, "88.111/missing");
+            IDException e = assertThrows(IDException.class, () -> client.resolveHandle("88.111/missing"));
+            assertEquals(AbstractMessage.RC_HANDLE_NOT_FOUND, e.getCode());
+            assertEquals(2, server.getRequestCount(AbstractMessage.OC_RESOLUTION));
+
+            client.getIdEngine().addHandleValues("88.111/test", new HandleValue[]{new HandleValue(2, "EMAIL", "a@example.com")}, false).await(5, TimeUnit.SECONDS);
+            for (int i = 0; i < 100 && idCache.get("88.111/test", null, null) != null; i++) {
+                Thread.sleep(10);
+            }
+            assertNull(idCache.get("88.111/test", null, null));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package cn.teleinfo.idpointer.sdk.client.v3;
+
+import cn.teleinfo.idpointer.sdk.core.AbstractMessage;
+import cn.teleinfo.idpointer.sdk.core.HandleValue;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.exception.IDRuntimeException;
+import cn.teleinfo.idpointer.sdk.stub.StubIdServer;
+import cn.teleinfo.idpointer.sdk.transport.sample.MessagePromiseManager;
+import cn.teleinfo.idpointer.sdk.transport.v3.IdPromise;
+import io.netty.channel.Channel;
+import io.netty.channel.pool.ChannelPool;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdTcpClientTest {
+
+    @Test
+    void responseTimeout() throws Exception {
+        try (StubIdServer server = StubIdServer.builder()
+                .requireAuthentication(false)
+                .dropRate(1)
+                .build()) {
+            InetSocketAddress address = server.start();
+            IdTcpClient client = new IdTcpClient(address, 1, 1, true);
+            HandleValue[] values = {new HandleValue(1, "URL", "http://example.com")};
+            // 服务器不响应时在promiseTimeout后超时，而不是一直阻塞
+            IDRuntimeException e = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> assertThrows(IDRuntimeException.class, () -> client.createHandle("88.111/test", values)));
+            assertEquals(IDException.RESPONSE_TIMEOUT, e.getCode());
+            // 超时的请求已移除，同一连接上的后续请求照常超时
+            e = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> assertThrows(IDRuntimeException.class, () -> client.createHandle("88.111/test", values)));
+            assertEquals(IDException.RESPONSE_TIMEOUT, e.getCode());
+            assertEquals(2, server.getRequestCount(AbstractMessage.OC_CREATE_HANDLE));
+        }
+    }
+
+    @Test
+    void batchTimeout() throws Exception {
+        try (StubIdServer server = StubIdServer.builder()
+                .requireAuthentication(false)
+                .dropRate(1)
+                .build()) {
+            InetSocketAddress address = server.start();
+            IdTcpClient client = new IdTcpClient(address, 1, 1, true);
+            Map<String, IdPromise<IdResponse>> results = client.getIdEngine().resolveHandles(Arrays.asList("88.111/a", "88.111/b"), null, null);
+            for (IdPromise<IdResponse> promise : results.values()) {
+                assertTrue(promise.await(5, TimeUnit.SECONDS));
+                assertEquals(IDException.RESPONSE_TIMEOUT, ((IDException) promise.cause()).getCode());
+            }
+            // 超时的请求已移出channel的在途表
+            ChannelPool channelPool = ((IdTcpEngine) client.getIdEngine()).transport.getChannelPool();
+            Channel channel = channelPool.acquire().get(5, TimeUnit.SECONDS);
+            try {
+                assertTrue(channel.attr(MessagePromiseManager.IN_FLIGHT_PROMISES_KEY).get().isEmpty());
+            } finally {
+                channelPool.release(channel);
+            }
+        }
+    }
+}
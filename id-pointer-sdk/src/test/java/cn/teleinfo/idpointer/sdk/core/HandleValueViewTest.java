@@ -0,0 +1,66 @@
+package cn.teleinfo.idpointer.sdk.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandleValueViewTest {
+
+    private static HandleValue newValue() {
+        HandleValue value = new HandleValue(2, "URL.METADATA", "http://example.com");
+        value.setTTL(3600);
+        value.setTimestamp(1700000000);
+        value.setReferences(new ValueReference[]{new ValueReference("88.111/ref", 300)});
+        return value;
+    }
+
+    @Test
+    void heapBuffer() throws HandleException {
+        HandleValue value = newValue();
+        byte[] encoded = Encoder.encodeHandleValue(value);
+        // 前面放一些无关数据，验证偏移
+        byte[] buf = new byte[encoded.length + 3];
+        System.arraycopy(encoded, 0, buf, 3, encoded.length);
+
+        HandleValueView view = new HandleValueView(ByteBuffer.wrap(buf), 3);
+        assertEquals(encoded.length, view.getEncodedLength());
+        assertEquals(2, view.getIndex());
+        assertEquals(3600, view.getTTL());
+        assertEquals(1700000000, view.getTimestamp());
+        assertTrue(view.getAnyoneCanRead());
+        assertFalse(view.getAnyoneCanWrite());
+        assertTrue(view.hasType(Util.encodeString("url")));
+        assertTrue(view.hasType(Util.encodeString("URL.metadata")));
+        assertFalse(view.hasType(Util.encodeString("URL.META")));
+        assertEquals("http://example.com", Util.decodeString(view.getData()));
+        assertEquals("http://example.com".length(), view.getDataBuffer().remaining());
+        assertEquals("88.111/ref", Util.decodeString(view.getReferences()[0].handle));
+        assertEquals(300, view.getReferences()[0].index);
+        assertTrue(value.equals(view.toHandleValue()));
+    }
+
+    @Test
+    void directBuffer() throws HandleException {
+        HandleValue first = newValue();
+        HandleValue second = new HandleValue(100, "HS_ADMIN", "admin");
+        byte[] firstBytes = Encoder.encodeHandleValue(first);
+        byte[] secondBytes = Encoder.encodeHandleValue(second);
+        ByteBuffer buf = ByteBuffer.allocateDirect(firstBytes.length + secondBytes.length);
+        buf.put(firstBytes).put(secondBytes).flip();
+
+        HandleValueView[] views = HandleValueView.decodeViews(buf, 0, 2);
+        assertEquals(100, views[1].getIndex());
+        assertEquals("HS_ADMIN", views[1].getTypeAsString());
+        assertTrue(second.equals(views[1].toHandleValue()));
+        assertEquals(0, buf.position());
+    }
+
+    @Test
+    void truncated() {
+        byte[] encoded = Encoder.encodeHandleValue(newValue());
+        ByteBuffer buf = ByteBuffer.wrap(encoded, 0, encoded.length - 1).slice();
+        assertThrows(HandleException.class, () -> new HandleValueView(buf, 0));
+    }
+}
@@ -0,0 +1,139 @@
+package cn.teleinfo.idpointer.sdk.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedFileCacheTest {
+
+    private static final byte[] HANDLE = Util.encodeString("88.111/test");
+
+    @TempDir
+    File dir;
+
+    private static HandleValue[] values() {
+        return new HandleValue[]{
+                new HandleValue(1, "URL", "http://example.com"),
+                new HandleValue(2, "EMAIL", "a@example.com"),
+                new HandleValue(100, "HS_ADMIN", "admin")};
+    }
+
+    private static int[] indexesOf(byte[][] clumps) {
+        int[] indexes = new int[clumps.length];
+        for (int i = 0; i < clumps.length; i++) {
+            indexes[i] = Encoder.getHandleValueIndex(clumps[i], 0);
+        }
+        return indexes;
+    }
+
+    private MappedFileCache open(File file, int maxSize) throws Exception {
+        MappedFileCache cache = new MappedFileCache(file, maxSize, Integer.MAX_VALUE, 3600);
+        assertTrue(cache.awaitLoaded(10, TimeUnit.SECONDS));
+        return cache;
+    }
+
+    @Test
+    void survivesRestart() throws Exception {
+        File file = new File(dir, "cache/resolver.cache");
+        MappedFileCache cache = open(file, 1 << 20);
+        cache.setCachedValues(HANDLE, values(), null, null);
+        cache.setCachedValues(HANDLE, new HandleValue[]{new HandleValue(1, "URL", "http://example.org")}, new byte[][]{Util.encodeString("URL")}, null);
+        cache.setCachedNotFound(Util.encodeString("88.111/missing"), 60);
+        cache.setCachedValues(Util.encodeString("88.111/removed"), values(), null, null);
+        cache.removeHandle(Util.encodeString("88.111/removed"));
+        cache.close();
+
+        cache = open(file, 1 << 20);
+        try {
+            byte[][] cached = cache.getCachedValues(HANDLE, null, null);
+            assertArrayEquals(new int[]{2, 100, 1}, indexesOf(cached));
+            HandleValue url = new HandleValue();
+            Encoder.decodeHandleValue(cached[2], 0, url);
+            assertEquals("http://example.org", url.getDataAsString());
+            assertTrue(cache.isCachedNotFound(cache.getCachedValues(Util.encodeString("88.111/missing"), null, null)));
+            assertNull(cache.getCachedValues(Util.encodeString("88.111/removed"), null, null));
+            assertEquals(2, cache.size());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    void keepsOriginalExpiry() throws Exception {
+        File file = new File(dir, "resolver.cache");
+        MappedFileCache cache = open(file, 1 << 20);
+        HandleValue shortLived = new HandleValue(1, "URL", "http://example.com");
+        shortLived.setTTL(1);
+        cache.setCachedValues(HANDLE, new HandleValue[]{shortLived}, null, null);
+        cache.setCachedValues(Util.encodeString("88.111/long"), values(), null, null);
+        assertNotNull(cache.getCachedValues(HANDLE, null, null));
+        cache.close();
+
+        Thread.sleep(2100);
+        cache = open(file, 1 << 20);
+        try {
+            // 重启不会延长缓存时间
+            assertNull(cache.getCachedValues(HANDLE, null, null));
+            assertNotNull(cache.getCachedValues(Util.encodeString("88.111/long"), null, null));
+            assertEquals(1, cache.size());
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    void compactsWhenFull() throws Exception {
+        File file = new File(dir, "resolver.cache");
+        MappedFileCache cache = open(file, 16 * 1024);
+        try {
+            for (int i = 0; i < 500; i++) {
+                cache.setCachedValues(Util.encodeString("88.111/" + i), values(), null, null);
+            }
+            assertTrue(cache.size() < 500);
+            // 最近写入的保留
+            assertArrayEquals(new int[]{1, 2, 100}, indexesOf(cache.getCachedValues(Util.encodeString("88.111/499"), null, null)));
+            assertNull(cache.getCachedValues(Util.encodeString("88.111/0"), null, null));
+
+            cache.setMaximumHandles(10);
+            assertTrue(cache.size() <= 10);
+            assertNotNull(cache.getCachedValues(Util.encodeString("88.111/499"), null, null));
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    void ignoresCorruptTail() throws Exception {
+        File file = new File(dir, "resolver.cache");
+        MappedFileCache cache = open(file, 1 << 20);
+        cache.setCachedValues(HANDLE, values(), null, null);
+        cache.setCachedValues(Util.encodeString("88.111/other"), values(), null, null);
+        cache.close();
+
+        // 破坏第二条记录的长度
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(8);
+            int writeEnd = raf.readInt();
+            raf.seek(16);
+            int firstRecord = 4 + raf.readInt();
+            raf.seek(16 + firstRecord);
+            raf.writeInt(writeEnd * 2);
+        }
+
+        cache = open(file, 1 << 20);
+        try {
+            assertNotNull(cache.getCachedValues(HANDLE, null, null));
+            assertNull(cache.getCachedValues(Util.encodeString("88.111/other"), null, null));
+            // 后续写入不受影响
+            cache.setCachedValues(Util.encodeString("88.111/new"), values(), null, null);
+            assertNotNull(cache.getCachedValues(Util.encodeString("88.111/new"), null, null));
+        } finally {
+            cache.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package cn.teleinfo.idpointer.sdk.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemCacheTest {
+
+    private static final byte[] HANDLE = Util.encodeString("88.111/test");
+
+    private static HandleValue[] values() {
+        return new HandleValue[]{
+                new HandleValue(1, "URL", "http://example.com"),
+                new HandleValue(2, "EMAIL", "a@example.com"),
+                new HandleValue(100, "HS_ADMIN", "admin")};
+    }
+
+    private static byte[][] types(String... types) {
+        byte[][] result = new byte[types.length][];
+        for (int i = 0; i < types.length; i++) {
+            result[i] = Util.encodeString(types[i]);
+        }
+        return result;
+    }
+
+    private static int[] indexesOf(byte[][] clumps) {
+        int[] indexes = new int[clumps.length];
+        for (int i = 0; i < clumps.length; i++) {
+            indexes[i] = Encoder.getHandleValueIndex(clumps[i], 0);
+        }
+        return indexes;
+    }
+
+    @Test
+    void allValues() throws Exception {
+        MemCache cache = new MemCache(10, 3600);
+        assertNull(cache.getCachedValues(HANDLE, null, null));
+
+        cache.setCachedValues(HANDLE, values(), null, null);
+        assertArrayEquals(new int[]{1, 2, 100}, indexesOf(cache.getCachedValues(HANDLE, null, null)));
+        assertArrayEquals(new int[]{2}, indexesOf(cache.getCachedValues(HANDLE, types("email"), null)));
+        assertArrayEquals(new int[]{1, 100}, indexesOf(cache.getCachedValues(HANDLE, types("URL"), new int[]{100})));
+
+        cache.removeHandle(HANDLE);
+        assertNull(cache.getCachedValues(HANDLE, null, null));
+    }
+
+    @Test
+    void restrictedQueries() throws Exception {
+        MemCache cache = new MemCache(10, 3600);
+        cache.setCachedValues(HANDLE, new HandleValue[]{values()[0]}, types("URL"), null);
+        assertArrayEquals(new int[]{1}, indexesOf(cache.getCachedValues(HANDLE, types("URL"), null)));
+        assertArrayEquals(new int[]{1}, indexesOf(cache.getCachedValues(HANDLE, null, new int[]{1})));
+        // 只缓存了部分值
+        assertNull(cache.getCachedValues(HANDLE, null, null));
+        assertNull(cache.getCachedValues(HANDLE, types("EMAIL"), null));
+
+        cache.setCachedValues(HANDLE, new HandleValue[]{values()[1]}, types("EMAIL"), null);
+        assertArrayEquals(new int[]{1, 2}, indexesOf(cache.getCachedValues(HANDLE, types("URL", "EMAIL"), null)));
+    }
+
+    @Test
+    void keyedByHandleBytes() throws Exception {
+        MemCache cache = new MemCache(10, 3600);
+        byte[] handle = HANDLE.clone();
+        cache.setCachedValues(handle, values(), null, null);
+        // 缓存保存的是handle的副本
+        handle[handle.length - 1] = 'x';
+        assertNull(cache.getCachedValues(handle, null, null));
+        assertEquals(3, cache.getCachedValues(HANDLE.clone(), null, null).length);
+
+        // 返回的值是副本，修改不影响缓存
+        byte[][] cached = cache.getCachedValues(HANDLE, null, null);
+        cached[0][0] = (byte) 0xff;
+        assertArrayEquals(new int[]{1, 2, 100}, indexesOf(cache.getCachedValues(HANDLE, null, null)));
+    }
+
+    @Test
+    void notFoundAndExpiry() throws Exception {
+        MemCache cache = new MemCache(10, 3600);
+        cache.setCachedNotFound(HANDLE, 60);
+        assertTrue(cache.isCachedNotFound(cache.getCachedValues(HANDLE, null, null)));
+
+        HandleValue expired = new HandleValue(1, "URL", "http://example.com");
+        expired.setTTL(0);
+        cache.setCachedValues(HANDLE, new HandleValue[]{expired}, null, null);
+        assertNull(cache.getCachedValues(HANDLE, null, null));
+    }
+
+    @Test
+    void boundedUnderConcurrentAccess() throws Exception {
+        int maxHandles = 100;
+        MemCache cache = new MemCache(maxHandles, 3600);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        byte[] handle = Util.encodeString("88.111/" + thread + "-" + (i % 500));
+                        cache.setCachedValues(handle, values(), null, null);
+                        byte[][] cached = cache.getCachedValues(handle, types("URL"), null);
+                        if (cached != null) {
+                            assertEquals(1, cached.length);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        cache.setMaximumHandles(maxHandles);
+        assertTrue(cache.size() <= maxHandles, "size " + cache.size());
+    }
+}
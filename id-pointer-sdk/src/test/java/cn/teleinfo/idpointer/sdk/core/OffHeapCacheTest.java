@@ -0,0 +1,156 @@
+package cn.teleinfo.idpointer.sdk.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapCacheTest {
+
+    private static final byte[] HANDLE = Util.encodeString("88.111/test");
+
+    private final OffHeapCache cache = new OffHeapCache(1 << 20, 1000, 3600, 64 * 1024, 64);
+
+    @AfterEach
+    void close() throws Exception {
+        cache.close();
+    }
+
+    private static HandleValue[] values() {
+        return new HandleValue[]{
+                new HandleValue(1, "URL", "http://example.com"),
+                new HandleValue(2, "EMAIL", "a@example.com"),
+                new HandleValue(100, "HS_ADMIN", "admin")};
+    }
+
+    private static byte[][] types(String... types) {
+        byte[][] result = new byte[types.length][];
+        for (int i = 0; i < types.length; i++) {
+            result[i] = Util.encodeString(types[i]);
+        }
+        return result;
+    }
+
+    private static int[] indexesOf(byte[][] clumps) {
+        int[] indexes = new int[clumps.length];
+        for (int i = 0; i < clumps.length; i++) {
+            indexes[i] = Encoder.getHandleValueIndex(clumps[i], 0);
+        }
+        return indexes;
+    }
+
+    @Test
+    void allValues() throws Exception {
+        assertNull(cache.getCachedValues(HANDLE, null, null));
+
+        cache.setCachedValues(HANDLE, values(), null, null);
+        byte[][] cached = cache.getCachedValues(HANDLE, null, null);
+        assertArrayEquals(new int[]{1, 2, 100}, indexesOf(cached));
+        HandleValue decoded = new HandleValue();
+        Encoder.decodeHandleValue(cached[0], 0, decoded);
+        assertEquals("http://example.com", decoded.getDataAsString());
+        assertArrayEquals(new int[]{2}, indexesOf(cache.getCachedValues(HANDLE, types("email"), null)));
+        assertArrayEquals(new int[]{1, 100}, indexesOf(cache.getCachedValues(HANDLE, types("URL"), new int[]{100})));
+
+        cache.removeHandle(HANDLE);
+        assertNull(cache.getCachedValues(HANDLE, null, null));
+        assertEquals(0, cache.getUsedBytes());
+    }
+
+    @Test
+    void restrictedQueries() throws Exception {
+        cache.setCachedValues(HANDLE, new HandleValue[]{values()[0]}, types("URL"), null);
+        assertArrayEquals(new int[]{1}, indexesOf(cache.getCachedValues(HANDLE, types("URL"), null)));
+        assertArrayEquals(new int[]{1}, indexesOf(cache.getCachedValues(HANDLE, null, new int[]{1})));
+        // 只缓存了部分值
+        assertNull(cache.getCachedValues(HANDLE, null, null));
+        assertNull(cache.getCachedValues(HANDLE, types("EMAIL"), null));
+
+        cache.setCachedValues(HANDLE, new HandleValue[]{values()[1]}, types("EMAIL"), null);
+        assertArrayEquals(new int[]{1, 2}, indexesOf(cache.getCachedValues(HANDLE, types("URL", "EMAIL"), null)));
+    }
+
+    @Test
+    void notFoundAndExpiry() throws Exception {
+        cache.setCachedNotFound(HANDLE, 60);
+        assertTrue(cache.isCachedNotFound(cache.getCachedValues(HANDLE, null, null)));
+
+        HandleValue expired = new HandleValue(1, "URL", "http://example.com");
+        expired.setTTL(0);
+        cache.setCachedValues(HANDLE, new HandleValue[]{expired}, null, null);
+        assertNull(cache.getCachedValues(HANDLE, null, null));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void evictsBySize() throws Exception {
+        // 每个块64字节，记录跨越多个块
+        byte[] data = new byte[1000];
+        HandleValue[] large = {new HandleValue(1, Util.encodeString("DATA"), data)};
+        for (int i = 0; i < 100; i++) {
+            cache.setCachedValues(Util.encodeString("88.111/" + i), large, null, null);
+        }
+        cache.setMaximumSize(16 * 1024);
+        assertTrue(cache.getUsedBytes() <= 16 * 1024, "used " + cache.getUsedBytes());
+        assertTrue(cache.size() < 100);
+
+        // 最近写入的仍然可以完整读出
+        byte[][] cached = cache.getCachedValues(Util.encodeString("88.111/99"), null, null);
+        HandleValue decoded = new HandleValue();
+        Encoder.decodeHandleValue(cached[0], 0, decoded);
+        assertArrayEquals(data, decoded.getData());
+
+        // 比整个缓存还大的记录不缓存
+        HandleValue[] huge = {new HandleValue(1, Util.encodeString("DATA"), new byte[32 * 1024])};
+        cache.setCachedValues(HANDLE, huge, null, null);
+        assertNull(cache.getCachedValues(HANDLE, null, null));
+    }
+
+    @Test
+    void evictsByHandleCount() throws Exception {
+        cache.setMaximumHandles(10);
+        cache.setCachedValues(HANDLE, values(), null, null);
+        for (int i = 0; i < 50; i++) {
+            cache.setCachedValues(Util.encodeString("88.111/" + i), values(), null, null);
+            // 经常访问的标识不被淘汰
+            assertNotNull(cache.getCachedValues(HANDLE, null, null));
+        }
+        assertEquals(10, cache.size());
+        assertNotNull(cache.getCachedValues(HANDLE, null, null));
+    }
+
+    @Test
+    void concurrentReadsAndWrites() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        byte[] handle = Util.encodeString("88.111/" + thread + "-" + (i % 500));
+                        cache.setCachedValues(handle, values(), null, null);
+                        byte[][] cached = cache.getCachedValues(handle, types("URL"), null);
+                        if (cached != null) {
+                            assertArrayEquals(new int[]{1}, indexesOf(cached));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(cache.size() <= 1000, "size " + cache.size());
+    }
+}
@@ -0,0 +1,91 @@
+package cn.teleinfo.idpointer.sdk.metrics;
+
+import cn.teleinfo.idpointer.sdk.client.SampleIdClient;
+import cn.teleinfo.idpointer.sdk.core.*;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.stub.StubIdServer;
+import cn.teleinfo.idpointer.sdk.transport.ResponsePromise;
+import cn.teleinfo.idpointer.sdk.util.EncryptionUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimpleIdMetricsTest {
+
+    private final SimpleIdMetrics metrics = new SimpleIdMetrics();
+
+    @BeforeEach
+    void setUp() {
+        GlobalIdMetrics.setInstance(metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        GlobalIdMetrics.setInstance(null);
+    }
+
+    @Test
+    void histogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(0.99));
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(100, histogram.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), histogram.getMaxNanos());
+        // 100us落在[64us, 128us)桶
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(128), histogram.getPercentileNanos(0.5));
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(128), histogram.getPercentileNanos(0.99));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), histogram.getPercentileNanos(1));
+    }
+
+    @Test
+    void recordsClientRequests() throws Exception {
+        KeyPair keyPair = EncryptionUtils.generateKeyPair();
+        try (StubIdServer server = StubIdServer.builder()
+                .userPublicKey("88.111/admin", 300, keyPair.getPublic())
+                .build()) {
+            InetSocketAddress address = server.start();
+            server.getStore().create("88.111/test", new HandleValue[]{new HandleValue(1, "URL", "http://example.com")}, false);
+            AuthenticationInfo authenticationInfo = new PublicKeyAuthenticationInfo(Util.encodeString("88.111/admin"), 300, keyPair.getPrivate());
+            try (SampleIdClient client = new SampleIdClient(address, 5, 1, authenticationInfo, false)) {
+                for (int i = 0; i < 10; i++) {
+                    assertEquals(1, client.resolveHandle("88.111/test").length);
+                }
+                assertThrows(IDException.class, () -> client.resolveHandle("88.111/missing"));
+            }
+        }
+        LatencyHistogram resolution = metrics.getResponseLatency(AbstractMessage.OC_RESOLUTION);
+        assertEquals(11, resolution.getCount());
+        assertTrue(resolution.getMaxNanos() > 0);
+        assertEquals(1, metrics.getResponseCount(AbstractMessage.RC_HANDLE_NOT_FOUND));
+        assertEquals(1, metrics.getLoginDuration().getCount());
+        assertEquals(0, metrics.getLoginFailures());
+        assertEquals(11, metrics.getPoolAcquireWait().getCount());
+        assertNotNull(metrics.getResponseLatency(AbstractMessage.OC_LOGIN_ID_SYSTEM));
+    }
+
+    @Test
+    void recordsTimeouts() throws Exception {
+        try (StubIdServer server = StubIdServer.builder()
+                .requireAuthentication(false)
+                .dropRate(1)
+                .build()) {
+            InetSocketAddress address = server.start();
+            try (SampleIdClient client = new SampleIdClient(address, 1, 1)) {
+                ResponsePromise promise = client.resolveHandleAsync("88.111/test", null, null);
+                assertTrue(promise.await(5, TimeUnit.SECONDS));
+                assertFalse(promise.isSuccess());
+            }
+        }
+        assertEquals(1, metrics.getTimeoutCount(AbstractMessage.OC_RESOLUTION));
+        assertNull(metrics.getResponseLatency(AbstractMessage.OC_RESOLUTION));
+    }
+}
@@ -0,0 +1,71 @@
+package cn.teleinfo.idpointer.sdk.protocol.decoder;
+
+import cn.teleinfo.idpointer.sdk.core.Common;
+import cn.teleinfo.idpointer.sdk.core.HandleException;
+import cn.teleinfo.idpointer.sdk.core.HandleValue;
+import cn.teleinfo.idpointer.sdk.core.HandleValueView;
+import cn.teleinfo.idpointer.sdk.core.ResolutionIdRequest;
+import cn.teleinfo.idpointer.sdk.core.ResolutionIdResponse;
+import cn.teleinfo.idpointer.sdk.core.Util;
+import cn.teleinfo.idpointer.sdk.protocol.encoder.HandleEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandleDecoderTest {
+
+    @Test
+    void encodeAndDecodeFragmented() {
+        ResolutionIdRequest request = new ResolutionIdRequest(Util.encodeString("88.111/test"), null, null, null);
+        request.requestId = 7;
+
+        EmbeddedChannel encoderChannel = new EmbeddedChannel(new HandleEncoder());
+        assertTrue(encoderChannel.writeOutbound(request));
+        ByteBuf encoded = encoderChannel.readOutbound();
+
+        EmbeddedChannel decoderChannel = new EmbeddedChannel(new HandleDecoder());
+        // 信封不完整、消息体不完整时都不应产生消息
+        assertFalse(decoderChannel.writeInbound(encoded.readRetainedSlice(Common.MESSAGE_ENVELOPE_SIZE - 1)));
+        assertFalse(decoderChannel.writeInbound(encoded.readRetainedSlice(5)));
+        assertTrue(decoderChannel.writeInbound(encoded.readRetainedSlice(encoded.readableBytes())));
+        encoded.release();
+
+        ResolutionIdRequest decoded = decoderChannel.readInbound();
+        assertEquals(7, decoded.requestId);
+        assertEquals("88.111/test", Util.decodeString(decoded.handle));
+        assertFalse(decoderChannel.finish());
+    }
+
+    @Test
+    void decodeFromDirectBuffer() throws HandleException {
+        ResolutionIdRequest request = new ResolutionIdRequest(Util.encodeString("88.111/test"), null, null, null);
+        request.requestId = 9;
+        HandleValue[] values = {new HandleValue(1, "URL", "http://example.com"), new HandleValue(100, "HS_ADMIN", "admin")};
+        ResolutionIdResponse response = new ResolutionIdResponse(request, request.handle, values);
+
+        EmbeddedChannel encoderChannel = new EmbeddedChannel(new HandleEncoder());
+        assertTrue(encoderChannel.writeOutbound(response));
+        ByteBuf encoded = encoderChannel.readOutbound();
+        ByteBuf direct = Unpooled.directBuffer(encoded.readableBytes()).writeBytes(encoded);
+        encoded.release();
+        assertFalse(direct.hasArray());
+
+        EmbeddedChannel decoderChannel = new EmbeddedChannel(new HandleDecoder());
+        assertTrue(decoderChannel.writeInbound(direct));
+        assertEquals(0, direct.refCnt());
+
+        // 直接内存复制后解码，消息在缓冲释放后仍然可用
+        ResolutionIdResponse decoded = decoderChannel.readInbound();
+        assertEquals(9, decoded.requestId);
+        assertEquals("88.111/test", Util.decodeString(decoded.handle));
+        HandleValueView[] views = decoded.getHandleValueViews();
+        assertEquals(2, views.length);
+        assertEquals("http://example.com", views[0].getDataAsString());
+        assertTrue(views[1].hasType(Util.encodeString("HS_ADMIN")));
+        assertTrue(values[1].equals(views[1].toHandleValue()));
+        assertFalse(decoderChannel.finish());
+    }
+}
@@ -0,0 +1,85 @@
+package cn.teleinfo.idpointer.sdk.session;
+
+import cn.hutool.crypto.Mode;
+import cn.hutool.crypto.Padding;
+import cn.hutool.crypto.symmetric.SM4;
+import cn.teleinfo.idpointer.sdk.core.Util;
+import cn.teleinfo.idpointer.sdk.security.HdlSecurityProvider;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Cipher;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionDefaultTest {
+
+    private static SessionDefault newSession(int alg, byte[] key) {
+        SessionDefault session = new SessionDefault(1);
+        session.setSessionKey(key);
+        session.setSessionKeyAlgorithmCode(alg);
+        session.setEncryptMessage(true);
+        return session;
+    }
+
+    private static byte[] toBytes(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void sm4CompatibleWithHutool() throws Exception {
+        byte[] key = Util.encodeHexString("0123456789abcdeffedcba9876543210");
+        SessionDefault session = newSession(HdlSecurityProvider.ENCRYPT_ALG_SM4, key);
+        SM4 sm4 = new SM4(Mode.CBC, Padding.PKCS5Padding, key, key);
+
+        // 复用同一个Cipher多次加解密，结果保持一致
+        for (int i = 0; i < 3; i++) {
+            byte[] message = Util.encodeString("message-" + i);
+            ByteBuf out = Unpooled.directBuffer();
+            session.encryptMessage(message, out, 2, 10);
+            assertArrayEquals(sm4.encrypt(message), ByteBufUtil.getBytes(out));
+            assertArrayEquals(message, toBytes(session.decryptMessage(out, 2, 10)));
+            out.release();
+        }
+    }
+
+    @Test
+    void aesCompatibleWithProvider() throws Exception {
+        byte[] key = HdlSecurityProvider.getInstance().generateSecretKey(HdlSecurityProvider.ENCRYPT_ALG_AES);
+        key = Util.substring(key, 4);
+        SessionDefault session = newSession(HdlSecurityProvider.ENCRYPT_ALG_AES, key);
+        byte[] message = Util.encodeString("hello aes");
+
+        ByteBuf first = Unpooled.buffer();
+        ByteBuf second = Unpooled.buffer();
+        session.encryptMessage(message, first, 2, 10);
+        session.encryptMessage(message, second, 2, 10);
+        // 每条消息使用新的IV
+        assertFalse(ByteBufUtil.equals(first, second));
+
+        byte[] encrypted = ByteBufUtil.getBytes(first);
+        Cipher cipher = HdlSecurityProvider.getInstance().getCipher(HdlSecurityProvider.ENCRYPT_ALG_AES, key, Cipher.DECRYPT_MODE, Util.substring(encrypted, 0, 16), 2, 10);
+        assertArrayEquals(message, cipher.doFinal(encrypted, 16, encrypted.length - 16));
+        assertArrayEquals(message, toBytes(session.decryptMessage(second, 2, 10)));
+    }
+
+    @Test
+    void keyChangeResetsCipher() throws Exception {
+        byte[] key = Util.encodeHexString("0123456789abcdeffedcba9876543210");
+        SessionDefault session = newSession(HdlSecurityProvider.ENCRYPT_ALG_SM4, key);
+        byte[] message = Util.encodeString("message");
+        ByteBuf out = Unpooled.buffer();
+        session.encryptMessage(message, out, 2, 10);
+
+        byte[] newKey = Util.encodeHexString("fedcba98765432100123456789abcdef");
+        session.setSessionKey(newKey);
+        ByteBuf newOut = Unpooled.buffer();
+        session.encryptMessage(message, newOut, 2, 10);
+        assertArrayEquals(new SM4(Mode.CBC, Padding.PKCS5Padding, newKey, newKey).encrypt(message), ByteBufUtil.getBytes(newOut));
+    }
+}
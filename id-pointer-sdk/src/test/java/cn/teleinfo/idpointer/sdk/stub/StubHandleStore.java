@@ -0,0 +1,127 @@
+package cn.teleinfo.idpointer.sdk.stub;
+
+import cn.teleinfo.idpointer.sdk.core.AbstractMessage;
+import cn.teleinfo.idpointer.sdk.core.HandleValue;
+import cn.teleinfo.idpointer.sdk.core.Util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 内存中的标识存储，同一标识的修改互斥，存取的值均为副本
+ * <p>
+ * 修改操作返回响应码（AbstractMessage.RC_*）
+ */
+public class StubHandleStore {
+
+    private final ConcurrentHashMap<String, TreeMap<Integer, HandleValue>> handles = new ConcurrentHashMap<>();
+
+    /**
+     * @return 标识不存在时返回null
+     */
+    public HandleValue[] resolve(String handle, int[] indexes, byte[][] types) {
+        TreeMap<Integer, HandleValue> values = handles.get(handle);
+        if (values == null) {
+            return null;
+        }
+        HandleValue[] all;
+        synchronized (values) {
+            all = copy(values.values().toArray(new HandleValue[0]));
+        }
+        return Util.filterValues(all, indexes, types);
+    }
+
+    public int create(String handle, HandleValue[] values, boolean overwrite) {
+        TreeMap<Integer, HandleValue> newValues = new TreeMap<>();
+        put(newValues, values);
+        if (overwrite) {
+            handles.put(handle, newValues);
+        } else if (handles.putIfAbsent(handle, newValues) != null) {
+            return AbstractMessage.RC_HANDLE_ALREADY_EXISTS;
+        }
+        return AbstractMessage.RC_SUCCESS;
+    }
+
+    public int addValues(String handle, HandleValue[] values, boolean overwrite) {
+        TreeMap<Integer, HandleValue> existing = handles.get(handle);
+        if (existing == null) {
+            return AbstractMessage.RC_HANDLE_NOT_FOUND;
+        }
+        synchronized (existing) {
+            if (!overwrite) {
+                for (HandleValue value : values) {
+                    if (existing.containsKey(value.getIndex())) {
+                        return AbstractMessage.RC_VALUE_ALREADY_EXISTS;
+                    }
+                }
+            }
+            put(existing, values);
+        }
+        return AbstractMessage.RC_SUCCESS;
+    }
+
+    public int modifyValues(String handle, HandleValue[] values, boolean overwrite) {
+        TreeMap<Integer, HandleValue> existing = handles.get(handle);
+        if (existing == null) {
+            return AbstractMessage.RC_HANDLE_NOT_FOUND;
+        }
+        synchronized (existing) {
+            if (!overwrite) {
+                for (HandleValue value : values) {
+                    if (!existing.containsKey(value.getIndex())) {
+                        return AbstractMessage.RC_VALUES_NOT_FOUND;
+                    }
+                }
+            }
+            put(existing, values);
+        }
+        return AbstractMessage.RC_SUCCESS;
+    }
+
+    public int removeValues(String handle, int[] indexes) {
+        TreeMap<Integer, HandleValue> existing = handles.get(handle);
+        if (existing == null) {
+            return AbstractMessage.RC_HANDLE_NOT_FOUND;
+        }
+        synchronized (existing) {
+            for (int index : indexes) {
+                existing.remove(index);
+            }
+        }
+        return AbstractMessage.RC_SUCCESS;
+    }
+
+    public int delete(String handle) {
+        return handles.remove(handle) == null ? AbstractMessage.RC_HANDLE_NOT_FOUND : AbstractMessage.RC_SUCCESS;
+    }
+
+    public boolean contains(String handle) {
+        return handles.containsKey(handle);
+    }
+
+    public int size() {
+        return handles.size();
+    }
+
+    public void clear() {
+        handles.clear();
+    }
+
+    private static void put(Map<Integer, HandleValue> target, HandleValue[] values) {
+        if (values == null) {
+            return;
+        }
+        for (HandleValue value : copy(values)) {
+            target.put(value.getIndex(), value);
+        }
+    }
+
+    private static HandleValue[] copy(HandleValue[] values) {
+        HandleValue[] copies = new HandleValue[values.length];
+        for (int i = 0; i < values.length; i++) {
+            copies[i] = values[i].duplicate();
+        }
+        return copies;
+    }
+}
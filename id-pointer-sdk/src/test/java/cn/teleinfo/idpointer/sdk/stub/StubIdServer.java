@@ -0,0 +1,278 @@
+package cn.teleinfo.idpointer.sdk.stub;
+
+import cn.teleinfo.idpointer.sdk.core.AbstractMessage;
+import cn.teleinfo.idpointer.sdk.core.SiteInfo;
+import cn.teleinfo.idpointer.sdk.core.Util;
+import cn.teleinfo.idpointer.sdk.protocol.decoder.HandleDecoder;
+import cn.teleinfo.idpointer.sdk.protocol.encoder.HandleEncoder;
+import cn.teleinfo.idpointer.sdk.security.HdlSecurityProvider;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内的标识协议服务端桩，用于离线的压测与集成测试
+ * <p>
+ * 复用Encoder与信封分帧，支持解析、GET_SITE_INFO、登录质询/应答、会话密钥协商，以及标识的创建/增删改。
+ * 数据保存在内存中；质询应答不校验签名，只要求用户已配置公钥。可以配置固定延迟与抖动、按比例返回错误或丢弃请求，
+ * 以及在收到第N个请求时断开连接。
+ */
+public class StubIdServer implements Closeable {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(StubIdServer.class);
+
+    private final StubHandleStore store = new StubHandleStore();
+    private final LongAdder requestCount = new LongAdder();
+    private final ConcurrentHashMap<Integer, LongAdder> opCodeCounts = new ConcurrentHashMap<>();
+    private final int port;
+    private final long latencyMillis;
+    private final long latencyJitterMillis;
+    private final double errorRate;
+    private final int errorCode;
+    private final double dropRate;
+    private final long closeConnectionAt;
+    private final AtomicLong closeConnectionCountdown;
+    private final boolean requireAuthentication;
+    private final int sessionKeyAlgorithm;
+    private final Map<String, PublicKey> userPublicKeys;
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private Channel serverChannel;
+    private SiteInfo siteInfo;
+
+    private StubIdServer(StubIdServerBuilder builder) {
+        this.port = builder.port;
+        this.latencyMillis = builder.latencyMillis;
+        this.latencyJitterMillis = builder.latencyJitterMillis;
+        this.errorRate = builder.errorRate;
+        this.errorCode = builder.errorCode;
+        this.dropRate = builder.dropRate;
+        this.closeConnectionAt = builder.closeConnectionAt;
+        this.closeConnectionCountdown = new AtomicLong(builder.closeConnectionAt);
+        this.requireAuthentication = builder.requireAuthentication;
+        this.sessionKeyAlgorithm = builder.sessionKeyAlgorithm;
+        this.userPublicKeys = new HashMap<>(builder.userPublicKeys);
+    }
+
+    public static StubIdServerBuilder builder() {
+        return new StubIdServerBuilder();
+    }
+
+    /**
+     * 在127.0.0.1上监听，port为0时使用随机端口
+     */
+    public synchronized InetSocketAddress start() throws InterruptedException {
+        if (serverChannel != null) {
+            return getAddress();
+        }
+        bossGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("stub-id-server-boss", true));
+        workerGroup = new NioEventLoopGroup(0, new DefaultThreadFactory("stub-id-server", true));
+        StubIdServerHandler handler = new StubIdServerHandler(this);
+
+        ServerBootstrap bootstrap = new ServerBootstrap();
+        bootstrap.group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline().addLast(new HandleEncoder());
+                        ch.pipeline().addLast(new HandleDecoder());
+                        ch.pipeline().addLast(handler);
+                    }
+                });
+        serverChannel = bootstrap.bind(InetAddress.getLoopbackAddress(), port).sync().channel();
+
+        InetSocketAddress address = getAddress();
+        siteInfo = new SiteInfo(1, true, false, SiteInfo.HASH_TYPE_BY_ALL, "stub", address.getAddress(), address.getPort(), null, null, new byte[0]);
+        log.info("stub id server started on {}", address);
+        return address;
+    }
+
+    public synchronized InetSocketAddress getAddress() {
+        return serverChannel == null ? null : (InetSocketAddress) serverChannel.localAddress();
+    }
+
+    public StubHandleStore getStore() {
+        return store;
+    }
+
+    /**
+     * 收到的请求数，包括被丢弃和注入错误的请求
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * 收到的指定操作码的请求数
+     */
+    public long getRequestCount(int opCode) {
+        LongAdder count = opCodeCounts.get(opCode);
+        return count == null ? 0 : count.sum();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (serverChannel == null) {
+            return;
+        }
+        serverChannel.close().syncUninterruptibly();
+        serverChannel = null;
+        bossGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+        workerGroup.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+    }
+
+    void countRequest(int opCode) {
+        requestCount.increment();
+        opCodeCounts.computeIfAbsent(opCode, k -> new LongAdder()).increment();
+    }
+
+    SiteInfo getSiteInfo() {
+        return siteInfo;
+    }
+
+    long getLatencyMillis() {
+        return latencyMillis;
+    }
+
+    long getLatencyJitterMillis() {
+        return latencyJitterMillis;
+    }
+
+    double getErrorRate() {
+        return errorRate;
+    }
+
+    int getErrorCode() {
+        return errorCode;
+    }
+
+    double getDropRate() {
+        return dropRate;
+    }
+
+    /**
+     * 是否为配置的第N个请求，只在第N个请求时返回一次true
+     */
+    boolean shouldCloseConnection() {
+        return closeConnectionAt > 0 && closeConnectionCountdown.decrementAndGet() == 0;
+    }
+
+    boolean isRequireAuthentication() {
+        return requireAuthentication;
+    }
+
+    int getSessionKeyAlgorithm() {
+        return sessionKeyAlgorithm;
+    }
+
+    PublicKey getUserPublicKey(byte[] userIdHandle, int userIdIndex) {
+        return userPublicKeys.get(userKey(Util.decodeString(userIdHandle), userIdIndex));
+    }
+
+    private static String userKey(String userIdHandle, int userIdIndex) {
+        return userIdIndex + ":" + userIdHandle;
+    }
+
+    public static class StubIdServerBuilder {
+        private int port;
+        private long latencyMillis;
+        private long latencyJitterMillis;
+        private double errorRate;
+        private int errorCode = AbstractMessage.RC_SERVER_TOO_BUSY;
+        private double dropRate;
+        private long closeConnectionAt;
+        private boolean requireAuthentication = true;
+        private int sessionKeyAlgorithm = HdlSecurityProvider.ENCRYPT_ALG_SM4;
+        private final Map<String, PublicKey> userPublicKeys = new HashMap<>();
+
+        StubIdServerBuilder() {
+        }
+
+        public StubIdServerBuilder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * 每个响应的延迟，实际延迟在[latencyMillis, latencyMillis + latencyJitterMillis]之间
+         */
+        public StubIdServerBuilder latency(long latencyMillis, long latencyJitterMillis) {
+            this.latencyMillis = latencyMillis;
+            this.latencyJitterMillis = latencyJitterMillis;
+            return this;
+        }
+
+        /**
+         * 按比例返回errorCode错误响应
+         */
+        public StubIdServerBuilder errorRate(double errorRate, int errorCode) {
+            this.errorRate = errorRate;
+            this.errorCode = errorCode;
+            return this;
+        }
+
+        /**
+         * 按比例丢弃请求，不返回响应
+         */
+        public StubIdServerBuilder dropRate(double dropRate) {
+            this.dropRate = dropRate;
+            return this;
+        }
+
+        /**
+         * 收到第closeConnectionAt个请求（从1开始，所有连接合计）时不处理该请求并关闭其所在连接，0表示不断开
+         */
+        public StubIdServerBuilder closeConnectionAt(long closeConnectionAt) {
+            this.closeConnectionAt = closeConnectionAt;
+            return this;
+        }
+
+        /**
+         * 为true时，未登录连接上的管理操作先返回质询
+         */
+        public StubIdServerBuilder requireAuthentication(boolean requireAuthentication) {
+            this.requireAuthentication = requireAuthentication;
+            return this;
+        }
+
+        /**
+         * 会话密钥算法，HdlSecurityProvider.ENCRYPT_ALG_*
+         */
+        public StubIdServerBuilder sessionKeyAlgorithm(int sessionKeyAlgorithm) {
+            this.sessionKeyAlgorithm = sessionKeyAlgorithm;
+            return this;
+        }
+
+        /**
+         * 注册用户公钥，用于会话密钥协商时加密会话密钥（SM2或RSA）
+         */
+        public StubIdServerBuilder userPublicKey(String userIdHandle, int userIdIndex, PublicKey publicKey) {
+            this.userPublicKeys.put(userKey(userIdHandle, userIdIndex), publicKey);
+            return this;
+        }
+
+        public StubIdServer build() {
+            return new StubIdServer(this);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package cn.teleinfo.idpointer.sdk.stub;
+
+import cn.hutool.crypto.asymmetric.KeyType;
+import cn.hutool.crypto.asymmetric.SM2;
+import cn.teleinfo.idpointer.sdk.core.*;
+import cn.teleinfo.idpointer.sdk.security.HdlSecurityProvider;
+import cn.teleinfo.idpointer.sdk.session.SessionDefault;
+import cn.teleinfo.idpointer.sdk.transport.v3.IdTcpTransport;
+import cn.teleinfo.idpointer.sdk.util.EncryptionUtils;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 处理StubIdServer收到的请求，登录状态与待应答的质询保存在channel上
+ */
+@ChannelHandler.Sharable
+class StubIdServerHandler extends SimpleChannelInboundHandler<AbstractIdRequest> {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(StubIdServerHandler.class);
+
+    static final AttributeKey<ValueReference> USER_KEY = AttributeKey.valueOf("stubUser");
+    static final AttributeKey<AbstractIdRequest> CHALLENGED_REQUEST_KEY = AttributeKey.valueOf("stubChallengedRequest");
+
+    private final StubIdServer server;
+    private final SecureRandom random = new SecureRandom();
+
+    StubIdServerHandler(StubIdServer server) {
+        this.server = server;
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, AbstractIdRequest request) throws Exception {
+        server.countRequest(request.opCode);
+        if (!ctx.channel().isActive()) {
+            // 连接已关闭，解码器在channelInactive时交出的剩余请求不再处理
+            log.debug("discard request {} on closed channel", request.requestId);
+            return;
+        }
+        if (server.shouldCloseConnection()) {
+            log.debug("close channel {} on request {}", ctx.channel(), request.requestId);
+            ctx.close();
+            return;
+        }
+        ThreadLocalRandom threadLocalRandom = ThreadLocalRandom.current();
+        if (server.getDropRate() > 0 && threadLocalRandom.nextDouble() < server.getDropRate()) {
+            log.debug("drop request {}", request.requestId);
+            return;
+        }
+
+        AbstractIdResponse response;
+        if (server.getErrorRate() > 0 && threadLocalRandom.nextDouble() < server.getErrorRate()) {
+            response = new ErrorIdResponse(request, server.getErrorCode(), Util.encodeString("injected error"));
+        } else {
+            response = process(ctx.channel(), request);
+        }
+
+        long delay = server.getLatencyMillis();
+        if (server.getLatencyJitterMillis() > 0) {
+            delay += threadLocalRandom.nextLong(server.getLatencyJitterMillis() + 1);
+        }
+        if (delay <= 0) {
+            ctx.writeAndFlush(response);
+        } else {
+            ctx.executor().schedule(() -> ctx.writeAndFlush(response), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        log.warn("stub id server channel {} error, closing", ctx.channel(), cause);
+        ctx.close();
+    }
+
+    private AbstractIdResponse process(Channel channel, AbstractIdRequest request) throws HandleException {
+        switch (request.opCode) {
+            case AbstractMessage.OC_RESOLUTION:
+                return resolve((ResolutionIdRequest) request);
+            case AbstractMessage.OC_GET_SITE_INFO:
+                return new GetSiteInfoIdResponse(request, server.getSiteInfo());
+            case AbstractMessage.OC_LOGIN_ID_SYSTEM:
+                return challenge(channel, request);
+            case AbstractMessage.OC_RESPONSE_TO_CHALLENGE:
+                return answer(channel, (ChallengeAnswerIdRequest) request);
+            case AbstractMessage.OC_SESSION_SETUP:
+                return setupSession(channel, (SessionSetupIdRequest) request);
+            case AbstractMessage.OC_CREATE_HANDLE:
+            case AbstractMessage.OC_ADD_VALUE:
+            case AbstractMessage.OC_MODIFY_VALUE:
+            case AbstractMessage.OC_REMOVE_VALUE:
+            case AbstractMessage.OC_DELETE_HANDLE:
+                if (server.isRequireAuthentication() && channel.attr(USER_KEY).get() == null) {
+                    return challenge(channel, request);
+                }
+                return administer(request);
+            default:
+                return new ErrorIdResponse(request, AbstractMessage.RC_OPERATION_NOT_SUPPORTED, Util.encodeString("operation not supported: " + request.opCode));
+        }
+    }
+
+    private AbstractIdResponse resolve(ResolutionIdRequest request) throws HandleException {
+        HandleValue[] values = server.getStore().resolve(Util.decodeString(request.handle), request.requestedIndexes, request.requestedTypes);
+        if (values == null) {
+            return new ErrorIdResponse(request, AbstractMessage.RC_HANDLE_NOT_FOUND, null);
+        }
+        if (values.length == 0) {
+            return new ErrorIdResponse(request, AbstractMessage.RC_VALUES_NOT_FOUND, null);
+        }
+        return new ResolutionIdResponse(request, request.handle, values);
+    }
+
+    private AbstractIdResponse administer(AbstractIdRequest request) throws HandleException {
+        StubHandleStore store = server.getStore();
+        String handle = Util.decodeString(request.handle);
+        int responseCode;
+        switch (request.opCode) {
+            case AbstractMessage.OC_CREATE_HANDLE:
+                responseCode = store.create(handle, ((CreateHandleIdRequest) request).values, request.overwriteWhenExists);
+                if (responseCode == AbstractMessage.RC_SUCCESS) {
+                    return new CreateHandleIdResponse(request, request.handle);
+                }
+                break;
+            case AbstractMessage.OC_ADD_VALUE:
+                responseCode = store.addValues(handle, ((AddValueIdRequest) request).values, request.overwriteWhenExists);
+                break;
+            case AbstractMessage.OC_MODIFY_VALUE:
+                responseCode = store.modifyValues(handle, ((ModifyValueIdRequest) request).values, request.overwriteWhenExists);
+                break;
+            case AbstractMessage.OC_REMOVE_VALUE:
+                responseCode = store.removeValues(handle, ((RemoveValueIdRequest) request).indexes);
+                break;
+            default:
+                responseCode = store.delete(handle);
+                break;
+        }
+        if (responseCode == AbstractMessage.RC_SUCCESS) {
+            return new GenericIdResponse(request, AbstractMessage.RC_SUCCESS);
+        }
+        return new ErrorIdResponse(request, responseCode, null);
+    }
+
+    /**
+     * 质询当前请求，应答后再处理；每个连接同时只保留一个待应答的请求
+     */
+    private AbstractIdResponse challenge(Channel channel, AbstractIdRequest request) throws HandleException {
+        channel.attr(CHALLENGED_REQUEST_KEY).set(request);
+        return new ChallengeIdResponse(request);
+    }
+
+    private AbstractIdResponse answer(Channel channel, ChallengeAnswerIdRequest answer) throws HandleException {
+        AbstractIdRequest challenged = channel.attr(CHALLENGED_REQUEST_KEY).getAndSet(null);
+        if (challenged == null) {
+            return new ErrorIdResponse(answer, AbstractMessage.RC_AUTHENTICATION_FAILED, Util.encodeString("no outstanding challenge"));
+        }
+        // 不校验签名，只检查用户已配置公钥
+        if (server.getUserPublicKey(answer.userIdHandle, answer.userIdIndex) == null) {
+            return new ErrorIdResponse(answer, AbstractMessage.RC_AUTHENTICATION_FAILED, Util.encodeString("unknown user"));
+        }
+        channel.attr(USER_KEY).set(new ValueReference(answer.userIdHandle, answer.userIdIndex));
+
+        AbstractIdResponse response;
+        if (challenged.opCode == AbstractMessage.OC_LOGIN_ID_SYSTEM) {
+            response = new GenericIdResponse(challenged, AbstractMessage.RC_SUCCESS);
+        } else {
+            response = administer(challenged);
+        }
+        // 客户端按应答请求的requestId等待响应
+        response.requestId = answer.requestId;
+        response.sessionId = answer.sessionId;
+        return response;
+    }
+
+    private AbstractIdResponse setupSession(Channel channel, SessionSetupIdRequest request) throws HandleException {
+        // 会话密钥用exchangeKey指向的公钥加密，未指定时使用登录身份
+        PublicKey publicKey = request.exchangeKeyHandle != null
+                ? server.getUserPublicKey(request.exchangeKeyHandle, request.exchangeKeyIndex)
+                : server.getUserPublicKey(request.identityHandle, request.identityIndex);
+        if (request.keyExchangeMode != Common.KEY_EXCHANGE_CIPHER_HDL || publicKey == null) {
+            return new ErrorIdResponse(request, AbstractMessage.RC_SESSION_FAILED, Util.encodeString("unsupported session setup"));
+        }
+
+        int algorithm = server.getSessionKeyAlgorithm();
+        byte[] sessionKey = new byte[algorithm == HdlSecurityProvider.ENCRYPT_ALG_DESEDE ? 24 : 16];
+        random.nextBytes(sessionKey);
+        byte[] sessionKeyBytes = new byte[Encoder.INT_SIZE + sessionKey.length];
+        Encoder.writeInt(sessionKeyBytes, 0, algorithm);
+        System.arraycopy(sessionKey, 0, sessionKeyBytes, Encoder.INT_SIZE, sessionKey.length);
+
+        byte[] data;
+        try {
+            if ("RSA".equals(publicKey.getAlgorithm())) {
+                data = EncryptionUtils.encryptByKey(sessionKeyBytes, publicKey);
+            } else {
+                data = new SM2(null, publicKey).encrypt(sessionKeyBytes, KeyType.PublicKey);
+            }
+        } catch (Exception e) {
+            throw new HandleException(HandleException.ENCRYPTION_ERROR, "encrypt session key error", e);
+        }
+
+        // 之后的请求由HandleDecoder按该会话解密
+        SessionDefault session = new SessionDefault(request.sessionId);
+        session.setSessionKey(sessionKey);
+        session.setSessionKeyAlgorithmCode(algorithm);
+        session.setEncryptMessage(true);
+        channel.attr(IdTcpTransport.SESSION_KEY).set(session);
+        return new SessionSetupIdResponse(request, data);
+    }
+}
@@ -0,0 +1,84 @@
+package cn.teleinfo.idpointer.sdk.stub;
+
+import cn.teleinfo.idpointer.sdk.client.SampleIdClient;
+import cn.teleinfo.idpointer.sdk.core.*;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.util.EncryptionUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StubIdServerTest {
+
+    private StubIdServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void resolve() throws Exception {
+        server = StubIdServer.builder().build();
+        InetSocketAddress address = server.start();
+        server.getStore().create("88.111/test", new HandleValue[]{new HandleValue(1, "URL", "http://example.com"), new HandleValue(2, "EMAIL", "a@example.com")}, false);
+
+        try (SampleIdClient client = new SampleIdClient(address, 5, 2)) {
+            HandleValue[] values = client.resolveHandle("88.111/test");
+            assertEquals(2, values.length);
+            values = client.resolveHandle("88.111/test", new String[]{"URL"}, null);
+            assertEquals(1, values.length);
+            assertEquals("http://example.com", values[0].getDataAsString());
+
+            IDException e = assertThrows(IDException.class, () -> client.resolveHandle("88.111/missing"));
+            assertEquals(AbstractMessage.RC_HANDLE_NOT_FOUND, ((AbstractIdResponse) e.getResponse()).responseCode);
+        }
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    void loginAndEncryptedAdmin() throws Exception {
+        KeyPair keyPair = EncryptionUtils.generateKeyPair();
+        server = StubIdServer.builder()
+                .userPublicKey("88.111/admin", 300, keyPair.getPublic())
+                .build();
+        InetSocketAddress address = server.start();
+
+        AuthenticationInfo authenticationInfo = new PublicKeyAuthenticationInfo(Util.encodeString("88.111/admin"), 300, keyPair.getPrivate());
+        // 客户端默认不加密请求，这里强制加密以覆盖会话密钥协商
+        try (SampleIdClient client = new SampleIdClient(address, 5, 1, authenticationInfo, true) {
+            @Override
+            protected AbstractIdResponse doRequest(AbstractIdRequest request) throws IDException {
+                request.encrypt = true;
+                return super.doRequest(request);
+            }
+        }) {
+            client.createHandle("88.111/created", new HandleValue[]{new HandleValue(1, "URL", "http://example.com")});
+            client.updateHandleValues("88.111/created", new HandleValue[]{new HandleValue(1, "URL", "http://example.org")});
+            client.addHandleValues("88.111/created", new HandleValue[]{new HandleValue(2, "EMAIL", "a@example.com")});
+            HandleValue[] values = client.resolveHandle("88.111/created");
+            assertEquals(2, values.length);
+            assertEquals("http://example.org", values[0].getDataAsString());
+
+            client.deleteHandle("88.111/created");
+            assertFalse(server.getStore().contains("88.111/created"));
+        }
+    }
+
+    @Test
+    void errorInjection() throws Exception {
+        server = StubIdServer.builder().errorRate(1, AbstractMessage.RC_SERVER_TOO_BUSY).build();
+        InetSocketAddress address = server.start();
+
+        try (SampleIdClient client = new SampleIdClient(address, 5, 1)) {
+            IDException e = assertThrows(IDException.class, () -> client.resolveHandle("88.111/test"));
+            assertEquals(AbstractMessage.RC_SERVER_TOO_BUSY, ((AbstractIdResponse) e.getResponse()).responseCode);
+        }
+    }
+}
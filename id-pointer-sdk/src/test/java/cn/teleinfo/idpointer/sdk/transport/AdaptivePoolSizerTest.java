@@ -0,0 +1,110 @@
+package cn.teleinfo.idpointer.sdk.transport;
+
+import cn.teleinfo.idpointer.sdk.stub.StubIdServer;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptivePoolSizerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final ChannelPoolUsage IDLE = new ChannelPoolUsage(0, 0, 0, 0, 0, 0);
+
+    /**
+     * 10次获取，平均等待0.1ms
+     */
+    private static ChannelPoolUsage usage(long latencyNanos, int peakAcquired, int pending) {
+        return new ChannelPoolUsage(10, MS, 10, 10 * latencyNanos, peakAcquired, pending);
+    }
+
+    @Test
+    void growsAndShrinksWithinBounds() {
+        AdaptivePoolSizer sizer = new AdaptivePoolSizer(1, 8);
+        // 有排队时直接扩到在途与排队之和，至少增加一半，不超过最大连接数
+        assertEquals(4, sizer.nextMaxConnections(1, usage(10 * MS, 1, 3)));
+        assertEquals(6, sizer.nextMaxConnections(4, usage(10 * MS, 4, 1)));
+        assertEquals(8, sizer.nextMaxConnections(6, usage(10 * MS, 6, 4)));
+        assertEquals(8, sizer.nextMaxConnections(8, usage(10 * MS, 8, 0)));
+        assertEquals(3, sizer.nextMaxConnections(2, new ChannelPoolUsage(10, 10 * 5 * MS, 10, 10 * 10 * MS, 2, 0)));
+
+        // 响应时间超过基线2倍时即使有排队也减少
+        assertEquals(6, sizer.nextMaxConnections(8, usage(30 * MS, 8, 5)));
+        assertEquals(8, sizer.nextMaxConnections(6, usage(10 * MS, 6, 1)));
+
+        // 空闲时每周期减少1个，不低于最小连接数
+        assertEquals(6, sizer.nextMaxConnections(7, IDLE));
+        assertEquals(5, sizer.nextMaxConnections(6, usage(10 * MS, 3, 0)));
+        assertEquals(1, sizer.nextMaxConnections(1, IDLE));
+        assertEquals(2, new AdaptivePoolSizer(2, 4).nextMaxConnections(2, IDLE));
+    }
+
+    @Test
+    void adjustsPoolSize() throws Exception {
+        NettyTransport transport = NettyTransport.getInstance();
+        EventLoopGroup group = transport.newEventLoopGroup(1);
+        try (StubIdServer server = StubIdServer.builder().requireAuthentication(false).build()) {
+            InetSocketAddress address = server.start();
+            Bootstrap bootstrap = new Bootstrap().group(group)
+                    .channel(transport.socketChannelClass())
+                    .option(ChannelOption.TCP_NODELAY, true);
+            ChannelPoolMapDefault poolMap = new ChannelPoolMapDefault(bootstrap, new AbstractChannelPoolHandler() {
+                @Override
+                public void channelCreated(Channel ch) {
+                }
+            }, 1, 8, true);
+            AbstractFixedChannelPool pool = (AbstractFixedChannelPool) poolMap.get(address);
+            try {
+                assertEquals(1, pool.getMaxConnections());
+                List<Future<Channel>> futures = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    futures.add(pool.acquire());
+                }
+                Channel first = futures.get(0).get(5, TimeUnit.SECONDS);
+                Thread.sleep(100);
+                assertEquals(3, pool.pendingAcquireCount());
+
+                // 扩容后排队的获取请求立即得到channel
+                assertEquals(4, pool.adjustPoolSize());
+                List<Channel> channels = new ArrayList<>();
+                channels.add(first);
+                for (int i = 1; i < 4; i++) {
+                    channels.add(futures.get(i).get(5, TimeUnit.SECONDS));
+                }
+                assertEquals(4, pool.acquiredChannelCount());
+                for (Channel channel : channels) {
+                    pool.release(channel).get(5, TimeUnit.SECONDS);
+                }
+                // 第一次获取已在adjustPoolSize的采样中统计
+                ChannelPoolUsage usage = pool.sampleUsage();
+                assertEquals(3, usage.getAcquireCount());
+                assertEquals(4, usage.getReleaseCount());
+                assertEquals(4, usage.getPeakAcquiredCount());
+                assertTrue(usage.getAverageLatencyNanos() > 0);
+
+                // 空闲时逐步缩小并立即关闭超出的空闲channel
+                for (int expected = 3; expected >= 1; expected--) {
+                    assertEquals(expected, pool.adjustPoolSize());
+                    assertEquals(expected, pool.idleChannelCount());
+                }
+                assertEquals(1, pool.adjustPoolSize());
+                Thread.sleep(200);
+                assertEquals(3, channels.stream().filter(channel -> !channel.isActive()).count());
+            } finally {
+                poolMap.close();
+            }
+        } finally {
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+    }
+}
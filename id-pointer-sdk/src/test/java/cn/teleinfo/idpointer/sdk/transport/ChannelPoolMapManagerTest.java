@@ -0,0 +1,80 @@
+package cn.teleinfo.idpointer.sdk.transport;
+
+import cn.teleinfo.idpointer.sdk.metrics.GlobalIdMetrics;
+import cn.teleinfo.idpointer.sdk.metrics.SimpleIdMetrics;
+import cn.teleinfo.idpointer.sdk.stub.StubIdServer;
+import io.netty.channel.Channel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChannelPoolMapManagerTest {
+
+    private final SimpleIdMetrics metrics = new SimpleIdMetrics();
+
+    @BeforeEach
+    void setUp() {
+        GlobalIdMetrics.setInstance(metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        GlobalIdMetrics.setInstance(null);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in time");
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    void evictsIdleChannelsAndPools() throws Exception {
+        // 开启心跳时IdleStateHandler不会关闭空闲channel，只能由定期清理关闭
+        ChannelPoolConfig poolConfig = ChannelPoolConfig.builder()
+                .idleTimeSeconds(1)
+                .heatBeatRunning(true)
+                .minConnectionsPerServer(1)
+                .maxConnectionsPerServer(4)
+                .evictionIntervalSeconds(1)
+                .build();
+        try (StubIdServer server = StubIdServer.builder().requireAuthentication(false).build()) {
+            InetSocketAddress address = server.start();
+            ChannelPoolMapManager manager = new ChannelPoolMapManager(1, 5, poolConfig, poolConfig);
+            try {
+                TimedChannelPool pool = manager.getChannelPoolMap().get(address);
+                List<Channel> channels = new ArrayList<>();
+                for (int i = 0; i < 3; i++) {
+                    channels.add(pool.acquire().get(5, TimeUnit.SECONDS));
+                }
+                for (Channel channel : channels) {
+                    pool.release(channel).get(5, TimeUnit.SECONDS);
+                }
+                assertEquals(3, pool.idleChannelCount());
+
+                waitUntil(() -> pool.idleChannelCount() == 1);
+                assertEquals(2, metrics.getEvictedChannels());
+                assertEquals(2, channels.stream().filter(channel -> !channel.isActive()).count());
+                Thread.sleep(1500);
+                assertEquals(1, pool.idleChannelCount());
+
+                pool.setLastActiveTime(0);
+                waitUntil(() -> !manager.getChannelPoolMap().contains(address));
+                assertEquals(1, metrics.getEvictedChannelPools());
+                waitUntil(() -> channels.stream().noneMatch(Channel::isActive));
+            } finally {
+                manager.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package cn.teleinfo.idpointer.sdk.transport;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageManagerImplTest {
+
+    @Test
+    void timeout() throws IOException, InterruptedException {
+        MessageManagerImpl messageManager = new MessageManagerImpl(new DefaultEventLoopGroup(1), 0);
+        try {
+            ResponsePromise promise = messageManager.createResponsePromise(1);
+            assertTrue(promise.awaitUninterruptibly(5, TimeUnit.SECONDS));
+            assertTrue(promise.cause() instanceof TimeoutException);
+            // 清理监听器在EventLoop中异步执行
+            for (int i = 0; i < 100 && messageManager.getResponsePromise(1) != null; i++) {
+                Thread.sleep(10);
+            }
+            assertNull(messageManager.getResponsePromise(1));
+        } finally {
+            messageManager.close();
+        }
+    }
+
+    @Test
+    void collision() throws IOException, InterruptedException {
+        MessageManagerImpl messageManager = new MessageManagerImpl(new DefaultEventLoopGroup(1), 60);
+        try {
+            ResponsePromise first = messageManager.createResponsePromise(1);
+            ResponsePromise second = messageManager.createResponsePromise(1);
+
+            assertTrue(first.awaitUninterruptibly(1, TimeUnit.SECONDS));
+            assertFalse(first.isSuccess());
+            Thread.sleep(100);
+            // 旧promise的清理不能移除新的promise
+            assertSame(second, messageManager.getResponsePromise(1));
+            assertFalse(second.isDone());
+        } finally {
+            messageManager.close();
+        }
+    }
+}
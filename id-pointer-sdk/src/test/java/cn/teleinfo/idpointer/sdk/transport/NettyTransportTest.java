@@ -0,0 +1,38 @@
+package cn.teleinfo.idpointer.sdk.transport;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NettyTransportTest {
+
+    @Test
+    void forcedNio() {
+        NettyTransport transport = NettyTransport.detect("NIO");
+        assertEquals(NettyTransport.Type.NIO, transport.getType());
+        assertEquals(NioSocketChannel.class, transport.socketChannelClass());
+    }
+
+    @Test
+    void fallsBackWhenUnavailable() throws Exception {
+        // io_uring不在classpath中时回退到epoll或NIO
+        for (String preferred : new String[]{null, "", "io_uring", "unknown"}) {
+            NettyTransport transport = NettyTransport.detect(preferred);
+            assertNotEquals(NettyTransport.Type.IO_URING, transport.getType());
+            assertNotNull(transport.socketChannelClass());
+            assertNotNull(transport.datagramChannelClass());
+
+            EventLoopGroup group = transport.newEventLoopGroup(1, "transport-test");
+            try {
+                assertEquals(transport.getType() == NettyTransport.Type.NIO, group instanceof NioEventLoopGroup);
+            } finally {
+                group.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+            }
+        }
+    }
+}
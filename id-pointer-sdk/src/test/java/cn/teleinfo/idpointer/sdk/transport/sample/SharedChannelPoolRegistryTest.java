@@ -0,0 +1,64 @@
+package cn.teleinfo.idpointer.sdk.transport.sample;
+
+import cn.teleinfo.idpointer.sdk.transport.AbstractFixedChannelPool;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedChannelPoolRegistryTest {
+
+    @Test
+    void shareAndRelease() {
+        SharedChannelPoolRegistry registry = new SharedChannelPoolRegistry(0);
+        InetSocketAddress address = InetSocketAddress.createUnresolved("127.0.0.1", 2641);
+
+        AbstractFixedChannelPool first = registry.retain(address, address, 10);
+        AbstractFixedChannelPool second = registry.retain(address, address, 10);
+        assertSame(first, second);
+        assertEquals(2, registry.referenceCount(address));
+
+        registry.release(address);
+        assertEquals(1, registry.referenceCount(address));
+        assertTrue(registry.isRunning());
+
+        registry.release(address);
+        assertEquals(0, registry.referenceCount(address));
+        assertFalse(registry.isRunning());
+
+        // 多余的release不影响
+        registry.release(address);
+        assertNotSame(first, registry.retain(address, address, 10));
+        registry.release(address);
+    }
+
+    @Test
+    void lingerBeforeClose() {
+        SharedChannelPoolRegistry registry = new SharedChannelPoolRegistry(60000L);
+        InetSocketAddress address = InetSocketAddress.createUnresolved("127.0.0.1", 2641);
+
+        AbstractFixedChannelPool first = registry.retain(address, address, 10);
+        registry.release(address);
+        // 保留期内重新获取仍是同一个连接池
+        assertSame(first, registry.retain(address, address, 10));
+        assertEquals(1, registry.referenceCount(address));
+    }
+
+    @Test
+    void adaptiveSizing() {
+        SharedChannelPoolRegistry registry = new SharedChannelPoolRegistry(0);
+        InetSocketAddress address = InetSocketAddress.createUnresolved("127.0.0.1", 2641);
+
+        // 自适应连接池从最小连接数开始
+        AbstractFixedChannelPool pool = registry.retain(address, address, 2, 10, true);
+        assertEquals(2, pool.getMaxConnections());
+        assertEquals(10, pool.getPoolSizer().getMaxConnections());
+        registry.release(address);
+
+        AbstractFixedChannelPool fixed = registry.retain(address, address, 10);
+        assertEquals(10, fixed.getMaxConnections());
+        assertNull(fixed.getPoolSizer());
+        registry.release(address);
+    }
+}
@@ -0,0 +1,61 @@
+package cn.teleinfo.idpointer.sdk.transport.sample;
+
+import cn.teleinfo.idpointer.sdk.core.AbstractIdResponse;
+import cn.teleinfo.idpointer.sdk.core.AbstractMessage;
+import cn.teleinfo.idpointer.sdk.core.GenericIdResponse;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.junit.jupiter.api.Test;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimpleMessageHandlerTest {
+
+    private static AbstractIdResponse response(int requestId) {
+        GenericIdResponse response = new GenericIdResponse(AbstractMessage.OC_RESOLUTION, AbstractMessage.RC_SUCCESS);
+        response.requestId = requestId;
+        return response;
+    }
+
+    @Test
+    void completeByRequestId() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        ConcurrentMap<Integer, Promise<? super AbstractIdResponse>> inFlight = new ConcurrentHashMap<>();
+        channel.attr(MessagePromiseManager.IN_FLIGHT_PROMISES_KEY).set(inFlight);
+        channel.pipeline().addLast(new SimpleMessageHandler());
+
+        Promise<AbstractIdResponse> first = ImmediateEventExecutor.INSTANCE.newPromise();
+        Promise<AbstractIdResponse> second = ImmediateEventExecutor.INSTANCE.newPromise();
+        inFlight.put(1, first);
+        inFlight.put(2, second);
+
+        // 乱序响应
+        channel.writeInbound(response(2));
+        assertFalse(first.isDone());
+        assertEquals(2, second.getNow().requestId);
+
+        channel.writeInbound(response(1));
+        assertEquals(1, first.getNow().requestId);
+        assertTrue(inFlight.isEmpty());
+    }
+
+    @Test
+    void failInFlightOnClose() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        ConcurrentMap<Integer, Promise<? super AbstractIdResponse>> inFlight = new ConcurrentHashMap<>();
+        channel.attr(MessagePromiseManager.IN_FLIGHT_PROMISES_KEY).set(inFlight);
+        channel.pipeline().addLast(new SimpleMessageHandler());
+
+        Promise<AbstractIdResponse> promise = ImmediateEventExecutor.INSTANCE.newPromise();
+        inFlight.put(1, promise);
+        channel.close();
+
+        assertTrue(promise.cause() instanceof ClosedChannelException);
+        assertTrue(inFlight.isEmpty());
+    }
+}
@@ -0,0 +1,373 @@
+package cn.teleinfo.idpointer.sdk.transport.v3;
+
+import cn.teleinfo.idpointer.sdk.client.v3.IdResponse;
+import cn.teleinfo.idpointer.sdk.core.*;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.transport.NettyTransport;
+import cn.teleinfo.idpointer.sdk.util.EncryptionUtils;
+import cn.teleinfo.idpointer.sdk.util.X509HSCertificateGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.*;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class IdHttpTransportImplTest {
+
+    /**
+     * 基于JDK HttpServer的解析服务，记录客户端使用的连接
+     */
+    private static class HttpResolver implements Closeable {
+        private final Map<String, HandleValue[]> values = new ConcurrentHashMap<>();
+        private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+        private final List<String> paths = new ArrayList<>();
+        private final HttpServer server;
+        private volatile boolean closeConnection;
+        private volatile boolean chunked;
+        private volatile int status = 200;
+
+        HttpResolver(SSLContext sslContext) throws IOException {
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+            if (sslContext == null) {
+                server = HttpServer.create(address, 0);
+            } else {
+                HttpsServer httpsServer = HttpsServer.create(address, 0);
+                httpsServer.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+                server = httpsServer;
+            }
+            server.createContext("/", this::handle);
+            server.setExecutor(Executors.newFixedThreadPool(4));
+        }
+
+        InetSocketAddress start() {
+            server.start();
+            return server.getAddress();
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            synchronized (paths) {
+                paths.add(exchange.getRequestURI().getRawPath());
+            }
+            try {
+                byte[] request = IOUtils.toByteArray(exchange.getRequestBody());
+                if (status != 200) {
+                    exchange.sendResponseHeaders(status, -1);
+                    return;
+                }
+                byte[] body = respond(values, request);
+                exchange.getResponseHeaders().set("Content-Type", Common.HDL_MIME_TYPE);
+                if (closeConnection) {
+                    exchange.getResponseHeaders().set("Connection", "close");
+                }
+                exchange.sendResponseHeaders(200, chunked ? 0 : body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (HandleException e) {
+                exchange.sendResponseHeaders(400, -1);
+            } finally {
+                exchange.close();
+            }
+        }
+
+        @Override
+        public void close() {
+            server.stop(0);
+            ((java.util.concurrent.ExecutorService) server.getExecutor()).shutdownNow();
+        }
+    }
+
+    /**
+     * 基于Netty的HTTP/2解析服务，每个流延迟响应，记录连接数与同时打开的流数峰值
+     */
+    private static class Http2Resolver implements Closeable {
+        private final Map<String, HandleValue[]> values = new ConcurrentHashMap<>();
+        private final Set<Channel> connections = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger openStreams = new AtomicInteger();
+        private final AtomicInteger maxOpenStreams = new AtomicInteger();
+        private final EventLoopGroup group = NettyTransport.nio().newEventLoopGroup(1);
+        private final SslContext sslContext;
+        private Channel serverChannel;
+
+        Http2Resolver(SslContext sslContext) {
+            this.sslContext = sslContext;
+        }
+
+        InetSocketAddress start() throws InterruptedException {
+            serverChannel = new ServerBootstrap().group(group)
+                    .channel(NioServerSocketChannel.class)
+                    .childHandler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) {
+                            connections.add(ch);
+                            if (sslContext != null) {
+                                ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
+                            }
+                            ch.pipeline().addLast(Http2FrameCodecBuilder.forServer().build());
+                            ch.pipeline().addLast(new Http2MultiplexHandler(new ChannelInitializer<Channel>() {
+                                @Override
+                                protected void initChannel(Channel stream) {
+                                    stream.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(true));
+                                    stream.pipeline().addLast(new HttpObjectAggregator(1 << 20));
+                                    stream.pipeline().addLast(new StreamHandler());
+                                }
+                            }));
+                        }
+                    })
+                    .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)).sync().channel();
+            return (InetSocketAddress) serverChannel.localAddress();
+        }
+
+        private class StreamHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+            @Override
+            protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) throws Exception {
+                int open = openStreams.incrementAndGet();
+                maxOpenStreams.accumulateAndGet(open, Math::max);
+                byte[] body = respond(values, ByteBufUtil.getBytes(request.content()));
+                ctx.executor().schedule(() -> {
+                    openStreams.decrementAndGet();
+                    FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.wrappedBuffer(body));
+                    response.headers().set(HttpHeaderNames.CONTENT_TYPE, Common.HDL_MIME_TYPE)
+                            .setInt(HttpHeaderNames.CONTENT_LENGTH, body.length);
+                    ctx.writeAndFlush(response);
+                }, 50, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (serverChannel != null) {
+                serverChannel.close().syncUninterruptibly();
+            }
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+
+    private static byte[] respond(Map<String, HandleValue[]> values, byte[] bytes) throws HandleException {
+        MessageEnvelope envelope = new MessageEnvelope();
+        Encoder.decodeEnvelope(bytes, envelope);
+        ResolutionIdRequest request = (ResolutionIdRequest) Encoder.decodeMessage(bytes, Common.MESSAGE_ENVELOPE_SIZE, envelope);
+        HandleValue[] handleValues = values.get(Util.decodeString(request.handle));
+        AbstractIdResponse response = handleValues == null
+                ? new ErrorIdResponse(request, AbstractMessage.RC_HANDLE_NOT_FOUND, null)
+                : new ResolutionIdResponse(request, request.handle, handleValues);
+        byte[] message = response.getEncodedMessage();
+        MessageEnvelope sndEnvelope = new MessageEnvelope();
+        sndEnvelope.requestId = request.requestId;
+        sndEnvelope.messageLength = message.length;
+        byte[] body = new byte[Common.MESSAGE_ENVELOPE_SIZE + message.length];
+        Encoder.encodeEnvelope(sndEnvelope, body);
+        System.arraycopy(message, 0, body, Common.MESSAGE_ENVELOPE_SIZE, message.length);
+        return body;
+    }
+
+    private static ResolutionIdRequest request(String handle, int requestId) {
+        ResolutionIdRequest request = new ResolutionIdRequest(Util.encodeString(handle), null, null, null);
+        request.setRequestId(requestId);
+        return request;
+    }
+
+    private static HandleValue[] values(String data) {
+        return new HandleValue[]{new HandleValue(1, "URL", data)};
+    }
+
+    private static String resolve(IdHttpTransport transport, String handle, int requestId) throws Exception {
+        ResolutionIdResponse response = (ResolutionIdResponse) transport.send(request(handle, requestId)).get(5, TimeUnit.SECONDS);
+        return response.getHandleValues()[0].getDataAsString();
+    }
+
+    @Test
+    void reusesKeepAliveConnections() throws Exception {
+        try (HttpResolver server = new HttpResolver(null)) {
+            InetSocketAddress address = server.start();
+            for (int i = 0; i < 20; i++) {
+                server.values.put("88.111/test" + i, values("http://example.com/" + i));
+            }
+            IdHttpTransport transport = new IdHttpTransportImpl(address, 2, null, null, "/hdl/");
+            try {
+                for (int i = 0; i < 20; i++) {
+                    assertEquals("http://example.com/" + i, resolve(transport, "88.111/test" + i, i + 1));
+                }
+                assertEquals(1, server.clientPorts.size());
+
+                List<IdPromise<IdResponse>> promises = new ArrayList<>();
+                for (int i = 0; i < 20; i++) {
+                    promises.add(transport.send(request("88.111/test" + i, 100 + i)));
+                }
+                for (IdPromise<IdResponse> promise : promises) {
+                    assertEquals(AbstractMessage.RC_SUCCESS, promise.get(5, TimeUnit.SECONDS).getResponseCode());
+                }
+                assertEquals(AbstractMessage.RC_HANDLE_NOT_FOUND, transport.send(request("88.111/missing", 200)).get(5, TimeUnit.SECONDS).getResponseCode());
+                assertTrue(server.clientPorts.size() <= 2);
+                assertEquals("/hdl/88.111%2Ftest0", server.paths.get(0));
+            } finally {
+                transport.close();
+            }
+        }
+    }
+
+    @Test
+    void reconnectsAfterCloseAndHttpError() throws Exception {
+        try (HttpResolver server = new HttpResolver(null)) {
+            InetSocketAddress address = server.start();
+            server.values.put("88.111/test", values("http://example.com"));
+            server.closeConnection = true;
+            server.chunked = true;
+            IdHttpTransport transport = new IdHttpTransportImpl(address, 1);
+            try {
+                for (int i = 0; i < 3; i++) {
+                    assertEquals("http://example.com", resolve(transport, "88.111/test", i + 1));
+                }
+                assertEquals(3, server.clientPorts.size());
+
+                server.closeConnection = false;
+                server.status = 503;
+                IdPromise<IdResponse> failed = transport.send(request("88.111/test", 10));
+                assertTrue(failed.await(5, TimeUnit.SECONDS));
+                IDException e = (IDException) failed.cause();
+                assertTrue(e.getCause() instanceof HandleException, String.valueOf(e.getCause()));
+
+                server.status = 200;
+                assertEquals("http://example.com", resolve(transport, "88.111/test", 11));
+            } finally {
+                transport.close();
+            }
+        }
+    }
+
+    @Test
+    void https() throws Exception {
+        KeyPair keyPair = EncryptionUtils.generateKeyPair();
+        X509Certificate certificate = X509HSCertificateGenerator.generate("88.111/server", keyPair.getPublic(), keyPair.getPrivate());
+        try (HttpResolver server = new HttpResolver(SSLEngineHelper.getServerSSLContext(certificate, keyPair.getPrivate()))) {
+            InetSocketAddress address = server.start();
+            server.values.put("88.111/test", values("http://example.com"));
+            SSLContext sslContext = SSLEngineHelper.getClientSSLContext(keyPair.getPublic());
+            IdHttpTransport transport = new IdHttpTransportImpl(address, 1, sslContext, null, null);
+            try {
+                for (int i = 0; i < 3; i++) {
+                    assertEquals("http://example.com", resolve(transport, "88.111/test", i + 1));
+                }
+                assertEquals(1, server.clientPorts.size());
+
+                // 新连接复用缓存的TLS会话
+                server.closeConnection = true;
+                for (int i = 0; i < 3; i++) {
+                    assertEquals("http://example.com", resolve(transport, "88.111/test", i + 10));
+                }
+                assertEquals(3, server.clientPorts.size());
+                assertEquals(1, Collections.list(sslContext.getClientSessionContext().getIds()).size());
+            } finally {
+                transport.close();
+            }
+
+            // 服务器使用的证书公钥不匹配时握手失败
+            SSLContext otherContext = SSLEngineHelper.getClientSSLContext(EncryptionUtils.generateKeyPair().getPublic());
+            IdHttpTransport untrusted = new IdHttpTransportImpl(address, 1, otherContext, null, null);
+            try {
+                IdPromise<IdResponse> promise = untrusted.send(request("88.111/test", 1));
+                assertTrue(promise.await(5, TimeUnit.SECONDS));
+                assertFalse(promise.isSuccess());
+            } finally {
+                untrusted.close();
+            }
+        }
+    }
+
+    /**
+     * 并发请求作为多个流在同一连接上发送，连接池只有一个连接
+     */
+    private static void assertMultiplexed(Http2Resolver server, IdHttpTransport transport) throws Exception {
+        for (int i = 0; i < 20; i++) {
+            server.values.put("88.111/test" + i, values("http://example.com/" + i));
+        }
+        assertEquals("http://example.com/0", resolve(transport, "88.111/test0", 1));
+
+        List<IdPromise<IdResponse>> promises = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            promises.add(transport.send(request("88.111/test" + i, 100 + i)));
+        }
+        for (int i = 0; i < 20; i++) {
+            ResolutionIdResponse response = (ResolutionIdResponse) promises.get(i).get(5, TimeUnit.SECONDS);
+            assertEquals("http://example.com/" + i, response.getHandleValues()[0].getDataAsString());
+        }
+        assertEquals(AbstractMessage.RC_HANDLE_NOT_FOUND, transport.send(request("88.111/missing", 200)).get(5, TimeUnit.SECONDS).getResponseCode());
+        assertEquals(1, server.connections.size());
+        assertTrue(server.maxOpenStreams.get() > 1, "max open streams " + server.maxOpenStreams.get());
+    }
+
+    @Test
+    void http2PriorKnowledge() throws Exception {
+        try (Http2Resolver server = new Http2Resolver(null)) {
+            InetSocketAddress address = server.start();
+            IdHttpTransport transport = new IdHttpTransportImpl(address, 1, null, null, "/hdl/", true);
+            try {
+                assertMultiplexed(server, transport);
+            } finally {
+                transport.close();
+            }
+        }
+    }
+
+    @Test
+    void http2OverTls() throws Exception {
+        assumeTrue(SslProvider.isAlpnSupported(SslProvider.JDK));
+        KeyPair keyPair = EncryptionUtils.generateKeyPair();
+        X509Certificate certificate = X509HSCertificateGenerator.generate("88.111/server", keyPair.getPublic(), keyPair.getPrivate());
+        ApplicationProtocolConfig apn = new ApplicationProtocolConfig(ApplicationProtocolConfig.Protocol.ALPN,
+                ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                ApplicationProtocolNames.HTTP_2);
+        SslContext serverSslContext = new JdkSslContext(SSLEngineHelper.getServerSSLContext(certificate, keyPair.getPrivate()), false,
+                Arrays.asList(SSLEngineHelper.ENABLED_CIPHER_SUITES), IdentityCipherSuiteFilter.INSTANCE, apn, ClientAuth.NONE,
+                SSLEngineHelper.ENABLED_SERVER_PROTOCOLS, false);
+        try (Http2Resolver server = new Http2Resolver(serverSslContext)) {
+            InetSocketAddress address = server.start();
+            // HTTPS通过ALPN协商HTTP/2，不需要http2PriorKnowledge
+            IdHttpTransport transport = new IdHttpTransportImpl(address, 1, SSLEngineHelper.getClientSSLContext(keyPair.getPublic()), null, null);
+            try {
+                assertMultiplexed(server, transport);
+            } finally {
+                transport.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package cn.teleinfo.idpointer.sdk.transport.v3;
+
+import cn.teleinfo.idpointer.sdk.client.v3.IdResponse;
+import cn.teleinfo.idpointer.sdk.core.*;
+import cn.teleinfo.idpointer.sdk.exception.IDException;
+import cn.teleinfo.idpointer.sdk.stub.StubIdServer;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import org.junit.jupiter.api.Test;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdUdpTransportImplTest {
+
+    private static final int[] FAST_RETRY_SCHEME = {100, 200, 300};
+
+    /**
+     * 只支持解析的UDP服务端，可以丢弃每个请求的前几次发送或响应中的某个分包
+     */
+    private static class UdpResolver implements Closeable {
+        private final Map<String, HandleValue[]> values = new ConcurrentHashMap<>();
+        private final Map<Integer, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        private final AtomicInteger requestCount = new AtomicInteger();
+        private final EventLoopGroup group = new NioEventLoopGroup(1);
+        private volatile int dropAttempts;
+        private volatile int dropPacket = -1;
+        private Channel channel;
+
+        InetSocketAddress start() {
+            channel = new Bootstrap().group(group)
+                    .channel(NioDatagramChannel.class)
+                    .handler(new SimpleChannelInboundHandler<DatagramPacket>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) throws Exception {
+                            respond(ctx, packet);
+                        }
+                    })
+                    .bind(InetAddress.getLoopbackAddress(), 0).syncUninterruptibly().channel();
+            return (InetSocketAddress) channel.localAddress();
+        }
+
+        private void respond(ChannelHandlerContext ctx, DatagramPacket packet) throws HandleException {
+            requestCount.incrementAndGet();
+            byte[] bytes = ByteBufUtil.getBytes(packet.content());
+            MessageEnvelope envelope = new MessageEnvelope();
+            Encoder.decodeEnvelope(bytes, envelope);
+            ResolutionIdRequest request = (ResolutionIdRequest) Encoder.decodeMessage(bytes, Common.MESSAGE_ENVELOPE_SIZE, envelope);
+            if (attempts.computeIfAbsent(request.requestId, k -> new AtomicInteger()).incrementAndGet() <= dropAttempts) {
+                return;
+            }
+            HandleValue[] handleValues = values.get(Util.decodeString(request.handle));
+            AbstractIdResponse response = handleValues == null
+                    ? new ErrorIdResponse(request, AbstractMessage.RC_HANDLE_NOT_FOUND, null)
+                    : new ResolutionIdResponse(request, request.handle, handleValues);
+
+            byte[] message = response.getEncodedMessage();
+            int numPackets = (message.length + Common.MAX_UDP_DATA_SIZE - 1) / Common.MAX_UDP_DATA_SIZE;
+            MessageEnvelope sndEnvelope = new MessageEnvelope();
+            sndEnvelope.requestId = request.requestId;
+            sndEnvelope.messageLength = message.length;
+            sndEnvelope.truncated = numPackets > 1;
+            // 倒序发送，验证乱序重组
+            for (int i = numPackets - 1; i >= 0; i--) {
+                if (i == dropPacket) {
+                    continue;
+                }
+                int from = i * Common.MAX_UDP_DATA_SIZE;
+                int length = Math.min(Common.MAX_UDP_DATA_SIZE, message.length - from);
+                byte[] buf = new byte[Common.MESSAGE_ENVELOPE_SIZE + length];
+                sndEnvelope.messageId = i;
+                Encoder.encodeEnvelope(sndEnvelope, buf);
+                System.arraycopy(message, from, buf, Common.MESSAGE_ENVELOPE_SIZE, length);
+                ctx.write(new DatagramPacket(Unpooled.wrappedBuffer(buf), packet.sender()));
+            }
+            ctx.flush();
+        }
+
+        @Override
+        public void close() {
+            channel.close().syncUninterruptibly();
+            group.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+        }
+    }
+
+    private static ResolutionIdRequest request(String handle, int requestId) {
+        ResolutionIdRequest request = new ResolutionIdRequest(Util.encodeString(handle), null, null, null);
+        request.setRequestId(requestId);
+        return request;
+    }
+
+    private static HandleValue[] largeValues() {
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            data.append("http://example.com/").append(i);
+        }
+        return new HandleValue[]{new HandleValue(1, "URL", data.toString()), new HandleValue(2, "EMAIL", "a@example.com")};
+    }
+
+    @Test
+    void multiplexesAndReassembles() throws Exception {
+        try (UdpResolver server = new UdpResolver()) {
+            InetSocketAddress address = server.start();
+            server.values.put("88.111/large", largeValues());
+            for (int i = 0; i < 50; i++) {
+                server.values.put("88.111/test" + i, new HandleValue[]{new HandleValue(1, "URL", "http://example.com/" + i)});
+            }
+            IdUdpTransportImpl transport = new IdUdpTransportImpl(address, FAST_RETRY_SCHEME, null);
+            try {
+                List<IdPromise<IdResponse>> promises = new ArrayList<>();
+                for (int i = 0; i < 50; i++) {
+                    promises.add(transport.send(request("88.111/test" + i, i + 1)));
+                }
+                IdPromise<IdResponse> large = transport.send(request("88.111/large", 100));
+                IdPromise<IdResponse> missing = transport.send(request("88.111/missing", 101));
+                assertThrows(IDException.class, () -> transport.send(request("88.111/test0", 1)));
+
+                for (int i = 0; i < 50; i++) {
+                    ResolutionIdResponse response = (ResolutionIdResponse) promises.get(i).get(5, TimeUnit.SECONDS);
+                    assertEquals("http://example.com/" + i, response.getHandleValues()[0].getDataAsString());
+                }
+                HandleValue[] values = ((ResolutionIdResponse) large.get(5, TimeUnit.SECONDS)).getHandleValues();
+                assertEquals(largeValues()[0].getDataAsString(), values[0].getDataAsString());
+                assertEquals(AbstractMessage.RC_HANDLE_NOT_FOUND, missing.get(5, TimeUnit.SECONDS).getResponseCode());
+                assertEquals(0, transport.getRetransmittedCount());
+                assertEquals(52, server.requestCount.get());
+            } finally {
+                transport.close();
+            }
+        }
+    }
+
+    @Test
+    void retransmitsThenTimesOut() throws Exception {
+        try (UdpResolver server = new UdpResolver()) {
+            InetSocketAddress address = server.start();
+            server.values.put("88.111/test", new HandleValue[]{new HandleValue(1, "URL", "http://example.com")});
+            server.dropAttempts = 2;
+            IdUdpTransportImpl transport = new IdUdpTransportImpl(address, FAST_RETRY_SCHEME, null);
+            try {
+                IdResponse response = transport.send(request("88.111/test", 1)).get(5, TimeUnit.SECONDS);
+                assertEquals(AbstractMessage.RC_SUCCESS, response.getResponseCode());
+                assertEquals(2, transport.getRetransmittedCount());
+
+                server.dropAttempts = Integer.MAX_VALUE;
+                IdPromise<IdResponse> promise = transport.send(request("88.111/test", 2));
+                assertTrue(promise.await(5, TimeUnit.SECONDS));
+                assertEquals(IDException.RESPONSE_TIMEOUT, ((IDException) promise.cause()).getCode());
+                assertEquals(6, server.requestCount.get());
+            } finally {
+                transport.close();
+            }
+        }
+    }
+
+    @Test
+    void fallsBackToTcpWhenTruncatedResponseIncomplete() throws Exception {
+        try (UdpResolver server = new UdpResolver();
+             StubIdServer tcpServer = StubIdServer.builder().requireAuthentication(false).build()) {
+            InetSocketAddress address = server.start();
+            server.values.put("88.111/large", largeValues());
+            server.dropPacket = 1;
+            tcpServer.getStore().create("88.111/large", largeValues(), false);
+            IdTcpTransportImpl tcpTransport = new IdTcpTransportImpl(tcpServer.start(), 1);
+            IdUdpTransportImpl transport = new IdUdpTransportImpl(address, FAST_RETRY_SCHEME, tcpTransport);
+            try {
+                ResolutionIdResponse response = (ResolutionIdResponse) transport.send(request("88.111/large", 1)).get(5, TimeUnit.SECONDS);
+                assertEquals(2, response.getHandleValues().length);
+                assertEquals(1, transport.getFallbackCount());
+                assertEquals(0, transport.getRetransmittedCount());
+                assertEquals(1, server.requestCount.get());
+                assertEquals(1, tcpServer.getRequestCount(AbstractMessage.OC_RESOLUTION));
+            } finally {
+                transport.close();
+                tcpTransport.close();
+            }
+        }
+    }
+}